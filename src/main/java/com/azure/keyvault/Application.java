@@ -2,20 +2,27 @@ package com.azure.keyvault;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.sql.DataSource;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jasypt.encryption.StringEncryptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import com.azure.keyvault.configs.RotatingStringEncryptor;
 import com.azure.keyvault.utils.AzureVaultUtils;
 import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.BootstrapGraph;
 import com.azure.keyvault.utils.M3AzureStorageUtils;
 import com.azure.keyvault.utils.M3AzureStorageUtils.FileDetails;
 /**
@@ -35,10 +42,22 @@ public class Application implements CommandLineRunner  {
 	
 	@Autowired
 	private DataSource dataSource;
+
+	@Autowired
+	@Qualifier("encryptorBean")
+	private StringEncryptor encryptorBean;
 	
 	@Override
 	public void run(String...args) throws Exception {
 
+		if(partitionedJobEnabled && "worker".equals(partitionedJobRole)) {
+			/**
+			 * Partitioned job worker processes only its partitions, see PartitionedJobConfig
+			 */
+			LOGGER.info("Partitioned job worker, skipping storage listing");
+			return;
+		}
+
 		/**
 		 * Database password decryption with Azure KeyVault stored secret Example
 		 * 
@@ -54,11 +73,6 @@ public class Application implements CommandLineRunner  {
 		 * passed from java invocation e.g.
 		 * java -jar azure-key-vault.jar secretCode=abcdef
 		 */
-		Connection connection = dataSource.getConnection();
-		DatabaseMetaData metadata = connection.getMetaData();
-		LOGGER.info(metadata.getDatabaseProductName() + " " + metadata.getDatabaseProductVersion());
-		connection.close();
-		
 		
 		/**
 		 * Suppose, we have to use Azure Blob Storage and it's credential want to store into Azure KeyVault.
@@ -78,16 +92,45 @@ public class Application implements CommandLineRunner  {
 		properties.setAzureLoginUri(azureLoginUri);
 		properties.setScope(scope);
 		properties.setResourceUri(resourceUri);
+		properties.setReplicaUris(Arrays.asList(replicaUris.split(",")));
 		properties.setTenantId(tenantId);
 		properties.setClientId(clientId);
 		properties.setClientKey(clientKey);
 		properties.setSecretName("azure-blob-connection-string");
 		properties.setOnline(true);
-		String azureBlobStorageConnectionString = AzureVaultUtils.getSecretFromVault(properties);
 		String containerName = "attachment-container";
 		String filePath = "/";
-		List<FileDetails> files = M3AzureStorageUtils.listFiles(azureBlobStorageConnectionString, containerName, filePath);
-		files.stream().forEach(f -> System.out.println(f.getFilePath()));
+
+		/**
+		 * Encryptor secret and vault secret fetch are network round trips, executed in parallel.
+		 * Encryptor secret fetch is started with the encryptor bean, its node waits for it within the node timeout.
+		 * Storage listing waits only for the connection string.
+		 * 
+		 * Datasource is not a node, JPA opens the pool while creating the context (so the datasource password 
+		 * is already decrypted with the encryptor before run is called), the connection check below is served by the pool.
+		 */
+		try(Connection connection = dataSource.getConnection()) {
+			DatabaseMetaData metadata = connection.getMetaData();
+			LOGGER.info(metadata.getDatabaseProductName() + " " + metadata.getDatabaseProductVersion());
+		}
+		BootstrapGraph graph = new BootstrapGraph()
+				.addNode("encryptor", bootstrapTimeoutMillis, results -> encryptorBean instanceof RotatingStringEncryptor 
+						? ((RotatingStringEncryptor) encryptorBean).getInitial().get() : encryptorBean)
+				.addNode("azure-blob-connection-string", bootstrapTimeoutMillis, results -> AzureVaultUtils.getSecretFromVault(properties))
+				.addNode("storage-listing", bootstrapTimeoutMillis, 
+						results -> M3AzureStorageUtils.listFiles((String) results.get("azure-blob-connection-string"), containerName, filePath), 
+						"azure-blob-connection-string");
+		ExecutorService executor = Executors.newFixedThreadPool(bootstrapPoolSize);
+		try {
+			graph.run(executor);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		List<FileDetails> files = graph.get("storage-listing");
+		if(null != files) {
+			files.stream().forEach(f -> System.out.println(f.getFilePath()));
+		}
 		
 	}
 
@@ -101,6 +144,9 @@ public class Application implements CommandLineRunner  {
 	@Value("${azure-keyvault.resource-uri:}")
 	private String resourceUri;
 
+	@Value("${azure-keyvault.replica-uris:}")
+	private String replicaUris;
+
 	@Value("${azure-keyvault.tenant-id:}")
 	private String tenantId;
 	
@@ -110,4 +156,16 @@ public class Application implements CommandLineRunner  {
 	@Value("${azure-keyvault.client-key:}")
 	private String clientKey;
 
+	@Value("${bootstrap.node-timeout-millis:30000}")
+	private long bootstrapTimeoutMillis;
+
+	@Value("${bootstrap.pool-size:4}")
+	private int bootstrapPoolSize;
+
+	@Value("${partitioned-job.enabled:false}")
+	private boolean partitionedJobEnabled;
+
+	@Value("${partitioned-job.role:coordinator}")
+	private String partitionedJobRole;
+
 }
@@ -0,0 +1,73 @@
+package com.azure.keyvault.configs;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.AppendBlobWriter.AppendOptions;
+import com.azure.keyvault.utils.AuditTrail;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Starts access audit trail of vault and storage calls, events are written as JSON lines into daily rolled files.
+ * Written, failed and dropped events are exported to the actuator meter registry.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "audit.enabled", havingValue = "true")
+public class AuditTrailConfig {
+
+	@Value("${audit.connection-string:LOCAL;${user.home}/.azure-key-vault}")
+	private String connectionString;
+
+	@Value("${audit.container:audit}")
+	private String containerName;
+
+	@Value("${audit.prefix:access}")
+	private String prefix;
+
+	@Value("${audit.actor:${spring.application.name:azure-key-vault}}")
+	private String actor;
+
+	@Value("${audit.block-kb:256}")
+	private int blockKb;
+
+	@Value("${audit.max-file-mb:256}")
+	private int maxFileMb;
+
+	@Value("${audit.flush-millis:1000}")
+	private long flushMillis;
+
+	@Value("${audit.ring-capacity:65536}")
+	private int ringCapacity;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	@PostConstruct
+	public void start() throws Exception {
+		AppendOptions options = new AppendOptions();
+		options.setBlockSize(blockKb * 1024);
+		options.setMaxBytes(maxFileMb * 1024L * 1024);
+		options.setMaxDelayMillis(flushMillis);
+		options.setRingCapacity(ringCapacity);
+		AuditTrail.start(connectionString, containerName, prefix, actor, options);
+		if(null != meterRegistry) {
+			FunctionCounter.builder("audit.events", AuditTrail.class, type -> AuditTrail.getEvents()).register(meterRegistry);
+			FunctionCounter.builder("audit.failures", AuditTrail.class, type -> AuditTrail.getFailures()).register(meterRegistry);
+			FunctionCounter.builder("audit.dropped", AuditTrail.class, type -> AuditTrail.getDropped()).register(meterRegistry);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		AuditTrail.stop();
+	}
+}
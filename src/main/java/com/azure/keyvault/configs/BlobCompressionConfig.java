@@ -0,0 +1,60 @@
+package com.azure.keyvault.configs;
+
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.BlobCompression;
+import com.azure.keyvault.utils.BlobCompression.Codec;
+
+/**
+ * Registers codecs of the blob compression stage from properties, nothing is compressed unless registered.
+ *
+ * Codecs are given as name=codec, where name is container name or content type
+ * e.g. storage.compression.containers=logs=gzip,exports=deflate
+ * storage.compression.content-types=application/json=gzip,text/csv=gzip
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+public class BlobCompressionConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger(BlobCompressionConfig.class);
+
+	@Value("${storage.compression.containers:}")
+	private String containers;
+
+	@Value("${storage.compression.content-types:}")
+	private String contentTypes;
+
+	@Value("${storage.compression.in-memory-kb:16384}")
+	private int inMemoryKb;
+
+	@PostConstruct
+	public void configure() {
+		BlobCompression.setInMemoryLimit(inMemoryKb * 1024);
+		register("storage.compression.containers", containers, BlobCompression::registerContainer);
+		register("storage.compression.content-types", contentTypes, BlobCompression::registerContentType);
+		if(BlobCompression.isEnabled()) {
+			LOGGER.info("Blob compression configured, containers: {}, content types: {}", containers, contentTypes);
+		}
+	}
+
+	private static void register(String property, String codecs, BiConsumer<String, Codec> registration) {
+		for(String entry : codecs.split(",")) {
+			if(entry.trim().isEmpty()) {
+				continue;
+			}
+			int index = entry.lastIndexOf('=');
+			if(index <= 0) {
+				throw new IllegalArgumentException("Invalid " + property + " entry " + entry);
+			}
+			registration.accept(entry.substring(0, index).trim(), Codec.valueOf(entry.substring(index + 1).trim().toUpperCase()));
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.azure.keyvault.configs;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.BlobIntegrity;
+
+/**
+ * Tuning of verified blob transfers, block size bounds both upload parallelism and the range fetched again
+ * after a failed MD5 check.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+public class BlobIntegrityConfig {
+
+	@Value("${storage.integrity.block-kb:4096}")
+	private int blockKb;
+
+	@Value("${storage.integrity.max-refetches:3}")
+	private int maxRefetches;
+
+	@PostConstruct
+	public void configure() {
+		BlobIntegrity.setBlockSize(blockKb * 1024);
+		BlobIntegrity.setMaxRefetches(maxRefetches);
+	}
+}
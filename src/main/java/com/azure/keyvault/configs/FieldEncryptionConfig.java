@@ -0,0 +1,66 @@
+package com.azure.keyvault.configs;
+
+import java.sql.SQLException;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.DataKeyStore;
+import com.azure.keyvault.utils.FieldEncryption;
+
+/**
+ * Field level encryption of JPA columns marked with EncryptedStringConverter.
+ *
+ * Data keys are stored wrapped into table-name of the application datasource, wrapping key is the vault key
+ * key-name. Unwrapped data keys are cached for ttl-seconds.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "field-encryption.enabled", havingValue = "true")
+public class FieldEncryptionConfig {
+
+	@Value("${field-encryption.key-name:field-encryption-key}")
+	private String keyName;
+
+	@Value("${field-encryption.table-name:FIELD_DATA_KEY}")
+	private String tableName;
+
+	@Value("${field-encryption.ttl-seconds:3600}")
+	private long ttlSeconds;
+
+	@Value("${field-encryption.parallel-threshold:256}")
+	private int parallelThreshold;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PropertyEncryptionConfig encryptionConfig;
+
+	private FieldEncryption fieldEncryption;
+
+	@PostConstruct
+	public void init() throws SQLException {
+		KeyVaultProperties properties = encryptionConfig.keyVaultProperties();
+		properties.setSecretName(keyName);
+		properties.setFallback(false);
+		properties.setDefaultValue(null);
+		fieldEncryption = new FieldEncryption(new DataKeyStore(dataSource, tableName),
+				FieldEncryption.vaultKeyWrapper(properties), ttlSeconds * 1000, parallelThreshold);
+		fieldEncryption.initialize();
+		FieldEncryption.setInstance(fieldEncryption);
+	}
+
+	@Bean
+	public FieldEncryption fieldEncryption() {
+		return fieldEncryption;
+	}
+}
@@ -0,0 +1,50 @@
+package com.azure.keyvault.configs;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.HedgedReader;
+
+/**
+ * Enables hedged blob reads against the secondary endpoint for the configured RA-GRS storage accounts.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.hedged-read.enabled", havingValue = "true")
+public class HedgedReadConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger(HedgedReadConfig.class);
+
+	@Value("${storage.hedged-read.accounts:}")
+	private String accounts;
+
+	@Value("${storage.hedged-read.budget-ratio:0.05}")
+	private double budgetRatio;
+
+	@Value("${storage.hedged-read.max-burst:10}")
+	private int maxBurst;
+
+	@Value("${storage.hedged-read.min-threshold-millis:20}")
+	private long minThresholdMillis;
+
+	@Value("${storage.hedged-read.initial-threshold-millis:200}")
+	private long initialThresholdMillis;
+
+	@PostConstruct
+	public void configure() {
+		HedgedReader.setBudget(budgetRatio, maxBurst);
+		HedgedReader.setThresholds(minThresholdMillis, initialThresholdMillis);
+		for(String account : accounts.split(",")) {
+			if(!account.trim().isEmpty()) {
+				HedgedReader.enable(account.trim());
+			}
+		}
+		LOGGER.info("Hedged reads enabled for accounts: {}", accounts);
+	}
+}
@@ -0,0 +1,75 @@
+package com.azure.keyvault.configs;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+
+/**
+ * Registers KeyVaultPropertySource into environment, enabled with azure-keyvault.property-source.enabled=true.
+ *
+ * All ${kv:secret-name} placeholders found into already loaded property sources are collected and
+ * fetched from vault in one concurrent batch, instead of one serial vault call per secret.
+ * Vault connection is configured by existing azure-keyvault.* properties.
+ * @author Sandeep Kumar
+ *
+ */
+public class KeyVaultEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{" + Pattern.quote(KeyVaultPropertySource.PREFIX) + "([^}:]+)");
+
+	@Override
+	public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+		if(!environment.getProperty("azure-keyvault.property-source.enabled", Boolean.class, false)
+				|| environment.getPropertySources().contains(KeyVaultPropertySource.NAME)) {
+			return;
+		}
+		KeyVaultProperties properties = new KeyVaultProperties();
+		properties.setAzureLoginUri(environment.getProperty("azure-keyvault.azure-login-uri", properties.getAzureLoginUri()));
+		properties.setScope(environment.getProperty("azure-keyvault.scope", properties.getScope()));
+		properties.setResourceUri(environment.getProperty("azure-keyvault.resource-uri"));
+		properties.setReplicaUris(Arrays.asList(environment.getProperty("azure-keyvault.replica-uris", "").split(",")));
+		properties.setTenantId(environment.getProperty("azure-keyvault.tenant-id"));
+		properties.setClientId(environment.getProperty("azure-keyvault.client-id"));
+		properties.setClientKey(environment.getProperty("azure-keyvault.client-key"));
+		properties.setOnline(true);
+
+		Set<String> secretNames = new LinkedHashSet<>();
+		for(PropertySource<?> propertySource : environment.getPropertySources()) {
+			if(propertySource instanceof EnumerablePropertySource) {
+				EnumerablePropertySource<?> enumerable = (EnumerablePropertySource<?>) propertySource;
+				for(String name : enumerable.getPropertyNames()) {
+					Object value = enumerable.getProperty(name);
+					if(value instanceof String) {
+						Matcher matcher = PLACEHOLDER.matcher((String) value);
+						while(matcher.find()) {
+							secretNames.add(matcher.group(1));
+						}
+					}
+				}
+			}
+		}
+
+		KeyVaultPropertySource keyVaultPropertySource = new KeyVaultPropertySource(properties, 
+				environment.getProperty("azure-keyvault.property-source.negative-cache-seconds", Long.class, 60L) * 1000);
+		if(environment.getProperty("azure-keyvault.property-source.prefetch", Boolean.class, true)) {
+			keyVaultPropertySource.prefetch(secretNames);
+		}
+		environment.getPropertySources().addLast(keyVaultPropertySource);
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.LOWEST_PRECEDENCE;
+	}
+}
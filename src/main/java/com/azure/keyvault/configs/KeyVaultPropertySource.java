@@ -0,0 +1,119 @@
+package com.azure.keyvault.configs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.core.env.EnumerablePropertySource;
+
+import com.azure.keyvault.utils.AzureVaultUtils;
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+
+/**
+ * PropertySource serving Azure KeyVault secrets for placeholders like ${kv:secret-name}.
+ *
+ * Secrets are kept into a cache, which is filled by prefetch (single concurrent batch) and on demand
+ * for names which were not prefetched. Names which can not be obtained are remembered for the negative
+ * cache time, so that a missing secret (e.g. ${kv:name:default} placeholders) does not cost a vault call
+ * on every lookup. refresh() reloads all cached secrets from vault and retries the missing ones,
+ * it is called by the rotation poller of SecretRotationConfig.
+ * @author Sandeep Kumar
+ *
+ */
+public class KeyVaultPropertySource extends EnumerablePropertySource<KeyVaultProperties> {
+
+	public static final String NAME = "azureKeyVault";
+	public static final String PREFIX = "kv:";
+
+	private static final long DEFAULT_NEGATIVE_CACHE_MILLIS = 60000;
+
+	private final Map<String, String> secrets = new ConcurrentHashMap<>();
+	private final Map<String, Long> missing = new ConcurrentHashMap<>();
+	private final Function<Collection<String>, Map<String, String>> loader;
+	private final long negativeCacheNanos;
+
+	public KeyVaultPropertySource(KeyVaultProperties properties) {
+		this(properties, DEFAULT_NEGATIVE_CACHE_MILLIS);
+	}
+
+	/**
+	 * @param properties Vault connection, secret name is ignored
+	 * @param negativeCacheMillis Time for which a secret which could not be obtained is not requested again
+	 */
+	public KeyVaultPropertySource(KeyVaultProperties properties, long negativeCacheMillis) {
+		this(properties, negativeCacheMillis, secretNames -> AzureVaultUtils.getSecretsFromVault(properties, secretNames));
+	}
+
+	KeyVaultPropertySource(KeyVaultProperties properties, long negativeCacheMillis, Function<Collection<String>, Map<String, String>> loader) {
+		super(NAME, properties);
+		this.loader = loader;
+		this.negativeCacheNanos = TimeUnit.MILLISECONDS.toNanos(negativeCacheMillis);
+	}
+
+	/**
+	 * This method obtains given secrets from vault in one concurrent batch and caches them
+	 * @param secretNames Names of secrets (without kv: prefix)
+	 */
+	public void prefetch(Collection<String> secretNames) {
+		if(secretNames.isEmpty()) {
+			return;
+		}
+		Map<String, String> fetched = loader.apply(secretNames);
+		secrets.putAll(fetched);
+		long expiry = System.nanoTime() + negativeCacheNanos;
+		for(String secretName : secretNames) {
+			if(fetched.containsKey(secretName)) {
+				missing.remove(secretName);
+			}
+			else if(!secrets.containsKey(secretName)) {
+				missing.put(secretName, expiry);
+			}
+		}
+	}
+
+	/**
+	 * This method reloads all cached secrets from vault and retries the missing ones, 
+	 * secrets which can not be obtained keep old value
+	 */
+	public void refresh() {
+		List<String> secretNames = new ArrayList<>(secrets.keySet());
+		secretNames.addAll(missing.keySet());
+		prefetch(secretNames);
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		if(!name.startsWith(PREFIX)) {
+			return null;
+		}
+		String secretName = name.substring(PREFIX.length());
+		String value = secrets.get(secretName);
+		if(null == value && !isMissing(secretName)) {
+			prefetch(Collections.singletonList(secretName));
+			value = secrets.get(secretName);
+		}
+		return value;
+	}
+
+	@Override
+	public String[] getPropertyNames() {
+		return secrets.keySet().stream().map(name -> PREFIX + name).toArray(String[]::new);
+	}
+
+	private boolean isMissing(String secretName) {
+		Long expiry = missing.get(secretName);
+		if(null == expiry) {
+			return false;
+		}
+		if(System.nanoTime() - expiry < 0) {
+			return true;
+		}
+		missing.remove(secretName, expiry);
+		return false;
+	}
+}
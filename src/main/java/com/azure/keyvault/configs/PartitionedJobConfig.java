@@ -0,0 +1,245 @@
+package com.azure.keyvault.configs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.task.listener.annotation.BeforeTask;
+import org.springframework.cloud.task.repository.TaskExecution;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.AzureVaultUtils;
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.BlobPipeline.BlobProcessor;
+import com.azure.keyvault.utils.PartitionStore;
+import com.azure.keyvault.utils.PartitionStore.Partition;
+import com.azure.keyvault.utils.PartitionStore.Status;
+import com.azure.keyvault.utils.PartitionedJob;
+
+/**
+ * Partitioned processing of a container as Spring Cloud Task, partition status is kept into the application datasource.
+ *
+ * Coordinator (partitioned-job.role=coordinator) plans partitions once per job name, launches local worker processes
+ * and relaunches the ones which die while job is not finished. With local-workers=0 coordinator processes partitions
+ * itself. More nodes join by starting the same task with role=worker and the same job name and datasource.
+ * Partitions of dead workers are taken over by other workers after lease expiry. Strategy hash (default) buckets
+ * the leading name segment below root-prefix, so each partition lists only its own virtual directories, see PartitionedJob.
+ *
+ * Content of blobs is handed to BlobProcessor bean of the application, without one blob paths are only logged.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "partitioned-job.enabled", havingValue = "true")
+public class PartitionedJobConfig implements CommandLineRunner {
+
+	private static final Logger LOGGER = LogManager.getLogger(PartitionedJobConfig.class);
+
+	private static final String ROLE_COORDINATOR = "coordinator";
+	private static final String ROLE_WORKER = "worker";
+
+	@Value("${partitioned-job.name:container-job}")
+	private String jobName;
+
+	@Value("${partitioned-job.role:coordinator}")
+	private String role;
+
+	@Value("${partitioned-job.worker-id:}")
+	private String workerId;
+
+	@Value("${partitioned-job.container:}")
+	private String containerName;
+
+	@Value("${partitioned-job.connection-string:}")
+	private String connectionString;
+
+	@Value("${partitioned-job.connection-string-secret:azure-blob-connection-string}")
+	private String connectionStringSecret;
+
+	@Value("${partitioned-job.strategy:hash}")
+	private String strategy;
+
+	@Value("${partitioned-job.root-prefix:}")
+	private String rootPrefix;
+
+	@Value("${partitioned-job.prefixes:}")
+	private String prefixes;
+
+	@Value("${partitioned-job.partitions:64}")
+	private int partitions;
+
+	@Value("${partitioned-job.local-workers:0}")
+	private int localWorkers;
+
+	@Value("${partitioned-job.lease-seconds:120}")
+	private long leaseSeconds;
+
+	@Value("${partitioned-job.max-attempts:3}")
+	private int maxAttempts;
+
+	@Value("${partitioned-job.poll-seconds:10}")
+	private long pollSeconds;
+
+	@Value("${partitioned-job.download-concurrency:8}")
+	private int downloadConcurrency;
+
+	@Value("${partitioned-job.process-concurrency:4}")
+	private int processConcurrency;
+
+	@Value("${partitioned-job.table-name:" + PartitionStore.DEFAULT_TABLE_NAME + "}")
+	private String tableName;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PropertyEncryptionConfig encryptionConfig;
+
+	@Autowired
+	private ApplicationArguments applicationArguments;
+
+	@Autowired(required = false)
+	private BlobProcessor processor;
+
+	private volatile Long taskExecutionId;
+
+	@BeforeTask
+	public void beforeTask(TaskExecution taskExecution) {
+		taskExecutionId = taskExecution.getExecutionId();
+	}
+
+	@Override
+	public void run(String... args) throws Exception {
+		PartitionedJob job = new PartitionedJob(new PartitionStore(dataSource, tableName), jobName);
+		job.setLeaseMillis(leaseSeconds * 1000);
+		job.setMaxAttempts(maxAttempts);
+		job.setPollMillis(pollSeconds * 1000);
+		job.getPipelineOptions().setDownloadConcurrency(downloadConcurrency);
+		job.getPipelineOptions().setProcessConcurrency(processConcurrency);
+		String id = workerId.isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : workerId;
+
+		if(ROLE_WORKER.equals(role)) {
+			int completed = job.runWorker(id, connectionString(), containerName, processor());
+			LOGGER.info("Worker {} completed {} partitions of job {}", id, completed, jobName);
+			return;
+		}
+		if(!ROLE_COORDINATOR.equals(role)) {
+			throw new IllegalArgumentException("Invalid partitioned-job.role " + role);
+		}
+		if(job.plan(plan())) {
+			LOGGER.info("Job {} planned with {} strategy", jobName, strategy);
+		}
+		else {
+			LOGGER.info("Job {} already planned, resuming", jobName);
+		}
+		if(localWorkers <= 0) {
+			job.runWorker(id, connectionString(), containerName, processor());
+		}
+		else {
+			coordinate(job, id);
+		}
+		Map<Status, Integer> summary = job.getStore().summary(jobName);
+		LOGGER.info("Job {} finished: {}", jobName, summary);
+		if(summary.get(Status.FAILED) > 0) {
+			throw new IllegalStateException(summary.get(Status.FAILED) + " partitions of job " + jobName + " failed after " + maxAttempts + " attempts");
+		}
+	}
+
+	/**
+	 * This method launches local workers and relaunches dead ones (up to max-attempts per slot) until job is finished
+	 */
+	private void coordinate(PartitionedJob job, String id) throws Exception {
+		List<Process> processes = PartitionedJob.launchLocalWorkers(localWorkers, workerArguments(), i -> workerArguments(id, i));
+		int[] restarts = new int[localWorkers];
+		while(!job.getStore().isFinished(jobName, maxAttempts)) {
+			Thread.sleep(pollSeconds * 1000);
+			for(int i = 0; i < processes.size(); i++) {
+				Process process = processes.get(i);
+				if(!process.isAlive() && restarts[i] < maxAttempts && !job.getStore().isFinished(jobName, maxAttempts)) {
+					LOGGER.warn("Worker {} exited with {}, relaunching", i, process.exitValue());
+					restarts[i]++;
+					processes.set(i, PartitionedJob.launchLocalWorker(workerArguments(), workerArguments(id, i)));
+				}
+			}
+			LOGGER.info("Job {} progress: {}", jobName, job.getStore().summary(jobName));
+		}
+		for(Process process : processes) {
+			process.waitFor();
+		}
+	}
+
+	/**
+	 * Arguments of this process without the ones set per worker, repeated options would be joined by spring
+	 */
+	private List<String> workerArguments() {
+		List<String> retVal = new ArrayList<>();
+		for(String argument : applicationArguments.getSourceArgs()) {
+			if(!argument.startsWith("--partitioned-job.role=") && !argument.startsWith("--partitioned-job.worker-id=")
+					&& !argument.startsWith("--spring.cloud.task.parent-execution-id=")) {
+				retVal.add(argument);
+			}
+		}
+		return retVal;
+	}
+
+	private List<String> workerArguments(String id, int index) {
+		List<String> retVal = new ArrayList<>();
+		retVal.add("--partitioned-job.role=" + ROLE_WORKER);
+		retVal.add("--partitioned-job.worker-id=" + id + "-" + index);
+		if(null != taskExecutionId) {
+			retVal.add("--spring.cloud.task.parent-execution-id=" + taskExecutionId);
+		}
+		return retVal;
+	}
+
+	private List<Partition> plan() {
+		if("prefix".equalsIgnoreCase(strategy)) {
+			List<String> prefixList = new ArrayList<>();
+			for(String prefix : prefixes.split(",")) {
+				if(!prefix.trim().isEmpty()) {
+					prefixList.add(prefix.trim());
+				}
+			}
+			if(prefixList.isEmpty()) {
+				throw new IllegalArgumentException("partitioned-job.prefixes is required for prefix strategy");
+			}
+			return PartitionedJob.prefixPartitions(rootPrefix, prefixList, partitions);
+		}
+		if("hash".equalsIgnoreCase(strategy)) {
+			return PartitionedJob.hashPartitions(rootPrefix, partitions);
+		}
+		throw new IllegalArgumentException("Invalid partitioned-job.strategy " + strategy);
+	}
+
+	private String connectionString() {
+		if(!connectionString.isEmpty()) {
+			return connectionString;
+		}
+		KeyVaultProperties properties = encryptionConfig.keyVaultProperties();
+		properties.setSecretName(connectionStringSecret);
+		properties.setFallback(false);
+		properties.setDefaultValue(null);
+		String retVal = AzureVaultUtils.getSecretFromVault(properties);
+		if(null == retVal) {
+			throw new IllegalStateException("Storage connection string " + connectionStringSecret + " could not be obtained from vault");
+		}
+		return retVal;
+	}
+
+	private BlobProcessor processor() {
+		if(null != processor) {
+			return processor;
+		}
+		return (filePath, content) -> LOGGER.info("Processed {}", filePath);
+	}
+}
@@ -1,7 +1,20 @@
 package com.azure.keyvault.configs;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
+import javax.crypto.SecretKey;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jasypt.encryption.StringEncryptor;
 import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 import org.jasypt.encryption.pbe.config.SimpleStringPBEConfig;
@@ -12,6 +25,8 @@ import org.springframework.context.annotation.Configuration;
 
 import com.azure.keyvault.utils.AzureVaultUtils;
 import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.SecretSnapshotStore;
+import com.microsoft.azure.keyvault.models.SecretBundle;
 
 /**
  * Jasypt Encryption configuration class
@@ -21,6 +36,8 @@ import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
 @Configuration
 public class PropertyEncryptionConfig {
 
+	private static final Logger LOGGER = LogManager.getLogger(PropertyEncryptionConfig.class);
+
 	private final static String ARG_NAME = "secretCode";
 	private final static String ARG_EQ = "=";
 	
@@ -61,6 +78,9 @@ public class PropertyEncryptionConfig {
 	@Value("${azure-keyvault.resource-uri:}")
 	private String resourceUri;
 
+	@Value("${azure-keyvault.replica-uris:}")
+	private String replicaUris;
+
 	@Value("${azure-keyvault.tenant-id:}")
 	private String tenantId;
 	
@@ -75,78 +95,279 @@ public class PropertyEncryptionConfig {
 
 	@Value("${azure-keyvault.secret-default-value:}")
 	private String secretDefaultValue;
+
+	/**
+	 * Local encrypted snapshot of vault secret
+	 */
+	@Value("${encryption.snapshot.enabled:false}")
+	private boolean snapshotEnabled;
+	
+	@Value("${encryption.snapshot.path:${user.home}/.azure-key-vault/secret-snapshot.bin}")
+	private String snapshotPath;
+
+	/**
+	 * Snapshot key supplied by deployment, Base64 256 bit key e.g. ENCRYPTION_SNAPSHOT_KEY environment variable
+	 * or a file of mounted secret
+	 */
+	@Value("${encryption.snapshot.key:}")
+	private String snapshotKey;
+
+	@Value("${encryption.snapshot.key-file:}")
+	private String snapshotKeyFile;
+
+	/**
+	 * Secret the encryptor is currently created with, compared by rotation poller
+	 */
+	private volatile EncryptorKey encryptorKey;
 	
 	
 	@Bean(name = "encryptorBean")
 	public StringEncryptor stringEncryptor(ApplicationArguments args) {
 		String key = null;
-		if(getKeyOnline) {
-			
-			/**
-			 * A Pojo class to pass all required parameter to obtain
-			 * entries from Azure KeyVault 
-			 */
-			KeyVaultProperties properties = new KeyVaultProperties();
-			
-			/**
-			 * Azure login URL - fixed login URL for all
-			 */
-			properties.setAzureLoginUri(azureLoginUri);
-			
-			/**
-			 * Azure Vault Scope URL for obtaining JWT token - Fixed for all
-			 */
-			properties.setScope(scope);
-			
-			/**
-			 * Azure Vault URL - Obtained from Azure Portal Vault page
-			 */
-			properties.setResourceUri(resourceUri);
-			
-			/**
-			 * Tenant ID, also called Directory ID in Azure Portal - Obtain from Vault page
-			 */
-			properties.setTenantId(tenantId);
-			
+		SecretKey snapshotSecretKey = getKeyOnline && snapshotEnabled ? resolveSnapshotKey() : null;
+		if(null != snapshotSecretKey) {
+			return snapshotEncryptor(snapshotSecretKey);
+		} else if(getKeyOnline) {
 			/**
-			 * Subscribed client id - created under access policy
+			 * Method to obtain value from Azure Vault Secret, fetched in background so that the vault round trip
+			 * overlaps the rest of context startup. First decryption waits for it, Application bootstrap graph
+			 * awaits it as its encryptor node.
 			 */
-			properties.setClientId(clientId);
-			
-			/**
-			 * Key for the client id
-			 */
-			properties.setClientKey(clientKey);
-
-			/**
-			 * Name of Key/Certificate/Secret
-			 */
-			properties.setSecretName(secretName);
-
-			/**
-			 * Custom implementation for providing online/fallback in case of offline and exception
-			 * If online true then only it connects to KeyVault and obtain secret
-			 * if fallback is true, in case of exception default value will be returned
-			 */
-			properties.setOnline(true);
-			properties.setFallback(true);
-			
-			/**
-			 * Default Value for the secret which will be returned in case of exception
-			 */
-			properties.setDefaultValue(secretDefaultValue);
-			
-			/**
-			 * Method to obtain value from Azure Vault Secret
-			 */
-			key = AzureVaultUtils.getSecretFromVault(properties);
+			KeyVaultProperties properties = keyVaultProperties();
+			ExecutorService executor = secretFetchExecutor();
+			try {
+				return new RotatingStringEncryptor(CompletableFuture.supplyAsync(() -> createEncryptor(fetchEncryptorKey(properties)), executor));
+			}
+			finally {
+				executor.shutdown();
+			}
 		} else {
 			String[] arguments = args.getSourceArgs();
 			if(null != arguments && arguments.length > 0) {
 				key = Stream.of(arguments).filter(e -> e.contains(ARG_NAME+ARG_EQ)).findAny().orElse(ARG_NAME+ARG_EQ);
 				key = (null != key)?key.split(ARG_EQ)[1]:null;
 			}
+			recordEncryptorKey(null, key);
 		}
+		/**
+		 * Encryptor is wrapped so that it can be swapped on secret rotation without recreating the bean
+		 */
+		return new RotatingStringEncryptor(createEncryptor(key));
+	}
+	
+	/**
+	 * This method creates encryptor from the local secret snapshot without waiting for vault, 
+	 * the snapshot value is revalidated against vault in background and encryptor is swapped if it was stale.
+	 * Without snapshot, secret is obtained from vault and stored into snapshot for next start.
+	 * @param snapshotSecretKey Key of the snapshot file
+	 * @return StringEncryptor object
+	 */
+	private StringEncryptor snapshotEncryptor(SecretKey snapshotSecretKey) {
+		SecretSnapshotStore snapshot = new SecretSnapshotStore(Paths.get(snapshotPath), snapshotSecretKey);
+		KeyVaultProperties properties = keyVaultProperties();
+		properties.setFallback(false);
+		
+		String cached = snapshot.get(secretName);
+		if(null != cached) {
+			RotatingStringEncryptor encryptor = new RotatingStringEncryptor(createEncryptor(cached));
+			recordEncryptorKey(null, cached);
+			ExecutorService executor = secretFetchExecutor();
+			CompletableFuture.runAsync(() -> {
+				SecretBundle fresh;
+				try {
+					fresh = AzureVaultUtils.getSecretBundleFromVault(properties);
+				} catch(RuntimeException ex) {
+					LOGGER.warn("Secret snapshot could not be revalidated against vault", ex);
+					return;
+				}
+				if(!fresh.value().equals(cached)) {
+					snapshot.put(secretName, fresh.value());
+					encryptor.swap(createEncryptor(fresh.value()));
+					LOGGER.warn("Secret snapshot was stale, encryptor updated. Values decrypted at startup are not re-resolved, see SecretRotationConfig");
+				}
+				recordEncryptorKey(fresh.secretIdentifier().version(), fresh.value());
+			}, executor);
+			executor.shutdown();
+			return encryptor;
+		}
+		
+		String key = fetchEncryptorKey(properties);
+		if(null != key) {
+			snapshot.put(secretName, key);
+		}
+		else {
+			LOGGER.warn("Default value picked up");
+			key = secretDefaultValue;
+			recordEncryptorKey(null, key);
+		}
+		return new RotatingStringEncryptor(createEncryptor(key));
+	}
+	
+	/**
+	 * This method obtains the snapshot key supplied by deployment, key file has precedence over key property.
+	 * Snapshot is not used without a key, a key derived on the machine itself would only obfuscate the file.
+	 * @return Snapshot key, null if none is configured
+	 */
+	private SecretKey resolveSnapshotKey() {
+		if(!snapshotKeyFile.isEmpty()) {
+			try {
+				return SecretSnapshotStore.readKey(Paths.get(snapshotKeyFile));
+			} catch(IOException ex) {
+				throw new IllegalStateException("Secret snapshot key file " + snapshotKeyFile + " can not be read", ex);
+			}
+		}
+		if(!snapshotKey.isEmpty()) {
+			return SecretSnapshotStore.decodeKey(snapshotKey);
+		}
+		LOGGER.warn("encryption.snapshot.enabled=true without encryption.snapshot.key or encryption.snapshot.key-file, snapshot not used");
+		return null;
+	}
+
+	/**
+	 * This method creates the executor for the background secret fetch. Vault call blocks on network, so it is kept
+	 * off the common fork join pool which is shared with parallel streams and other async work of the application.
+	 * Executor is shut down by the caller right after submitting, its daemon thread ends once the fetch is done.
+	 * @return Single thread executor
+	 */
+	private static ExecutorService secretFetchExecutor() {
+		return Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "encryptor-secret-fetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * This method obtains the encryptor secret from vault and records its version, default value is returned
+	 * in case of exception when fallback is enabled
+	 * @param properties Input parameter to connect with Azure Vault
+	 * @return Secret value, null if it can not be obtained and fallback is disabled
+	 */
+	private String fetchEncryptorKey(KeyVaultProperties properties) {
+		try {
+			SecretBundle bundle = AzureVaultUtils.getSecretBundleFromVault(properties);
+			recordEncryptorKey(bundle.secretIdentifier().version(), bundle.value());
+			return bundle.value();
+		} catch(RuntimeException ex) {
+			if(!properties.isFallback()) {
+				LOGGER.error("Encryptor secret could not be obtained from vault", ex);
+				return null;
+			}
+			LOGGER.warn("Encryptor secret could not be obtained from vault, default value picked up");
+			recordEncryptorKey(null, properties.getDefaultValue());
+			return properties.getDefaultValue();
+		}
+	}
+
+	/**
+	 * This method records the secret the encryptor is created with
+	 * @param version Vault version of the secret, null if not known e.g. default value or not revalidated snapshot
+	 * @param key Secret value, only its SHA-256 is kept
+	 */
+	void recordEncryptorKey(String version, String key) {
+		encryptorKey = new EncryptorKey(version, sha256(key));
+	}
+
+	/**
+	 * @return Vault version of the secret the encryptor is created with, null if not known
+	 */
+	String getEncryptorVersion() {
+		EncryptorKey current = encryptorKey;
+		return null != current ? current.version : null;
+	}
+
+	/**
+	 * @param key Secret value
+	 * @return Boolean value if the encryptor is created with this secret
+	 */
+	boolean isEncryptorKey(String key) {
+		EncryptorKey current = encryptorKey;
+		return null != current && MessageDigest.isEqual(current.digest, sha256(key));
+	}
+
+	private static byte[] sha256(String value) {
+		if(null == value) {
+			return new byte[0];
+		}
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 not available", ex);
+		}
+	}
+
+	/**
+	 * This method creates the properties required to obtain the Jasypt secret from Azure KeyVault
+	 * @return KeyVaultProperties object
+	 */
+	KeyVaultProperties keyVaultProperties() {
+		/**
+		 * A Pojo class to pass all required parameter to obtain
+		 * entries from Azure KeyVault 
+		 */
+		KeyVaultProperties properties = new KeyVaultProperties();
+		
+		/**
+		 * Azure login URL - fixed login URL for all
+		 */
+		properties.setAzureLoginUri(azureLoginUri);
+		
+		/**
+		 * Azure Vault Scope URL for obtaining JWT token - Fixed for all
+		 */
+		properties.setScope(scope);
+		
+		/**
+		 * Azure Vault URL - Obtained from Azure Portal Vault page
+		 */
+		properties.setResourceUri(resourceUri);
+		
+		/**
+		 * Replica vaults with the same secrets, reads are routed to the fastest available one
+		 */
+		properties.setReplicaUris(Arrays.asList(replicaUris.split(",")));
+		
+		/**
+		 * Tenant ID, also called Directory ID in Azure Portal - Obtain from Vault page
+		 */
+		properties.setTenantId(tenantId);
+		
+		/**
+		 * Subscribed client id - created under access policy
+		 */
+		properties.setClientId(clientId);
+		
+		/**
+		 * Key for the client id
+		 */
+		properties.setClientKey(clientKey);
+
+		/**
+		 * Name of Key/Certificate/Secret
+		 */
+		properties.setSecretName(secretName);
+
+		/**
+		 * Custom implementation for providing online/fallback in case of offline and exception
+		 * If online true then only it connects to KeyVault and obtain secret
+		 * if fallback is true, in case of exception default value will be returned
+		 */
+		properties.setOnline(true);
+		properties.setFallback(true);
+		
+		/**
+		 * Default Value for the secret which will be returned in case of exception
+		 */
+		properties.setDefaultValue(secretDefaultValue);
+		return properties;
+	}
+	
+	/**
+	 * This method creates Jasypt encryptor for the given password with configured encryption parameters
+	 * @param key Password of the encryptor
+	 * @return StringEncryptor object
+	 */
+	StringEncryptor createEncryptor(String key) {
 	    PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
 	    SimpleStringPBEConfig config = new SimpleStringPBEConfig();
 	    config.setPassword(key);
@@ -160,5 +381,18 @@ public class PropertyEncryptionConfig {
 	    return encryptor;
 	}
 	
+	boolean isGetKeyOnline() {
+		return getKeyOnline;
+	}
+
+	private static final class EncryptorKey {
+		private final String version;
+		private final byte[] digest;
+
+		private EncryptorKey(String version, byte[] digest) {
+			this.version = version;
+			this.digest = digest;
+		}
+	}
 	
 }
@@ -0,0 +1,110 @@
+package com.azure.keyvault.configs;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.RateGovernor;
+import com.azure.keyvault.utils.RateGovernor.Bucket;
+import com.azure.keyvault.utils.RateGovernor.Mode;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Configures client-side rate limits of storage and vault calls from properties and exports
+ * governor metrics (permits, rejections, wait time) to the actuator meter registry.
+ *
+ * Limits are given as resource:operation=permitsPerSecond, where resource is storage account name or vault host
+ * e.g. rate-governor.limits=mystorage:read=2000,mystorage:write=500,myvault.vault.azure.net:read=100
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "rate-governor.enabled", havingValue = "true")
+public class RateGovernorConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger(RateGovernorConfig.class);
+
+	@Value("${rate-governor.mode:BLOCKING}")
+	private Mode mode;
+
+	@Value("${rate-governor.max-wait-millis:30000}")
+	private long maxWaitMillis;
+
+	@Value("${rate-governor.burst-seconds:1}")
+	private double burstSeconds;
+
+	@Value("${rate-governor.interactive-reserve:0.2}")
+	private double interactiveReserve;
+
+	@Value("${rate-governor.default.read:0}")
+	private double defaultRead;
+
+	@Value("${rate-governor.default.write:0}")
+	private double defaultWrite;
+
+	@Value("${rate-governor.default.list:0}")
+	private double defaultList;
+
+	@Value("${rate-governor.limits:}")
+	private String limits;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	@PostConstruct
+	public void configure() {
+		RateGovernor.reset();
+		RateGovernor.setMode(mode);
+		RateGovernor.setMaxWaitMillis(maxWaitMillis);
+		RateGovernor.setInteractiveReserve(interactiveReserve);
+		configureDefault(OperationClass.READ, defaultRead);
+		configureDefault(OperationClass.WRITE, defaultWrite);
+		configureDefault(OperationClass.LIST, defaultList);
+		for(String limit : limits.split(",")) {
+			if(limit.trim().isEmpty()) {
+				continue;
+			}
+			String[] keyValue = limit.trim().split("=");
+			int index = keyValue[0].lastIndexOf(':');
+			if(keyValue.length != 2 || index <= 0) {
+				throw new IllegalArgumentException("Invalid rate-governor.limits entry " + limit);
+			}
+			double permitsPerSecond = Double.parseDouble(keyValue[1].trim());
+			RateGovernor.configure(keyValue[0].substring(0, index).trim(),
+					OperationClass.valueOf(keyValue[0].substring(index + 1).trim().toUpperCase()),
+					permitsPerSecond, burst(permitsPerSecond));
+		}
+		if(null != meterRegistry) {
+			RateGovernor.setBucketListener(this::bindMetrics);
+		}
+		LOGGER.info("Rate governor configured in {} mode, limits: {}", mode, limits);
+	}
+
+	private void configureDefault(OperationClass operationClass, double permitsPerSecond) {
+		if(permitsPerSecond > 0) {
+			RateGovernor.configureDefault(operationClass, permitsPerSecond, burst(permitsPerSecond));
+		}
+	}
+
+	private int burst(double permitsPerSecond) {
+		return (int) Math.max(1, permitsPerSecond * burstSeconds);
+	}
+
+	private void bindMetrics(Bucket bucket) {
+		Tags tags = Tags.of("resource", bucket.getResource(), "operation", bucket.getOperationClass().name().toLowerCase());
+		FunctionCounter.builder("rate.governor.permits", bucket, Bucket::getAcquired).tags(tags).register(meterRegistry);
+		FunctionCounter.builder("rate.governor.rejected", bucket, Bucket::getRejected).tags(tags).register(meterRegistry);
+		FunctionCounter.builder("rate.governor.wait", bucket, Bucket::getTotalWaitSeconds).tags(tags).baseUnit("seconds").register(meterRegistry);
+		Gauge.builder("rate.governor.wait.max", bucket, Bucket::getMaxWaitSeconds).tags(tags).baseUnit("seconds").register(meterRegistry);
+	}
+}
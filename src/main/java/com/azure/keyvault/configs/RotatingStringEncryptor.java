@@ -0,0 +1,70 @@
+package com.azure.keyvault.configs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jasypt.encryption.StringEncryptor;
+
+/**
+ * StringEncryptor which delegates to an encryptor that can be replaced atomically at runtime.
+ * Callers already holding the bean keep working, in-flight operations complete with the encryptor
+ * they started with and new operations pick up the swapped one.
+ *
+ * Encryptor may also be created while its secret is still being fetched, the first operation then
+ * waits for the fetch, so the fetch runs concurrently with the rest of the startup.
+ * @author Sandeep Kumar
+ *
+ */
+public class RotatingStringEncryptor implements StringEncryptor {
+
+	private final AtomicReference<StringEncryptor> delegate;
+	private final CompletableFuture<StringEncryptor> initial;
+
+	public RotatingStringEncryptor(StringEncryptor initial) {
+		this.initial = CompletableFuture.completedFuture(initial);
+		this.delegate = new AtomicReference<>(initial);
+	}
+
+	/**
+	 * @param initial Encryptor being created, operations wait for it until it is done or swapped
+	 */
+	public RotatingStringEncryptor(CompletableFuture<StringEncryptor> initial) {
+		this.initial = initial;
+		this.delegate = new AtomicReference<>(initial.getNow(null));
+	}
+
+	/**
+	 * This method replaces the current encryptor
+	 * @param encryptor New encryptor
+	 * @return Previous encryptor, null if the initial encryptor was not yet created
+	 */
+	public StringEncryptor swap(StringEncryptor encryptor) {
+		return delegate.getAndSet(encryptor);
+	}
+
+	/**
+	 * @return Future completed once the initial encryptor is created
+	 */
+	public CompletableFuture<StringEncryptor> getInitial() {
+		return initial;
+	}
+
+	@Override
+	public String encrypt(String message) {
+		return current().encrypt(message);
+	}
+
+	@Override
+	public String decrypt(String encryptedMessage) {
+		return current().decrypt(encryptedMessage);
+	}
+
+	private StringEncryptor current() {
+		StringEncryptor retVal = delegate.get();
+		if(null != retVal) {
+			return retVal;
+		}
+		StringEncryptor created = initial.join();
+		return delegate.compareAndSet(null, created) ? created : delegate.get();
+	}
+}
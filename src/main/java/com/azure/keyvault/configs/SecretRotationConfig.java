@@ -0,0 +1,220 @@
+package com.azure.keyvault.configs;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jasypt.encryption.StringEncryptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.PropertySource;
+
+import com.azure.keyvault.utils.AzureVaultUtils;
+import com.microsoft.azure.keyvault.models.SecretBundle;
+import com.ulisesbocchio.jasyptspringboot.EncryptablePropertySource;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Hot rotation of the Jasypt secret stored into Azure KeyVault.
+ *
+ * A background poller checks the version of the secret at a jittered interval (so that all the pods
+ * do not hit the vault at the same time). When a new version is found:
+ * 1. A new encryptor is created and swapped atomically into encryptorBean
+ * 2. Cached decrypted ENC(...) properties are dropped so that they get re-resolved with the new encryptor
+ * 3. Datasource username/password are re-resolved and set into the Hikari pool, existing connections
+ * are soft evicted i.e. closed once returned to pool, so in-flight requests are not disrupted
+ *
+ * Only these two consumers are refreshed. Values already injected from ENC(...) properties e.g. @Value fields,
+ * @ConfigurationProperties beans or clients created at startup keep the value decrypted with the previous
+ * secret until restart, such consumers should read the property from Environment on each use instead.
+ * Rotation also needs the ENC(...) values to be readable with the new secret, i.e. re-encrypted into an
+ * externalized property source, otherwise the pool keeps its credentials and an error is logged.
+ *
+ * The same poll reloads the secrets of KeyVaultPropertySource (azure-keyvault.property-source.enabled=true),
+ * so ${kv:...} lookups from Environment see rotated secrets and secrets missing earlier are retried.
+ *
+ * Enabled with encryption.rotation.enabled=true, encryptor is rotated only when encryption.get-key-online=true
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "encryption.rotation.enabled", havingValue = "true")
+public class SecretRotationConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger(SecretRotationConfig.class);
+
+	private static final String DATASOURCE_USERNAME = "spring.datasource.username";
+	private static final String DATASOURCE_PASSWORD = "spring.datasource.password";
+
+	@Value("${encryption.rotation.interval-seconds:300}")
+	private long intervalSeconds;
+
+	@Value("${encryption.rotation.jitter-seconds:60}")
+	private long jitterSeconds;
+
+	@Autowired
+	private PropertyEncryptionConfig encryptionConfig;
+
+	@Autowired
+	@Qualifier("encryptorBean")
+	private StringEncryptor encryptorBean;
+
+	@Autowired
+	private ConfigurableEnvironment environment;
+
+	@Autowired
+	private DataSource dataSource;
+
+	private ScheduledExecutorService scheduler;
+
+	private boolean rotateEncryptor;
+
+	@PostConstruct
+	public void start() {
+		if(!encryptionConfig.isGetKeyOnline()) {
+			LOGGER.warn("Secret rotation is enabled but encryption.get-key-online=false, encryptor is not rotated");
+		}
+		else if(!(encryptorBean instanceof RotatingStringEncryptor)) {
+			LOGGER.warn("encryptorBean does not support rotation, encryptor is not rotated");
+		}
+		else {
+			rotateEncryptor = true;
+		}
+		if(!rotateEncryptor && !environment.getPropertySources().contains(KeyVaultPropertySource.NAME)) {
+			LOGGER.warn("Nothing to rotate, rotation poller not started");
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "secret-rotation-poller");
+			thread.setDaemon(true);
+			return thread;
+		});
+		/**
+		 * First poll is jittered as well, pods started together by a deployment must not poll the vault together
+		 */
+		scheduler.schedule(this::poll, nextDelayMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if(null != scheduler) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private void poll() {
+		try {
+			if(rotateEncryptor) {
+				pollEncryptorSecret();
+			}
+		} catch(Exception ex) {
+			LOGGER.error("Error while polling secret version from vault", ex);
+		}
+		try {
+			refreshKeyVaultPropertySource();
+		} catch(RuntimeException ex) {
+			LOGGER.error("Error while refreshing KeyVault property source", ex);
+		} finally {
+			try {
+				scheduler.schedule(this::poll, nextDelayMillis(), TimeUnit.MILLISECONDS);
+			} catch(RejectedExecutionException ex) {
+				LOGGER.debug("Secret rotation poller stopped");
+			}
+		}
+	}
+
+	/**
+	 * This method checks the version of secret into vault and rotates in case it differs from the version the
+	 * encryptor is created with. When that version is not known (default value or local snapshot), the secret
+	 * value is compared instead, so a secret rotated before the first poll is picked up by the first poll.
+	 * @throws SQLException In case datasource can not be unwrapped
+	 */
+	private void pollEncryptorSecret() throws SQLException {
+		((RotatingStringEncryptor) encryptorBean).getInitial().join();
+		SecretBundle bundle = AzureVaultUtils.getSecretBundleFromVault(encryptionConfig.keyVaultProperties());
+		String version = bundle.secretIdentifier().version();
+		String currentVersion = encryptionConfig.getEncryptorVersion();
+		if(null == currentVersion && encryptionConfig.isEncryptorKey(bundle.value())) {
+			encryptionConfig.recordEncryptorKey(version, bundle.value());
+		}
+		else if(!version.equals(currentVersion)) {
+			LOGGER.info("Secret version changed from {} to {}, rotating encryptor", null != currentVersion ? currentVersion : "unknown", version);
+			rotate(bundle.value());
+			encryptionConfig.recordEncryptorKey(version, bundle.value());
+		}
+	}
+
+	/**
+	 * This method reloads the secrets of KeyVaultPropertySource. Jasypt wraps property sources and caches their
+	 * values, so the wrapper cache is dropped as well.
+	 */
+	void refreshKeyVaultPropertySource() {
+		PropertySource<?> propertySource = environment.getPropertySources().get(KeyVaultPropertySource.NAME);
+		PropertySource<?> source = propertySource instanceof EncryptablePropertySource 
+				? ((EncryptablePropertySource<?>) propertySource).getDelegate() : propertySource;
+		if(source instanceof KeyVaultPropertySource) {
+			((KeyVaultPropertySource) source).refresh();
+			if(propertySource instanceof EncryptablePropertySource) {
+				((EncryptablePropertySource<?>) propertySource).refresh();
+			}
+		}
+	}
+
+	private long nextDelayMillis() {
+		long jitter = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(-jitterSeconds * 1000, jitterSeconds * 1000 + 1) : 0;
+		return Math.max(1000, intervalSeconds * 1000 + jitter);
+	}
+
+	/**
+	 * This method swaps the encryptor to the given secret, drops decrypted values cached by Jasypt and
+	 * sets re-resolved datasource credentials into the Hikari pool
+	 * @param key New secret
+	 * @throws SQLException In case datasource can not be unwrapped
+	 */
+	void rotate(String key) throws SQLException {
+		((RotatingStringEncryptor) encryptorBean).swap(encryptionConfig.createEncryptor(key));
+
+		/**
+		 * Jasypt caches decrypted values into its property source wrappers, drop them
+		 */
+		for(PropertySource<?> propertySource : environment.getPropertySources()) {
+			if(propertySource instanceof EncryptablePropertySource) {
+				((EncryptablePropertySource<?>) propertySource).refresh();
+			}
+		}
+
+		if(dataSource.isWrapperFor(HikariDataSource.class)) {
+			String username;
+			String password;
+			try {
+				username = environment.getProperty(DATASOURCE_USERNAME);
+				password = environment.getProperty(DATASOURCE_PASSWORD);
+			} catch(Exception ex) {
+				LOGGER.error("Datasource credentials can not be decrypted with rotated secret, pool credentials unchanged", ex);
+				return;
+			}
+			HikariDataSource hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+			HikariConfigMXBean config = hikariDataSource.getHikariConfigMXBean();
+			config.setUsername(username);
+			config.setPassword(password);
+			if(null != hikariDataSource.getHikariPoolMXBean()) {
+				hikariDataSource.getHikariPoolMXBean().softEvictConnections();
+			}
+			LOGGER.info("Datasource credentials rotated, existing connections soft evicted");
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.azure.keyvault.configs;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import com.azure.keyvault.utils.VaultReplicaRouter;
+
+/**
+ * Tuning of read routing over replica vaults, applicable once azure-keyvault.replica-uris is configured.
+ * @author Sandeep Kumar
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "azure-keyvault.replica-uris")
+public class VaultRoutingConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger(VaultRoutingConfig.class);
+
+	@Value("${azure-keyvault.replica-uris:}")
+	private String replicaUris;
+
+	@Value("${azure-keyvault.routing.ewma-alpha:0.2}")
+	private double alpha;
+
+	@Value("${azure-keyvault.routing.attempt-timeout-millis:5000}")
+	private long attemptTimeoutMillis;
+
+	@Value("${azure-keyvault.routing.eject-millis:10000}")
+	private long ejectMillis;
+
+	@Value("${azure-keyvault.routing.max-eject-millis:300000}")
+	private long maxEjectMillis;
+
+	@Value("${azure-keyvault.routing.probe-interval-millis:30000}")
+	private long probeIntervalMillis;
+
+	@Value("${azure-keyvault.routing.read-threads:16}")
+	private int readThreads;
+
+	@PostConstruct
+	public void configure() {
+		VaultReplicaRouter.setAlpha(alpha);
+		VaultReplicaRouter.setAttemptTimeout(attemptTimeoutMillis);
+		VaultReplicaRouter.setEjection(ejectMillis, maxEjectMillis);
+		VaultReplicaRouter.setProbeInterval(probeIntervalMillis);
+		VaultReplicaRouter.setReadThreads(readThreads);
+		LOGGER.info("Vault reads routed over replicas: {}", replicaUris);
+	}
+}
@@ -0,0 +1,650 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidKeyException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.CloudAppendBlob;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+
+/**
+ * Buffered writer of records (log lines, events, audit entries) into append blobs.
+ *
+ * Appenders publish records into a lock-free ring buffer, a single flusher thread packs them into append blocks
+ * of up to blockSize (4 MB) and appends a block when it is full, when maxDelayMillis has passed or on sync.
+ * Appends are conditional on the append position, so a retried append can not duplicate a block. Blob is rolled
+ * over to baseName.000002, baseName.000003 ... when it reaches maxBlocks (50000 is the azure limit) or when the next
+ * block would take it over maxBytes.
+ *
+ * LOCAL backend appends into memory mapped files with the same naming and rolling, sync forces mapped pages. Length
+ * and block count of an open file are persisted into a sidecar after every block, so a file left padded by a crash
+ * is resumed at its logical end even if records end with zero bytes.
+ * @author Sandeep Kumar
+ *
+ */
+public class AppendBlobWriter implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger(AppendBlobWriter.class);
+
+	private static final int APPEND_ATTEMPTS = 3;
+	private static final long LOCAL_REGION_SIZE = 64L * 1024 * 1024;
+	private static final long IDLE_PARK_NANOS = 200_000L;
+
+	private final String connectionString;
+	private final String containerName;
+	private final String baseName;
+	private final AppendOptions options;
+	private final CloudBlobContainer container;
+	private final String accountName;
+
+	/**
+	 * Ring buffer: claim is the next sequence to hand out (~end once closed), published[i] the sequence stored in slot i
+	 */
+	private final byte[][] slots;
+	private final AtomicLongArray published;
+	private final int mask;
+	private final AtomicLong claim = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+	private final AtomicLong durable = new AtomicLong(-1);
+	private final AtomicLong syncTarget = new AtomicLong(-1);
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	private final Object syncMonitor = new Object();
+	private final Thread flusher;
+
+	private Target target;
+	private int sequenceNumber;
+	private final AtomicLong blocks = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+
+	private AppendBlobWriter(String connectionString, String containerName, String baseName, AppendOptions options) throws InvalidKeyException, URISyntaxException, StorageException {
+		this.connectionString = connectionString;
+		this.containerName = containerName;
+		this.baseName = baseName;
+		this.options = options;
+		boolean local = M3AzureStorageUtils.isLocal(connectionString);
+		this.container = local ? null : M3AzureStorageUtils.getBlobConatiner(connectionString, containerName);
+		this.accountName = local ? null : M3AzureStorageUtils.accountName(connectionString);
+		int capacity = Integer.highestOneBit(Math.max(2, options.getRingCapacity() - 1)) << 1;
+		this.slots = new byte[capacity][];
+		this.published = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+		this.mask = capacity - 1;
+		this.flusher = new Thread(this::runFlusher, "append-blob-writer-" + baseName);
+		this.flusher.setDaemon(true);
+	}
+
+	/**
+	 * This method opens writer, appending continues into the latest blob of baseName if it has room
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param baseName Base name of blobs e.g. audit/2020-11-23.log
+	 * @param options Append options
+	 * @return AppendBlobWriter object
+	 * @throws AzureException In case of any exception
+	 */
+	public static AppendBlobWriter open(String connectionString, String containerName, String baseName, AppendOptions options) throws AzureException {
+		try {
+			AppendBlobWriter writer = new AppendBlobWriter(connectionString, containerName, baseName, options);
+			writer.sequenceNumber = Math.max(1, writer.latestSequenceNumber());
+			writer.target = writer.openTarget(writer.sequenceNumber);
+			writer.flusher.start();
+			return writer;
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+			LOGGER.error("Exception occurred while opening append blob! ", ex);
+			throw new AzureException(ex);
+		}
+	}
+
+	/**
+	 * This method publishes record into ring buffer, blocks only while the ring buffer is full.
+	 * Record array must not be modified afterwards.
+	 * @param record Record bytes, at most blockSize
+	 */
+	public void append(byte[] record) {
+		publish(claim(record, true), record);
+	}
+
+	/**
+	 * This method publishes record into ring buffer unless the ring buffer is full, never blocks.
+	 * Record array must not be modified afterwards.
+	 * @param record Record bytes, at most blockSize
+	 * @return false if the ring buffer is full and record was not published
+	 */
+	public boolean tryAppend(byte[] record) {
+		long sequence = claim(record, false);
+		if(sequence < 0) {
+			return false;
+		}
+		publish(sequence, record);
+		return true;
+	}
+
+	/**
+	 * This method claims sequence of record, -1 if ring buffer is full and wait is false
+	 */
+	private long claim(byte[] record, boolean wait) {
+		if(null != failure.get()) {
+			throw new IllegalStateException("Append blob writer " + baseName + " failed", failure.get());
+		}
+		if(record.length > options.getBlockSize()) {
+			throw new IllegalArgumentException("Record of " + record.length + " bytes is larger than block size");
+		}
+		while(true) {
+			long current = claim.get();
+			if(current < 0) {
+				throw new IllegalStateException("Append blob writer " + baseName + " is closed");
+			}
+			if(!wait && current - consumed.get() >= slots.length) {
+				return -1;
+			}
+			if(claim.compareAndSet(current, current + 1)) {
+				return current;
+			}
+		}
+	}
+
+	private void publish(long sequence, byte[] record) {
+		while(sequence - consumed.get() >= slots.length) {
+			if(null != failure.get()) {
+				throw new IllegalStateException("Append blob writer " + baseName + " failed", failure.get());
+			}
+			LockSupport.unpark(flusher);
+			LockSupport.parkNanos(10_000L);
+		}
+		int index = (int) (sequence & mask);
+		slots[index] = record;
+		published.lazySet(index, sequence);
+	}
+
+	/**
+	 * This method appends line terminated by new line
+	 * @param line Line to append
+	 */
+	public void appendLine(String line) {
+		append((line + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * This method waits until all records appended before the call are durable
+	 * @throws AzureException In case append of a block failed
+	 */
+	public void sync() throws AzureException {
+		long current = claim.get();
+		long target = (current < 0 ? ~current : current) - 1;
+		syncTarget.accumulateAndGet(target, Math::max);
+		LockSupport.unpark(flusher);
+		synchronized(syncMonitor) {
+			while(durable.get() < target && null == failure.get()) {
+				try {
+					syncMonitor.wait(100);
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new AzureException(ex);
+				}
+			}
+		}
+		if(null != failure.get()) {
+			throw new AzureException(failure.get());
+		}
+	}
+
+	/**
+	 * This method flushes all records and closes the current blob
+	 * @throws AzureException In case append of a block failed
+	 */
+	@Override
+	public void close() throws AzureException {
+		while(true) {
+			long current = claim.get();
+			if(current < 0 || claim.compareAndSet(current, ~current)) {
+				break;
+			}
+		}
+		try {
+			sync();
+		} finally {
+			LockSupport.unpark(flusher);
+			try {
+				flusher.join();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public String getCurrentBlobName() {
+		return blobName(sequenceNumber);
+	}
+	public long getRecords() {
+		return consumed.get();
+	}
+	public long getBlocks() {
+		return blocks.get();
+	}
+	public long getBytes() {
+		return bytes.get();
+	}
+	public boolean isFailed() {
+		return null != failure.get();
+	}
+
+	/**
+	 * This method counts records which were appended but will never be written as the flusher failed,
+	 * exact once the writer is closed
+	 * @return Number of lost records, 0 while the flusher works
+	 */
+	public long getLost() {
+		if(null == failure.get()) {
+			return 0;
+		}
+		long current = claim.get();
+		return (current < 0 ? ~current : current) - durable.get() - 1;
+	}
+
+	/**
+	 * Single consumer of the ring buffer, packs records into block and appends it
+	 */
+	private void runFlusher() {
+		byte[] block = new byte[options.getBlockSize()];
+		int blockLength = 0;
+		long blockStarted = 0;
+		long next = 0;
+		try {
+			while(true) {
+				int index = (int) (next & mask);
+				if(published.get(index) == next) {
+					byte[] record = slots[index];
+					if(blockLength + record.length > block.length) {
+						appendBlock(block, blockLength, next - 1);
+						blockLength = 0;
+					}
+					if(blockLength == 0) {
+						blockStarted = System.currentTimeMillis();
+					}
+					System.arraycopy(record, 0, block, blockLength, record.length);
+					blockLength += record.length;
+					slots[index] = null;
+					consumed.lazySet(++next);
+					continue;
+				}
+				long current = claim.get();
+				boolean closing = current < 0 && ~current == next;
+				if(blockLength > 0 && (closing || syncTarget.get() > durable.get()
+						|| System.currentTimeMillis() - blockStarted >= options.getMaxDelayMillis())) {
+					appendBlock(block, blockLength, next - 1);
+					blockLength = 0;
+				}
+				else if(blockLength == 0 && durable.get() < next - 1) {
+					markDurable(next - 1);
+				}
+				if(closing) {
+					target.close();
+					markDurable(next - 1);
+					return;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		} catch(Exception ex) {
+			LOGGER.error("Append blob writer " + baseName + " failed", ex);
+			failure.compareAndSet(null, ex);
+			synchronized(syncMonitor) {
+				syncMonitor.notifyAll();
+			}
+		}
+	}
+
+	private void appendBlock(byte[] block, int length, long lastSequence) throws Exception {
+		if(target.blockCount() >= options.getMaxBlocks() || isFull(target, length)) {
+			target.close();
+			sequenceNumber++;
+			target = openTarget(sequenceNumber);
+			LOGGER.info("Append blob rolled over to {}", blobName(sequenceNumber));
+		}
+		Exception last = null;
+		for(int attempt = 1; attempt <= APPEND_ATTEMPTS; attempt++) {
+			try {
+				target.append(block, length);
+				blocks.incrementAndGet();
+				bytes.addAndGet(length);
+				markDurable(lastSequence);
+				return;
+			} catch(StorageException | IOException ex) {
+				last = ex;
+				LOGGER.warn("Append to {} failed (attempt {}): {}", blobName(sequenceNumber), attempt, ex.getMessage());
+				if(attempt < APPEND_ATTEMPTS) {
+					Thread.sleep(200L * attempt);
+				}
+			}
+		}
+		throw last;
+	}
+
+	/**
+	 * Blob is full if block of length would take it over maxBytes, a blob always takes at least one block
+	 */
+	private boolean isFull(Target target, long length) {
+		return options.getMaxBytes() > 0 && target.length() > 0 && target.length() + length > options.getMaxBytes();
+	}
+
+	private void markDurable(long sequence) {
+		durable.set(sequence);
+		synchronized(syncMonitor) {
+			syncMonitor.notifyAll();
+		}
+	}
+
+	private String blobName(int number) {
+		return String.format("%s.%06d", baseName, number);
+	}
+
+	/**
+	 * This method finds the highest sequence number of existing blobs of baseName, 0 if none
+	 */
+	private int latestSequenceNumber() throws IOException {
+		String prefix = baseName + ".";
+		int retVal = 0;
+		if(null == container) {
+			Path base = Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName, baseName);
+			String filePrefix = base.getFileName().toString() + ".";
+			if(Files.isDirectory(base.getParent())) {
+				try(Stream<Path> files = Files.list(base.getParent())) {
+					for(Path candidate : (Iterable<Path>) files::iterator) {
+						retVal = Math.max(retVal, sequenceNumber(candidate.getFileName().toString(), filePrefix));
+					}
+				}
+			}
+		}
+		else {
+			RateGovernor.acquire(accountName, OperationClass.LIST);
+			for(ListBlobItem item : container.listBlobs(prefix)) {
+				if(item instanceof CloudBlob) {
+					retVal = Math.max(retVal, sequenceNumber(((CloudBlob) item).getName(), prefix));
+				}
+			}
+		}
+		return retVal;
+	}
+
+	private static int sequenceNumber(String name, String prefix) {
+		if(name.startsWith(prefix) && name.length() == prefix.length() + 6) {
+			try {
+				return Integer.parseInt(name.substring(prefix.length()));
+			} catch(NumberFormatException ex) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	private Target openTarget(int number) throws StorageException, URISyntaxException, IOException {
+		Target retVal = null == container
+				? new LocalTarget(Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName, blobName(number)), options.getBlockSize())
+				: new AzureTarget(container.getAppendBlobReference(blobName(number)), accountName);
+		if(retVal.blockCount() >= options.getMaxBlocks() || isFull(retVal, 1)) {
+			retVal.close();
+			sequenceNumber = number + 1;
+			return openTarget(sequenceNumber);
+		}
+		return retVal;
+	}
+
+	private interface Target {
+		int blockCount();
+		long length();
+		void append(byte[] block, int length) throws StorageException, IOException;
+		void close() throws IOException;
+	}
+
+	private static final class AzureTarget implements Target {
+		private final CloudAppendBlob blob;
+		private final String accountName;
+		private long position;
+		private int blockCount;
+
+		private AzureTarget(CloudAppendBlob blob, String accountName) throws StorageException {
+			this.blob = blob;
+			this.accountName = accountName;
+			RateGovernor.acquire(accountName, OperationClass.WRITE);
+			try {
+				blob.createOrReplace(AccessCondition.generateIfNotExistsCondition(), null, null);
+			} catch(StorageException ex) {
+				if(ex.getHttpStatusCode() != HttpURLConnection.HTTP_CONFLICT) {
+					throw ex;
+				}
+			}
+			blob.downloadAttributes();
+			this.position = blob.getProperties().getLength();
+			Integer committed = blob.getProperties().getAppendBlobCommittedBlockCount();
+			this.blockCount = null != committed ? committed : 0;
+		}
+
+		@Override
+		public int blockCount() {
+			return blockCount;
+		}
+
+		@Override
+		public long length() {
+			return position;
+		}
+
+		/**
+		 * Append is conditional on position, if an earlier attempt succeeded without response the
+		 * condition fails and the blob length shows the block is already there
+		 */
+		@Override
+		public void append(byte[] block, int length) throws StorageException, IOException {
+			RateGovernor.acquire(accountName, OperationClass.WRITE);
+			try {
+				blob.appendBlock(new ByteArrayInputStream(block, 0, length), length,
+						AccessCondition.generateIfAppendPositionEqualCondition(position), null, null);
+			} catch(StorageException ex) {
+				if(ex.getHttpStatusCode() != HttpURLConnection.HTTP_PRECON_FAILED) {
+					throw ex;
+				}
+				blob.downloadAttributes();
+				if(blob.getProperties().getLength() != position + length) {
+					throw ex;
+				}
+			}
+			position += length;
+			blockCount++;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release, blocks are committed on append
+		}
+	}
+
+	/**
+	 * Memory mapped append file, mapped in regions; file is truncated to written length on close. Length and block
+	 * count are persisted into the length sidecar after each block and the sidecar is removed on close.
+	 */
+	private static final class LocalTarget implements Target {
+		private static final int SIDECAR_LENGTH = 12;
+
+		private final FileChannel channel;
+		private final Path sidecarFile;
+		private final FileChannel sidecar;
+		private final ByteBuffer sidecarBuffer = ByteBuffer.allocate(SIDECAR_LENGTH);
+		private final int blockSize;
+		private MappedByteBuffer region;
+		private long regionStart;
+		private long position;
+		private int blockCount;
+
+		private LocalTarget(Path file, int blockSize) throws IOException {
+			Files.createDirectories(file.getParent());
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.sidecarFile = Paths.get(file + M3AzureStorageUtils.APPEND_LENGTH_SIDECAR_SUFFIX);
+			this.sidecar = FileChannel.open(sidecarFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.blockSize = blockSize;
+			if(sidecar.read(sidecarBuffer, 0) == SIDECAR_LENGTH) {
+				/**
+				 * Not closed, file may be padded up to its last mapped region
+				 */
+				this.position = Math.min(sidecarBuffer.getLong(0), channel.size());
+				this.blockCount = sidecarBuffer.getInt(8);
+			}
+			else {
+				this.position = channel.size();
+				this.blockCount = (int) ((position + blockSize - 1) / blockSize);
+			}
+		}
+
+		@Override
+		public int blockCount() {
+			return blockCount;
+		}
+
+		@Override
+		public long length() {
+			return position;
+		}
+
+		@Override
+		public void append(byte[] block, int length) throws IOException {
+			int offset = 0;
+			while(offset < length) {
+				if(null == region || position >= regionStart + region.capacity()) {
+					if(null != region) {
+						region.force();
+						unmap(region);
+					}
+					regionStart = position;
+					region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(LOCAL_REGION_SIZE, blockSize));
+				}
+				int count = (int) Math.min(length - offset, regionStart + region.capacity() - position);
+				region.position((int) (position - regionStart));
+				region.put(block, offset, count);
+				offset += count;
+				position += count;
+			}
+			region.force();
+			blockCount++;
+			sidecarBuffer.clear();
+			sidecarBuffer.putLong(position).putInt(blockCount).flip();
+			sidecar.write(sidecarBuffer, 0);
+			sidecar.force(false);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(null != region) {
+				region.force();
+				unmap(region);
+				region = null;
+			}
+			channel.truncate(position);
+			channel.force(true);
+			channel.close();
+			sidecar.close();
+			Files.deleteIfExists(sidecarFile);
+		}
+	}
+
+	/**
+	 * This method releases mapping of buffer at once instead of on garbage collection, a mapped file can not be
+	 * truncated on windows. Uses Unsafe.invokeCleaner on java 9+ and the buffer cleaner on java 8, left to garbage
+	 * collection if neither is accessible. Buffer must not be used afterwards.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		} catch(NoSuchMethodException ex) {
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(null != cleaner) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			} catch(ReflectiveOperationException | RuntimeException inner) {
+				LOGGER.debug("Mapped buffer left to garbage collection: {}", inner.getMessage());
+			}
+		} catch(ReflectiveOperationException | RuntimeException ex) {
+			LOGGER.debug("Mapped buffer left to garbage collection: {}", ex.getMessage());
+		}
+	}
+
+	/**
+	 * POJO Class to pass append writer options
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class AppendOptions {
+		private int blockSize = 4 * 1024 * 1024;
+		private long maxDelayMillis = 1000;
+		private int maxBlocks = 50000;
+		private long maxBytes;
+		private int ringCapacity = 65536;
+
+		public int getBlockSize() {
+			return blockSize;
+		}
+		public void setBlockSize(int blockSize) {
+			this.blockSize = blockSize;
+		}
+		public long getMaxDelayMillis() {
+			return maxDelayMillis;
+		}
+		public void setMaxDelayMillis(long maxDelayMillis) {
+			this.maxDelayMillis = maxDelayMillis;
+		}
+		public int getMaxBlocks() {
+			return maxBlocks;
+		}
+		public void setMaxBlocks(int maxBlocks) {
+			this.maxBlocks = maxBlocks;
+		}
+		/**
+		 * @return Maximum size of a blob before rolling over, 0 limits only the number of blocks
+		 */
+		public long getMaxBytes() {
+			return maxBytes;
+		}
+		public void setMaxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+		public int getRingCapacity() {
+			return ringCapacity;
+		}
+		public void setRingCapacity(int ringCapacity) {
+			this.ringCapacity = ringCapacity;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package com.azure.keyvault.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.AppendBlobWriter.AppendOptions;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+
+/**
+ * Access audit trail of secrets, keys, certificates and blobs as JSON lines, one event per access:
+ * {"ts":"2020-11-23T10:15:30.123Z","actor":"billing","thread":"http-nio-8080-exec-1","action":"SECRET_READ",
+ * "resource":"https://myvault.vault.azure.net/","name":"db-password","outcome":"OK","latencyMicros":5210,"bytes":16}
+ *
+ * Events go through the lock-free ring buffer of AppendBlobWriter to memory mapped local files (or append blobs for
+ * an azure connection string), rolled daily into prefix-yyyy-MM-dd.jsonl.000001 and by size. Caller pays for
+ * formatting one line, disk writes are done by the flusher thread. When disabled, record is a single volatile read.
+ * Recording never blocks the caller: an event finding the ring buffer full is dropped and counted as dropped, events
+ * which could not be written (including those still in the ring buffer when the flusher failed) are counted as failures.
+ * Secret values are never part of an event.
+ * @author Sandeep Kumar
+ *
+ */
+public final class AuditTrail {
+
+	private static final Logger LOGGER = LogManager.getLogger(AuditTrail.class);
+
+	private static final ThreadLocal<String> ACTOR = new ThreadLocal<>();
+	private static final AtomicLong EVENTS = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	private static volatile AppendBlobWriter writer;
+	private static volatile long dayEndMillis;
+	private static volatile String defaultActor = "";
+	private static AppendBlobWriter abandoned;
+	private static String connectionString;
+	private static String containerName;
+	private static String prefix;
+	private static AppendOptions options;
+
+	private AuditTrail() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	public enum Action {
+		SECRET_READ, KEY_READ, KEY_WRAP, KEY_UNWRAP, CERTIFICATE_READ, BLOB_UPLOAD, BLOB_DOWNLOAD, BLOB_DELETE, SAS_ISSUE
+	}
+
+	/**
+	 * SKIPPED is an upload not done because the same content is already stored (deduplicated upload)
+	 */
+	public enum Outcome {
+		OK, NOT_FOUND, FALLBACK, FAILED, SKIPPED
+	}
+
+	/**
+	 * This method starts writing of audit events
+	 * @param connectionString LOCAL connection string for local files or Azure connection string for append blobs
+	 * @param containerName Name of container (directory for LOCAL)
+	 * @param prefix Prefix of audit file names e.g. audit
+	 * @param actor Default actor of events e.g. application name
+	 * @param options Append options, maxBytes is the maximum file size
+	 * @throws AzureException In case audit file can not be opened
+	 */
+	public static synchronized void start(String connectionString, String containerName, String prefix, String actor, AppendOptions options) throws AzureException {
+		stop();
+		AuditTrail.connectionString = connectionString;
+		AuditTrail.containerName = containerName;
+		AuditTrail.prefix = prefix;
+		AuditTrail.defaultActor = null != actor ? actor : "";
+		AuditTrail.options = options;
+		open(System.currentTimeMillis());
+		LOGGER.info("Audit trail started into {} of {}", prefix, containerName);
+	}
+
+	/**
+	 * This method flushes pending events and stops writing of audit events
+	 */
+	public static synchronized void stop() {
+		AppendBlobWriter current = writer;
+		writer = null;
+		if(null != current) {
+			try {
+				current.close();
+			} catch(AzureException ex) {
+				LOGGER.error("Audit trail could not be closed", ex.getEx());
+			}
+		}
+	}
+
+	public static boolean isEnabled() {
+		return null != writer;
+	}
+
+	/**
+	 * This method sets actor of events recorded by current thread e.g. authenticated user of request
+	 * @param actor Actor, null resets to default actor
+	 */
+	public static void setActor(String actor) {
+		if(null == actor) {
+			ACTOR.remove();
+		}
+		else {
+			ACTOR.set(actor);
+		}
+	}
+
+	/**
+	 * This method records an access event
+	 * @param action Kind of access
+	 * @param resource Vault base url or storage account
+	 * @param name Secret, key or blob name
+	 * @param outcome Outcome of access
+	 * @param startNanos System.nanoTime() at start of access
+	 * @param bytes Bytes transferred, 0 if not applicable
+	 */
+	public static void record(Action action, String resource, String name, Outcome outcome, long startNanos, long bytes) {
+		AppendBlobWriter current = writer;
+		if(null == current) {
+			return;
+		}
+		long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+		long now = System.currentTimeMillis();
+		String actor = ACTOR.get();
+		StringBuilder line = new StringBuilder(256);
+		line.append("{\"ts\":\"").append(Instant.ofEpochMilli(now)).append('"');
+		field(line, "actor", null != actor ? actor : defaultActor);
+		field(line, "thread", Thread.currentThread().getName());
+		field(line, "action", action.name());
+		field(line, "resource", resource);
+		field(line, "name", name);
+		field(line, "outcome", outcome.name());
+		line.append(",\"latencyMicros\":").append(latencyMicros);
+		line.append(",\"bytes\":").append(bytes).append("}\n");
+		byte[] event = line.toString().getBytes(StandardCharsets.UTF_8);
+		AppendBlobWriter target = current;
+		try {
+			if(now >= dayEndMillis) {
+				target = roll(now);
+			}
+			boolean appended;
+			try {
+				appended = target.tryAppend(event);
+			} catch(IllegalStateException ex) {
+				AppendBlobWriter rolled = writer;
+				if(null == rolled || rolled == target) {
+					throw ex;
+				}
+				target = rolled;
+				appended = target.tryAppend(event);
+			}
+			if(appended) {
+				EVENTS.incrementAndGet();
+			}
+			else {
+				long dropped = DROPPED.incrementAndGet();
+				if(Long.bitCount(dropped) == 1) {
+					LOGGER.warn("Audit ring buffer full, {} events dropped so far", dropped);
+				}
+			}
+		} catch(RuntimeException | AzureException ex) {
+			long lost = 1 + abandon(target);
+			long failures = FAILURES.addAndGet(lost);
+			if(Long.highestOneBit(failures) > failures - lost) {
+				LOGGER.error("Audit event could not be written, {} events lost so far", failures, ex);
+			}
+		}
+	}
+
+	/**
+	 * This method waits until all events recorded before the call are written
+	 * @throws AzureException In case events could not be written
+	 */
+	public static void sync() throws AzureException {
+		AppendBlobWriter current = writer;
+		if(null != current) {
+			current.sync();
+		}
+	}
+
+	public static long getEvents() {
+		return EVENTS.get();
+	}
+
+	public static long getFailures() {
+		return FAILURES.get();
+	}
+
+	public static long getDropped() {
+		return DROPPED.get();
+	}
+
+	public static String getCurrentFileName() {
+		AppendBlobWriter current = writer;
+		return null != current ? current.getCurrentBlobName() : null;
+	}
+
+	/**
+	 * This method opens file of the day, previous writer is closed in background so that recording threads do not wait
+	 */
+	private static synchronized AppendBlobWriter roll(long now) throws AzureException {
+		AppendBlobWriter previous = writer;
+		if(null == previous) {
+			throw new IllegalStateException("Audit trail is stopped");
+		}
+		if(now < dayEndMillis) {
+			return previous;
+		}
+		open(now);
+		CompletableFuture.runAsync(() -> {
+			try {
+				previous.close();
+			} catch(AzureException ex) {
+				LOGGER.error("Audit file {} could not be closed", previous.getCurrentBlobName(), ex.getEx());
+			}
+		});
+		return writer;
+	}
+
+	/**
+	 * This method closes writer whose flusher failed, once, so that no more events are accepted into its ring buffer
+	 * @return Number of events accepted by the writer but never written, 0 if writer did not fail or was already closed
+	 */
+	private static synchronized long abandon(AppendBlobWriter failed) {
+		if(!failed.isFailed() || failed == abandoned) {
+			return 0;
+		}
+		abandoned = failed;
+		try {
+			failed.close();
+		} catch(AzureException ex) {
+			// failure of flusher, already logged by writer
+		}
+		return failed.getLost();
+	}
+
+	private static void open(long now) throws AzureException {
+		LocalDate day = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC).toLocalDate();
+		writer = AppendBlobWriter.open(connectionString, containerName, prefix + "-" + day + ".jsonl", options);
+		dayEndMillis = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+	}
+
+	private static void field(StringBuilder line, String key, String value) {
+		line.append(",\"").append(key).append("\":");
+		if(null == value) {
+			line.append("null");
+			return;
+		}
+		line.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\') {
+				line.append('\\').append(c);
+			}
+			else if(c < 0x20) {
+				line.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				line.append(c);
+			}
+		}
+		line.append('"');
+	}
+}
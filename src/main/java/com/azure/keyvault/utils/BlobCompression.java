@@ -0,0 +1,281 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional compression stage for blob upload/download.
+ *
+ * Codec is chosen per container or per content type (container wins), nothing is compressed unless registered.
+ * Compressed blobs carry Content-Encoding property and original length metadata, only blobs with the
+ * original length metadata are decompressed on download, so blobs written by others are returned as is.
+ *
+ * Content up to the in-memory limit is compressed into memory, larger content is compressed into a temporary
+ * file which is then uploaded block by block, so compression never holds more than the limit in addition
+ * to the content itself.
+ *
+ * Only JDK codecs are available (gzip, deflate), codecs like zstd/LZ4 require additional libraries.
+ * @author Sandeep Kumar
+ *
+ */
+public final class BlobCompression {
+
+	public static final String ORIGINAL_LENGTH_METADATA = "originallength";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static volatile int inMemoryLimit = 16 * 1024 * 1024;
+
+	private static final Map<String, Codec> CONTAINER_CODECS = new ConcurrentHashMap<>();
+	private static final Map<String, Codec> CONTENT_TYPE_CODECS = new ConcurrentHashMap<>();
+
+	private BlobCompression() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Supported codecs, name is used as Content-Encoding
+	 */
+	public enum Codec {
+		NONE(null),
+		GZIP("gzip"),
+		DEFLATE("deflate");
+
+		private final String contentEncoding;
+
+		Codec(String contentEncoding) {
+			this.contentEncoding = contentEncoding;
+		}
+
+		public String getContentEncoding() {
+			return contentEncoding;
+		}
+
+		/**
+		 * This method wraps output stream to compress while writing
+		 * @param outputStream Target stream
+		 * @return Compressing stream, closing it closes target stream
+		 * @throws IOException In case of IOException
+		 */
+		public OutputStream compress(OutputStream outputStream) throws IOException {
+			switch(this) {
+			case GZIP:
+				return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+			case DEFLATE:
+				return new DeflaterOutputStream(outputStream, new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE);
+			default:
+				return outputStream;
+			}
+		}
+
+		/**
+		 * This method wraps input stream to decompress while reading
+		 * @param inputStream Compressed stream
+		 * @return Decompressing stream
+		 * @throws IOException In case of IOException
+		 */
+		public InputStream decompress(InputStream inputStream) throws IOException {
+			switch(this) {
+			case GZIP:
+				return new GZIPInputStream(inputStream, BUFFER_SIZE);
+			case DEFLATE:
+				return new InflaterInputStream(inputStream);
+			default:
+				return inputStream;
+			}
+		}
+
+		/**
+		 * This method compresses content into memory, compressed copy is held together with the content,
+		 * see isInMemory and compressToFile for large content
+		 * @param data Content
+		 * @return Compressed content
+		 * @throws IOException In case of IOException
+		 */
+		public byte[] compress(byte[] data) throws IOException {
+			if(this == NONE) {
+				return data;
+			}
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(512, data.length / 4));
+			try(OutputStream compressing = compress(outputStream)) {
+				compressing.write(data);
+			}
+			return outputStream.toByteArray();
+		}
+
+		public byte[] decompress(byte[] data, int originalLength) throws IOException {
+			if(this == NONE) {
+				return data;
+			}
+			return readFully(decompress(new ByteArrayInputStream(data)), originalLength);
+		}
+
+		/**
+		 * @param contentEncoding Content-Encoding property of blob
+		 * @return Codec for the encoding, NONE if not supported
+		 */
+		public static Codec fromContentEncoding(String contentEncoding) {
+			for(Codec codec : values()) {
+				if(null != codec.contentEncoding && codec.contentEncoding.equalsIgnoreCase(contentEncoding)) {
+					return codec;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	/**
+	 * @param limit Maximum content length in bytes compressed into memory
+	 */
+	public static void setInMemoryLimit(int limit) {
+		inMemoryLimit = limit;
+	}
+
+	/**
+	 * @param length Length of content
+	 * @return True when content of the length is compressed into memory
+	 */
+	public static boolean isInMemory(long length) {
+		return length <= inMemoryLimit;
+	}
+
+	/**
+	 * This method compresses content into a temporary file, caller deletes the file after upload
+	 * @param data Content
+	 * @param codec Codec to compress with
+	 * @return Temporary file with compressed content
+	 * @throws IOException In case of IOException
+	 */
+	public static Path compressToFile(byte[] data, Codec codec) throws IOException {
+		Path compressed = Files.createTempFile("blob-upload", ".compressed");
+		try(OutputStream outputStream = codec.compress(Files.newOutputStream(compressed))) {
+			outputStream.write(data);
+		}
+		catch(IOException ex) {
+			Files.deleteIfExists(compressed);
+			throw ex;
+		}
+		return compressed;
+	}
+
+	/**
+	 * This method registers codec for all blobs of the container
+	 * @param containerName Name of container
+	 * @param codec Codec to use, NONE removes registration
+	 */
+	public static void registerContainer(String containerName, Codec codec) {
+		register(CONTAINER_CODECS, containerName, codec);
+	}
+
+	/**
+	 * This method registers codec for content type e.g. application/json, text/csv
+	 * @param contentType Content type
+	 * @param codec Codec to use, NONE removes registration
+	 */
+	public static void registerContentType(String contentType, Codec codec) {
+		register(CONTENT_TYPE_CODECS, contentType, codec);
+	}
+
+	private static void register(Map<String, Codec> codecs, String key, Codec codec) {
+		if(Codec.NONE == codec) {
+			codecs.remove(key);
+		}
+		else {
+			codecs.put(key, codec);
+		}
+	}
+
+	/**
+	 * This method resolves codec for upload, content type is guessed from file name
+	 * @param containerName Name of container
+	 * @param filePath File path used to guess content type
+	 * @return Registered codec or NONE
+	 */
+	public static Codec codecFor(String containerName, String filePath) {
+		if(CONTAINER_CODECS.isEmpty() && CONTENT_TYPE_CODECS.isEmpty()) {
+			return Codec.NONE;
+		}
+		Codec codec = CONTAINER_CODECS.get(containerName);
+		if(null == codec) {
+			String contentType = contentType(filePath);
+			codec = null != contentType ? CONTENT_TYPE_CODECS.get(contentType) : null;
+		}
+		return null != codec ? codec : Codec.NONE;
+	}
+
+	/**
+	 * @return True when any codec has been registered
+	 */
+	public static boolean isEnabled() {
+		return !CONTAINER_CODECS.isEmpty() || !CONTENT_TYPE_CODECS.isEmpty();
+	}
+
+	/**
+	 * This method guesses content type from file name, including types not known to JDK
+	 * @param filePath Name of file
+	 * @return Content type or null
+	 */
+	public static String contentType(String filePath) {
+		String lower = filePath.toLowerCase();
+		if(lower.endsWith(".json")) {
+			return "application/json";
+		}
+		if(lower.endsWith(".csv")) {
+			return "text/csv";
+		}
+		return URLConnection.guessContentTypeFromName(filePath);
+	}
+
+	/**
+	 * This method parses original length metadata, metadata can be set by other writers hence a value
+	 * which is not a valid length is treated as missing
+	 * @param metadata Blob metadata
+	 * @return Original length or -1 if blob was not compressed by this stage
+	 */
+	public static int originalLength(Map<String, String> metadata) {
+		String value = null != metadata ? metadata.get(ORIGINAL_LENGTH_METADATA) : null;
+		if(null == value) {
+			return -1;
+		}
+		try {
+			return Math.max(-1, Integer.parseInt(value.trim()));
+		} catch(NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * This method resolves codec of downloaded blob, blobs not compressed by this stage are returned as is
+	 * @param metadata Blob metadata
+	 * @param contentEncoding Content-Encoding property of blob
+	 * @return Codec to decompress with, NONE if blob was not compressed by this stage
+	 */
+	public static Codec storedCodec(Map<String, String> metadata, String contentEncoding) {
+		return originalLength(metadata) >= 0 ? Codec.fromContentEncoding(contentEncoding) : Codec.NONE;
+	}
+
+	static byte[] readFully(InputStream inputStream, int expectedLength) throws IOException {
+		try(InputStream in = inputStream) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(expectedLength > 0 ? expectedLength : BUFFER_SIZE);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+			return outputStream.toByteArray();
+		}
+	}
+}
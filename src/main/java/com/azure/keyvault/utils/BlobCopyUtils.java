@@ -0,0 +1,447 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.azure.keyvault.utils.BlobCompression.Codec;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.SasSigner.SasParameters;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobProperties;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.CopyState;
+import com.microsoft.azure.storage.blob.CopyStatus;
+import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
+
+/**
+ * Copy/move/rename of blobs without passing content through the application where possible.
+ *
+ * Within an account (any container) the copy is server-side by startCopy and completion is polled.
+ * Between accounts server-side copy reads source by a short lived read SAS; if source can not be signed or
+ * the service refuses the copy, content is streamed block by block (never whole blob in heap).
+ * LOCAL backend uses Files.copy/Files.move, LOCAL and azure mixed copies are streamed.
+ * Move deletes the source only after the copy has completed successfully.
+ * @author Sandeep Kumar
+ *
+ */
+public final class BlobCopyUtils {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlobCopyUtils.class.getName());
+
+	private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+	private static final long SOURCE_SAS_EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(2);
+	private static final long POLL_INITIAL_MILLIS = 200;
+	private static final long POLL_MAX_MILLIS = 5000;
+	private static final long COPY_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(60);
+
+	private BlobCopyUtils() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * How the content was copied
+	 */
+	public enum CopyMethod {
+		LOCAL,
+		SERVER,
+		STREAM
+	}
+
+	/**
+	 * This method copies file, existing target is overwritten
+	 * @param source Source file
+	 * @param target Target file
+	 * @return CopyResult object
+	 * @throws AzureException In case of any exception
+	 */
+	public static CopyResult copy(BlobLocation source, BlobLocation target) throws AzureException {
+		return transfer(source, target, false);
+	}
+
+	/**
+	 * This method moves file, source is deleted after successful copy
+	 * @param source Source file
+	 * @param target Target file
+	 * @return CopyResult object
+	 * @throws AzureException In case of any exception
+	 */
+	public static CopyResult move(BlobLocation source, BlobLocation target) throws AzureException {
+		return transfer(source, target, true);
+	}
+
+	/**
+	 * This method renames file within container
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param filePath Current path of file
+	 * @param newFilePath New path of file
+	 * @return CopyResult object
+	 * @throws AzureException In case of any exception
+	 */
+	public static CopyResult rename(String connectionString, String containerName, String filePath, String newFilePath) throws AzureException {
+		return move(new BlobLocation(connectionString, containerName, filePath), new BlobLocation(connectionString, containerName, newFilePath));
+	}
+
+	/**
+	 * This method copies/moves multiple files in parallel, server-side copies of all files are pending at the same time
+	 * @param sources Source files
+	 * @param targets Target files, in the order of sources
+	 * @param move True to delete sources after successful copy
+	 * @param parallelism Number of concurrent copies
+	 * @return List of CopyResult in the order of sources
+	 * @throws AzureException In case of any exception, copies completed before are not rolled back
+	 */
+	public static List<CopyResult> transferAll(List<BlobLocation> sources, List<BlobLocation> targets, boolean move, int parallelism) throws AzureException {
+		if(sources.size() != targets.size()) {
+			throw new IllegalArgumentException("Number of sources and targets must be same");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, sources.size())));
+		try {
+			List<Future<CopyResult>> futures = new ArrayList<>(sources.size());
+			for(int i = 0; i < sources.size(); i++) {
+				BlobLocation source = sources.get(i);
+				BlobLocation target = targets.get(i);
+				futures.add(executor.submit(() -> transfer(source, target, move)));
+			}
+			List<CopyResult> retVal = new ArrayList<>(futures.size());
+			for(Future<CopyResult> future : futures) {
+				retVal.add(future.get());
+			}
+			return retVal;
+		}
+		catch(ExecutionException ex) {
+			if(ex.getCause() instanceof AzureException) {
+				throw (AzureException) ex.getCause();
+			}
+			throw new AzureException(ex);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new AzureException(ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CopyResult transfer(BlobLocation source, BlobLocation target, boolean move) throws AzureException {
+		LOGGER.debug("Inside BlobCopyUtils:: transfer {} -> {}", source, target);
+		if(source.getConnectionString().equals(target.getConnectionString()) && source.getContainerName().equals(target.getContainerName())
+				&& source.getFilePath().equals(target.getFilePath())) {
+			throw new IllegalArgumentException("Source and target are same file " + source);
+		}
+		try {
+			boolean localSource = M3AzureStorageUtils.isLocal(source.getConnectionString());
+			boolean localTarget = M3AzureStorageUtils.isLocal(target.getConnectionString());
+			if(localSource && localTarget) {
+				return localTransfer(source, target, move);
+			}
+			CopyResult retVal;
+			if(localSource) {
+				retVal = new CopyResult(source, target, CopyMethod.STREAM, streamFromLocal(localPath(source), blockBlob(target), target));
+			}
+			else if(localTarget) {
+				retVal = new CopyResult(source, target, CopyMethod.STREAM, streamToLocal(blockBlob(source), localPath(target)));
+			}
+			else {
+				retVal = azureCopy(source, target);
+			}
+			if(move) {
+				M3AzureStorageUtils.delete(source.getConnectionString(), source.getContainerName(), source.getFilePath());
+			}
+			return retVal;
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+			LOGGER.error("Exception occurred while copy file on azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new AzureException(ex);
+		}
+	}
+
+	private static CopyResult localTransfer(BlobLocation source, BlobLocation target, boolean move) throws IOException {
+		Path sourcePath = localPath(source);
+		Path targetPath = localPath(target);
+		Path sourceSidecar = Paths.get(sourcePath + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX);
+		Path targetSidecar = Paths.get(targetPath + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX);
+		Files.createDirectories(targetPath.getParent());
+		long size = Files.size(sourcePath);
+		if(move) {
+			Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+		}
+		else {
+			Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+		}
+		if(Files.exists(sourceSidecar)) {
+			if(move) {
+				Files.move(sourceSidecar, targetSidecar, StandardCopyOption.REPLACE_EXISTING);
+			}
+			else {
+				Files.copy(sourceSidecar, targetSidecar, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		else {
+			Files.deleteIfExists(targetSidecar);
+		}
+		return new CopyResult(source, target, CopyMethod.LOCAL, size);
+	}
+
+	/**
+	 * Server-side copy, cross account source is passed by read SAS. Falls back to streaming when the service can not read the source.
+	 */
+	private static CopyResult azureCopy(BlobLocation source, BlobLocation target) throws InvalidKeyException, URISyntaxException, StorageException, IOException, InterruptedException {
+		CloudBlockBlob sourceBlob = blockBlob(source);
+		CloudBlockBlob targetBlob = blockBlob(target);
+		boolean sameAccount = sourceBlob.getServiceClient().getEndpoint().equals(targetBlob.getServiceClient().getEndpoint());
+		try {
+			String copyId;
+			if(sameAccount) {
+				copyId = targetBlob.startCopy(sourceBlob);
+			}
+			else {
+				String sourceURL = SasSigner.forConnectionString(source.getConnectionString()).blobURL(source.getContainerName(), source.getFilePath(),
+						new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ), SOURCE_SAS_EXPIRY_MILLIS));
+				copyId = targetBlob.startCopy(new URI(sourceURL));
+			}
+			CopyState copyState = awaitCopy(targetBlob, copyId);
+			if(CopyStatus.SUCCESS == copyState.getStatus()) {
+				return new CopyResult(source, target, CopyMethod.SERVER, null != copyState.getBytesCopied() ? copyState.getBytesCopied() : -1);
+			}
+			if(sameAccount) {
+				throw new IOException("Copy of " + source + " " + copyState.getStatus() + ": " + copyState.getStatusDescription());
+			}
+			LOGGER.warn("Server-side copy of {} {}: {}, falling back to streaming", source, copyState.getStatus(), copyState.getStatusDescription());
+		}
+		catch(IllegalArgumentException | StorageException ex) {
+			if(sameAccount) {
+				throw ex;
+			}
+			LOGGER.warn("Server-side copy of {} not possible, falling back to streaming: {}", source, ex.getMessage());
+		}
+		return new CopyResult(source, target, CopyMethod.STREAM, streamBlocks(sourceBlob, targetBlob));
+	}
+
+	/**
+	 * This method polls copy status with growing interval, copy exceeding timeout is aborted
+	 */
+	private static CopyState awaitCopy(CloudBlockBlob targetBlob, String copyId) throws StorageException, InterruptedException, IOException {
+		long deadline = System.currentTimeMillis() + COPY_TIMEOUT_MILLIS;
+		long interval = POLL_INITIAL_MILLIS;
+		CopyState copyState = targetBlob.getCopyState();
+		while(null != copyState && CopyStatus.PENDING == copyState.getStatus()) {
+			if(System.currentTimeMillis() > deadline) {
+				targetBlob.abortCopy(copyId);
+				throw new IOException("Copy " + copyId + " into " + targetBlob.getName() + " timed out and was aborted");
+			}
+			TimeUnit.MILLISECONDS.sleep(interval);
+			interval = Math.min(interval * 2, POLL_MAX_MILLIS);
+			targetBlob.downloadAttributes();
+			copyState = targetBlob.getCopyState();
+			LOGGER.debug("Copy {} into {}: {}/{} bytes", copyId, targetBlob.getName(), null != copyState ? copyState.getBytesCopied() : null, null != copyState ? copyState.getTotalBytes() : null);
+		}
+		if(null == copyState) {
+			targetBlob.downloadAttributes();
+			copyState = targetBlob.getCopyState();
+		}
+		return copyState;
+	}
+
+	/**
+	 * Block-wise streaming between accounts, one block in heap at a time. Properties and metadata are committed with the block list.
+	 */
+	private static long streamBlocks(CloudBlockBlob sourceBlob, CloudBlockBlob targetBlob) throws StorageException, IOException {
+		sourceBlob.downloadAttributes();
+		copyProperties(sourceBlob.getProperties(), targetBlob.getProperties());
+		targetBlob.setMetadata(new HashMap<>(sourceBlob.getMetadata()));
+		long length = sourceBlob.getProperties().getLength();
+		byte[] buffer = new byte[(int) Math.min(BLOCK_SIZE, Math.max(length, 1))];
+		List<BlockEntry> blocks = new ArrayList<>();
+		for(long offset = 0; offset < length; offset += BLOCK_SIZE) {
+			int size = (int) Math.min(BLOCK_SIZE, length - offset);
+			int read = sourceBlob.downloadRangeToByteArray(offset, (long) size, buffer, 0);
+			String blockId = Base64.getEncoder().encodeToString(String.format("%010d", blocks.size()).getBytes(StandardCharsets.UTF_8));
+			targetBlob.uploadBlock(blockId, new ByteArrayInputStream(buffer, 0, read), read);
+			blocks.add(new BlockEntry(blockId));
+		}
+		targetBlob.commitBlockList(blocks);
+		return length;
+	}
+
+	private static void copyProperties(BlobProperties source, BlobProperties target) {
+		target.setContentType(source.getContentType());
+		target.setContentEncoding(source.getContentEncoding());
+		target.setContentLanguage(source.getContentLanguage());
+		target.setContentDisposition(source.getContentDisposition());
+		target.setCacheControl(source.getCacheControl());
+		target.setContentMD5(source.getContentMD5());
+	}
+
+	/**
+	 * LOCAL backend keeps content uncompressed, content compressed by compression stage is decompressed while streaming
+	 */
+	private static long streamToLocal(CloudBlockBlob sourceBlob, Path targetPath) throws StorageException, IOException {
+		sourceBlob.downloadAttributes();
+		Map<String, String> metadata = new HashMap<>(sourceBlob.getMetadata());
+		Codec codec = BlobCompression.originalLength(metadata) < 0 ? Codec.NONE : Codec.fromContentEncoding(sourceBlob.getProperties().getContentEncoding());
+		metadata.remove(BlobCompression.ORIGINAL_LENGTH_METADATA);
+		// CRC of stored content does not describe the local copy
+		metadata.remove(BlobIntegrity.CRC64_METADATA);
+		Files.createDirectories(targetPath.getParent());
+		try(InputStream inputStream = codec.decompress(sourceBlob.openInputStream())) {
+			Files.copy(inputStream, targetPath, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Path sidecar = Paths.get(targetPath + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX);
+		if(metadata.isEmpty()) {
+			Files.deleteIfExists(sidecar);
+		}
+		else {
+			M3AzureStorageUtils.writeLocalMetadata(targetPath.toString(), metadata);
+		}
+		return Files.size(targetPath);
+	}
+
+	/**
+	 * Local file is uploaded block by block through BlobIntegrity, which computes its checksums, compressed into a
+	 * temporary file first if codec is registered for target
+	 */
+	private static long streamFromLocal(Path sourcePath, CloudBlockBlob targetBlob, BlobLocation target) throws StorageException, IOException {
+		File sourceFile = sourcePath.toFile();
+		targetBlob.setMetadata(new HashMap<>(M3AzureStorageUtils.readLocalMetadata(sourceFile.getPath())));
+		String contentType = BlobCompression.contentType(target.getFilePath());
+		if(null != contentType) {
+			targetBlob.getProperties().setContentType(contentType);
+		}
+		Codec codec = BlobCompression.codecFor(target.getContainerName(), target.getFilePath());
+		if(Codec.NONE == codec) {
+			BlobIntegrity.upload(targetBlob, sourceFile);
+		}
+		else {
+			targetBlob.getProperties().setContentEncoding(codec.getContentEncoding());
+			targetBlob.getMetadata().put(BlobCompression.ORIGINAL_LENGTH_METADATA, String.valueOf(sourceFile.length()));
+			Path compressed = Files.createTempFile("blob-copy", ".compressed");
+			try {
+				try(OutputStream outputStream = codec.compress(Files.newOutputStream(compressed))) {
+					Files.copy(sourcePath, outputStream);
+				}
+				BlobIntegrity.upload(targetBlob, compressed.toFile());
+			}
+			finally {
+				Files.deleteIfExists(compressed);
+			}
+		}
+		return sourceFile.length();
+	}
+
+	private static CloudBlockBlob blockBlob(BlobLocation location) throws InvalidKeyException, URISyntaxException, StorageException {
+		return M3AzureStorageUtils.getBlobConatiner(location.getConnectionString(), location.getContainerName()).getBlockBlobReference(location.getFilePath());
+	}
+
+	private static Path localPath(BlobLocation location) {
+		return Paths.get(M3AzureStorageUtils.getLocalPath(location.getConnectionString()), location.getContainerName(), location.getFilePath());
+	}
+
+	/**
+	 * POJO Class to represent a file of a container
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class BlobLocation {
+		private String connectionString;
+		private String containerName;
+		private String filePath;
+
+		public BlobLocation() {
+		}
+		public BlobLocation(String connectionString, String containerName, String filePath) {
+			this.connectionString = connectionString;
+			this.containerName = containerName;
+			this.filePath = filePath;
+		}
+
+		public String getConnectionString() {
+			return connectionString;
+		}
+		public void setConnectionString(String connectionString) {
+			this.connectionString = connectionString;
+		}
+		public String getContainerName() {
+			return containerName;
+		}
+		public void setContainerName(String containerName) {
+			this.containerName = containerName;
+		}
+		public String getFilePath() {
+			return filePath;
+		}
+		public void setFilePath(String filePath) {
+			this.filePath = filePath;
+		}
+
+		@Override
+		public String toString() {
+			return containerName + "/" + filePath;
+		}
+	}
+
+	/**
+	 * Class to represent the result of copy/move
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class CopyResult {
+		private final BlobLocation source;
+		private final BlobLocation target;
+		private final CopyMethod method;
+		private final long bytes;
+
+		public CopyResult(BlobLocation source, BlobLocation target, CopyMethod method, long bytes) {
+			this.source = source;
+			this.target = target;
+			this.method = method;
+			this.bytes = bytes;
+		}
+		public BlobLocation getSource() {
+			return source;
+		}
+		public BlobLocation getTarget() {
+			return target;
+		}
+		public CopyMethod getMethod() {
+			return method;
+		}
+		/**
+		 * @return Number of bytes copied, bytes passed through the application only for STREAM method
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+	}
+}
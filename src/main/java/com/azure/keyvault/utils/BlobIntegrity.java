@@ -0,0 +1,607 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+
+/**
+ * Verified block blob transfers.
+ *
+ * Upload: content is cut into blocks which are checksummed and uploaded in parallel, every block is sent with its
+ * Content-MD5 so the service rejects a block corrupted in transit. CRC-64 of every block is computed on the worker
+ * thread that uploads it, while the block is in cache, and the whole-blob CRC-64 is combined from them without
+ * reading the content again. It is committed as contentcrc64 metadata together with the whole-blob Content-MD5,
+ * which is computed concurrently with the block uploads. Files are read block by block, so only the blocks being
+ * uploaded are held in memory, MD5 is updated by the reading thread.
+ *
+ * Download: blob is read in parallel block sized ranges, every range is requested with its MD5 (service computes
+ * range MD5 up to 4 MB) and a range failing the check is fetched again on its own, the rest of the blob is kept.
+ * CRC-64 of every range is computed by the task that fetched it and combined, whole content is verified against
+ * contentcrc64 without another pass, or against Content-MD5 for blobs written without it. All ranges are read with
+ * If-Match on the ETag of the first one, so a blob overwritten during the download fails the download instead of
+ * mixing versions. Streamed downloads are verified by VerifyingInputStream once the end of the content is read.
+ *
+ * Callers governing request rate pass a permit hook, it is run before every request beyond the first one of the
+ * transfer (block uploads, further ranges and refetches), the first request is covered by the permit of the caller.
+ * @author Sandeep Kumar
+ *
+ */
+public final class BlobIntegrity {
+
+	private static final Logger LOGGER = LogManager.getLogger(BlobIntegrity.class);
+
+	public static final String CRC64_METADATA = "contentcrc64";
+
+	/**
+	 * Largest range for which the service returns range MD5
+	 */
+	private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+	private static final int MIN_BLOCK_SIZE = 64 * 1024;
+	/**
+	 * First range also returns length and ETag of the blob, kept small so that small blobs need no large buffer
+	 */
+	private static final int FIRST_RANGE_SIZE = 256 * 1024;
+
+	private static final Runnable NO_PERMIT = () -> { };
+
+	private static final int TRANSFER_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+	private static volatile int blockSize = MAX_BLOCK_SIZE;
+	private static volatile int maxRefetches = 3;
+
+	private static final ExecutorService TRANSFER_SERVICE = Executors.newFixedThreadPool(TRANSFER_THREADS, r -> {
+		Thread thread = new Thread(r, "blob-integrity");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private BlobIntegrity() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @param blockSize Size of uploaded blocks and downloaded ranges, between 64 KB and 4 MB
+	 */
+	public static void setBlockSize(int blockSize) {
+		BlobIntegrity.blockSize = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, blockSize));
+	}
+
+	/**
+	 * @param maxRefetches Number of times a corrupted or failed range is fetched again before download fails
+	 */
+	public static void setMaxRefetches(int maxRefetches) {
+		BlobIntegrity.maxRefetches = Math.max(0, maxRefetches);
+	}
+
+	/**
+	 * This method uploads content into the block blob with block and whole-blob checksums.
+	 * Metadata and properties already set on the blob reference are committed together with the content.
+	 * @param blob Target blob
+	 * @param data Content
+	 * @throws StorageException In case of StorageException
+	 * @throws IOException In case of IOException
+	 */
+	public static void upload(CloudBlockBlob blob, byte[] data) throws StorageException, IOException {
+		upload(blob, data, NO_PERMIT);
+	}
+
+	/**
+	 * This method uploads content into the block blob with block and whole-blob checksums.
+	 * Metadata and properties already set on the blob reference are committed together with the content.
+	 * @param blob Target blob
+	 * @param data Content
+	 * @param permit Run before every block upload of content larger than a block, e.g. to obtain rate governor permit
+	 * @throws StorageException In case of StorageException
+	 * @throws IOException In case of IOException
+	 */
+	public static void upload(CloudBlockBlob blob, byte[] data, Runnable permit) throws StorageException, IOException {
+		int size = blockSize;
+		BlobRequestOptions options = new BlobRequestOptions();
+		options.setUseTransactionalContentMD5(true);
+		options.setStoreBlobContentMD5(false);
+		if(data.length <= size) {
+			blob.getProperties().setContentMD5(Base64.getEncoder().encodeToString(checksum(data, blob.getMetadata())));
+			blob.uploadFromByteArray(data, 0, data.length, null, options, null);
+			return;
+		}
+		CompletableFuture<byte[]> md5 = CompletableFuture.supplyAsync(() -> ContentDigest.newDigest("MD5").digest(data), TRANSFER_SERVICE);
+		List<BlockEntry> blocks = new ArrayList<>();
+		List<CompletableFuture<Long>> crcs = new ArrayList<>();
+		for(int offset = 0; offset < data.length; offset += size) {
+			int from = offset;
+			int length = Math.min(size, data.length - offset);
+			String blockId = blockId(blocks.size());
+			blocks.add(new BlockEntry(blockId));
+			crcs.add(CompletableFuture.supplyAsync(() -> {
+				long crc = Crc64.update(0, data, from, length);
+				permit.run();
+				try {
+					blob.uploadBlock(blockId, new ByteArrayInputStream(data, from, length), length, null, options, null);
+				} catch(StorageException | IOException ex) {
+					throw new CompletionException(ex);
+				}
+				return crc;
+			}, TRANSFER_SERVICE));
+		}
+		long crc = 0;
+		for(int i = 0; i < crcs.size(); i++) {
+			long length = Math.min(size, data.length - (long) i * size);
+			crc = Crc64.combine(crc, join(crcs.get(i), crcs), length);
+		}
+		blob.getProperties().setContentMD5(Base64.getEncoder().encodeToString(join(md5, crcs)));
+		blob.getMetadata().put(CRC64_METADATA, Crc64.toHex(crc));
+		blob.commitBlockList(blocks, null, options, null);
+	}
+
+	/**
+	 * This method uploads file into the block blob with block and whole-blob checksums, reading it block by block.
+	 * Metadata and properties already set on the blob reference are committed together with the content.
+	 * @param blob Target blob
+	 * @param file Content
+	 * @throws StorageException In case of StorageException
+	 * @throws IOException In case of IOException
+	 */
+	public static void upload(CloudBlockBlob blob, File file) throws StorageException, IOException {
+		upload(blob, file, NO_PERMIT);
+	}
+
+	/**
+	 * This method uploads file into the block blob with block and whole-blob checksums, reading it block by block.
+	 * At most two blocks per transfer thread are held in memory.
+	 * Metadata and properties already set on the blob reference are committed together with the content.
+	 * @param blob Target blob
+	 * @param file Content
+	 * @param permit Run before every block upload of content larger than a block, e.g. to obtain rate governor permit
+	 * @throws StorageException In case of StorageException
+	 * @throws IOException In case of IOException
+	 */
+	public static void upload(CloudBlockBlob blob, File file, Runnable permit) throws StorageException, IOException {
+		int size = blockSize;
+		if(file.length() <= size) {
+			upload(blob, Files.readAllBytes(file.toPath()), permit);
+			return;
+		}
+		BlobRequestOptions options = new BlobRequestOptions();
+		options.setUseTransactionalContentMD5(true);
+		options.setStoreBlobContentMD5(false);
+		MessageDigest md5 = ContentDigest.newDigest("MD5");
+		Semaphore buffers = new Semaphore(2 * TRANSFER_THREADS);
+		List<BlockEntry> blocks = new ArrayList<>();
+		List<CompletableFuture<Long>> crcs = new ArrayList<>();
+		AtomicBoolean failed = new AtomicBoolean();
+		long total = 0;
+		try(InputStream inputStream = new FileInputStream(file)) {
+			while(!failed.get()) {
+				byte[] block = new byte[size];
+				int length = readBlock(inputStream, block);
+				if(length == 0) {
+					break;
+				}
+				md5.update(block, 0, length);
+				total += length;
+				String blockId = blockId(blocks.size());
+				blocks.add(new BlockEntry(blockId));
+				try {
+					buffers.acquire();
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while uploading " + blob.getName());
+				}
+				CompletableFuture<Long> task = CompletableFuture.supplyAsync(() -> {
+					try {
+						long crc = Crc64.update(0, block, 0, length);
+						permit.run();
+						blob.uploadBlock(blockId, new ByteArrayInputStream(block, 0, length), length, null, options, null);
+						return crc;
+					} catch(StorageException | IOException ex) {
+						throw new CompletionException(ex);
+					} finally {
+						buffers.release();
+					}
+				}, TRANSFER_SERVICE);
+				task.whenComplete((crc, failure) -> {
+					if(null != failure) {
+						failed.set(true);
+					}
+				});
+				crcs.add(task);
+			}
+		} catch(IOException ex) {
+			awaitAll(crcs);
+			throw ex;
+		}
+		long crc = 0;
+		for(int i = 0; i < crcs.size(); i++) {
+			crc = Crc64.combine(crc, join(crcs.get(i), crcs), Math.min(size, total - (long) i * size));
+		}
+		blob.getProperties().setContentMD5(Base64.getEncoder().encodeToString(md5.digest()));
+		blob.getMetadata().put(CRC64_METADATA, Crc64.toHex(crc));
+		blob.commitBlockList(blocks, null, options, null);
+	}
+
+	/**
+	 * This method downloads and verifies content of the block blob, properties and metadata of the blob reference
+	 * are populated by the download
+	 * @param blob Source blob
+	 * @return Content as stored, i.e. still compressed for compressed blobs
+	 * @throws StorageException In case of StorageException, HTTP 404 if blob does not exist
+	 * @throws IOException In case content does not match its checksum after refetches
+	 */
+	public static byte[] download(CloudBlockBlob blob) throws StorageException, IOException {
+		return download(blob, NO_PERMIT);
+	}
+
+	/**
+	 * This method downloads and verifies content of the block blob, properties and metadata of the blob reference
+	 * are populated by the download
+	 * @param blob Source blob
+	 * @param permit Run before every range request after the first one, e.g. to obtain rate governor permit
+	 * @return Content as stored, i.e. still compressed for compressed blobs
+	 * @throws StorageException In case of StorageException, HTTP 404 if blob does not exist
+	 * @throws IOException In case content does not match its checksum after refetches
+	 */
+	public static byte[] download(CloudBlockBlob blob, Runnable permit) throws StorageException, IOException {
+		int size = blockSize;
+		BlobRequestOptions options = new BlobRequestOptions();
+		options.setUseTransactionalContentMD5(true);
+		byte[] first = new byte[Math.min(size, FIRST_RANGE_SIZE)];
+		int read;
+		try {
+			read = fetch(blob, 0, first.length, first, null, options, true, permit);
+		} catch(StorageException ex) {
+			// range of an empty blob is not satisfiable
+			if(ex.getHttpStatusCode() != 416) {
+				throw ex;
+			}
+			blob.downloadAttributes();
+			if(blob.getProperties().getLength() != 0) {
+				throw ex;
+			}
+			byte[] empty = new byte[0];
+			verify(blob, empty);
+			return empty;
+		}
+		long length = blob.getProperties().getLength();
+		if(length < read) {
+			blob.downloadAttributes();
+			length = blob.getProperties().getLength();
+		}
+		if(length > Integer.MAX_VALUE - 8) {
+			throw new IOException("Blob " + blob.getName() + " of " + length + " bytes does not fit into byte array");
+		}
+		byte[] data = new byte[(int) length];
+		int firstLength = Math.min(read, data.length);
+		System.arraycopy(first, 0, data, 0, firstLength);
+		boolean crcStored = null != blob.getMetadata() && null != blob.getMetadata().get(CRC64_METADATA);
+		List<CompletableFuture<Long>> ranges = new ArrayList<>();
+		if(length > read) {
+			AccessCondition ifMatch = AccessCondition.generateIfMatchCondition(blob.getProperties().getEtag());
+			for(long offset = read; offset < length; offset += size) {
+				int from = (int) offset;
+				int rangeLength = (int) Math.min(size, length - offset);
+				ranges.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						fetch(blob, from, rangeLength, data, ifMatch, options, false, permit);
+					} catch(StorageException | IOException ex) {
+						throw new CompletionException(ex);
+					}
+					return crcStored ? Crc64.update(0, data, from, rangeLength) : 0L;
+				}, TRANSFER_SERVICE));
+			}
+		}
+		long crc = crcStored ? Crc64.update(0, data, 0, firstLength) : 0L;
+		for(int i = 0; i < ranges.size(); i++) {
+			crc = Crc64.combine(crc, join(ranges.get(i), ranges), Math.min(size, length - read - (long) i * size));
+		}
+		long combined = crc;
+		verify(blob, data, () -> combined);
+		return data;
+	}
+
+	/**
+	 * This method verifies downloaded content against contentcrc64 metadata, or Content-MD5 property if the blob has
+	 * no CRC, blob without both is accepted as is. CRC of large content is computed in parallel blocks.
+	 * @param blob Blob with populated properties and metadata
+	 * @param data Content as stored
+	 * @throws IOException In case content does not match
+	 */
+	public static void verify(CloudBlob blob, byte[] data) throws IOException {
+		verify(blob, data, () -> crc64(data));
+	}
+
+	private static void verify(CloudBlob blob, byte[] data, LongSupplier crc) throws IOException {
+		String contentMd5 = blob.getProperties().getContentMD5();
+		verify(blob.getName(), blob.getMetadata(), null != contentMd5 ? Base64.getDecoder().decode(contentMd5) : null, data, crc);
+	}
+
+	/**
+	 * This method verifies downloaded content against contentcrc64 metadata, or Content-MD5 if there is no CRC
+	 * @param name Blob name used in the message
+	 * @param metadata Blob metadata, may be null
+	 * @param contentMd5 Content-MD5 of the blob, may be null
+	 * @param data Content as stored
+	 * @throws IOException In case content does not match
+	 */
+	public static void verify(String name, Map<String, String> metadata, byte[] contentMd5, byte[] data) throws IOException {
+		verify(name, metadata, contentMd5, data, () -> crc64(data));
+	}
+
+	/**
+	 * @param crc CRC-64 of data, only evaluated if metadata has contentcrc64
+	 */
+	private static void verify(String name, Map<String, String> metadata, byte[] contentMd5, byte[] data, LongSupplier crc) throws IOException {
+		String expectedCrc = null != metadata ? metadata.get(CRC64_METADATA) : null;
+		if(null != expectedCrc) {
+			String actualCrc = Crc64.toHex(crc.getAsLong());
+			if(!expectedCrc.equalsIgnoreCase(actualCrc)) {
+				throw new IntegrityException(name, "CRC-64 " + expectedCrc, actualCrc);
+			}
+			return;
+		}
+		if(null != contentMd5) {
+			byte[] actualMd5 = ContentDigest.newDigest("MD5").digest(data);
+			if(!MessageDigest.isEqual(contentMd5, actualMd5)) {
+				throw new IntegrityException(name, "Content-MD5 " + Base64.getEncoder().encodeToString(contentMd5),
+						Base64.getEncoder().encodeToString(actualMd5));
+			}
+		}
+	}
+
+	/**
+	 * This method computes MD5 and CRC-64 of the content, for small content in one pass on the calling thread,
+	 * for large content CRC-64 in parallel blocks while MD5 is computed concurrently
+	 * @param data Content
+	 * @param metadata Metadata receiving contentcrc64
+	 * @return MD5 to be sent as Content-MD5
+	 */
+	public static byte[] checksum(byte[] data, Map<String, String> metadata) {
+		if(data.length <= blockSize) {
+			MessageDigest md5 = ContentDigest.newDigest("MD5");
+			metadata.put(CRC64_METADATA, Crc64.toHex(checksum(md5, data, 0, data.length)));
+			return md5.digest();
+		}
+		CompletableFuture<byte[]> md5 = CompletableFuture.supplyAsync(() -> ContentDigest.newDigest("MD5").digest(data), TRANSFER_SERVICE);
+		metadata.put(CRC64_METADATA, Crc64.toHex(crc64(data)));
+		return md5.join();
+	}
+
+	/**
+	 * This method computes CRC-64 of the content, blocks are checksummed in parallel and combined
+	 * @param data Content
+	 * @return CRC-64
+	 */
+	public static long crc64(byte[] data) {
+		int size = blockSize;
+		if(data.length <= size) {
+			return Crc64.update(0, data, 0, data.length);
+		}
+		List<CompletableFuture<Long>> crcs = new ArrayList<>();
+		for(int offset = 0; offset < data.length; offset += size) {
+			int from = offset;
+			int length = Math.min(size, data.length - offset);
+			crcs.add(CompletableFuture.supplyAsync(() -> Crc64.update(0, data, from, length), TRANSFER_SERVICE));
+		}
+		long crc = 0;
+		for(int i = 0; i < crcs.size(); i++) {
+			crc = Crc64.combine(crc, crcs.get(i).join(), Math.min(size, data.length - (long) i * size));
+		}
+		return crc;
+	}
+
+	/**
+	 * This method fetches the range into the buffer at the same offset, refetching it when service MD5 check or
+	 * connection fails. Missing blob, changed ETag and unsatisfiable range are not refetched.
+	 */
+	private static int fetch(CloudBlockBlob blob, long offset, int length, byte[] buffer, AccessCondition accessCondition,
+			BlobRequestOptions options, boolean first, Runnable permit) throws StorageException, IOException {
+		int bufferOffset = first ? 0 : (int) offset;
+		for(int attempt = 0; ; attempt++) {
+			if(!first || attempt > 0) {
+				permit.run();
+			}
+			try {
+				int read = blob.downloadRangeToByteArray(offset, (long) length, buffer, bufferOffset, accessCondition, options, null);
+				if(first || read == length) {
+					return read;
+				}
+				if(attempt >= maxRefetches) {
+					throw new IOException("Range " + offset + " of blob " + blob.getName() + " returned " + read + " of " + length + " bytes");
+				}
+			} catch(StorageException ex) {
+				int status = ex.getHttpStatusCode();
+				if(attempt >= maxRefetches || status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_PRECON_FAILED
+						|| status == HttpURLConnection.HTTP_FORBIDDEN || status == 416) {
+					throw ex;
+				}
+				LOGGER.warn("Range {} of blob {} failed ({}), fetching again", offset, blob.getName(), ex.getErrorCode());
+			}
+		}
+	}
+
+	/**
+	 * This method reads until the block is full or the stream ends
+	 * @return Number of bytes read, 0 at end of stream
+	 */
+	private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+		int retVal = 0;
+		int read;
+		while(retVal < block.length && (read = inputStream.read(block, retVal, block.length - retVal)) != -1) {
+			retVal += read;
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method computes CRC-64 and updates MD5 in one pass, chunk by chunk so that both read the chunk from cache
+	 */
+	private static long checksum(MessageDigest md5, byte[] data, int offset, int length) {
+		long crc = 0;
+		int end = offset + length;
+		for(int from = offset; from < end; from += MIN_BLOCK_SIZE) {
+			int chunk = Math.min(MIN_BLOCK_SIZE, end - from);
+			md5.update(data, from, chunk);
+			crc = Crc64.update(crc, data, from, chunk);
+		}
+		return crc;
+	}
+
+	/**
+	 * This method waits for the task, on failure waits for the other tasks too so that no worker still touches the
+	 * blob, and rethrows the failure as thrown by the task
+	 */
+	private static <T> T join(CompletableFuture<T> task, List<? extends CompletableFuture<?>> tasks) throws StorageException, IOException {
+		try {
+			return task.join();
+		} catch(CompletionException ex) {
+			awaitAll(tasks);
+			Throwable cause = null != ex.getCause() ? ex.getCause() : ex;
+			if(cause instanceof StorageException) {
+				throw (StorageException) cause;
+			}
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * This method waits until all tasks are done, regardless of their outcome
+	 */
+	private static void awaitAll(List<? extends CompletableFuture<?>> tasks) {
+		for(CompletableFuture<?> task : tasks) {
+			task.handle((value, failure) -> null).join();
+		}
+	}
+
+	private static String blockId(int index) {
+		return Base64.getEncoder().encodeToString(String.format("block-%08d", index).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Input stream of stored content (i.e. still compressed for compressed blobs) which computes its CRC-64 while it
+	 * is read and verifies it against contentcrc64 once the end is reached, content without CRC is passed as is.
+	 * Content read before a mismatch is detected has already been handed out, the caller fails afterwards.
+	 */
+	public static class VerifyingInputStream extends FilterInputStream {
+		private final String name;
+		private final String expectedCrc;
+		private final byte[] single = new byte[1];
+		private long crc;
+		private boolean verified;
+
+		/**
+		 * @param name Blob name used in the message
+		 * @param metadata Blob metadata, may be null
+		 * @param inputStream Stored content
+		 */
+		public VerifyingInputStream(String name, Map<String, String> metadata, InputStream inputStream) {
+			super(inputStream);
+			this.name = name;
+			this.expectedCrc = null != metadata ? metadata.get(CRC64_METADATA) : null;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = read(single, 0, 1);
+			return read < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = in.read(buffer, offset, length);
+			if(read < 0) {
+				verifyEnd();
+			}
+			else if(null != expectedCrc) {
+				crc = Crc64.update(crc, buffer, offset, read);
+			}
+			return read;
+		}
+
+		/**
+		 * Skipped bytes are read, so that they are part of the CRC
+		 */
+		@Override
+		public long skip(long count) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(MIN_BLOCK_SIZE, Math.max(1, count))];
+			long retVal = 0;
+			int read;
+			while(retVal < count && (read = read(buffer, 0, (int) Math.min(buffer.length, count - retVal))) > 0) {
+				retVal += read;
+			}
+			return retVal;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * This method reads the rest of the content, e.g. left after the end of compressed data, and verifies it
+		 * @throws IOException In case content does not match its CRC-64
+		 */
+		public void verifyRemaining() throws IOException {
+			byte[] buffer = new byte[MIN_BLOCK_SIZE];
+			while(read(buffer, 0, buffer.length) >= 0) {
+				// read until verified at end of content
+			}
+		}
+
+		private void verifyEnd() throws IOException {
+			if(verified || null == expectedCrc) {
+				return;
+			}
+			verified = true;
+			String actualCrc = Crc64.toHex(crc);
+			if(!expectedCrc.equalsIgnoreCase(actualCrc)) {
+				throw new IntegrityException(name, "CRC-64 " + expectedCrc, actualCrc);
+			}
+		}
+	}
+
+	/**
+	 * Content of a blob does not match its stored checksum
+	 */
+	public static class IntegrityException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public IntegrityException(String blobName, String expected, String actual) {
+			super("Content of blob " + blobName + " does not match " + expected + ", actual " + actual);
+		}
+	}
+}
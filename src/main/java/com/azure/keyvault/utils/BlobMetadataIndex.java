@@ -0,0 +1,123 @@
+package com.azure.keyvault.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.M3AzureStorageUtils.BlobDetails;
+
+/**
+ * In-memory secondary index of blob metadata, answers "all blobs where metadata X=Y" without network calls.
+ *
+ * Built from a single metadata listing (M3AzureStorageUtils.listFilesWithMetadata) and kept up to date by
+ * put/remove when blobs or metadata are changed by the application. Metadata keys are case-insensitive
+ * as in azure, values are case-sensitive.
+ * @author Sandeep Kumar
+ *
+ */
+public class BlobMetadataIndex {
+
+	/**
+	 * metadata key -> metadata value -> file paths
+	 */
+	private final Map<String, Map<String, Set<String>>> index = new ConcurrentHashMap<>();
+
+	/**
+	 * file path -> indexed metadata, used to unindex old values
+	 */
+	private final Map<String, Map<String, String>> indexed = new ConcurrentHashMap<>();
+
+	/**
+	 * This method builds index for all files under prefix by a single paged listing
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param prefix Prefix of file paths
+	 * @return BlobMetadataIndex object
+	 * @throws AzureException In case of any exception
+	 */
+	public static BlobMetadataIndex build(String connectionString, String containerName, String prefix) throws AzureException {
+		BlobMetadataIndex retVal = new BlobMetadataIndex();
+		retVal.putAll(M3AzureStorageUtils.listFilesWithMetadata(connectionString, containerName, prefix));
+		return retVal;
+	}
+
+	public void putAll(Collection<BlobDetails> blobs) {
+		blobs.forEach(blob -> put(blob.getFilePath(), blob.getMetadata()));
+	}
+
+	/**
+	 * This method indexes (or re-indexes) metadata of file
+	 * @param filePath Path of file
+	 * @param metadata Metadata of file
+	 */
+	public synchronized void put(String filePath, Map<String, String> metadata) {
+		remove(filePath);
+		if(null == metadata || metadata.isEmpty()) {
+			return;
+		}
+		Map<String, String> normalized = new ConcurrentHashMap<>();
+		metadata.forEach((key, value) -> {
+			if(null != value) {
+				String normalizedKey = key.toLowerCase(Locale.ROOT);
+				normalized.put(normalizedKey, value);
+				index.computeIfAbsent(normalizedKey, k -> new ConcurrentHashMap<>())
+					.computeIfAbsent(value, v -> ConcurrentHashMap.newKeySet())
+					.add(filePath);
+			}
+		});
+		indexed.put(filePath, normalized);
+	}
+
+	/**
+	 * This method removes file from index
+	 * @param filePath Path of file
+	 */
+	public synchronized void remove(String filePath) {
+		Map<String, String> metadata = indexed.remove(filePath);
+		if(null == metadata) {
+			return;
+		}
+		metadata.forEach((key, value) -> {
+			Map<String, Set<String>> values = index.get(key);
+			Set<String> files = values.get(value);
+			files.remove(filePath);
+			if(files.isEmpty()) {
+				values.remove(value);
+			}
+			if(values.isEmpty()) {
+				index.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * This method returns all files having the metadata value
+	 * @param key Metadata key
+	 * @param value Metadata value
+	 * @return Unmodifiable snapshot of file paths
+	 */
+	public Set<String> find(String key, String value) {
+		Map<String, Set<String>> values = index.get(key.toLowerCase(Locale.ROOT));
+		Set<String> files = null != values ? values.get(value) : null;
+		return null != files ? Collections.unmodifiableSet(new HashSet<>(files)) : Collections.emptySet();
+	}
+
+	/**
+	 * This method returns indexed metadata of file
+	 * @param filePath Path of file
+	 * @return Metadata with lower case keys or empty map
+	 */
+	public Map<String, String> metadataOf(String filePath) {
+		Map<String, String> metadata = indexed.get(filePath);
+		return null != metadata ? Collections.unmodifiableMap(metadata) : Collections.emptyMap();
+	}
+
+	public int size() {
+		return indexed.size();
+	}
+}
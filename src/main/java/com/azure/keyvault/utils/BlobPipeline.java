@@ -0,0 +1,671 @@
+package com.azure.keyvault.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.azure.keyvault.utils.BlobCompression.Codec;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultContinuationType;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlobDirectory;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+
+/**
+ * Pipelined list -> download -> process of all blobs under a prefix.
+ *
+ * Listing pages are streamed by one thread, downloads are opened on downloadConcurrency threads (properties and
+ * metadata are fetched) and the content of each blob is streamed to the processor on processConcurrency threads
+ * while it is read, so listing, network and CPU work overlap and no blob is buffered as a whole. Stages are connected
+ * by bounded queues, a slow stage blocks the previous one (backpressure) and at most readAhead opened blobs wait
+ * for a processor.
+ *
+ * With checkpoint file, progress is saved periodically as listing marker of the oldest not settled page (a page is
+ * settled once all its blobs completed or failed), completed blobs of the pages after it and failed blobs of settled
+ * pages. A failure therefore does not hold the marker back and the checkpoint stays bounded by the pages in flight
+ * and the failures. A restarted run processes the failed blobs again first, then resumes listing from the marker and
+ * skips completed blobs. Checkpoint is deleted once a run completes without failures.
+ * @author Sandeep Kumar
+ *
+ */
+public final class BlobPipeline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlobPipeline.class.getName());
+
+	private static final String SEPARATOR = "/";
+	private static final String MARKER_PREFIX = "#marker\t";
+	private static final String RETRY_PREFIX = "#retry\t";
+	private static final Item END = new Item(null, null);
+
+	private BlobPipeline() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Callback receiving the content of each blob, exception marks blob failed (retried by the next run)
+	 */
+	@FunctionalInterface
+	public interface BlobProcessor {
+		void process(String filePath, InputStream content) throws Exception;
+	}
+
+	/**
+	 * This method runs the pipeline over all blobs under prefix
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param prefix Prefix of blob names (empty for all blobs)
+	 * @param processor Processor of blob content
+	 * @param options Pipeline options
+	 * @return PipelineResult with statistics
+	 * @throws AzureException In case listing fails or pipeline is interrupted
+	 */
+	public static PipelineResult run(String connectionString, String containerName, String prefix, BlobProcessor processor, PipelineOptions options) throws AzureException {
+		String blobPrefix = null != prefix ? prefix : "";
+		Checkpoint checkpoint = Checkpoint.read(options.getCheckpointFile(), options.getCheckpointIntervalMillis());
+		PipelineResult result = new PipelineResult();
+		BlockingQueue<Item> listed = new ArrayBlockingQueue<>(Math.max(1, options.getListQueueCapacity()));
+		BlockingQueue<Item> downloaded = new ArrayBlockingQueue<>(Math.max(1, options.getReadAhead()));
+		AtomicReference<Exception> fatal = new AtomicReference<>();
+		AtomicInteger activeDownloaders = new AtomicInteger(options.getDownloadConcurrency());
+		ExecutorService executor = Executors.newFixedThreadPool(1 + options.getDownloadConcurrency() + options.getProcessConcurrency());
+		try {
+			boolean local = M3AzureStorageUtils.isLocal(connectionString);
+			CloudBlobContainer container = local ? null : M3AzureStorageUtils.getBlobConatiner(connectionString, containerName);
+			String accountName = local ? null : M3AzureStorageUtils.accountName(connectionString);
+
+			executor.execute(() -> {
+				try {
+					retry(checkpoint, listed, result);
+					if(checkpoint.isListed()) {
+						LOGGER.info("Listing of {}/{} completed in previous run, only failed blobs are processed", containerName, blobPrefix);
+					}
+					else if(local) {
+						listLocal(Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName), blobPrefix, options.isRecursive(), options.getFilter(), checkpoint, listed, result);
+					}
+					else {
+						listRemote(container, accountName, blobPrefix, options.getListPageSize(), options.isRecursive(), options.getFilter(), checkpoint, listed, result);
+					}
+				} catch(Exception ex) {
+					fatal.compareAndSet(null, ex);
+				} finally {
+					putEnd(listed, options.getDownloadConcurrency());
+				}
+			});
+			for(int i = 0; i < options.getDownloadConcurrency(); i++) {
+				executor.execute(() -> {
+					try {
+						download(connectionString, containerName, container, accountName, listed, downloaded, checkpoint, result);
+					} finally {
+						if(activeDownloaders.decrementAndGet() == 0) {
+							putEnd(downloaded, options.getProcessConcurrency());
+						}
+					}
+				});
+			}
+			for(int i = 0; i < options.getProcessConcurrency(); i++) {
+				executor.execute(() -> process(processor, downloaded, checkpoint, result));
+			}
+			executor.shutdown();
+			while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.info("Pipeline of {}/{} in progress: {}", containerName, blobPrefix, result);
+			}
+			checkpoint.complete(null == fatal.get() && result.getFailed() == 0);
+			if(null != fatal.get()) {
+				throw fatal.get();
+			}
+			LOGGER.info("Pipeline of {}/{} completed: {}", containerName, blobPrefix, result);
+			return result;
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new AzureException(ex);
+		}
+		catch(Exception ex) {
+			LOGGER.error("Exception occurred while pipeline processing of azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		finally {
+			executor.shutdownNow();
+			for(Item item : downloaded) {
+				close(item);
+			}
+		}
+	}
+
+	/**
+	 * Blobs failed in previous run are processed again as their own page, before listing resumes past them
+	 */
+	private static void retry(Checkpoint checkpoint, BlockingQueue<Item> listed, PipelineResult result) throws InterruptedException {
+		if(checkpoint.retried.isEmpty()) {
+			return;
+		}
+		Page page = checkpoint.startPage(checkpoint.marker);
+		for(String name : checkpoint.retried) {
+			result.listed.incrementAndGet();
+			page.pending.incrementAndGet();
+			listed.put(new Item(name, page));
+		}
+		checkpoint.endPage(page, checkpoint.marker);
+	}
+
+	/**
+	 * Paged listing, one page in flight at a time, put blocks while downstream is full
+	 */
+	private static void listRemote(CloudBlobContainer container, String accountName, String prefix, int pageSize, boolean recursive, Predicate<String> filter,
+			Checkpoint checkpoint, BlockingQueue<Item> listed, PipelineResult result) throws StorageException, InterruptedException {
+		ResultContinuation token = null;
+		if(null != checkpoint.marker) {
+			token = new ResultContinuation();
+			token.setContinuationType(ResultContinuationType.BLOB);
+			token.setNextMarker(checkpoint.marker);
+		}
+		do {
+			RateGovernor.acquire(accountName, OperationClass.LIST);
+			Page page = checkpoint.startPage(null != token ? token.getNextMarker() : null);
+			ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(prefix, recursive, EnumSet.noneOf(BlobListingDetails.class), pageSize, token, null, null);
+			for(ListBlobItem item : segment.getResults()) {
+				// hierarchical listing also returns directories, they are not descended into
+				if(item instanceof CloudBlob && (null == filter || filter.test(((CloudBlob) item).getName()))) {
+					enqueue(((CloudBlob) item).getName(), page, checkpoint, listed, result);
+				}
+			}
+			token = segment.getHasMoreResults() ? segment.getContinuationToken() : null;
+			checkpoint.endPage(page, null != token ? token.getNextMarker() : null);
+		} while(null != token);
+	}
+
+	private static void listLocal(Path containerPath, String prefix, boolean recursive, Predicate<String> filter, Checkpoint checkpoint, BlockingQueue<Item> listed,
+			PipelineResult result) throws IOException, InterruptedException {
+		Page page = checkpoint.startPage(checkpoint.marker);
+		if(Files.isDirectory(containerPath)) {
+			try(Stream<Path> files = Files.walk(containerPath)) {
+				Iterator<Path> iterator = files.filter(Files::isRegularFile)
+						.filter(file -> !M3AzureStorageUtils.isMetadataSidecar(file.getFileName().toString())).iterator();
+				while(iterator.hasNext()) {
+					String name = containerPath.relativize(iterator.next()).toString().replace(File.separator, SEPARATOR);
+					if(name.startsWith(prefix) && (recursive || name.indexOf(SEPARATOR, prefix.length()) < 0) && (null == filter || filter.test(name))) {
+						enqueue(name, page, checkpoint, listed, result);
+					}
+				}
+			}
+		}
+		checkpoint.endPage(page, null);
+	}
+
+	/**
+	 * This method lists leading name segments under prefix with a hierarchical listing, i.e. one entry per virtual
+	 * directory (ending with /) and per blob directly under prefix, without listing the blobs of the directories
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param prefix Prefix of blob names (empty for all blobs)
+	 * @return Sorted segments, each including prefix
+	 * @throws AzureException In case listing fails
+	 */
+	public static List<String> listSegments(String connectionString, String containerName, String prefix) throws AzureException {
+		String blobPrefix = null != prefix ? prefix : "";
+		Set<String> retVal = new TreeSet<>();
+		try {
+			if(M3AzureStorageUtils.isLocal(connectionString)) {
+				Path containerPath = Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName);
+				if(Files.isDirectory(containerPath)) {
+					try(Stream<Path> files = Files.walk(containerPath)) {
+						Iterator<Path> iterator = files.filter(Files::isRegularFile)
+								.filter(file -> !M3AzureStorageUtils.isMetadataSidecar(file.getFileName().toString())).iterator();
+						while(iterator.hasNext()) {
+							String name = containerPath.relativize(iterator.next()).toString().replace(File.separator, SEPARATOR);
+							if(name.startsWith(blobPrefix)) {
+								int end = name.indexOf(SEPARATOR, blobPrefix.length());
+								retVal.add(end < 0 ? name : name.substring(0, end + 1));
+							}
+						}
+					}
+				}
+			}
+			else {
+				String accountName = M3AzureStorageUtils.accountName(connectionString);
+				RateGovernor.acquire(accountName, OperationClass.LIST);
+				CloudBlobContainer container = M3AzureStorageUtils.getBlobConatiner(connectionString, containerName);
+				ResultContinuation token = null;
+				do {
+					if(null != token) {
+						RateGovernor.acquire(accountName, OperationClass.LIST);
+					}
+					ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(blobPrefix, false, EnumSet.noneOf(BlobListingDetails.class), null, token, null, null);
+					for(ListBlobItem item : segment.getResults()) {
+						if(item instanceof CloudBlobDirectory) {
+							retVal.add(((CloudBlobDirectory) item).getPrefix());
+						}
+						else if(item instanceof CloudBlob) {
+							retVal.add(((CloudBlob) item).getName());
+						}
+					}
+					token = segment.getHasMoreResults() ? segment.getContinuationToken() : null;
+				} while(null != token);
+			}
+		}
+		catch(Exception ex) {
+			LOGGER.error("Exception occurred while listing segments of azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		return new ArrayList<>(retVal);
+	}
+
+	private static void enqueue(String name, Page page, Checkpoint checkpoint, BlockingQueue<Item> listed, PipelineResult result) throws InterruptedException {
+		if(checkpoint.retried.contains(name)) {
+			// already enqueued by retry
+			return;
+		}
+		result.listed.incrementAndGet();
+		page.pending.incrementAndGet();
+		if(checkpoint.isCompleted(name)) {
+			result.skipped.incrementAndGet();
+			checkpoint.completed(new Item(name, page));
+			return;
+		}
+		listed.put(new Item(name, page));
+	}
+
+	private static void download(String connectionString, String containerName, CloudBlobContainer container, String accountName,
+			BlockingQueue<Item> listed, BlockingQueue<Item> downloaded, Checkpoint checkpoint, PipelineResult result) {
+		try {
+			Item item;
+			while((item = listed.take()) != END) {
+				try {
+					long length;
+					if(null == container) {
+						Path file = Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName, item.name);
+						length = Files.size(file);
+						item.content = Files.newInputStream(file);
+					}
+					else {
+						RateGovernor.acquire(accountName, OperationClass.READ);
+						CloudBlockBlob blob = container.getBlockBlobReference(item.name);
+						// opening the stream loads properties and metadata, content is fetched while the processor reads it
+						item.content = blob.openInputStream();
+						length = blob.getProperties().getLength();
+						item.codec = BlobCompression.storedCodec(blob.getMetadata(), blob.getProperties().getContentEncoding());
+					}
+					result.bytesDownloaded.addAndGet(length);
+					downloaded.put(item);
+				} catch(IOException | StorageException | URISyntaxException | RuntimeException ex) {
+					LOGGER.warn("Download of {} failed: {}", item.name, ex.getMessage());
+					close(item);
+					result.failed.incrementAndGet();
+					checkpoint.failed(item);
+				}
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void process(BlobProcessor processor, BlockingQueue<Item> downloaded, Checkpoint checkpoint, PipelineResult result) {
+		try {
+			Item item;
+			while((item = downloaded.take()) != END) {
+				try(InputStream content = item.content; InputStream inputStream = item.codec.decompress(content)) {
+					processor.process(item.name, inputStream);
+					result.processed.incrementAndGet();
+					checkpoint.completed(item);
+				} catch(Exception ex) {
+					LOGGER.warn("Processing of {} failed: {}", item.name, ex.getMessage());
+					result.failed.incrementAndGet();
+					checkpoint.failed(item);
+				}
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void putEnd(BlockingQueue<Item> queue, int count) {
+		try {
+			for(int i = 0; i < count; i++) {
+				queue.put(END);
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void close(Item item) {
+		if(END != item && null != item.content) {
+			try {
+				item.content.close();
+			} catch(IOException ex) {
+				LOGGER.debug("Stream of {} could not be closed: {}", item.name, ex.getMessage());
+			}
+		}
+	}
+
+	private static class Item {
+		private final String name;
+		private final Page page;
+		private InputStream content;
+		private Codec codec = Codec.NONE;
+
+		private Item(String name, Page page) {
+			this.name = name;
+			this.page = page;
+		}
+	}
+
+	/**
+	 * Listing page, startMarker is the marker which lists this page again
+	 */
+	private static class Page {
+		private final String startMarker;
+		private final AtomicInteger pending = new AtomicInteger();
+		private final Set<String> completed = ConcurrentHashMap.newKeySet();
+		private final Set<String> failed = ConcurrentHashMap.newKeySet();
+		private volatile boolean listed;
+		private volatile String nextMarker;
+
+		private Page(String startMarker) {
+			this.startMarker = startMarker;
+		}
+	}
+
+	/**
+	 * Progress of a run: pages not yet settled (in listing order) with their completed blobs, and failed blobs of
+	 * settled pages. Saved marker is the start marker of the oldest not settled page.
+	 */
+	private static class Checkpoint {
+		private final Path file;
+		private final long intervalMillis;
+		private final String marker;
+		private final Set<String> previouslyCompleted;
+		private final Set<String> retried;
+		private final Deque<Page> pages = new ArrayDeque<>();
+		private final Set<String> failed = new HashSet<>();
+		private String safeMarker;
+		private long lastWrite = System.currentTimeMillis();
+
+		private Checkpoint(Path file, long intervalMillis, String marker, Set<String> previouslyCompleted, Set<String> retried) {
+			this.file = file;
+			this.intervalMillis = intervalMillis;
+			this.marker = marker;
+			this.safeMarker = marker;
+			this.previouslyCompleted = previouslyCompleted;
+			this.retried = retried;
+		}
+
+		private static Checkpoint read(Path file, long intervalMillis) throws AzureException {
+			Set<String> completed = new HashSet<>();
+			Set<String> retried = new LinkedHashSet<>();
+			String marker = null;
+			if(null != file && Files.isRegularFile(file)) {
+				try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+					String line;
+					while((line = reader.readLine()) != null) {
+						if(line.startsWith(MARKER_PREFIX)) {
+							String value = line.substring(MARKER_PREFIX.length());
+							marker = value.isEmpty() ? null : value;
+						}
+						else if(line.startsWith(RETRY_PREFIX)) {
+							retried.add(line.substring(RETRY_PREFIX.length()));
+						}
+						else if(!line.isEmpty()) {
+							completed.add(line);
+						}
+					}
+				} catch(IOException ex) {
+					throw new AzureException(ex);
+				}
+				LOGGER.info("Resuming from checkpoint {} with {} completed and {} failed blobs", file, completed.size(), retried.size());
+			}
+			return new Checkpoint(file, intervalMillis, marker, completed, retried);
+		}
+
+		private boolean isCompleted(String name) {
+			return previouslyCompleted.contains(name);
+		}
+
+		/**
+		 * Failed blobs are saved only once their page settled, and the marker is then the next marker of that page,
+		 * so failed blobs without marker mean the last page settled i.e. listing completed
+		 */
+		private boolean isListed() {
+			return null == marker && !retried.isEmpty();
+		}
+
+		private synchronized Page startPage(String startMarker) {
+			Page page = new Page(startMarker);
+			pages.addLast(page);
+			return page;
+		}
+
+		private void endPage(Page page, String nextMarker) {
+			page.nextMarker = nextMarker;
+			page.listed = true;
+			completed(null);
+		}
+
+		private void failed(Item item) {
+			item.page.failed.add(item.name);
+			item.page.pending.decrementAndGet();
+			completed(null);
+		}
+
+		private void completed(Item item) {
+			if(null != item) {
+				item.page.completed.add(item.name);
+				item.page.pending.decrementAndGet();
+			}
+			if(null != file && System.currentTimeMillis() - lastWrite >= intervalMillis) {
+				write();
+			}
+		}
+
+		/**
+		 * Drops settled pages from the head keeping their failed blobs, and saves marker of the first remaining page
+		 */
+		private synchronized void write() {
+			while(!pages.isEmpty() && pages.peekFirst().listed && pages.peekFirst().pending.get() == 0) {
+				Page page = pages.pollFirst();
+				failed.addAll(page.failed);
+				safeMarker = page.nextMarker;
+			}
+			lastWrite = System.currentTimeMillis();
+			try {
+				Path parent = file.toAbsolutePath().getParent();
+				Files.createDirectories(parent);
+				Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+				try {
+					try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+						writer.write(MARKER_PREFIX + (null != safeMarker ? safeMarker : ""));
+						writer.newLine();
+						for(String name : failed) {
+							writer.write(RETRY_PREFIX + name);
+							writer.newLine();
+						}
+						for(Page page : pages) {
+							for(String name : page.completed) {
+								writer.write(name);
+								writer.newLine();
+							}
+						}
+					}
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+			} catch(IOException ex) {
+				LOGGER.warn("Checkpoint {} could not be written: {}", file, ex.getMessage());
+			}
+		}
+
+		private void complete(boolean success) throws IOException {
+			if(null == file) {
+				return;
+			}
+			if(success) {
+				Files.deleteIfExists(file);
+			}
+			else {
+				write();
+			}
+		}
+	}
+
+	/**
+	 * POJO Class to pass pipeline options
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class PipelineOptions {
+		private int downloadConcurrency;
+		private int processConcurrency;
+		private int readAhead;
+		private int listQueueCapacity;
+		private int listPageSize;
+		private Path checkpointFile;
+		private long checkpointIntervalMillis;
+		private Predicate<String> filter;
+		private boolean recursive;
+
+		public PipelineOptions() {
+			this.downloadConcurrency = 8;
+			this.processConcurrency = Runtime.getRuntime().availableProcessors();
+			this.readAhead = 16;
+			this.listQueueCapacity = 1000;
+			this.listPageSize = 1000;
+			this.checkpointIntervalMillis = 5000;
+			this.recursive = true;
+		}
+
+		public int getDownloadConcurrency() {
+			return downloadConcurrency;
+		}
+		public void setDownloadConcurrency(int downloadConcurrency) {
+			this.downloadConcurrency = downloadConcurrency;
+		}
+		public int getProcessConcurrency() {
+			return processConcurrency;
+		}
+		public void setProcessConcurrency(int processConcurrency) {
+			this.processConcurrency = processConcurrency;
+		}
+		public int getReadAhead() {
+			return readAhead;
+		}
+		public void setReadAhead(int readAhead) {
+			this.readAhead = readAhead;
+		}
+		public int getListQueueCapacity() {
+			return listQueueCapacity;
+		}
+		public void setListQueueCapacity(int listQueueCapacity) {
+			this.listQueueCapacity = listQueueCapacity;
+		}
+		public int getListPageSize() {
+			return listPageSize;
+		}
+		public void setListPageSize(int listPageSize) {
+			this.listPageSize = listPageSize;
+		}
+		public Path getCheckpointFile() {
+			return checkpointFile;
+		}
+		public void setCheckpointFile(Path checkpointFile) {
+			this.checkpointFile = checkpointFile;
+		}
+		public long getCheckpointIntervalMillis() {
+			return checkpointIntervalMillis;
+		}
+		public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+			this.checkpointIntervalMillis = checkpointIntervalMillis;
+		}
+		/**
+		 * Filter of listed blob names, blobs not matching are neither listed nor processed
+		 */
+		public Predicate<String> getFilter() {
+			return filter;
+		}
+		public void setFilter(Predicate<String> filter) {
+			this.filter = filter;
+		}
+		/**
+		 * With false only blobs directly under prefix are listed, blobs of virtual directories below are not
+		 */
+		public boolean isRecursive() {
+			return recursive;
+		}
+		public void setRecursive(boolean recursive) {
+			this.recursive = recursive;
+		}
+	}
+
+	/**
+	 * Class to represent the statistics of pipeline run
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class PipelineResult {
+		private final AtomicInteger listed = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final AtomicInteger processed = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final AtomicLong bytesDownloaded = new AtomicLong();
+
+		public int getListed() {
+			return listed.get();
+		}
+		public int getSkipped() {
+			return skipped.get();
+		}
+		public int getProcessed() {
+			return processed.get();
+		}
+		public int getFailed() {
+			return failed.get();
+		}
+		public long getBytesDownloaded() {
+			return bytesDownloaded.get();
+		}
+
+		@Override
+		public String toString() {
+			return "listed=" + listed + ", skipped=" + skipped + ", processed=" + processed + ", failed=" + failed + ", bytesDownloaded=" + bytesDownloaded;
+		}
+	}
+}
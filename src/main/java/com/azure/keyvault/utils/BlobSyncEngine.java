@@ -0,0 +1,400 @@
+package com.azure.keyvault.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+
+/**
+ * Incremental one way sync of a local directory into a container (or LOCAL backend directory).
+ *
+ * Both sides are listed into manifests (size, last modified, MD5) by streaming listing, the manifests are
+ * compared and only new/changed files are transferred in parallel. Optionally files not present locally
+ * are deleted from container. After sync (also a failed one, with the entries completed so far) the manifest is persisted, next runs with trustManifest skip the
+ * remote listing and detect local changes by size and last modified only.
+ * @author Sandeep Kumar
+ *
+ */
+public final class BlobSyncEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlobSyncEngine.class.getName());
+
+	private static final String SEPARATOR = "/";
+	private static final String FIELD_SEPARATOR = "\t";
+
+	private BlobSyncEngine() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * This method syncs the local directory into container under given prefix
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param prefix Prefix of blob names e.g. archive/ (empty for container root)
+	 * @param localRoot Local directory to sync
+	 * @param options Sync options
+	 * @return SyncResult with statistics
+	 * @throws AzureException In case of any exception
+	 */
+	public static SyncResult sync(String connectionString, String containerName, String prefix, Path localRoot, SyncOptions options) throws AzureException {
+		String blobPrefix = null != prefix ? prefix : "";
+		SyncResult result = new SyncResult();
+		ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism());
+		try {
+			Map<String, ManifestEntry> manifest = readManifest(options.getManifestFile());
+			Map<String, ManifestEntry> local = listLocal(localRoot);
+			CloudBlobContainer container = M3AzureStorageUtils.isLocal(connectionString) ? null
+					: M3AzureStorageUtils.getBlobConatiner(connectionString, containerName);
+			Map<String, ManifestEntry> remote;
+			if(options.isTrustManifest() && null != manifest) {
+				remote = manifest;
+			}
+			else {
+				remote = null == container
+						? listLocal(localBackendPath(connectionString, containerName, blobPrefix))
+						: listRemote(container, blobPrefix);
+			}
+
+			// entries are recorded as transfers complete, so a failed sync still persists the work already done
+			Map<String, ManifestEntry> updated = new ConcurrentHashMap<>();
+			try {
+				List<Future<?>> transfers = new ArrayList<>();
+				for(Map.Entry<String, ManifestEntry> entry : local.entrySet()) {
+					String path = entry.getKey();
+					ManifestEntry localEntry = entry.getValue();
+					ManifestEntry previous = null != manifest ? manifest.get(path) : null;
+					ManifestEntry remoteEntry = remote.get(path);
+					if(null != remoteEntry && !isChanged(localRoot, path, localEntry, remoteEntry, previous)) {
+						result.skipped.incrementAndGet();
+						updated.put(path, null != previous && previous.sameFile(localEntry) ? previous : localEntry);
+						continue;
+					}
+					transfers.add(executor.submit(() -> {
+						ManifestEntry transferred = transfer(connectionString, container, containerName, blobPrefix + path, localRoot.resolve(path), localEntry);
+						updated.put(path, transferred);
+						result.transferred.incrementAndGet();
+						result.bytesTransferred.addAndGet(transferred.size);
+						return null;
+					}));
+				}
+				if(options.isDeleteExtras()) {
+					for(Map.Entry<String, ManifestEntry> entry : remote.entrySet()) {
+						String path = entry.getKey();
+						if(!local.containsKey(path)) {
+							transfers.add(executor.submit(() -> {
+								try {
+									delete(connectionString, container, containerName, blobPrefix + path);
+								} catch(Exception ex) {
+									// kept in manifest so that a run trusting the manifest retries the delete
+									updated.put(path, entry.getValue());
+									throw ex;
+								}
+								result.deleted.incrementAndGet();
+								return null;
+							}));
+						}
+					}
+				}
+				awaitAll(transfers);
+			}
+			finally {
+				writeManifest(options.getManifestFile(), updated);
+			}
+			LOGGER.info("Sync of {} into {}/{} completed: {}", localRoot, containerName, blobPrefix, result);
+			return result;
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ExecutionException ex) {
+			LOGGER.error("Exception occurred while sync into azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new AzureException(ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Decides if a local file needs transfer. Unchanged local file (size and last modified same as last sync)
+	 * with same remote MD5 is skipped without reading it, otherwise MD5 is compared and last modified is the last resort.
+	 */
+	private static boolean isChanged(Path localRoot, String path, ManifestEntry local, ManifestEntry remote, ManifestEntry previous) throws IOException {
+		if(local.size != remote.size) {
+			return true;
+		}
+		if(null != previous && previous.sameFile(local) && (null == remote.md5 || remote.md5.equals(previous.md5))) {
+			return false;
+		}
+		if(null != remote.md5) {
+			try(InputStream inputStream = new FileInputStream(localRoot.resolve(path).toFile())) {
+				local.md5 = ContentDigest.of(inputStream).getMd5Base64();
+			}
+			return !remote.md5.equals(local.md5);
+		}
+		return local.lastModified > remote.lastModified;
+	}
+
+	/**
+	 * This method waits for all the tasks, also after one of them failed so that every completed transfer
+	 * is recorded before the manifest is written
+	 * @throws ExecutionException First failure, later failures are suppressed into it
+	 */
+	private static void awaitAll(List<Future<?>> tasks) throws InterruptedException, ExecutionException {
+		ExecutionException failure = null;
+		for(Future<?> task : tasks) {
+			try {
+				task.get();
+			} catch(ExecutionException ex) {
+				if(null == failure) {
+					failure = ex;
+				}
+				else {
+					failure.addSuppressed(ex.getCause());
+				}
+			}
+		}
+		if(null != failure) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * @param container Container resolved once per sync, null for LOCAL backend
+	 */
+	private static ManifestEntry transfer(String connectionString, CloudBlobContainer container, String containerName, String blobName, Path file, ManifestEntry entry) throws Exception {
+		if(null == container) {
+			Path target = localBackendPath(connectionString, containerName, blobName);
+			Files.createDirectories(target.getParent());
+			Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			return entry;
+		}
+		if(null == entry.md5) {
+			try(InputStream inputStream = new FileInputStream(file.toFile())) {
+				entry.md5 = ContentDigest.of(inputStream).getMd5Base64();
+			}
+		}
+		CloudBlockBlob cloudBlockBlob = container.getBlockBlobReference(blobName);
+		cloudBlockBlob.getProperties().setContentMD5(entry.md5);
+		cloudBlockBlob.uploadFromFile(file.toString());
+		return entry;
+	}
+
+	private static void delete(String connectionString, CloudBlobContainer container, String containerName, String blobName) throws Exception {
+		if(null == container) {
+			Files.deleteIfExists(localBackendPath(connectionString, containerName, blobName));
+			Files.deleteIfExists(localBackendPath(connectionString, containerName, blobName + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX));
+		}
+		else {
+			container.getBlockBlobReference(blobName).deleteIfExists();
+		}
+	}
+
+	private static Path localBackendPath(String connectionString, String containerName, String blobName) {
+		return Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName, blobName);
+	}
+
+	/**
+	 * This method lists local directory recursively into manifest, file path separator is always /
+	 */
+	private static Map<String, ManifestEntry> listLocal(Path root) throws IOException {
+		Map<String, ManifestEntry> retVal = new HashMap<>();
+		if(!Files.isDirectory(root)) {
+			return retVal;
+		}
+		try(Stream<Path> files = Files.walk(root)) {
+			files.filter(Files::isRegularFile).filter(file -> !M3AzureStorageUtils.isMetadataSidecar(file.getFileName().toString())).forEach(file -> {
+				try {
+					FileTime lastModified = Files.getLastModifiedTime(file);
+					String path = root.relativize(file).toString().replace(File.separator, SEPARATOR);
+					retVal.put(path, new ManifestEntry(Files.size(file), lastModified.toMillis(), null));
+				} catch(IOException ex) {
+					LOGGER.warn("File {} skipped from sync: {}", file, ex.getMessage());
+				}
+			});
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method lists container flat under prefix, properties come with the listing pages
+	 * so no request per blob is made
+	 */
+	private static Map<String, ManifestEntry> listRemote(CloudBlobContainer container, String prefix) {
+		Map<String, ManifestEntry> retVal = new HashMap<>();
+		Iterable<ListBlobItem> items = container.listBlobs(prefix, true, EnumSet.noneOf(BlobListingDetails.class), null, null);
+		for(ListBlobItem item : items) {
+			if(item instanceof CloudBlob) {
+				CloudBlob blob = (CloudBlob) item;
+				retVal.put(blob.getName().substring(prefix.length()), new ManifestEntry(
+						blob.getProperties().getLength(),
+						null != blob.getProperties().getLastModified() ? blob.getProperties().getLastModified().getTime() : 0,
+						blob.getProperties().getContentMD5()));
+			}
+		}
+		return retVal;
+	}
+
+	private static Map<String, ManifestEntry> readManifest(Path manifestFile) throws IOException {
+		if(null == manifestFile || !Files.isRegularFile(manifestFile)) {
+			return null;
+		}
+		Map<String, ManifestEntry> retVal = new HashMap<>();
+		try(BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] fields = line.split(FIELD_SEPARATOR, -1);
+				if(fields.length == 4) {
+					retVal.put(fields[0], new ManifestEntry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3].isEmpty() ? null : fields[3]));
+				}
+			}
+		}
+		return retVal;
+	}
+
+	private static void writeManifest(Path manifestFile, Map<String, ManifestEntry> manifest) throws IOException {
+		if(null == manifestFile) {
+			return;
+		}
+		Path parent = manifestFile.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, manifestFile.getFileName().toString(), ".tmp");
+		try {
+			try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for(Map.Entry<String, ManifestEntry> entry : manifest.entrySet()) {
+					ManifestEntry value = entry.getValue();
+					writer.write(entry.getKey() + FIELD_SEPARATOR + value.size + FIELD_SEPARATOR + value.lastModified
+							+ FIELD_SEPARATOR + (null != value.md5 ? value.md5 : ""));
+					writer.newLine();
+				}
+			}
+			Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static class ManifestEntry {
+		private final long size;
+		private final long lastModified;
+		private volatile String md5;
+
+		private ManifestEntry(long size, long lastModified, String md5) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.md5 = md5;
+		}
+
+		private boolean sameFile(ManifestEntry other) {
+			return size == other.size && lastModified == other.lastModified;
+		}
+	}
+
+	/**
+	 * POJO Class to pass sync options
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class SyncOptions {
+		private int parallelism;
+		private boolean deleteExtras;
+		private Path manifestFile;
+		private boolean trustManifest;
+
+		public SyncOptions() {
+			this.parallelism = 8;
+			this.deleteExtras = false;
+			this.trustManifest = false;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+		public boolean isDeleteExtras() {
+			return deleteExtras;
+		}
+		public void setDeleteExtras(boolean deleteExtras) {
+			this.deleteExtras = deleteExtras;
+		}
+		public Path getManifestFile() {
+			return manifestFile;
+		}
+		public void setManifestFile(Path manifestFile) {
+			this.manifestFile = manifestFile;
+		}
+		public boolean isTrustManifest() {
+			return trustManifest;
+		}
+		public void setTrustManifest(boolean trustManifest) {
+			this.trustManifest = trustManifest;
+		}
+	}
+
+	/**
+	 * Class to represent the statistics of sync
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class SyncResult {
+		private final AtomicInteger transferred = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final AtomicInteger deleted = new AtomicInteger();
+		private final AtomicLong bytesTransferred = new AtomicLong();
+
+		public int getTransferred() {
+			return transferred.get();
+		}
+		public int getSkipped() {
+			return skipped.get();
+		}
+		public int getDeleted() {
+			return deleted.get();
+		}
+		public long getBytesTransferred() {
+			return bytesTransferred.get();
+		}
+
+		@Override
+		public String toString() {
+			return "transferred=" + transferred + ", skipped=" + skipped + ", deleted=" + deleted + ", bytesTransferred=" + bytesTransferred;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package com.azure.keyvault.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Dependency graph of startup steps (secret fetches, datasource warmup, storage client creation etc.).
+ * Independent nodes run concurrently on the given executor, each node starts as soon as all of its
+ * dependencies are done and is bounded by its own timeout. Once finished, a timing breakdown along
+ * the critical path is logged.
+ *
+ * e.g.
+ *
+ * BootstrapGraph graph = new BootstrapGraph();
+ * graph.addNode("secret", 10000, results -> AzureVaultUtils.getSecretFromVault(properties));
+ * graph.addNode("listing", 10000, results -> M3AzureStorageUtils.listFiles(graph.get("secret"), container, "/"), "secret");
+ * graph.run(executor);
+ *
+ * @author Sandeep Kumar
+ *
+ */
+public class BootstrapGraph {
+
+	private static final Logger LOGGER = LogManager.getLogger(BootstrapGraph.class);
+
+	private final Map<String, Node> nodes = new LinkedHashMap<>();
+	private final Map<String, Object> results = new ConcurrentHashMap<>();
+
+	/**
+	 * Task executed by a graph node
+	 * @param <T> Type of node result
+	 */
+	@FunctionalInterface
+	public interface BootstrapTask<T> {
+		/**
+		 * @param results Results of already completed nodes keyed by node name
+		 * @return Result of this node, may be null
+		 * @throws Exception In case of any failure
+		 */
+		T execute(Map<String, Object> results) throws Exception;
+	}
+
+	/**
+	 * This method registers a node into graph
+	 * @param name Unique name of node
+	 * @param timeoutMillis Maximum time for the node execution, not counting the wait for dependencies
+	 * @param task Task to execute
+	 * @param dependsOn Name of nodes which must complete before this node starts
+	 * @return Same graph for chaining
+	 */
+	public <T> BootstrapGraph addNode(String name, long timeoutMillis, BootstrapTask<T> task, String... dependsOn) {
+		if(nodes.containsKey(name)) {
+			throw new IllegalArgumentException("Duplicate bootstrap node: " + name);
+		}
+		nodes.put(name, new Node(name, timeoutMillis, task, dependsOn));
+		return this;
+	}
+
+	/**
+	 * This method returns result of a completed node
+	 * @param name Name of node
+	 * @return Result of node or null if node has not produced any value
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String name) {
+		return (T) results.get(name);
+	}
+
+	/**
+	 * This method executes the whole graph and waits for completion
+	 * @param executor Executor used for running nodes
+	 * @return Results of all nodes keyed by node name
+	 * @throws ExecutionException In case any node fails or times out
+	 * @throws InterruptedException In case waiting thread is interrupted
+	 */
+	public Map<String, Object> run(ExecutorService executor) throws ExecutionException, InterruptedException {
+		validate();
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "bootstrap-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long graphStart = System.nanoTime();
+		try {
+			Map<String, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+			for(Node node : topologicalOrder()) {
+				CompletableFuture<?>[] deps = node.dependsOn.stream().map(futures::get).toArray(CompletableFuture[]::new);
+				CompletableFuture<Object> future = new CompletableFuture<>();
+				CompletableFuture.allOf(deps).whenComplete((v, depEx) -> {
+					if(null != depEx) {
+						future.completeExceptionally(depEx);
+						return;
+					}
+					start(node, future, executor, timer);
+				});
+				futures.put(node.name, future);
+			}
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get();
+			return Collections.unmodifiableMap(results);
+		}
+		finally {
+			timer.shutdownNow();
+			logTimings(graphStart);
+		}
+	}
+
+	private void start(Node node, CompletableFuture<Object> future, ExecutorService executor, ScheduledExecutorService timer) {
+		node.startNanos = System.nanoTime();
+		Future<?> running = executor.submit(() -> {
+			try {
+				Object value = node.task.execute(Collections.unmodifiableMap(results));
+				// result of a node which already timed out is discarded, dependents have been failed with the timeout
+				if(node.settled.compareAndSet(false, true)) {
+					if(null != value) {
+						results.put(node.name, value);
+					}
+					node.endNanos = System.nanoTime();
+					future.complete(value);
+				}
+			} catch(Exception ex) {
+				if(node.settled.compareAndSet(false, true)) {
+					node.endNanos = System.nanoTime();
+					future.completeExceptionally(ex);
+				}
+			}
+		});
+		timer.schedule(() -> {
+			if(node.settled.compareAndSet(false, true)) {
+				node.endNanos = System.nanoTime();
+				future.completeExceptionally(new TimeoutException("Bootstrap node '" + node.name + "' timed out after " + node.timeoutMillis + " ms"));
+				running.cancel(true);
+			}
+		}, node.timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void validate() {
+		for(Node node : nodes.values()) {
+			for(String dep : node.dependsOn) {
+				if(!nodes.containsKey(dep)) {
+					throw new IllegalArgumentException("Bootstrap node '" + node.name + "' depends on unknown node '" + dep + "'");
+				}
+			}
+		}
+	}
+
+	private List<Node> topologicalOrder() {
+		List<Node> ordered = new ArrayList<>();
+		Set<String> done = new HashSet<>();
+		Set<String> visiting = new HashSet<>();
+		for(Node node : nodes.values()) {
+			visit(node, done, visiting, ordered);
+		}
+		return ordered;
+	}
+
+	private void visit(Node node, Set<String> done, Set<String> visiting, List<Node> ordered) {
+		if(done.contains(node.name)) {
+			return;
+		}
+		if(!visiting.add(node.name)) {
+			throw new IllegalArgumentException("Cyclic bootstrap dependency at node '" + node.name + "'");
+		}
+		for(String dep : node.dependsOn) {
+			visit(nodes.get(dep), done, visiting, ordered);
+		}
+		visiting.remove(node.name);
+		done.add(node.name);
+		ordered.add(node);
+	}
+
+	/**
+	 * Logs duration of every node and the chain of nodes which determined total bootstrap time
+	 */
+	private void logTimings(long graphStart) {
+		long total = System.nanoTime() - graphStart;
+		Node last = null;
+		for(Node node : nodes.values()) {
+			if(node.endNanos > 0) {
+				LOGGER.info("Bootstrap node '{}' took {} ms (started at +{} ms)", node.name,
+						toMillis(node.endNanos - node.startNanos), toMillis(node.startNanos - graphStart));
+				if(null == last || node.endNanos > last.endNanos) {
+					last = node;
+				}
+			}
+		}
+		List<String> path = new ArrayList<>();
+		while(null != last) {
+			path.add(0, last.name + "=" + toMillis(last.endNanos - last.startNanos) + "ms");
+			Node slowest = null;
+			for(String dep : last.dependsOn) {
+				Node depNode = nodes.get(dep);
+				if(null == slowest || depNode.endNanos > slowest.endNanos) {
+					slowest = depNode;
+				}
+			}
+			last = slowest;
+		}
+		LOGGER.info("Bootstrap finished in {} ms, critical path: {}", toMillis(total), String.join(" -> ", path));
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	private static class Node {
+		private final String name;
+		private final long timeoutMillis;
+		private final BootstrapTask<?> task;
+		private final List<String> dependsOn;
+		private final AtomicBoolean settled = new AtomicBoolean();
+		private volatile long startNanos;
+		private volatile long endNanos;
+
+		private Node(String name, long timeoutMillis, BootstrapTask<?> task, String... dependsOn) {
+			this.name = name;
+			this.timeoutMillis = timeoutMillis;
+			this.task = task;
+			this.dependsOn = null == dependsOn ? Collections.emptyList() : Arrays.asList(dependsOn);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package com.azure.keyvault.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.BlobDetails;
+import com.azure.keyvault.utils.M3AzureStorageUtils.FileDetails;
+
+/**
+ * Memory efficient, immutable listing of a container for millions of blobs.
+ *
+ * Paths are front coded into one byte array: every RESTART_INTERVAL-th path is stored in full, the others as
+ * length of prefix shared with the previous path plus the remaining UTF-8 bytes. Listing order of azure is
+ * lexicographic, so consecutive paths share long prefixes (e.g. tenant/2020/11/23/). Size and last modified are
+ * kept into primitive arrays and container name only once.
+ *
+ * Iteration uses a flyweight Entry which is overwritten on every step, nothing is allocated per entry unless
+ * getFilePath or toFileDetails is called. An Entry must not be kept after next step.
+ * @author Sandeep Kumar
+ *
+ */
+public final class CompactListing implements Iterable<CompactListing.Entry> {
+
+	static final int RESTART_INTERVAL = 16;
+
+	/**
+	 * Last modified of entries without last modified
+	 */
+	public static final long UNKNOWN = -1L;
+
+	private final String container;
+	private final int count;
+	private final byte[] paths;
+	private final int[] restarts;
+	private final long[] sizes;
+	private final long[] lastModified;
+	private final int maxPathLength;
+
+	private CompactListing(Builder builder) {
+		this.container = builder.container;
+		this.count = builder.count;
+		this.paths = Arrays.copyOf(builder.paths, builder.pathsLength);
+		this.restarts = Arrays.copyOf(builder.restarts, (builder.count + RESTART_INTERVAL - 1) / RESTART_INTERVAL);
+		this.sizes = Arrays.copyOf(builder.sizes, builder.count);
+		this.lastModified = Arrays.copyOf(builder.lastModified, builder.count);
+		this.maxPathLength = builder.maxPathLength;
+	}
+
+	/**
+	 * This method creates compact listing from listing objects, all entries must be of the same container
+	 * @param container Name of container
+	 * @param files Listed files, size and last modified are taken from BlobDetails
+	 * @return CompactListing object
+	 */
+	public static CompactListing of(String container, Collection<? extends FileDetails> files) {
+		Builder builder = builder(container);
+		for(FileDetails file : files) {
+			if(file instanceof BlobDetails) {
+				BlobDetails blob = (BlobDetails) file;
+				builder.add(blob.getFilePath(), blob.getSize(), null != blob.getLastModified() ? blob.getLastModified().getTime() : UNKNOWN);
+			}
+			else {
+				builder.add(file.getFilePath(), 0, UNKNOWN);
+			}
+		}
+		return builder.build();
+	}
+
+	public static Builder builder(String container) {
+		return new Builder(container);
+	}
+
+	public String getContainer() {
+		return container;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public long getSize(int index) {
+		checkIndex(index);
+		return sizes[index];
+	}
+
+	public long getLastModified(int index) {
+		checkIndex(index);
+		return lastModified[index];
+	}
+
+	/**
+	 * This method decodes path of entry at index, cost is at most RESTART_INTERVAL decoding steps
+	 * @param index Index of entry
+	 * @return Path of file
+	 */
+	public String getFilePath(int index) {
+		checkIndex(index);
+		Entry entry = new Entry();
+		entry.seek(index);
+		return entry.getFilePath();
+	}
+
+	/**
+	 * This method returns estimated heap footprint of listing in bytes
+	 * @return Number of bytes
+	 */
+	public long memoryFootprint() {
+		return 64L + paths.length + 4L * restarts.length + 8L * sizes.length + 8L * lastModified.length
+				+ 40L + 2L * container.length();
+	}
+
+	@Override
+	public Iterator<Entry> iterator() {
+		Entry entry = new Entry();
+		return new Iterator<Entry>() {
+			@Override
+			public boolean hasNext() {
+				return entry.index + 1 < count;
+			}
+			@Override
+			public Entry next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				entry.next();
+				return entry;
+			}
+		};
+	}
+
+	private void checkIndex(int index) {
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + count);
+		}
+	}
+
+	private static int readVarInt(byte[] data, int[] position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = data[position[0]++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return value;
+	}
+
+	/**
+	 * Flyweight view of the current entry, the same instance is returned for every entry by the iterator
+	 */
+	public final class Entry {
+		private final byte[] path = new byte[maxPathLength];
+		private final int[] position = new int[1];
+		private int pathLength;
+		private int index = -1;
+
+		private Entry() {
+		}
+
+		private void next() {
+			index++;
+			if(index % RESTART_INTERVAL == 0) {
+				position[0] = restarts[index / RESTART_INTERVAL];
+			}
+			int shared = index % RESTART_INTERVAL == 0 ? 0 : readVarInt(paths, position);
+			int suffix = readVarInt(paths, position);
+			System.arraycopy(paths, position[0], path, shared, suffix);
+			position[0] += suffix;
+			pathLength = shared + suffix;
+		}
+
+		private void seek(int target) {
+			index = target - target % RESTART_INTERVAL - 1;
+			while(index < target) {
+				next();
+			}
+		}
+
+		public int getIndex() {
+			return index;
+		}
+		public String getContainer() {
+			return container;
+		}
+		public long getSize() {
+			return sizes[index];
+		}
+		public long getLastModified() {
+			return lastModified[index];
+		}
+		public int getFilePathLength() {
+			return pathLength;
+		}
+
+		/**
+		 * This method compares path with prefix without decoding path into String
+		 * @param prefix Prefix to compare
+		 * @return true if path starts with prefix
+		 */
+		public boolean startsWith(byte[] prefix) {
+			if(prefix.length > pathLength) {
+				return false;
+			}
+			for(int i = 0; i < prefix.length; i++) {
+				if(path[i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * This method copies UTF-8 bytes of path into target
+		 * @return Number of bytes copied
+		 */
+		public int copyFilePath(byte[] target) {
+			System.arraycopy(path, 0, target, 0, pathLength);
+			return pathLength;
+		}
+
+		/**
+		 * This method decodes path into a new String
+		 */
+		public String getFilePath() {
+			return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * This method materializes the entry as a standalone object
+		 */
+		public BlobDetails toFileDetails() {
+			return new BlobDetails(container, getFilePath(), getSize(), getLastModified() == UNKNOWN ? null : new Date(getLastModified()), null);
+		}
+	}
+
+	/**
+	 * Builder appending entries in listing order, input in lexicographic order gives the best compression
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static final class Builder {
+		private final String container;
+		private byte[] paths = new byte[4096];
+		private int pathsLength;
+		private int[] restarts = new int[64];
+		private long[] sizes = new long[1024];
+		private long[] lastModified = new long[1024];
+		private byte[] previous = new byte[0];
+		private int count;
+		private int maxPathLength;
+
+		private Builder(String container) {
+			this.container = container;
+		}
+
+		/**
+		 * This method appends an entry
+		 * @param filePath Path of file
+		 * @param size Size in bytes
+		 * @param lastModifiedMillis Last modified epoch millis or UNKNOWN
+		 * @return Builder object
+		 */
+		public Builder add(String filePath, long size, long lastModifiedMillis) {
+			byte[] path = filePath.getBytes(StandardCharsets.UTF_8);
+			if(count == sizes.length) {
+				sizes = Arrays.copyOf(sizes, count * 2);
+				lastModified = Arrays.copyOf(lastModified, count * 2);
+			}
+			ensurePaths(10 + path.length);
+			if(count % RESTART_INTERVAL == 0) {
+				if(count / RESTART_INTERVAL == restarts.length) {
+					restarts = Arrays.copyOf(restarts, restarts.length * 2);
+				}
+				restarts[count / RESTART_INTERVAL] = pathsLength;
+				writeVarInt(path.length);
+				write(path, 0, path.length);
+			}
+			else {
+				int shared = 0;
+				int limit = Math.min(previous.length, path.length);
+				while(shared < limit && previous[shared] == path[shared]) {
+					shared++;
+				}
+				writeVarInt(shared);
+				writeVarInt(path.length - shared);
+				write(path, shared, path.length - shared);
+			}
+			sizes[count] = size;
+			lastModified[count] = lastModifiedMillis;
+			previous = path;
+			maxPathLength = Math.max(maxPathLength, path.length);
+			count++;
+			return this;
+		}
+
+		public CompactListing build() {
+			return new CompactListing(this);
+		}
+
+		private void ensurePaths(int additional) {
+			if(pathsLength + additional > paths.length) {
+				paths = Arrays.copyOf(paths, Math.max(paths.length * 2, pathsLength + additional));
+			}
+		}
+
+		private void writeVarInt(int value) {
+			int remaining = value;
+			while((remaining & ~0x7F) != 0) {
+				paths[pathsLength++] = (byte) ((remaining & 0x7F) | 0x80);
+				remaining >>>= 7;
+			}
+			paths[pathsLength++] = (byte) remaining;
+		}
+
+		private void write(byte[] data, int offset, int length) {
+			System.arraycopy(data, offset, paths, pathsLength, length);
+			pathsLength += length;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.azure.keyvault.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MD5 and SHA-256 of a content, computed in a single pass.
+ *
+ * MD5 is the hash azure keeps into Content-MD5 blob property, SHA-256 is used as collision safe content identity.
+ * @author Sandeep Kumar
+ *
+ */
+public final class ContentDigest {
+
+	/**
+	 * Below this size both digests are computed on the calling thread
+	 */
+	private static final int PARALLEL_THRESHOLD = 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final byte[] md5;
+	private final byte[] sha256;
+	private final long length;
+
+	private ContentDigest(byte[] md5, byte[] sha256, long length) {
+		this.md5 = md5;
+		this.sha256 = sha256;
+		this.length = length;
+	}
+
+	/**
+	 * This method computes digests of byte array, both digests are computed concurrently for large content
+	 * @param data Input content
+	 * @return ContentDigest object
+	 */
+	public static ContentDigest of(byte[] data) {
+		if(data.length < PARALLEL_THRESHOLD) {
+			return new ContentDigest(newDigest("MD5").digest(data), newDigest("SHA-256").digest(data), data.length);
+		}
+		CompletableFuture<byte[]> md5 = CompletableFuture.supplyAsync(() -> newDigest("MD5").digest(data));
+		byte[] sha256 = newDigest("SHA-256").digest(data);
+		return new ContentDigest(md5.join(), sha256, data.length);
+	}
+
+	/**
+	 * This method computes digests while reading the stream, stream is consumed but not closed
+	 * @param inputStream Input content
+	 * @return ContentDigest object
+	 * @throws IOException In case of IOException
+	 */
+	public static ContentDigest of(InputStream inputStream) throws IOException {
+		MessageDigest md5 = newDigest("MD5");
+		MessageDigest sha256 = newDigest("SHA-256");
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long length = 0;
+		int read;
+		while((read = inputStream.read(buffer)) != -1) {
+			md5.update(buffer, 0, read);
+			sha256.update(buffer, 0, read);
+			length += read;
+		}
+		return new ContentDigest(md5.digest(), sha256.digest(), length);
+	}
+
+	static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(algorithm + " not available", ex);
+		}
+	}
+
+	/**
+	 * @return MD5 in base64, same format as Content-MD5 blob property
+	 */
+	public String getMd5Base64() {
+		return Base64.getEncoder().encodeToString(md5);
+	}
+
+	/**
+	 * @return SHA-256 in lower case hex
+	 */
+	public String getSha256Hex() {
+		StringBuilder retVal = new StringBuilder(sha256.length * 2);
+		for(byte b : sha256) {
+			retVal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return retVal.toString();
+	}
+
+	public long getLength() {
+		return length;
+	}
+}
@@ -0,0 +1,134 @@
+package com.azure.keyvault.utils;
+
+/**
+ * CRC-64/XZ (ECMA-182 polynomial, reflected) with slicing-by-8 tables.
+ *
+ * Unlike MD5, CRCs of consecutive blocks can be combined into the CRC of the whole content without reading the
+ * content again, so blocks can be checksummed in parallel and the whole-blob checksum is derived from them.
+ * Values are passed around finalized, i.e. update(0, ...) starts a new CRC like java.util.zip.CRC32.
+ * @author Sandeep Kumar
+ *
+ */
+public final class Crc64 {
+
+	private static final long POLYNOMIAL = 0xC96C5795D7870F42L;
+	private static final long[][] TABLES = new long[8][256];
+
+	static {
+		for(int n = 0; n < 256; n++) {
+			long crc = n;
+			for(int k = 0; k < 8; k++) {
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+			}
+			TABLES[0][n] = crc;
+		}
+		for(int n = 0; n < 256; n++) {
+			long crc = TABLES[0][n];
+			for(int t = 1; t < 8; t++) {
+				crc = TABLES[0][(int) (crc & 0xFF)] ^ (crc >>> 8);
+				TABLES[t][n] = crc;
+			}
+		}
+	}
+
+	private Crc64() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * This method continues CRC with the bytes
+	 * @param crc CRC of preceding bytes, 0 to start
+	 * @param data Input bytes
+	 * @param offset Offset of first byte
+	 * @param length Number of bytes
+	 * @return CRC including the bytes
+	 */
+	public static long update(long crc, byte[] data, int offset, int length) {
+		long[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+		long[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+		long retVal = ~crc;
+		int i = offset;
+		int end = offset + length;
+		for(; i + 8 <= end; i += 8) {
+			retVal ^= (data[i] & 0xFFL) | (data[i + 1] & 0xFFL) << 8 | (data[i + 2] & 0xFFL) << 16 | (data[i + 3] & 0xFFL) << 24
+					| (data[i + 4] & 0xFFL) << 32 | (data[i + 5] & 0xFFL) << 40 | (data[i + 6] & 0xFFL) << 48 | (data[i + 7] & 0xFFL) << 56;
+			retVal = t7[(int) (retVal & 0xFF)] ^ t6[(int) ((retVal >>> 8) & 0xFF)] ^ t5[(int) ((retVal >>> 16) & 0xFF)]
+					^ t4[(int) ((retVal >>> 24) & 0xFF)] ^ t3[(int) ((retVal >>> 32) & 0xFF)] ^ t2[(int) ((retVal >>> 40) & 0xFF)]
+					^ t1[(int) ((retVal >>> 48) & 0xFF)] ^ t0[(int) (retVal >>> 56)];
+		}
+		for(; i < end; i++) {
+			retVal = t0[(int) ((retVal ^ data[i]) & 0xFF)] ^ (retVal >>> 8);
+		}
+		return ~retVal;
+	}
+
+	/**
+	 * This method combines CRCs of two consecutive blocks, the zlib crc32_combine algorithm for 64 bits
+	 * @param crc1 CRC of first block
+	 * @param crc2 CRC of second block
+	 * @param length2 Length of second block
+	 * @return CRC of both blocks
+	 */
+	public static long combine(long crc1, long crc2, long length2) {
+		if(length2 <= 0) {
+			return crc1;
+		}
+		long[] even = new long[64];
+		long[] odd = new long[64];
+		odd[0] = POLYNOMIAL;
+		long row = 1;
+		for(int n = 1; n < 64; n++) {
+			odd[n] = row;
+			row <<= 1;
+		}
+		square(even, odd);
+		square(odd, even);
+		long retVal = crc1;
+		long remaining = length2;
+		do {
+			square(even, odd);
+			if((remaining & 1) != 0) {
+				retVal = times(even, retVal);
+			}
+			remaining >>>= 1;
+			if(remaining == 0) {
+				break;
+			}
+			square(odd, even);
+			if((remaining & 1) != 0) {
+				retVal = times(odd, retVal);
+			}
+			remaining >>>= 1;
+		} while(remaining != 0);
+		return retVal ^ crc2;
+	}
+
+	/**
+	 * @param crc CRC value
+	 * @return CRC as 16 lower case hex digits
+	 */
+	public static String toHex(long crc) {
+		String hex = Long.toHexString(crc);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	private static long times(long[] matrix, long vector) {
+		long retVal = 0;
+		int i = 0;
+		long remaining = vector;
+		while(remaining != 0) {
+			if((remaining & 1) != 0) {
+				retVal ^= matrix[i];
+			}
+			remaining >>>= 1;
+			i++;
+		}
+		return retVal;
+	}
+
+	private static void square(long[] square, long[] matrix) {
+		for(int n = 0; n < 64; n++) {
+			square[n] = times(matrix, matrix[n]);
+		}
+	}
+}
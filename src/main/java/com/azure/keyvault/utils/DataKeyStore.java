@@ -0,0 +1,197 @@
+package com.azure.keyvault.utils;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Wrapped data encryption keys (DEKs) of field encryption into the application datasource.
+ *
+ * Only wrapped keys are stored, together with the versioned identifier of the vault key (KEK) which wrapped them.
+ * Key ids are increasing, the highest id is the current key used for encryption.
+ * @author Sandeep Kumar
+ *
+ */
+public class DataKeyStore {
+
+	private static final Logger LOGGER = LogManager.getLogger(DataKeyStore.class);
+
+	public static final String DEFAULT_TABLE_NAME = "FIELD_DATA_KEY";
+
+	private static final int INSERT_ATTEMPTS = 5;
+
+	private final DataSource dataSource;
+	private final String tableName;
+
+	public DataKeyStore(DataSource dataSource) {
+		this(dataSource, DEFAULT_TABLE_NAME);
+	}
+
+	public DataKeyStore(DataSource dataSource, String tableName) {
+		this.dataSource = dataSource;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * This method creates data key table if it does not exist
+	 * @throws SQLException In case of database error
+	 */
+	public void createTable() throws SQLException {
+		try(Connection connection = dataSource.getConnection()) {
+			DatabaseMetaData metadata = connection.getMetaData();
+			for(String name : Arrays.asList(tableName, tableName.toUpperCase(), tableName.toLowerCase())) {
+				try(ResultSet tables = metadata.getTables(null, null, name, new String[] {"TABLE"})) {
+					if(tables.next()) {
+						return;
+					}
+				}
+			}
+			try(Statement statement = connection.createStatement()) {
+				statement.executeUpdate("CREATE TABLE " + tableName + " ("
+						+ "KEY_ID INTEGER NOT NULL PRIMARY KEY, "
+						+ "KEK_ID VARCHAR(400) NOT NULL, "
+						+ "WRAPPED_KEY VARCHAR(2000) NOT NULL, "
+						+ "CREATED BIGINT NOT NULL)");
+			}
+			LOGGER.info("Created data key table {}", tableName);
+		}
+	}
+
+	/**
+	 * This method stores a new data key with next id, concurrent inserts are retried on key violation
+	 * @param kekId Versioned identifier of wrapping key
+	 * @param wrappedKey Wrapped data key
+	 * @return Id of data key
+	 * @throws SQLException In case of database error
+	 */
+	public int insert(String kekId, byte[] wrappedKey) throws SQLException {
+		SQLException last = null;
+		for(int attempt = 0; attempt < INSERT_ATTEMPTS; attempt++) {
+			DataKey latest = latest();
+			int id = null != latest ? latest.getKeyId() + 1 : 1;
+			try(Connection connection = dataSource.getConnection();
+					PreparedStatement statement = connection.prepareStatement("INSERT INTO " + tableName + " (KEY_ID, KEK_ID, WRAPPED_KEY, CREATED) VALUES (?, ?, ?, ?)")) {
+				statement.setInt(1, id);
+				statement.setString(2, kekId);
+				statement.setString(3, Base64.getEncoder().encodeToString(wrappedKey));
+				statement.setLong(4, System.currentTimeMillis());
+				statement.executeUpdate();
+				return id;
+			} catch(SQLException ex) {
+				last = ex;
+			}
+		}
+		throw last;
+	}
+
+	/**
+	 * This method replaces wrapping of data key e.g. after rotation of vault key
+	 * @throws SQLException In case of database error
+	 */
+	public void rewrap(int keyId, String kekId, byte[] wrappedKey) throws SQLException {
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("UPDATE " + tableName + " SET KEK_ID = ?, WRAPPED_KEY = ? WHERE KEY_ID = ?")) {
+			statement.setString(1, kekId);
+			statement.setString(2, Base64.getEncoder().encodeToString(wrappedKey));
+			statement.setInt(3, keyId);
+			statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * @return Data key with highest id or null if there is none
+	 * @throws SQLException In case of database error
+	 */
+	public DataKey latest() throws SQLException {
+		List<DataKey> keys = query("SELECT KEY_ID, KEK_ID, WRAPPED_KEY, CREATED FROM " + tableName
+				+ " WHERE KEY_ID = (SELECT MAX(KEY_ID) FROM " + tableName + ")", null);
+		return keys.isEmpty() ? null : keys.get(0);
+	}
+
+	/**
+	 * @return Data key of id or null if there is none
+	 * @throws SQLException In case of database error
+	 */
+	public DataKey get(int keyId) throws SQLException {
+		List<DataKey> keys = query("SELECT KEY_ID, KEK_ID, WRAPPED_KEY, CREATED FROM " + tableName + " WHERE KEY_ID = ?", keyId);
+		return keys.isEmpty() ? null : keys.get(0);
+	}
+
+	/**
+	 * @return All data keys ordered by id
+	 * @throws SQLException In case of database error
+	 */
+	public List<DataKey> list() throws SQLException {
+		return query("SELECT KEY_ID, KEK_ID, WRAPPED_KEY, CREATED FROM " + tableName + " ORDER BY KEY_ID", null);
+	}
+
+	private List<DataKey> query(String sql, Integer keyId) throws SQLException {
+		List<DataKey> retVal = new ArrayList<>();
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql)) {
+			if(null != keyId) {
+				statement.setInt(1, keyId);
+			}
+			try(ResultSet resultSet = statement.executeQuery()) {
+				while(resultSet.next()) {
+					DataKey key = new DataKey();
+					key.setKeyId(resultSet.getInt(1));
+					key.setKekId(resultSet.getString(2));
+					key.setWrappedKey(Base64.getDecoder().decode(resultSet.getString(3)));
+					key.setCreated(resultSet.getLong(4));
+					retVal.add(key);
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * POJO Class to represent a wrapped data key
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class DataKey {
+		private int keyId;
+		private String kekId;
+		private byte[] wrappedKey;
+		private long created;
+
+		public int getKeyId() {
+			return keyId;
+		}
+		public void setKeyId(int keyId) {
+			this.keyId = keyId;
+		}
+		public String getKekId() {
+			return kekId;
+		}
+		public void setKekId(String kekId) {
+			this.kekId = kekId;
+		}
+		public byte[] getWrappedKey() {
+			return wrappedKey;
+		}
+		public void setWrappedKey(byte[] wrappedKey) {
+			this.wrappedKey = wrappedKey;
+		}
+		public long getCreated() {
+			return created;
+		}
+		public void setCreated(long created) {
+			this.created = created;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.azure.keyvault.utils;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * JPA converter for encrypted String columns, usage on entity field:
+ * {@code @Convert(converter = EncryptedStringConverter.class)}
+ *
+ * Requires field-encryption.enabled=true, plain text values already present into the column are read as they are.
+ * JPA calls the converter per attribute, values are decrypted one by one; for bulk reads outside JPA use
+ * FieldEncryption.decryptAll.
+ * @author Sandeep Kumar
+ *
+ */
+@Converter
+public class EncryptedStringConverter implements AttributeConverter<String, String> {
+
+	@Override
+	public String convertToDatabaseColumn(String attribute) {
+		return FieldEncryption.getInstance().encrypt(attribute);
+	}
+
+	@Override
+	public String convertToEntityAttribute(String dbData) {
+		return FieldEncryption.getInstance().decrypt(dbData);
+	}
+}
@@ -0,0 +1,415 @@
+package com.azure.keyvault.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.DataKeyStore.DataKey;
+import com.microsoft.azure.keyvault.models.KeyOperationResult;
+
+/**
+ * Field level encryption of database columns with AES-GCM data keys (DEKs) wrapped by a vault key (KEK).
+ *
+ * Encrypted value is e1:keyId:base64(iv + ciphertext + tag), header is authenticated as AAD. Unwrapped DEKs are
+ * cached for ttl, so vault is called once per key and ttl and not per row. Values without a valid e1:keyId: header
+ * are returned as they are, so existing plain text columns are migrated lazily on next write.
+ *
+ * Key versioning: rotate creates a new current DEK, values of older DEKs remain readable and are re-encrypted
+ * with the current DEK on next write or by reEncryptColumn. rewrapDataKeys re-wraps DEKs after rotation of the
+ * vault key without touching data.
+ * @author Sandeep Kumar
+ *
+ */
+public class FieldEncryption {
+
+	private static final Logger LOGGER = LogManager.getLogger(FieldEncryption.class);
+
+	private static final String PREFIX = "e1:";
+	private static final int MAX_KEY_ID_DIGITS = 9;
+	private static final String ALGORITHM = "AES/GCM/NoPadding";
+	private static final int KEY_LENGTH = 32;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+
+	private static volatile FieldEncryption instance;
+
+	private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+		try {
+			return Cipher.getInstance(ALGORITHM);
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		}
+	});
+
+	private final DataKeyStore store;
+	private final KeyWrapper keyWrapper;
+	private final long ttlMillis;
+	private final int parallelThreshold;
+	private final SecureRandom random = new SecureRandom();
+	private final Map<Integer, CachedKey> cache = new ConcurrentHashMap<>();
+	private final SingleFlight<Integer, SecretKey> loads = new SingleFlight<>();
+	private volatile int currentKeyId;
+
+	/**
+	 * Wrapping of data keys, vaultKeyWrapper wraps with key stored into Azure Vault
+	 */
+	public interface KeyWrapper {
+		KeyOperationResult wrap(byte[] dataKey);
+		byte[] unwrap(String kekId, byte[] wrappedKey);
+	}
+
+	public FieldEncryption(DataKeyStore store, KeyWrapper keyWrapper, long ttlMillis, int parallelThreshold) {
+		this.store = store;
+		this.keyWrapper = keyWrapper;
+		this.ttlMillis = ttlMillis;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * This method returns the instance used by converters
+	 * @return FieldEncryption object
+	 */
+	public static FieldEncryption getInstance() {
+		FieldEncryption retVal = instance;
+		if(null == retVal) {
+			throw new IllegalStateException("Field encryption is not configured, set field-encryption.enabled=true");
+		}
+		return retVal;
+	}
+
+	public static void setInstance(FieldEncryption fieldEncryption) {
+		instance = fieldEncryption;
+	}
+
+	/**
+	 * This method creates KeyWrapper which wraps data keys with key of vault, secret name is the key name
+	 * @param properties Provide input parameters to connect with Vault
+	 * @return KeyWrapper object
+	 */
+	public static KeyWrapper vaultKeyWrapper(KeyVaultProperties properties) {
+		return new KeyWrapper() {
+			@Override
+			public KeyOperationResult wrap(byte[] dataKey) {
+				return AzureVaultUtils.wrapKeyWithVault(properties, dataKey);
+			}
+			@Override
+			public byte[] unwrap(String kekId, byte[] wrappedKey) {
+				return AzureVaultUtils.unwrapKeyWithVault(properties, kekId, wrappedKey);
+			}
+		};
+	}
+
+	/**
+	 * This method creates data key table and first data key if needed
+	 * @throws SQLException In case of database error
+	 */
+	public void initialize() throws SQLException {
+		store.createTable();
+		DataKey latest = store.latest();
+		if(null == latest) {
+			rotate();
+		}
+		else {
+			currentKeyId = latest.getKeyId();
+		}
+		LOGGER.info("Field encryption initialized with data key {}", currentKeyId);
+	}
+
+	/**
+	 * This method creates a new data key which is used for all further encryption
+	 * @return Id of new data key
+	 * @throws SQLException In case of database error
+	 */
+	public synchronized int rotate() throws SQLException {
+		byte[] dataKey = new byte[KEY_LENGTH];
+		random.nextBytes(dataKey);
+		KeyOperationResult wrapped = keyWrapper.wrap(dataKey);
+		int keyId = store.insert(wrapped.kid(), wrapped.result());
+		cache.put(keyId, new CachedKey(new SecretKeySpec(dataKey, "AES"), System.currentTimeMillis() + ttlMillis));
+		currentKeyId = keyId;
+		LOGGER.info("Field encryption rotated to data key {}", keyId);
+		return keyId;
+	}
+
+	/**
+	 * This method re-wraps all data keys with the latest version of vault key, data is not touched
+	 * @return Number of re-wrapped data keys
+	 * @throws SQLException In case of database error
+	 */
+	public int rewrapDataKeys() throws SQLException {
+		int retVal = 0;
+		for(DataKey key : store.list()) {
+			byte[] dataKey = keyWrapper.unwrap(key.getKekId(), key.getWrappedKey());
+			KeyOperationResult wrapped = keyWrapper.wrap(dataKey);
+			Arrays.fill(dataKey, (byte) 0);
+			if(!wrapped.kid().equals(key.getKekId())) {
+				store.rewrap(key.getKeyId(), wrapped.kid(), wrapped.result());
+				retVal++;
+			}
+		}
+		LOGGER.info("Re-wrapped {} data keys", retVal);
+		return retVal;
+	}
+
+	/**
+	 * This method encrypts value with the current data key
+	 * @param plainText Value to encrypt
+	 * @return Encrypted value or null
+	 */
+	public String encrypt(String plainText) {
+		return encrypt(plainText, currentKeyId);
+	}
+
+	private String encrypt(String plainText, int keyId) {
+		if(null == plainText) {
+			return null;
+		}
+		String header = PREFIX + keyId + ":";
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = CIPHERS.get();
+			cipher.init(Cipher.ENCRYPT_MODE, dataKey(keyId), new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(header.getBytes(StandardCharsets.US_ASCII));
+			byte[] input = plainText.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer output = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(input.length));
+			output.put(iv);
+			cipher.doFinal(ByteBuffer.wrap(input), output);
+			return header + Base64.getEncoder().encodeToString(output.array());
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException("Encryption with data key " + keyId + " failed", ex);
+		}
+	}
+
+	/**
+	 * This method decrypts value, values which are not encrypted are returned as they are
+	 * @param value Encrypted value
+	 * @return Plain text or null
+	 */
+	public String decrypt(String value) {
+		int keyId = keyId(value);
+		if(keyId < 0) {
+			return value;
+		}
+		int separator = value.indexOf(':', PREFIX.length());
+		try {
+			byte[] data = Base64.getDecoder().decode(value.substring(separator + 1));
+			Cipher cipher = CIPHERS.get();
+			cipher.init(Cipher.DECRYPT_MODE, dataKey(keyId), new GCMParameterSpec(TAG_BITS, data, 0, IV_LENGTH));
+			cipher.updateAAD(value.substring(0, separator + 1).getBytes(StandardCharsets.US_ASCII));
+			return new String(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH), StandardCharsets.UTF_8);
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException("Decryption with data key " + keyId + " failed", ex);
+		}
+	}
+
+	/**
+	 * This method decrypts many values (e.g. a column of a large result set). Data keys are loaded once before,
+	 * values are decrypted in parallel above parallelThreshold.
+	 *
+	 * JPA converts attribute by attribute, so EncryptedStringConverter decrypts one value at a time and does not
+	 * use this method. It is meant for bulk reads outside JPA (JDBC, native queries, exports) and reEncryptColumn.
+	 * @param values Encrypted values
+	 * @return Plain texts in the same order
+	 */
+	public List<String> decryptAll(List<String> values) {
+		Set<Integer> keyIds = new HashSet<>();
+		for(String value : values) {
+			int keyId = keyId(value);
+			if(keyId >= 0) {
+				keyIds.add(keyId);
+			}
+		}
+		keyIds.parallelStream().forEach(this::dataKey);
+		String[] retVal = new String[values.size()];
+		IntStream indexes = IntStream.range(0, retVal.length);
+		if(retVal.length >= parallelThreshold) {
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(i -> retVal[i] = decrypt(values.get(i)));
+		return Arrays.asList(retVal);
+	}
+
+	/**
+	 * @return true if value is encrypted with the current data key
+	 */
+	public boolean isCurrent(String value) {
+		return null == value || value.startsWith(currentPrefix());
+	}
+
+	/**
+	 * @return Prefix of values encrypted with current data key, usable into SQL LIKE
+	 */
+	public String currentPrefix() {
+		return PREFIX + currentKeyId + ":";
+	}
+
+	/**
+	 * This method re-encrypts value with the current data key if needed
+	 * @param value Encrypted or plain value
+	 * @return Value encrypted with current data key
+	 */
+	public String reEncrypt(String value) {
+		return isCurrent(value) ? value : encrypt(decrypt(value));
+	}
+
+	/**
+	 * This method re-encrypts all values of a column not encrypted with the current data key, in batches.
+	 * Current data key is read from the key store before every batch, so a rotation by another node during the
+	 * run is followed. Rows changed concurrently are skipped by the conditional update and picked up again.
+	 * Table and column names are taken as they are, hence must not come from user input.
+	 * @param dataSource Datasource
+	 * @param table Table name
+	 * @param idColumn Primary key column
+	 * @param column Encrypted column
+	 * @param batchSize Number of rows per batch
+	 * @return Number of re-encrypted rows
+	 * @throws SQLException In case of database error
+	 */
+	public int reEncryptColumn(DataSource dataSource, String table, String idColumn, String column, int batchSize) throws SQLException {
+		int retVal = 0;
+		int keyId = currentKeyId;
+		try(Connection connection = dataSource.getConnection()) {
+			while(true) {
+				keyId = refreshCurrentKey();
+				String prefix = PREFIX + keyId + ":";
+				List<Object> ids = new ArrayList<>();
+				List<String> values = new ArrayList<>();
+				try(PreparedStatement statement = connection.prepareStatement("SELECT " + idColumn + ", " + column + " FROM " + table
+						+ " WHERE " + column + " IS NOT NULL AND " + column + " NOT LIKE ?")) {
+					statement.setMaxRows(batchSize);
+					statement.setString(1, prefix + "%");
+					try(ResultSet resultSet = statement.executeQuery()) {
+						while(resultSet.next()) {
+							ids.add(resultSet.getObject(1));
+							values.add(resultSet.getString(2));
+						}
+					}
+				}
+				if(ids.isEmpty()) {
+					break;
+				}
+				List<String> plainTexts = decryptAll(values);
+				try(PreparedStatement statement = connection.prepareStatement("UPDATE " + table + " SET " + column + " = ? WHERE "
+						+ idColumn + " = ? AND " + column + " = ?")) {
+					for(int i = 0; i < ids.size(); i++) {
+						statement.setString(1, encrypt(plainTexts.get(i), keyId));
+						statement.setObject(2, ids.get(i));
+						statement.setString(3, values.get(i));
+						statement.addBatch();
+					}
+					for(int count : statement.executeBatch()) {
+						if(count > 0) {
+							retVal += count;
+						}
+						else if(Statement.SUCCESS_NO_INFO == count) {
+							retVal++;
+						}
+					}
+				}
+			}
+		}
+		LOGGER.info("Re-encrypted {} values of {}.{} with data key {}", retVal, table, column, keyId);
+		return retVal;
+	}
+
+	/**
+	 * This method switches to the latest data key of the key store if it is newer, e.g. rotated by another node
+	 * @return Id of current data key
+	 * @throws SQLException In case of database error
+	 */
+	public synchronized int refreshCurrentKey() throws SQLException {
+		DataKey latest = store.latest();
+		if(null != latest && latest.getKeyId() > currentKeyId) {
+			LOGGER.info("Field encryption switched from data key {} to {}", currentKeyId, latest.getKeyId());
+			currentKeyId = latest.getKeyId();
+		}
+		return currentKeyId;
+	}
+
+	public int getCurrentKeyId() {
+		return currentKeyId;
+	}
+
+	public int getCachedKeyCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Key id of value with e1:keyId: header, -1 for values without a valid header (plain text)
+	 */
+	private static int keyId(String value) {
+		if(null == value || !value.startsWith(PREFIX)) {
+			return -1;
+		}
+		int separator = value.indexOf(':', PREFIX.length());
+		if(separator <= PREFIX.length() || separator - PREFIX.length() > MAX_KEY_ID_DIGITS) {
+			return -1;
+		}
+		for(int i = PREFIX.length(); i < separator; i++) {
+			char digit = value.charAt(i);
+			if(digit < '0' || digit > '9') {
+				return -1;
+			}
+		}
+		return Integer.parseInt(value.substring(PREFIX.length(), separator));
+	}
+
+	/**
+	 * This method returns unwrapped data key from cache, concurrent misses of the same key make one vault call
+	 */
+	private SecretKey dataKey(int keyId) {
+		CachedKey cached = cache.get(keyId);
+		if(null != cached && cached.expires > System.currentTimeMillis()) {
+			return cached.key;
+		}
+		return loads.execute(keyId, () -> {
+			try {
+				DataKey key = store.get(keyId);
+				if(null == key) {
+					throw new IllegalStateException("Data key " + keyId + " does not exist");
+				}
+				SecretKey retVal = new SecretKeySpec(keyWrapper.unwrap(key.getKekId(), key.getWrappedKey()), "AES");
+				cache.put(keyId, new CachedKey(retVal, System.currentTimeMillis() + ttlMillis));
+				return retVal;
+			} catch(SQLException ex) {
+				throw new IllegalStateException("Data key " + keyId + " could not be loaded", ex);
+			}
+		});
+	}
+
+	private static final class CachedKey {
+		private final SecretKey key;
+		private final long expires;
+
+		private CachedKey(SecretKey key, long expires) {
+			this.key = key;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,371 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.microsoft.azure.storage.LocationMode;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.SendingRequestEvent;
+import com.microsoft.azure.storage.StorageEvent;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+
+/**
+ * Hedged blob reads for read-access geo-redundant (RA-GRS) storage accounts.
+ *
+ * Download is sent to the primary endpoint, if primary has not answered within the adaptive threshold (p95 of
+ * recent primary latencies) the same GET is sent to the secondary endpoint and the first successful answer wins,
+ * the other request is cancelled by disconnecting its connection. A failed attempt (e.g. secondary not yet
+ * replicated) does not fail the read while the other attempt is running.
+ *
+ * Hedges are limited by budget: every read earns budgetRatio of a hedge (capped at maxBurst), every hedge spends one,
+ * so hedging can not add more than budgetRatio load to the account. Hedging applies only to enabled accounts
+ * with shared key credentials (account name known). Callers governing request rate pass a permit hook which is
+ * run before the secondary GET, a rejected permit fails only the secondary attempt.
+ * @author Sandeep Kumar
+ *
+ */
+public final class HedgedReader {
+
+	private static final Logger LOGGER = LogManager.getLogger(HedgedReader.class);
+
+	private static final int SAMPLE_SIZE = 512;
+	private static final int RECOMPUTE_EVERY = 64;
+	private static final long BUDGET_SCALE = 1000;
+	private static final Runnable NO_PERMIT = () -> { };
+
+	private static final Set<String> ENABLED_ACCOUNTS = ConcurrentHashMap.newKeySet();
+	private static final ConcurrentHashMap<String, LatencyTracker> TRACKERS = new ConcurrentHashMap<>();
+
+	private static volatile double budgetRatio = 0.05;
+	private static volatile int maxBurst = 10;
+	private static volatile long minThresholdNanos = TimeUnit.MILLISECONDS.toNanos(20);
+	private static volatile long initialThresholdNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+	private static final ExecutorService READ_SERVICE = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "hedged-read");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private HedgedReader() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * This method enables hedged reads for the storage account, account must be RA-GRS (secondary readable)
+	 * @param accountName Storage account name
+	 */
+	public static void enable(String accountName) {
+		ENABLED_ACCOUNTS.add(accountName);
+	}
+
+	public static void disable(String accountName) {
+		ENABLED_ACCOUNTS.remove(accountName);
+	}
+
+	/**
+	 * @param budgetRatio Maximum ratio of hedged reads to all reads e.g. 0.05
+	 * @param maxBurst Maximum hedges available at once
+	 */
+	public static void setBudget(double budgetRatio, int maxBurst) {
+		HedgedReader.budgetRatio = budgetRatio;
+		HedgedReader.maxBurst = Math.max(1, maxBurst);
+	}
+
+	/**
+	 * @param minThresholdMillis Hedge is never sent earlier than this, even when p95 is lower
+	 * @param initialThresholdMillis Threshold used until enough latencies are sampled
+	 */
+	public static void setThresholds(long minThresholdMillis, long initialThresholdMillis) {
+		HedgedReader.minThresholdNanos = TimeUnit.MILLISECONDS.toNanos(minThresholdMillis);
+		HedgedReader.initialThresholdNanos = TimeUnit.MILLISECONDS.toNanos(initialThresholdMillis);
+	}
+
+	/**
+	 * This method checks if reads of the container are hedged i.e. account is enabled and has secondary endpoint
+	 * @param container Blob container
+	 * @return Boolean value
+	 */
+	public static boolean isEnabled(CloudBlobContainer container) {
+		if(ENABLED_ACCOUNTS.isEmpty()) {
+			return false;
+		}
+		// SAS credentials have no account name
+		String accountName = container.getServiceClient().getCredentials().getAccountName();
+		return null != accountName && ENABLED_ACCOUNTS.contains(accountName) && null != container.getStorageUri().getSecondaryUri();
+	}
+
+	/**
+	 * @param accountName Storage account name
+	 * @return Current hedge threshold in milliseconds
+	 */
+	public static long getThresholdMillis(String accountName) {
+		return TimeUnit.NANOSECONDS.toMillis(tracker(accountName).threshold());
+	}
+
+	/**
+	 * @param accountName Storage account name
+	 * @return p95 of recent secondary read latencies in milliseconds, -1 until enough latencies are sampled
+	 */
+	public static long getSecondaryLatencyMillis(String accountName) {
+		long p95 = tracker(accountName).secondary.p95;
+		return p95 < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(p95);
+	}
+
+	/**
+	 * @param accountName Storage account name
+	 * @return Number of hedges sent / won by secondary
+	 */
+	public static long[] getHedgeCounts(String accountName) {
+		LatencyTracker tracker = tracker(accountName);
+		return new long[] {tracker.hedges.get(), tracker.secondaryWins.get()};
+	}
+
+	/**
+	 * This method downloads blob with hedging against secondary endpoint
+	 * @param container Blob container
+	 * @param filePath Path of file
+	 * @return Blob reference of the winning attempt (with properties and metadata of download) and content
+	 * @throws StorageException In case both attempts failed, primary exception is thrown
+	 * @throws URISyntaxException In case of invalid file path
+	 */
+	public static HedgedResult download(CloudBlobContainer container, String filePath) throws StorageException, URISyntaxException {
+		return download(container, filePath, NO_PERMIT);
+	}
+
+	/**
+	 * This method downloads blob with hedging against secondary endpoint
+	 * @param container Blob container
+	 * @param filePath Path of file
+	 * @param permit Run before the secondary GET, e.g. to obtain rate governor permit, primary GET is covered by the caller
+	 * @return Blob reference of the winning attempt (with properties and metadata of download) and content
+	 * @throws StorageException In case both attempts failed, primary exception is thrown
+	 * @throws URISyntaxException In case of invalid file path
+	 */
+	public static HedgedResult download(CloudBlobContainer container, String filePath, Runnable permit) throws StorageException, URISyntaxException {
+		LatencyTracker tracker = tracker(container.getServiceClient().getCredentials().getAccountName());
+		CompletableFuture<HedgedResult> winner = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1);
+		AtomicReference<Throwable> primaryFailure = new AtomicReference<>();
+		Attempt primary = new Attempt(container.getBlockBlobReference(filePath), LocationMode.PRIMARY_ONLY);
+		tracker.earn();
+		long start = System.nanoTime();
+		primary.start(winner, pending, primaryFailure, NO_PERMIT, () -> tracker.primary.record(System.nanoTime() - start));
+
+		Attempt secondary = null;
+		try {
+			return cancelLosers(winner.get(tracker.threshold(), TimeUnit.NANOSECONDS), primary, null);
+		}
+		catch(TimeoutException ex) {
+			if(tracker.spend()) {
+				LOGGER.debug("Primary read of {} exceeded {} ms, hedging to secondary", filePath, TimeUnit.NANOSECONDS.toMillis(tracker.threshold()));
+				pending.incrementAndGet();
+				secondary = new Attempt(container.getBlockBlobReference(filePath), LocationMode.SECONDARY_ONLY);
+				long hedged = System.nanoTime();
+				secondary.start(winner, pending, primaryFailure, permit, () -> tracker.secondary.record(System.nanoTime() - hedged));
+			}
+			try {
+				HedgedResult result = winner.get();
+				if(null != secondary && result.getBlob() == secondary.blob) {
+					tracker.secondaryWins.incrementAndGet();
+				}
+				return cancelLosers(result, primary, secondary);
+			}
+			catch(InterruptedException | ExecutionException e) {
+				return failed(e, primary, secondary, primaryFailure);
+			}
+		}
+		catch(InterruptedException | ExecutionException ex) {
+			return failed(ex, primary, secondary, primaryFailure);
+		}
+	}
+
+	private static HedgedResult cancelLosers(HedgedResult result, Attempt primary, Attempt secondary) {
+		primary.cancelUnless(result);
+		if(null != secondary) {
+			secondary.cancelUnless(result);
+		}
+		return result;
+	}
+
+	private static HedgedResult failed(Exception ex, Attempt primary, Attempt secondary, AtomicReference<Throwable> primaryFailure) throws StorageException {
+		primary.cancelUnless(null);
+		if(null != secondary) {
+			secondary.cancelUnless(null);
+		}
+		if(ex instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		Throwable cause = null != primaryFailure.get() ? primaryFailure.get() : ex.getCause();
+		if(cause instanceof StorageException) {
+			throw (StorageException) cause;
+		}
+		throw new StorageException("HedgedReadFailed", String.valueOf(null != cause ? cause.getMessage() : ex.getMessage()), null != cause && cause instanceof Exception ? (Exception) cause : ex);
+	}
+
+	static LatencyTracker tracker(String accountName) {
+		return TRACKERS.computeIfAbsent(accountName, name -> new LatencyTracker());
+	}
+
+	/**
+	 * Single GET against one location, cancellable by disconnecting its connection
+	 */
+	private static class Attempt {
+		private final CloudBlockBlob blob;
+		private final LocationMode locationMode;
+		private final AtomicReference<HttpURLConnection> connection = new AtomicReference<>();
+		private volatile boolean cancelled;
+
+		private Attempt(CloudBlockBlob blob, LocationMode locationMode) {
+			this.blob = blob;
+			this.locationMode = locationMode;
+		}
+
+		private void start(CompletableFuture<HedgedResult> winner, AtomicInteger pending, AtomicReference<Throwable> primaryFailure,
+				Runnable permit, Runnable onDone) {
+			BlobRequestOptions options = new BlobRequestOptions();
+			options.setLocationMode(locationMode);
+			OperationContext operationContext = new OperationContext();
+			operationContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>() {
+				@Override
+				public void eventOccurred(SendingRequestEvent eventArg) {
+					connection.set((HttpURLConnection) eventArg.getConnectionObject());
+					if(cancelled) {
+						connection.get().disconnect();
+					}
+				}
+			});
+			READ_SERVICE.execute(() -> {
+				try {
+					permit.run();
+					if(cancelled) {
+						throw new CancellationException();
+					}
+					ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+					blob.download(outputStream, null, options, operationContext);
+					winner.complete(new HedgedResult(blob, outputStream.toByteArray()));
+				}
+				catch(Exception ex) {
+					if(LocationMode.PRIMARY_ONLY == locationMode) {
+						primaryFailure.set(ex);
+					}
+					if(!cancelled) {
+						LOGGER.debug("{} read of {} failed: {}", locationMode, blob.getName(), ex.getMessage());
+					}
+					if(pending.decrementAndGet() == 0) {
+						winner.completeExceptionally(ex);
+					}
+				}
+				finally {
+					onDone.run();
+				}
+			});
+		}
+
+		private void cancelUnless(HedgedResult result) {
+			if(null != result && result.getBlob() == blob) {
+				return;
+			}
+			cancelled = true;
+			HttpURLConnection current = connection.get();
+			if(null != current) {
+				current.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Recent latencies of one location, p95 is recomputed every RECOMPUTE_EVERY samples
+	 */
+	static class LatencySamples {
+		private final long[] samples = new long[SAMPLE_SIZE];
+		private long count;
+		private volatile long p95 = -1;
+
+		synchronized void record(long latencyNanos) {
+			samples[(int) (count % SAMPLE_SIZE)] = latencyNanos;
+			count++;
+			if(count % RECOMPUTE_EVERY == 0) {
+				long[] copy = Arrays.copyOf(samples, (int) Math.min(count, SAMPLE_SIZE));
+				Arrays.sort(copy);
+				p95 = copy[(int) (copy.length * 0.95)];
+			}
+		}
+	}
+
+	/**
+	 * Recent primary and secondary latencies of an account, hedge threshold is the primary p95, and the hedge budget
+	 */
+	static class LatencyTracker {
+		final LatencySamples primary = new LatencySamples();
+		private final LatencySamples secondary = new LatencySamples();
+		private final AtomicLong budget = new AtomicLong(BUDGET_SCALE);
+		private final AtomicLong hedges = new AtomicLong();
+		private final AtomicLong secondaryWins = new AtomicLong();
+
+		long threshold() {
+			long current = primary.p95;
+			return Math.max(minThresholdNanos, current < 0 ? initialThresholdNanos : current);
+		}
+
+		void earn() {
+			long max = maxBurst * BUDGET_SCALE;
+			long earned = (long) (budgetRatio * BUDGET_SCALE);
+			budget.accumulateAndGet(earned, (current, add) -> Math.min(max, current + add));
+		}
+
+		boolean spend() {
+			while(true) {
+				long current = budget.get();
+				if(current < BUDGET_SCALE) {
+					return false;
+				}
+				if(budget.compareAndSet(current, current - BUDGET_SCALE)) {
+					hedges.incrementAndGet();
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Class to represent the result of hedged read
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class HedgedResult {
+		private final CloudBlockBlob blob;
+		private final byte[] data;
+
+		public HedgedResult(CloudBlockBlob blob, byte[] data) {
+			this.blob = blob;
+			this.data = data;
+		}
+		public CloudBlockBlob getBlob() {
+			return blob;
+		}
+		public byte[] getData() {
+			return data;
+		}
+	}
+}
@@ -1,24 +1,27 @@
 package com.azure.keyvault.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
-import java.util.Calendar;
 import java.util.EnumSet;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.azure.keyvault.utils.BlobCompression.Codec;
+import com.azure.keyvault.utils.HedgedReader.HedgedResult;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.azure.keyvault.utils.RateGovernor.ThrottledException;
+import com.azure.keyvault.utils.SasSigner.SasParameters;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
-import com.microsoft.azure.storage.blob.SharedAccessBlobPolicy;
 
 /**
  * AzureStorageUtils class is responsible handle azure blob operation. 
@@ -42,7 +45,7 @@ public final class M1AzureStorageUtils {
       * @throws URISyntaxException
       */
 	private static CloudBlobClient createCloudBlobClient(String connectionString) throws InvalidKeyException, URISyntaxException {
-		LOGGER.info("Inside AzureStorageUtils:: createCloudBlobClient method");
+		LOGGER.debug("Inside AzureStorageUtils:: createCloudBlobClient method");
 		CloudStorageAccount account = CloudStorageAccount.parse(connectionString);
 		return account.createCloudBlobClient();
 	}
@@ -58,7 +61,7 @@ public final class M1AzureStorageUtils {
 	 * @throws StorageException
 	 */
 	private static CloudBlobContainer getBlobConatiner(String connectionString, String containerName) throws InvalidKeyException, URISyntaxException, StorageException {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method");
 		CloudBlobClient cloudBlobClient = createCloudBlobClient(connectionString);
 		CloudBlobContainer cloudBlobContainer = cloudBlobClient.getContainerReference(containerName);
 		cloudBlobContainer.createIfNotExists();
@@ -75,11 +78,34 @@ public final class M1AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static CloudBlockBlob uploadFile(String connectionString, String containerName, String filePath, byte[] data) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method");
 		try {
 			CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 			CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);			
-			cloudBlockBlob.uploadFromByteArray(data, 0, data.length);
+			Codec codec = BlobCompression.codecFor(containerName, filePath);
+			if(Codec.NONE != codec) {
+				String contentType = BlobCompression.contentType(filePath);
+				if(null != contentType) {
+					cloudBlockBlob.getProperties().setContentType(contentType);
+				}
+				cloudBlockBlob.getProperties().setContentEncoding(codec.getContentEncoding());
+				cloudBlockBlob.getMetadata().put(BlobCompression.ORIGINAL_LENGTH_METADATA, String.valueOf(data.length));
+				if(BlobCompression.isInMemory(data.length)) {
+					BlobIntegrity.upload(cloudBlockBlob, codec.compress(data));
+				}
+				else {
+					Path compressed = BlobCompression.compressToFile(data, codec);
+					try {
+						BlobIntegrity.upload(cloudBlockBlob, compressed.toFile());
+					}
+					finally {
+						Files.deleteIfExists(compressed);
+					}
+				}
+			}
+			else {
+				BlobIntegrity.upload(cloudBlockBlob, data);
+			}
 			return cloudBlockBlob;
 		}
 		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
@@ -90,6 +116,8 @@ public final class M1AzureStorageUtils {
 
 	/**
 	 * downloadFile method is responsible to download file from azure location.
+	 * Download is governed by rate governor like in M3AzureStorageUtils, every request beyond the first one
+	 * (secondary GET of hedged read, further ranges) obtains its own permit.
 	 * @param connectionString
 	 * @param containerName
 	 * @param filePath
@@ -97,17 +125,31 @@ public final class M1AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static byte[] downloadFile(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method");
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method");
 		try {
+			String accountName = M3AzureStorageUtils.accountName(connectionString);
+			Runnable permit = () -> RateGovernor.acquire(accountName, OperationClass.READ);
+			permit.run();
 			CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
-			CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			cloudBlockBlob.download(outputStream);
-			byte[] byteArray =  outputStream.toByteArray();
-			outputStream.close();
+			CloudBlockBlob cloudBlockBlob;
+			byte[] byteArray;
+			if(HedgedReader.isEnabled(cloudBlobContainer)) {
+				HedgedResult result = HedgedReader.download(cloudBlobContainer, filePath, permit);
+				cloudBlockBlob = result.getBlob();
+				byteArray = result.getData();
+				BlobIntegrity.verify(cloudBlockBlob, byteArray);
+			}
+			else {
+				cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
+				byteArray = BlobIntegrity.download(cloudBlockBlob, permit);
+			}
+			int originalLength = BlobCompression.originalLength(cloudBlockBlob.getMetadata());
+			if(originalLength >= 0) {
+				byteArray = Codec.fromContentEncoding(cloudBlockBlob.getProperties().getContentEncoding()).decompress(byteArray, originalLength);
+			}
 			return byteArray;
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while download file from azure location! ", ex);
 			throw new Exception(ex);
 		}
@@ -122,7 +164,7 @@ public final class M1AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static boolean delete(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: delete method");
+		LOGGER.debug("Inside AzureStorageUtils:: delete method");
 		try {
 			CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 			CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
@@ -143,19 +185,27 @@ public final class M1AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static String sasURL(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: sasURL method");
+		return sasURL(connectionString, containerName, filePath, new SasParameters(
+				EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.WRITE, SharedAccessBlobPermissions.LIST), 
+				TimeUnit.HOURS.toMillis(10)));
+	}
+
+	/**
+	 * sasURL method is responsible to generate SAS url with given expiry/permissions/IP/protocol.
+	 * SAS is signed locally, no call is made to azure.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param parameters
+	 * @return String
+	 * @throws RuntimeException
+	 */
+	public static String sasURL(String connectionString, String containerName, String filePath, SasParameters parameters) throws Exception {
+		LOGGER.debug("Inside AzureStorageUtils:: sasURL method");
 		try {
-			CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
-			CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-			SharedAccessBlobPolicy sasPolicy = new SharedAccessBlobPolicy();
-			GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-			calendar.add(Calendar.HOUR, 10);
-			sasPolicy.setSharedAccessExpiryTime(calendar.getTime());
-			sasPolicy.setPermissions(EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.WRITE, SharedAccessBlobPermissions.LIST));
-	        String sas = cloudBlockBlob.generateSharedAccessSignature(sasPolicy,null);
-	        return cloudBlockBlob.getUri()+"?"+sas;
+			return SasSigner.forConnectionString(connectionString).blobURL(containerName, filePath, parameters);
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(IllegalArgumentException ex) {
 			LOGGER.error("Exception occurred while creating sas  url for azure location! ", ex);
 			throw new Exception(ex);
 		}
@@ -2,19 +2,25 @@ package com.azure.keyvault.utils;
 
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.azure.keyvault.utils.BlobCompression.Codec;
+import com.azure.keyvault.utils.BlobIntegrity.IntegrityException;
 import com.microsoft.azure.storage.blob.BlockBlobURL;
 import com.microsoft.azure.storage.blob.ContainerURL;
 import com.microsoft.azure.storage.blob.DownloadResponse;
+import com.microsoft.azure.storage.blob.Metadata;
 import com.microsoft.azure.storage.blob.PipelineOptions;
 import com.microsoft.azure.storage.blob.ServiceURL;
 import com.microsoft.azure.storage.blob.SharedKeyCredentials;
 import com.microsoft.azure.storage.blob.StorageURL;
 import com.microsoft.azure.storage.blob.models.BlobDeleteResponse;
+import com.microsoft.azure.storage.blob.models.BlobHTTPHeaders;
 import com.microsoft.azure.storage.blob.models.BlockBlobUploadResponse;
 import com.microsoft.rest.v2.http.HttpPipeline;
 import com.microsoft.rest.v2.util.FlowableUtil;
@@ -30,69 +36,128 @@ import io.reactivex.Single;
 public class M2AzureStorageUtils {
 	
 	private static final Logger LOGGER = LogManager.getLogger(M2AzureStorageUtils.class);
+
+	private static final String CREDENTIALS_SEPARATOR = "<@#@>";
+	private static final String DEFAULT_ENDPOINT_SUFFIX = "core.windows.net";
 	
 	private M2AzureStorageUtils() {
 	    throw new IllegalStateException("Utility class");
 	}
+
+	/**
+	 * This method parses credentials, either accountName<@#@>accountKey[<@#@>blobEndpoint] or a storage connection string
+	 * with AccountName, AccountKey and optional BlobEndpoint/EndpointSuffix (e.g. emulator or LocalBlobServer)
+	 * @param credentials Input credentials
+	 * @return Account name, account key and blob endpoint, https://{accountName}.blob.core.windows.net by default
+	 */
+	static String[] parseCredentials(String credentials) {
+		if(credentials.contains(CREDENTIALS_SEPARATOR)) {
+			String[] parts = credentials.split(CREDENTIALS_SEPARATOR);
+			String blobEndpoint = parts.length > 2 && !parts[2].isEmpty() ? parts[2]
+					: String.format(Locale.ROOT, "https://%s.blob.%s", parts[0], DEFAULT_ENDPOINT_SUFFIX);
+			return new String[] {parts[0], parts[1], blobEndpoint};
+		}
+		Map<String, String> settings = new HashMap<>();
+		for(String setting : credentials.split(";")) {
+			int index = setting.indexOf('=');
+			if(index > 0) {
+				settings.put(setting.substring(0, index).trim(), setting.substring(index + 1).trim());
+			}
+		}
+		String accountName = settings.get("AccountName");
+		String blobEndpoint = settings.get("BlobEndpoint");
+		if(null == blobEndpoint) {
+			blobEndpoint = String.format(Locale.ROOT, "%s://%s.blob.%s", settings.getOrDefault("DefaultEndpointsProtocol", "https"),
+					accountName, settings.getOrDefault("EndpointSuffix", DEFAULT_ENDPOINT_SUFFIX));
+		}
+		return new String[] {accountName, settings.get("AccountKey"), blobEndpoint};
+	}
 	
 	private static BlockBlobURL getBlobURL(String credentials, String containerName, String filename) throws Exception {
-		LOGGER.info("getBlobURL: Started");
+		LOGGER.debug("getBlobURL: Started");
 		ContainerURL containerURL = null;
 		BlockBlobURL blobURL = null;
-		String accountName = credentials.split("<@#@>")[0];
-		String accountKey = credentials.split("<@#@>")[1];
+		String[] parsed = parseCredentials(credentials);
 		try {
-			SharedKeyCredentials credential = new SharedKeyCredentials(accountName, accountKey);
+			SharedKeyCredentials credential = new SharedKeyCredentials(parsed[0], parsed[1]);
 			HttpPipeline pipeline = StorageURL.createPipeline(credential, new PipelineOptions());
-			URL url = new URL(String.format(Locale.ROOT, "https://%s.blob.core.windows.net", accountName));
-			LOGGER.info("URL >> " + url);
+			URL url = new URL(parsed[2]);
+			LOGGER.debug("URL >> {}", url);
 			ServiceURL serviceURL = new ServiceURL(url, pipeline);
-			LOGGER.info("ServiceURL >> " + serviceURL);
+			LOGGER.debug("ServiceURL >> {}", serviceURL);
 			containerURL = serviceURL.createContainerURL(containerName);
-			LOGGER.info("ContainerURL >> " + containerURL);
+			LOGGER.debug("ContainerURL >> {}", containerURL);
 			blobURL = containerURL.createBlockBlobURL(filename);
-			LOGGER.info("BlobURL >> " + containerURL);
+			LOGGER.debug("BlobURL >> {}", containerURL);
 		} catch (Exception e) {
 			LOGGER.error("getBlobURL", e);
 			throw e;
 		}
-		LOGGER.info("getBlobURL: Started");
+		LOGGER.debug("getBlobURL: Started");
 		return blobURL;
 	}
 	
 	public static boolean uploadFile(String connectionString, String containerName, String filePath, byte[] data) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method start");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method start");
 		BlockBlobURL blobURL = getBlobURL(connectionString, containerName, filePath);
+		Codec codec = BlobCompression.codecFor(containerName, filePath);
+		BlobHTTPHeaders headers = new BlobHTTPHeaders();
+		Metadata metadata = new Metadata();
+		if(Codec.NONE != codec) {
+			headers.withBlobContentEncoding(codec.getContentEncoding())
+					.withBlobContentType(BlobCompression.contentType(filePath));
+			metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, String.valueOf(data.length));
+			data = codec.compress(data);
+		}
+		headers.withBlobContentMD5(BlobIntegrity.checksum(data, metadata));
 		Single<BlockBlobUploadResponse> blobResponse = blobURL.upload(Flowable.just(ByteBuffer.wrap(data)),
-				data.length, null, null, null, null);
+				data.length, headers, metadata, null, null);
 		boolean result = blobResponse.blockingGet().statusCode() == 201; 
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method end");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method end");
 		return result;
 	}
 
 	public static byte[] downloadFile(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method start");
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method start");
 		BlockBlobURL blobURL = getBlobURL(connectionString, containerName, filePath);
-		Single<DownloadResponse> blobResponse = blobURL.download(null, null, false, null);
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method downloaded");
-		Flowable<ByteBuffer> fByteBuffer = blobResponse.blockingGet().body(null);
-		Single<ByteBuffer> bf = FlowableUtil.collectBytesInBuffer(fByteBuffer);
-		byte[] retVal = bf.blockingGet().array();
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method end");
+		DownloadResponse downloadResponse;
+		byte[] retVal;
+		for(int attempt = 0; ; attempt++) {
+			Single<DownloadResponse> blobResponse = blobURL.download(null, null, false, null);
+			LOGGER.debug("Inside AzureStorageUtils:: downloadFile method downloaded");
+			downloadResponse = blobResponse.blockingGet();
+			Flowable<ByteBuffer> fByteBuffer = downloadResponse.body(null);
+			Single<ByteBuffer> bf = FlowableUtil.collectBytesInBuffer(fByteBuffer);
+			retVal = bf.blockingGet().array();
+			try {
+				BlobIntegrity.verify(filePath, downloadResponse.headers().metadata(), downloadResponse.headers().contentMD5(), retVal);
+				break;
+			} catch(IntegrityException ex) {
+				if(attempt >= 1) {
+					throw ex;
+				}
+				LOGGER.warn("Download of {} failed verification, downloading again", filePath);
+			}
+		}
+		int originalLength = BlobCompression.originalLength(downloadResponse.headers().metadata());
+		if(originalLength >= 0) {
+			retVal = Codec.fromContentEncoding(downloadResponse.headers().contentEncoding()).decompress(retVal, originalLength);
+		}
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method end");
 		return retVal;
 	}
 
 	public static boolean delete(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: delete method start");
+		LOGGER.debug("Inside AzureStorageUtils:: delete method start");
 		BlockBlobURL blobURL = getBlobURL(connectionString, containerName, filePath);
 		Single<BlobDeleteResponse> blobResponse = blobURL.delete(null, null, null);
 		boolean retVal = blobResponse.blockingGet().statusCode() == 201;
-		LOGGER.info("Inside AzureStorageUtils:: delete method end");
+		LOGGER.debug("Inside AzureStorageUtils:: delete method end");
 		return retVal;
 	}
 	
 	public static String sasURL(String connectionString, String containerName, String filePath) throws Exception {
-		LOGGER.info("Inside AzureStorageUtils:: sasURL method start");
+		LOGGER.debug("Inside AzureStorageUtils:: sasURL method start");
 		BlockBlobURL blobURL = getBlobURL(connectionString, containerName, filePath);
 		return blobURL.toURL().toString();
 	}
@@ -1,36 +1,57 @@
 package com.azure.keyvault.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidKeyException;
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.EnumSet;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.azure.keyvault.utils.AuditTrail.Action;
+import com.azure.keyvault.utils.AuditTrail.Outcome;
+import com.azure.keyvault.utils.BlobCompression.Codec;
+import com.azure.keyvault.utils.BlobIntegrity.VerifyingInputStream;
+import com.azure.keyvault.utils.HedgedReader.HedgedResult;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.azure.keyvault.utils.RateGovernor.ThrottledException;
+import com.azure.keyvault.utils.SasSigner.SasParameters;
 import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
+import com.microsoft.azure.storage.blob.CloudBlob;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlobDirectory;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.ListBlobItem;
 import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
-import com.microsoft.azure.storage.blob.SharedAccessBlobPolicy;
 
 /**
  * AzureStorageUtils class is responsible handle azure blob operation. 
@@ -44,6 +65,9 @@ public final class M3AzureStorageUtils {
 
 	private static final String LOCAL = "LOCAL";
 	private static final String SEPARATOR = "/";
+	private static final String SHA256_METADATA = "contentsha256";
+	static final String METADATA_SIDECAR_SUFFIX = ".blobmetadata";
+	static final String APPEND_LENGTH_SIDECAR_SUFFIX = ".appendlength";
 
 	private M3AzureStorageUtils() {
 	    throw new IllegalStateException("Utility class");
@@ -70,7 +94,7 @@ public final class M3AzureStorageUtils {
 	 * @param connectionString Input Connection path
 	 * @return Boolean value
 	 */
-	private static boolean isLocal(String connectionString) {
+	static boolean isLocal(String connectionString) {
 		return null != connectionString && connectionString.startsWith(LOCAL); 
 	}
 	
@@ -101,7 +125,7 @@ public final class M3AzureStorageUtils {
       * @throws URISyntaxException
       */
 	private static CloudBlobClient createCloudBlobClient(String connectionString) throws InvalidKeyException, URISyntaxException {
-		LOGGER.info("Inside AzureStorageUtils:: createCloudBlobClient method");
+		LOGGER.debug("Inside AzureStorageUtils:: createCloudBlobClient method");
 		
 		CloudStorageAccount account = CloudStorageAccount.parse(connectionString);
 		return account.createCloudBlobClient();
@@ -116,14 +140,53 @@ public final class M3AzureStorageUtils {
 	 * @throws URISyntaxException
 	 * @throws StorageException
 	 */
-	private static CloudBlobContainer getBlobConatiner(String connectionString, String containerName) throws InvalidKeyException, URISyntaxException, StorageException {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+	static CloudBlobContainer getBlobConatiner(String connectionString, String containerName) throws InvalidKeyException, URISyntaxException, StorageException {
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method");
 		
 		CloudBlobClient cloudBlobClient = createCloudBlobClient(connectionString);
 		CloudBlobContainer cloudBlobContainer = cloudBlobClient.getContainerReference(containerName);
 		cloudBlobContainer.createIfNotExists();
 		return cloudBlobContainer;
 	}
+
+	/**
+	 * This method obtains rate governor permit for the storage account of the connection string. Operation obtains
+	 * its permit before resolving the container, as that is a request too (create if not exists), and a permit
+	 * for every further page, block or range request.
+	 * @param connectionString Azure connection string
+	 * @param operationClass Operation class of the request
+	 */
+	private static void governed(String connectionString, OperationClass operationClass) {
+		RateGovernor.acquire(accountName(connectionString), operationClass);
+	}
+
+	/**
+	 * This method records access into audit trail, resource is the storage account or local path
+	 */
+	private static void audit(Action action, String connectionString, String containerName, String filePath, Outcome outcome, long start, long bytes) {
+		if(AuditTrail.isEnabled()) {
+			AuditTrail.record(action, isLocal(connectionString) ? getLocalPath(connectionString) : accountName(connectionString), 
+					containerName + SEPARATOR + filePath, outcome, start, bytes);
+		}
+	}
+
+	/**
+	 * This method will return the storage account name from the passed connection string
+	 * @param connectionString Input Connection String
+	 * @return Account name, devstoreaccount1 for development storage
+	 */
+	static String accountName(String connectionString) {
+		for(String part : connectionString.split(";")) {
+			String setting = part.trim();
+			if(setting.startsWith("AccountName=")) {
+				return setting.substring("AccountName=".length());
+			}
+			if(setting.equalsIgnoreCase("UseDevelopmentStorage=true")) {
+				return "devstoreaccount1";
+			}
+		}
+		return connectionString;
+	}
 	
 	/**
 	 * uploadFile method is responsible to upload file on azure location.
@@ -135,7 +198,9 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static CloudBlockBlob uploadFile(String connectionString, String containerName, String filePath, byte[] data) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+		LOGGER.debug("Inside AzureStorageUtils:: uploadFile method");
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.FAILED;
 		try {
 			if(isLocal(connectionString)) {
 				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
@@ -146,19 +211,232 @@ public final class M3AzureStorageUtils {
 				FileOutputStream fos = new FileOutputStream(finalPath);
 				fos.write(data);
 				fos.close();
+				outcome = Outcome.OK;
 				return null;
 			}
 			else {
+				governed(connectionString, OperationClass.WRITE);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-				cloudBlockBlob.uploadFromByteArray(data, 0, data.length);
+				Codec codec = BlobCompression.codecFor(containerName, filePath);
+				Runnable permit = () -> governed(connectionString, OperationClass.WRITE);
+				if(Codec.NONE != codec) {
+					uploadCompressed(cloudBlockBlob, filePath, data, codec, permit);
+				}
+				else {
+					BlobIntegrity.upload(cloudBlockBlob, data, permit);
+				}
+				outcome = Outcome.OK;
 				return cloudBlockBlob;
 			}
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while upload file on azure location! ", ex);
 			throw new AzureException(ex);
 		}
+		finally {
+			audit(Action.BLOB_UPLOAD, connectionString, containerName, filePath, outcome, start, data.length);
+		}
+	}
+
+	/**
+	 * This method compresses content with the codec and uploads the compressed content through BlobIntegrity, so that
+	 * checksums cover the stored bytes. Content-Encoding and original length metadata are committed together with the blob.
+	 * Content beyond the in-memory limit of BlobCompression is compressed into a temporary file and uploaded from it.
+	 * @param cloudBlockBlob Target blob
+	 * @param filePath Path of file used to set content type
+	 * @param data Uncompressed content
+	 * @param codec Codec to compress with
+	 * @param permit Run before every block upload, e.g. to obtain rate governor permit
+	 * @throws StorageException In case of StorageException
+	 * @throws IOException In case of IOException
+	 */
+	private static void uploadCompressed(CloudBlockBlob cloudBlockBlob, String filePath, byte[] data, Codec codec, Runnable permit) throws StorageException, IOException {
+		String contentType = BlobCompression.contentType(filePath);
+		if(null != contentType) {
+			cloudBlockBlob.getProperties().setContentType(contentType);
+		}
+		cloudBlockBlob.getProperties().setContentEncoding(codec.getContentEncoding());
+		cloudBlockBlob.getMetadata().put(BlobCompression.ORIGINAL_LENGTH_METADATA, String.valueOf(data.length));
+		if(BlobCompression.isInMemory(data.length)) {
+			BlobIntegrity.upload(cloudBlockBlob, codec.compress(data), permit);
+			return;
+		}
+		Path compressed = BlobCompression.compressToFile(data, codec);
+		try {
+			BlobIntegrity.upload(cloudBlockBlob, compressed.toFile(), permit);
+		}
+		finally {
+			Files.deleteIfExists(compressed);
+		}
+	}
+
+	/**
+	 * This method decompresses downloaded content if it was compressed by the compression stage,
+	 * properties and metadata are populated by the download response
+	 * @param cloudBlockBlob Downloaded blob
+	 * @param data Downloaded content
+	 * @return Uncompressed content
+	 * @throws IOException In case of IOException
+	 */
+	private static byte[] decompress(CloudBlockBlob cloudBlockBlob, byte[] data) throws IOException {
+		return BlobCompression.storedCodec(cloudBlockBlob.getMetadata(), cloudBlockBlob.getProperties().getContentEncoding())
+				.decompress(data, BlobCompression.originalLength(cloudBlockBlob.getMetadata()));
+	}
+
+	/**
+	 * uploadFileDeduplicated method is responsible to upload file on azure location only if the same content is not stored already.
+	 * Stored content is identified by size and SHA-256 (blob metadata) or Content-MD5 (blob property).
+	 * In content addressed mode filePath is used as prefix and content is stored at filePath + SHA-256 hex.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param data
+	 * @param contentAddressed
+	 * @return UploadResult
+	 * @throws RuntimeException
+	 */
+	public static UploadResult uploadFileDeduplicated(String connectionString, String containerName, String filePath, byte[] data, boolean contentAddressed) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: uploadFileDeduplicated method");
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.FAILED;
+		ContentDigest digest = ContentDigest.of(data);
+		String targetPath = contentAddressed ? filePath + digest.getSha256Hex() : filePath;
+		try {
+			if(isLocal(connectionString)) {
+				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + targetPath;
+				if(isSameLocalContent(finalPath, digest)) {
+					outcome = Outcome.SKIPPED;
+					return new UploadResult(targetPath, digest, false);
+				}
+				File tempFile = new File(finalPath);
+				if(!tempFile.getParentFile().exists()) {
+					tempFile.getParentFile().mkdirs();
+				}
+				Files.write(tempFile.toPath(), data);
+				outcome = Outcome.OK;
+				return new UploadResult(targetPath, digest, true);
+			}
+			else {
+				governed(connectionString, OperationClass.READ);
+				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
+				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(targetPath);
+				if(isSameContent(cloudBlockBlob, digest)) {
+					outcome = Outcome.SKIPPED;
+					return new UploadResult(targetPath, digest, false);
+				}
+				governed(connectionString, OperationClass.WRITE);
+				// fresh reference, properties and metadata loaded from the stored blob must not be committed again
+				cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(targetPath);
+				cloudBlockBlob.getMetadata().put(SHA256_METADATA, digest.getSha256Hex());
+				BlobIntegrity.upload(cloudBlockBlob, data, () -> governed(connectionString, OperationClass.WRITE));
+				outcome = Outcome.OK;
+				return new UploadResult(targetPath, digest, true);
+			}
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			LOGGER.error("Exception occurred while upload file on azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		finally {
+			audit(Action.BLOB_UPLOAD, connectionString, containerName, targetPath, outcome, start, Outcome.SKIPPED == outcome ? 0 : data.length);
+		}
+	}
+
+	/**
+	 * uploadFileDeduplicated method is responsible to upload local file on azure location only if the same content is not stored already.
+	 * Local file is hashed in a single streaming pass and uploaded through BlobIntegrity only when content differs.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param localFile
+	 * @param contentAddressed
+	 * @return UploadResult
+	 * @throws RuntimeException
+	 */
+	public static UploadResult uploadFileDeduplicated(String connectionString, String containerName, String filePath, File localFile, boolean contentAddressed) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: uploadFileDeduplicated method");
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.FAILED;
+		String targetPath = filePath;
+		try {
+			ContentDigest digest;
+			try(FileInputStream fis = new FileInputStream(localFile)) {
+				digest = ContentDigest.of(fis);
+			}
+			targetPath = contentAddressed ? filePath + digest.getSha256Hex() : filePath;
+			if(isLocal(connectionString)) {
+				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + targetPath;
+				if(isSameLocalContent(finalPath, digest)) {
+					outcome = Outcome.SKIPPED;
+					return new UploadResult(targetPath, digest, false);
+				}
+				File tempFile = new File(finalPath);
+				if(!tempFile.getParentFile().exists()) {
+					tempFile.getParentFile().mkdirs();
+				}
+				Files.copy(localFile.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				outcome = Outcome.OK;
+				return new UploadResult(targetPath, digest, true);
+			}
+			else {
+				governed(connectionString, OperationClass.READ);
+				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
+				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(targetPath);
+				if(isSameContent(cloudBlockBlob, digest)) {
+					outcome = Outcome.SKIPPED;
+					return new UploadResult(targetPath, digest, false);
+				}
+				governed(connectionString, OperationClass.WRITE);
+				// fresh reference, properties and metadata (e.g. contentcrc64) loaded from the stored blob must not be committed again
+				cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(targetPath);
+				cloudBlockBlob.getMetadata().put(SHA256_METADATA, digest.getSha256Hex());
+				BlobIntegrity.upload(cloudBlockBlob, localFile, () -> governed(connectionString, OperationClass.WRITE));
+				outcome = Outcome.OK;
+				return new UploadResult(targetPath, digest, true);
+			}
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			LOGGER.error("Exception occurred while upload file on azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		finally {
+			audit(Action.BLOB_UPLOAD, connectionString, containerName, targetPath, outcome, start, Outcome.SKIPPED == outcome ? 0 : localFile.length());
+		}
+	}
+
+	/**
+	 * This method checks if the blob already has the given content, by single properties request
+	 * @param cloudBlockBlob Target blob
+	 * @param digest Digest of content to upload
+	 * @return True if blob exists with same content
+	 * @throws StorageException In case of StorageException other than not found
+	 */
+	private static boolean isSameContent(CloudBlockBlob cloudBlockBlob, ContentDigest digest) throws StorageException {
+		try {
+			cloudBlockBlob.downloadAttributes();
+		}
+		catch(StorageException ex) {
+			if(ex.getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+				return false;
+			}
+			throw ex;
+		}
+		if(cloudBlockBlob.getProperties().getLength() != digest.getLength()) {
+			return false;
+		}
+		String sha256 = cloudBlockBlob.getMetadata().get(SHA256_METADATA);
+		return null != sha256 ? sha256.equals(digest.getSha256Hex()) : digest.getMd5Base64().equals(cloudBlockBlob.getProperties().getContentMD5());
+	}
+
+	private static boolean isSameLocalContent(String finalPath, ContentDigest digest) throws IOException {
+		File target = new File(finalPath);
+		if(!target.isFile() || target.length() != digest.getLength()) {
+			return false;
+		}
+		try(FileInputStream fis = new FileInputStream(target)) {
+			return ContentDigest.of(fis).getSha256Hex().equals(digest.getSha256Hex());
+		}
 	}
 
 	/**
@@ -172,12 +450,15 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static CloudBlockBlob uploadMetadata(String connectionString, String containerName, String filePath, HashMap<String, String> metadata) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method");
 		try {
 			if(isLocal(connectionString)) {
-				throw new IllegalArgumentException();
+				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
+				writeLocalMetadata(finalPath, metadata);
+				return null;
 			}
 			else {
+				governed(connectionString, OperationClass.WRITE);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 				final CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
 				metadata.entrySet().stream().forEach(entry -> 
@@ -187,7 +468,7 @@ public final class M3AzureStorageUtils {
 				return cloudBlockBlob;
 			}
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while upload file on azure location! ", ex);
 			throw new AzureException(ex);
 		}
@@ -205,26 +486,98 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static byte[] downloadFile(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method");
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method");
+		long start = System.nanoTime();
+		byte[] retVal = null;
+		Outcome outcome = Outcome.FAILED;
 		try {
 			if(isLocal(connectionString)) {
 				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
-				return readFileFromFilePath(finalPath);
+				retVal = readFileFromFilePath(finalPath);
 			}
 			else {
+				governed(connectionString, OperationClass.READ);
+				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
+				if(HedgedReader.isEnabled(cloudBlobContainer)) {
+					HedgedResult result = HedgedReader.download(cloudBlobContainer, filePath, () -> governed(connectionString, OperationClass.READ));
+					BlobIntegrity.verify(result.getBlob(), result.getData());
+					retVal = decompress(result.getBlob(), result.getData());
+				}
+				else {
+					CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
+					retVal = decompress(cloudBlockBlob, BlobIntegrity.download(cloudBlockBlob, () -> governed(connectionString, OperationClass.READ)));
+				}
+			}
+			outcome = Outcome.OK;
+			return retVal;
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			if(ex instanceof StorageException && ((StorageException) ex).getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND
+					|| ex instanceof FileNotFoundException) {
+				outcome = Outcome.NOT_FOUND;
+			}
+			LOGGER.error("Exception occurred while download file from azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		finally {
+			audit(Action.BLOB_DOWNLOAD, connectionString, containerName, filePath, outcome, start, null != retVal ? retVal.length : 0);
+		}
+	}
+
+	/**
+	 * downloadFile method is responsible to stream file from azure location into the output stream.
+	 * Content compressed by the compression stage is decompressed while streaming, so neither compressed
+	 * nor original content is held in memory as a whole. Output stream is not closed.
+	 * Stored content is verified against contentcrc64 once it is read to the end, a mismatch fails the download
+	 * after the content was written.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param outputStream Target of the original content
+	 * @return Number of bytes written
+	 * @throws AzureException
+	 */
+	public static long downloadFile(String connectionString, String containerName, String filePath, OutputStream outputStream) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method");
+		long start = System.nanoTime();
+		long written = 0;
+		Outcome outcome = Outcome.FAILED;
+		try {
+			if(isLocal(connectionString)) {
+				written = Files.copy(Paths.get(getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath), outputStream);
+			}
+			else {
+				governed(connectionString, OperationClass.READ);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-				cloudBlockBlob.download(outputStream);
-				byte[] byteArray =  outputStream.toByteArray();
-				outputStream.close();
-				return byteArray;
+				// opening the stream loads properties and metadata of the blob
+				InputStream storedStream = cloudBlockBlob.openInputStream();
+				try(VerifyingInputStream blobStream = new VerifyingInputStream(filePath, cloudBlockBlob.getMetadata(), storedStream);
+						InputStream inputStream = BlobCompression.storedCodec(cloudBlockBlob.getMetadata(), 
+								cloudBlockBlob.getProperties().getContentEncoding()).decompress(blobStream)) {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while((read = inputStream.read(buffer)) != -1) {
+						outputStream.write(buffer, 0, read);
+						written += read;
+					}
+					blobStream.verifyRemaining();
+				}
 			}
+			outcome = Outcome.OK;
+			return written;
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			if(ex instanceof StorageException && ((StorageException) ex).getHttpStatusCode() == HttpURLConnection.HTTP_NOT_FOUND
+					|| ex instanceof NoSuchFileException) {
+				outcome = Outcome.NOT_FOUND;
+			}
 			LOGGER.error("Exception occurred while download file from azure location! ", ex);
 			throw new AzureException(ex);
 		}
+		finally {
+			audit(Action.BLOB_DOWNLOAD, connectionString, containerName, filePath, outcome, start, written);
+		}
 	}
 
 	/**
@@ -236,18 +589,21 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static Map<String, String> downloadMetadata(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: downloadFile method");
+		LOGGER.debug("Inside AzureStorageUtils:: downloadFile method");
 		try {
 			if(isLocal(connectionString)) {
-				throw new IllegalArgumentException();
+				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
+				return readLocalMetadata(finalPath);
 			}
 			else {
+				governed(connectionString, OperationClass.READ);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
+				cloudBlockBlob.downloadAttributes();
 				return cloudBlockBlob.getMetadata();
 			}
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while download file from azure location! ", ex);
 			throw new AzureException(ex);
 		}
@@ -263,28 +619,36 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static boolean delete(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: delete method");
+		LOGGER.debug("Inside AzureStorageUtils:: delete method");
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.FAILED;
 		try {
+			boolean retVal = false;
 			if(isLocal(connectionString)) {
 				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
 				File localFile = new File(finalPath);
-				boolean retVal = false;
 				if(localFile.exists()) {
 					localFile.delete();
 					retVal = true;
 				}
-				return retVal;
+				new File(finalPath + METADATA_SIDECAR_SUFFIX).delete();
 			}
 			else {
+				governed(connectionString, OperationClass.WRITE);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
 				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-				return cloudBlockBlob.deleteIfExists();
+				retVal = cloudBlockBlob.deleteIfExists();
 			}
+			outcome = retVal ? Outcome.OK : Outcome.NOT_FOUND;
+			return retVal;
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while delete file from azure location! ", ex);
 			throw new AzureException(ex);
 		}
+		finally {
+			audit(Action.BLOB_DELETE, connectionString, containerName, filePath, outcome, start, 0);
+		}
 	}
 	
 	/**
@@ -296,42 +660,90 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static String sasURL(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: sasURL method");
+		return sasURL(connectionString, containerName, filePath, new SasParameters(
+				EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.WRITE, SharedAccessBlobPermissions.LIST), 
+				TimeUnit.MINUTES.toMillis(30)));
+	}
+
+	/**
+	 * sasURL method is responsible to generate SAS url with given expiry/permissions/IP/protocol.
+	 * SAS is signed locally, no call is made to azure.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param parameters
+	 * @return String
+	 * @throws RuntimeException
+	 */
+	public static String sasURL(String connectionString, String containerName, String filePath, SasParameters parameters) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: sasURL method");
+		long start = System.nanoTime();
+		if(isLocal(connectionString)) {
+			String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
+			audit(Action.SAS_ISSUE, connectionString, containerName, filePath, Outcome.OK, start, 0);
+			return getLocalBaseURL(connectionString) + "?filepath=" + finalPath;
+		}
 		try {
-			if(isLocal(connectionString)) {
-				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
-				return getLocalBaseURL(connectionString) + "?filepath=" + finalPath;
-			}
-			else {
-				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
-				CloudBlockBlob cloudBlockBlob = cloudBlobContainer.getBlockBlobReference(filePath);
-				SharedAccessBlobPolicy sasPolicy = new SharedAccessBlobPolicy();
-				GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-				calendar.add(Calendar.MINUTE, 30);
-				sasPolicy.setSharedAccessExpiryTime(calendar.getTime());
-				sasPolicy.setPermissions(EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.WRITE, SharedAccessBlobPermissions.LIST));
-		        String sas = cloudBlockBlob.generateSharedAccessSignature(sasPolicy,null);
-		        return cloudBlockBlob.getUri()+"?"+sas;
-			}
+			String retVal = SasSigner.forConnectionString(connectionString).blobURL(containerName, filePath, parameters);
+			audit(Action.SAS_ISSUE, connectionString, containerName, filePath, Outcome.OK, start, 0);
+			return retVal;
+		}
+		catch(IllegalArgumentException ex) {
+			audit(Action.SAS_ISSUE, connectionString, containerName, filePath, Outcome.FAILED, start, 0);
+			LOGGER.error("Exception occurred while creating sas  url for azure location! ", ex);
+			throw new AzureException(ex);
+		}
+	}
+
+	/**
+	 * sasURLs method is responsible to generate SAS urls for multiple files of a container in one call.
+	 * SAS is signed locally, no call is made to azure.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePaths
+	 * @param parameters
+	 * @return List<String> in the order of filePaths
+	 * @throws RuntimeException
+	 */
+	public static List<String> sasURLs(String connectionString, String containerName, List<String> filePaths, SasParameters parameters) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: sasURLs method");
+		if(isLocal(connectionString)) {
+			String localContainerPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR;
+			return filePaths.stream().map(filePath -> getLocalBaseURL(connectionString) + "?filepath=" + localContainerPath + filePath).collect(Collectors.toList());
+		}
+		try {
+			return SasSigner.forConnectionString(connectionString).blobURLs(containerName, filePaths, parameters);
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(IllegalArgumentException ex) {
 			LOGGER.error("Exception occurred while creating sas  url for azure location! ", ex);
 			throw new AzureException(ex);
 		}
 	}
 	
 	/**
-	 * This method takes file path as input, read file and give response in byte array
+	 * This method takes file path as input, read file and give response in byte array.
+	 * File is read until its end, a file changing length while read fails instead of returning partial content.
 	 * @param file Input File path
 	 * @return Byte array
 	 * @throws IOException In case of IOException
 	 */
 	public static byte[] readFileFromFilePath(String file) throws IOException {
-		FileInputStream fis = new FileInputStream(file);
-		byte[] data = new byte[fis.available()];
-		fis.read(data);
-		fis.close();
-		return data;
+		try(FileInputStream fis = new FileInputStream(file)) {
+			long length = fis.getChannel().size();
+			if(length > Integer.MAX_VALUE - 8) {
+				throw new IOException("File " + file + " of " + length + " bytes does not fit into byte array");
+			}
+			byte[] data = new byte[(int) length];
+			int offset = 0;
+			int read;
+			while(offset < data.length && (read = fis.read(data, offset, data.length - offset)) != -1) {
+				offset += read;
+			}
+			if(offset != data.length || fis.read() != -1) {
+				throw new IOException("File " + file + " changed while reading, read " + offset + " of " + length + " bytes");
+			}
+			return data;
+		}
 	}
 	
 	/**
@@ -365,6 +777,45 @@ public final class M3AzureStorageUtils {
 		}
 	}
 
+	/**
+	 * Class to represent the files with properties and metadata obtained by listing
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class BlobDetails extends FileDetails {
+		private long size;
+		private Date lastModified;
+		private Map<String, String> metadata;
+
+		public BlobDetails() {
+			super();
+		}
+		public BlobDetails(String container, String filePath, long size, Date lastModified, Map<String, String> metadata) {
+			super(container, filePath);
+			this.size = size;
+			this.lastModified = lastModified;
+			this.metadata = metadata;
+		}
+		public long getSize() {
+			return size;
+		}
+		public void setSize(long size) {
+			this.size = size;
+		}
+		public Date getLastModified() {
+			return lastModified;
+		}
+		public void setLastModified(Date lastModified) {
+			this.lastModified = lastModified;
+		}
+		public Map<String, String> getMetadata() {
+			return metadata;
+		}
+		public void setMetadata(Map<String, String> metadata) {
+			this.metadata = metadata;
+		}
+	}
+
 	/**
 	 * List all the files/directories from given path.
 	 * @param connectionString
@@ -374,7 +825,7 @@ public final class M3AzureStorageUtils {
 	 * @throws RuntimeException
 	 */
 	public static List<FileDetails> listFiles(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: getBlobConatiner method");
+		LOGGER.debug("Inside AzureStorageUtils:: getBlobConatiner method");
 		List<FileDetails> fileList = null;
 		try {
 			if(isLocal(connectionString)) {
@@ -382,7 +833,7 @@ public final class M3AzureStorageUtils {
 				String finalPath = localContainderPath + SEPARATOR + filePath;
 				File tempFile = new File(finalPath);
 				if(tempFile.exists()) {
-					fileList = Stream.of(tempFile.listFiles()).map(tmp -> {
+					fileList = Stream.of(tempFile.listFiles()).filter(tmp -> !isMetadataSidecar(tmp.getName())).map(tmp -> {
 						FileDetails fileDetails = new FileDetails();
 						fileDetails.setContainer(containerName);
 						fileDetails.setFilePath(tmp.getAbsolutePath().replace("\\", "/").replace(localContainderPath, ""));
@@ -391,13 +842,15 @@ public final class M3AzureStorageUtils {
 				}
 			}
 			else {
+				governed(connectionString, OperationClass.LIST);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
-				Iterable<ListBlobItem> it = cloudBlobContainer.listBlobs(filePath, false);
-				fileList = StreamSupport.stream(it.spliterator(), false).map(mapToFileDetailsAzure).collect(Collectors.toList());
+				List<ListBlobItem> items = new ArrayList<>();
+				listPages(connectionString, cloudBlobContainer, filePath, false, EnumSet.noneOf(BlobListingDetails.class), items::add);
+				fileList = items.stream().map(mapToFileDetailsAzure).collect(Collectors.toList());
 				fileList.parallelStream().forEach(tmp -> tmp.setContainer(containerName));
 			}
 		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+		catch(InvalidKeyException | URISyntaxException | StorageException | ThrottledException ex) {
 			LOGGER.error("Exception occurred while upload file on azure location! ", ex);
 			throw new AzureException(ex);
 		}
@@ -406,44 +859,246 @@ public final class M3AzureStorageUtils {
 	
 
 	/**
-	 * sasURL method is responsible to generate SAS url for Directory.
+	 * List all the files under given prefix (recursively) with metadata, size and last modified in a single paged pass,
+	 * i.e. one request per listing page instead of one request per file.
 	 * @param connectionString
 	 * @param containerName
-	 * @param filePath
-	 * @return String
+	 * @param prefix
+	 * @return List<BlobDetails>
 	 * @throws RuntimeException
 	 */
-	public static String sasDirectoryURL(String connectionString, String containerName, String filePath) throws AzureException {
-		LOGGER.info("Inside AzureStorageUtils:: sasURL method");
+	public static List<BlobDetails> listFilesWithMetadata(String connectionString, String containerName, String prefix) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: listFilesWithMetadata method");
+		List<BlobDetails> fileList = new ArrayList<>();
 		try {
 			if(isLocal(connectionString)) {
-				String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
-				return getLocalBaseURL(connectionString) + "?filepath=" + finalPath;
+				Path localContainerPath = Paths.get(getLocalPath(connectionString), containerName);
+				Path root = localContainerPath.resolve(null != prefix ? prefix : "");
+				if(Files.isDirectory(root)) {
+					try(Stream<Path> files = Files.walk(root)) {
+						Iterator<Path> iterator = files.filter(Files::isRegularFile).filter(tmp -> !isMetadataSidecar(tmp.getFileName().toString())).iterator();
+						while(iterator.hasNext()) {
+							Path file = iterator.next();
+							fileList.add(new BlobDetails(containerName,
+									localContainerPath.relativize(file).toString().replace("\\", SEPARATOR),
+									Files.size(file),
+									new Date(Files.getLastModifiedTime(file).toMillis()),
+									readLocalMetadata(file.toString())));
+						}
+					}
+				}
 			}
 			else {
+				governed(connectionString, OperationClass.LIST);
 				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
-				SharedAccessBlobPolicy sasPolicy = new SharedAccessBlobPolicy();
-				GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-				calendar.add(Calendar.MINUTE, 30);
-				sasPolicy.setSharedAccessExpiryTime(calendar.getTime());
-				sasPolicy.setPermissions(EnumSet.of(
-						SharedAccessBlobPermissions.READ,
-						SharedAccessBlobPermissions.ADD,
-						SharedAccessBlobPermissions.CREATE,
-						SharedAccessBlobPermissions.WRITE, 
-						SharedAccessBlobPermissions.DELETE,
-						SharedAccessBlobPermissions.LIST
-						));
-		        String sas = cloudBlobContainer.generateSharedAccessSignature(sasPolicy,null);
-		        return cloudBlobContainer.getUri()+"?"+sas;
-			}
-		}
-		catch(InvalidKeyException | URISyntaxException | StorageException ex) {
+				listPages(connectionString, cloudBlobContainer, prefix, true, EnumSet.of(BlobListingDetails.METADATA), item -> {
+					if(item instanceof CloudBlob) {
+						CloudBlob blob = (CloudBlob) item;
+						fileList.add(new BlobDetails(containerName, blob.getName(),
+								blob.getProperties().getLength(), blob.getProperties().getLastModified(), blob.getMetadata()));
+					}
+				});
+			}
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			LOGGER.error("Exception occurred while listing files from azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		return fileList;
+	}
+
+	/**
+	 * List all the files under given prefix (recursively) into CompactListing, for containers with millions of files
+	 * where a List<FileDetails> would need gigabytes of heap. Listing is streamed page by page into the compact form.
+	 * @param connectionString
+	 * @param containerName
+	 * @param prefix
+	 * @return CompactListing
+	 * @throws RuntimeException
+	 */
+	public static CompactListing listFilesCompact(String connectionString, String containerName, String prefix) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: listFilesCompact method");
+		CompactListing.Builder builder = CompactListing.builder(containerName);
+		try {
+			if(isLocal(connectionString)) {
+				Path localContainerPath = Paths.get(getLocalPath(connectionString), containerName);
+				Path root = localContainerPath.resolve(null != prefix ? prefix : "");
+				if(Files.isDirectory(root)) {
+					try(Stream<Path> files = Files.walk(root)) {
+						Iterator<Path> iterator = files.filter(Files::isRegularFile).filter(tmp -> !isMetadataSidecar(tmp.getFileName().toString())).sorted().iterator();
+						while(iterator.hasNext()) {
+							Path file = iterator.next();
+							builder.add(localContainerPath.relativize(file).toString().replace("\\", SEPARATOR),
+									Files.size(file), Files.getLastModifiedTime(file).toMillis());
+						}
+					}
+				}
+			}
+			else {
+				governed(connectionString, OperationClass.LIST);
+				CloudBlobContainer cloudBlobContainer = getBlobConatiner(connectionString, containerName);
+				listPages(connectionString, cloudBlobContainer, prefix, true, EnumSet.noneOf(BlobListingDetails.class), item -> {
+					if(item instanceof CloudBlob) {
+						CloudBlob blob = (CloudBlob) item;
+						Date lastModified = blob.getProperties().getLastModified();
+						builder.add(blob.getName(), blob.getProperties().getLength(), null != lastModified ? lastModified.getTime() : CompactListing.UNKNOWN);
+					}
+				});
+			}
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException | ThrottledException ex) {
+			LOGGER.error("Exception occurred while listing files from azure location! ", ex);
+			throw new AzureException(ex);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * This method lists the container page by page, permit of the operation covers the first page and
+	 * a permit is obtained before every further page request
+	 * @param connectionString Azure connection string
+	 * @param container Blob container
+	 * @param prefix Prefix of blob names
+	 * @param flat Flat (recursive) listing
+	 * @param details Listing details
+	 * @param consumer Consumer of listed items
+	 * @throws StorageException In case of StorageException
+	 */
+	private static void listPages(String connectionString, CloudBlobContainer container, String prefix, boolean flat,
+			EnumSet<BlobListingDetails> details, Consumer<ListBlobItem> consumer) throws StorageException {
+		ResultContinuation token = null;
+		do {
+			if(null != token) {
+				governed(connectionString, OperationClass.LIST);
+			}
+			ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(prefix, flat, details, null, token, null, null);
+			segment.getResults().forEach(consumer);
+			token = segment.getHasMoreResults() ? segment.getContinuationToken() : null;
+		} while(null != token);
+	}
+
+	/**
+	 * This method checks if the local file is a sidecar of LOCAL backend (metadata or length of an append blob being written)
+	 * @param fileName Name of file
+	 * @return Boolean value
+	 */
+	static boolean isMetadataSidecar(String fileName) {
+		return fileName.endsWith(METADATA_SIDECAR_SUFFIX) || fileName.endsWith(APPEND_LENGTH_SIDECAR_SUFFIX);
+	}
+
+	/**
+	 * LOCAL backend keeps metadata into sidecar properties file next to the file
+	 */
+	static void writeLocalMetadata(String finalPath, Map<String, String> metadata) throws IOException {
+		if(!new File(finalPath).exists()) {
+			throw new FileNotFoundException(finalPath);
+		}
+		Properties properties = new Properties();
+		properties.putAll(metadata);
+		try(FileOutputStream fos = new FileOutputStream(finalPath + METADATA_SIDECAR_SUFFIX)) {
+			properties.store(fos, null);
+		}
+	}
+
+	static Map<String, String> readLocalMetadata(String finalPath) throws IOException {
+		if(!new File(finalPath).exists()) {
+			throw new FileNotFoundException(finalPath);
+		}
+		HashMap<String, String> retVal = new HashMap<>();
+		File sidecar = new File(finalPath + METADATA_SIDECAR_SUFFIX);
+		if(sidecar.exists()) {
+			Properties properties = new Properties();
+			try(FileInputStream fis = new FileInputStream(sidecar)) {
+				properties.load(fis);
+			}
+			properties.stringPropertyNames().forEach(name -> retVal.put(name, properties.getProperty(name)));
+		}
+		return retVal;
+	}
+
+	/**
+	 * sasURL method is responsible to generate SAS url for Directory.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @return String
+	 * @throws RuntimeException
+	 */
+	public static String sasDirectoryURL(String connectionString, String containerName, String filePath) throws AzureException {
+		return sasDirectoryURL(connectionString, containerName, filePath, new SasParameters(EnumSet.of(
+				SharedAccessBlobPermissions.READ,
+				SharedAccessBlobPermissions.ADD,
+				SharedAccessBlobPermissions.CREATE,
+				SharedAccessBlobPermissions.WRITE, 
+				SharedAccessBlobPermissions.DELETE,
+				SharedAccessBlobPermissions.LIST
+				), TimeUnit.MINUTES.toMillis(30)));
+	}
+
+	/**
+	 * sasURL method is responsible to generate SAS url for Directory with given expiry/permissions/IP/protocol.
+	 * SAS is signed locally, no call is made to azure.
+	 * @param connectionString
+	 * @param containerName
+	 * @param filePath
+	 * @param parameters
+	 * @return String
+	 * @throws RuntimeException
+	 */
+	public static String sasDirectoryURL(String connectionString, String containerName, String filePath, SasParameters parameters) throws AzureException {
+		LOGGER.debug("Inside AzureStorageUtils:: sasDirectoryURL method");
+		if(isLocal(connectionString)) {
+			String finalPath = getLocalPath(connectionString) + SEPARATOR + containerName + SEPARATOR + filePath;
+			return getLocalBaseURL(connectionString) + "?filepath=" + finalPath;
+		}
+		try {
+			return SasSigner.forConnectionString(connectionString).containerURL(containerName, parameters);
+		}
+		catch(IllegalArgumentException ex) {
 			LOGGER.error("Exception occurred while creating sas  url for azure location! ", ex);
 			throw new AzureException(ex);
 		}
 	}
 
+	/**
+	 * Class to represent the result of deduplicated upload
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class UploadResult {
+		private final String filePath;
+		private final String contentHash;
+		private final boolean uploaded;
+		private final long bytesSent;
+		private final long bytesSaved;
+
+		public UploadResult(String filePath, ContentDigest digest, boolean uploaded) {
+			this.filePath = filePath;
+			this.contentHash = digest.getSha256Hex();
+			this.uploaded = uploaded;
+			this.bytesSent = uploaded ? digest.getLength() : 0;
+			this.bytesSaved = uploaded ? 0 : digest.getLength();
+			if(!uploaded) {
+				LOGGER.debug("Upload of {} skipped, same content already stored, {} bytes saved", filePath, bytesSaved);
+			}
+		}
+		public String getFilePath() {
+			return filePath;
+		}
+		public String getContentHash() {
+			return contentHash;
+		}
+		public boolean isUploaded() {
+			return uploaded;
+		}
+		public long getBytesSent() {
+			return bytesSent;
+		}
+		public long getBytesSaved() {
+			return bytesSaved;
+		}
+	}
+
 	static class AzureException extends Exception {
 		private static final long serialVersionUID = 1L;
 		
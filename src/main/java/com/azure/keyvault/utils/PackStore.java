@@ -0,0 +1,803 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+
+/**
+ * Store for high volume of small objects (telemetry snapshots, small json) packed into pack blobs.
+ *
+ * Objects are buffered into the open pack, which is sealed and uploaded with a single PUT once it reaches
+ * maxPackBytes/maxPackObjects or maxDelayMillis. A pack blob is [data][index][footer], index holds key, offset,
+ * length and CRC32 of every object and tombstones of deleted keys. All pack indexes are loaded on open into an
+ * in-memory catalog, so a read is one ranged GET without any lookup request.
+ *
+ * put returns a future completed once the object is durable, sealed packs are uploaded (including retry pauses) by a
+ * background uploader thread, never by the caller of put. A pack whose upload fails stays in memory (readable) and is
+ * retried by the next flush, its futures are completed once it is uploaded, or exceptionally only if the store is
+ * closed before. Packs with live data below minLiveRatio (after deletes or overwrites) are compacted in background:
+ * live objects are re-packed and the old pack is deleted afterwards.
+ * One writer instance per container/pack prefix is expected.
+ * @author Sandeep Kumar
+ *
+ */
+public class PackStore implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger(PackStore.class);
+
+	private static final int MAGIC = 0x50414B31;
+	private static final int FOOTER_LENGTH = 16;
+	private static final int TAIL_READ_LENGTH = 64 * 1024;
+	private static final int TOMBSTONE = -1;
+	private static final int UPLOAD_ATTEMPTS = 3;
+
+	private final String containerName;
+	private final String packPrefix;
+	private final PackOptions options;
+	private final CloudBlobContainer container;
+	private final Path localRoot;
+	private final String accountName;
+	private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * key -> location of current version, guarded by lock for updates
+	 */
+	private final Map<String, Location> catalog = new ConcurrentHashMap<>();
+
+	/**
+	 * Sealed packs ordered by name i.e. by write order
+	 */
+	private final Map<String, PackInfo> packs = new ConcurrentSkipListMap<>();
+
+	private final Object lock = new Object();
+	private final Object compactionLock = new Object();
+	private OpenPack current;
+	private final List<OpenPack> unsealed = new ArrayList<>();
+
+	/**
+	 * Upload rounds in progress, guarded by lock
+	 */
+	private final Map<OpenPack, CompletableFuture<Void>> uploading = new HashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService uploader;
+	private volatile boolean closed;
+
+	private PackStore(String connectionString, String containerName, String packPrefix, PackOptions options) throws InvalidKeyException, URISyntaxException, StorageException {
+		this.containerName = containerName;
+		this.packPrefix = packPrefix;
+		this.options = options;
+		if(M3AzureStorageUtils.isLocal(connectionString)) {
+			this.container = null;
+			this.accountName = null;
+			this.localRoot = Paths.get(M3AzureStorageUtils.getLocalPath(connectionString), containerName);
+		}
+		else {
+			this.container = M3AzureStorageUtils.getBlobConatiner(connectionString, containerName);
+			this.accountName = M3AzureStorageUtils.accountName(connectionString);
+			this.localRoot = null;
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "pack-store-" + containerName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.uploader = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "pack-store-upload-" + containerName);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * This method opens store and loads indexes of all packs under prefix
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param packPrefix Prefix of pack blobs e.g. telemetry/packs/
+	 * @param options Pack options
+	 * @return PackStore object
+	 * @throws AzureException In case of any exception
+	 */
+	public static PackStore open(String connectionString, String containerName, String packPrefix, PackOptions options) throws AzureException {
+		try {
+			PackStore store = new PackStore(connectionString, containerName, packPrefix, options);
+			store.load();
+			long delay = Math.max(100, options.getMaxDelayMillis() / 2);
+			store.scheduler.scheduleWithFixedDelay(store::flushIfDue, delay, delay, TimeUnit.MILLISECONDS);
+			if(options.getCompactionIntervalMillis() > 0) {
+				store.scheduler.scheduleWithFixedDelay(store::compactQuietly, options.getCompactionIntervalMillis(), options.getCompactionIntervalMillis(), TimeUnit.MILLISECONDS);
+			}
+			return store;
+		}
+		catch(InvalidKeyException | URISyntaxException | StorageException | IOException ex) {
+			LOGGER.error("Exception occurred while opening pack store! ", ex);
+			throw new AzureException(ex);
+		}
+	}
+
+	/**
+	 * This method stores object into the open pack, latest put of a key wins
+	 * @param key Key of object
+	 * @param data Content, at most maxObjectBytes
+	 * @return Future completed once the pack of object is uploaded
+	 */
+	public CompletableFuture<Void> put(String key, byte[] data) {
+		checkOpen();
+		if(data.length > options.getMaxObjectBytes()) {
+			throw new IllegalArgumentException("Object " + key + " of " + data.length + " bytes is larger than maxObjectBytes, upload it as blob");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		synchronized(lock) {
+			OpenPack pack = openPack();
+			long offset = pack.append(data);
+			IndexEntry entry = new IndexEntry(key, offset, data.length, (int) crc.getValue());
+			pack.entries.add(entry);
+			catalog.put(key, new Location(pack.name, entry, pack));
+			uploadIfFull();
+			return pack.sealed;
+		}
+	}
+
+	/**
+	 * This method reads object by one ranged GET (or from memory if its pack is not yet uploaded)
+	 * @param key Key of object
+	 * @return Content or null if key does not exist
+	 * @throws AzureException In case of any exception or checksum mismatch
+	 */
+	public byte[] get(String key) throws AzureException {
+		try {
+			for(int attempt = 0; ; attempt++) {
+				Location location = catalog.get(key);
+				if(null == location) {
+					return null;
+				}
+				byte[] data;
+				if(null != location.pending) {
+					synchronized(lock) {
+						data = Arrays.copyOfRange(location.pending.data, (int) location.entry.offset, (int) location.entry.offset + location.entry.length);
+					}
+				}
+				else {
+					try {
+						data = readRange(location.pack, location.entry.offset, location.entry.length);
+					} catch(StorageException | IOException ex) {
+						/**
+						 * Pack may have been compacted away in between, retry once with the new location
+						 */
+						if(attempt == 0 && catalog.get(key) != location) {
+							continue;
+						}
+						throw ex;
+					}
+				}
+				CRC32 crc = new CRC32();
+				crc.update(data, 0, data.length);
+				if((int) crc.getValue() != location.entry.crc) {
+					throw new IOException("Checksum mismatch of " + key + " in pack " + location.pack);
+				}
+				return data;
+			}
+		}
+		catch(URISyntaxException | StorageException | IOException ex) {
+			LOGGER.error("Exception occurred while reading packed object! ", ex);
+			throw new AzureException(ex);
+		}
+	}
+
+	public boolean contains(String key) {
+		return catalog.containsKey(key);
+	}
+
+	public Set<String> keys() {
+		return catalog.keySet();
+	}
+
+	/**
+	 * This method deletes object, a tombstone is written into the open pack
+	 * @param key Key of object
+	 * @return Future completed once the delete is durable, null if key does not exist
+	 */
+	public CompletableFuture<Void> delete(String key) {
+		checkOpen();
+		synchronized(lock) {
+			if(null == catalog.remove(key)) {
+				return null;
+			}
+			OpenPack pack = openPack();
+			pack.entries.add(new IndexEntry(key, 0, TOMBSTONE, 0));
+			uploadIfFull();
+			return pack.sealed;
+		}
+	}
+
+	/**
+	 * This method seals and uploads the open pack, retries packs whose upload failed and waits for all uploads
+	 * in progress, i.e. everything put before is durable once it returns
+	 * @throws AzureException In case upload fails, failed packs are kept for the next flush
+	 */
+	public void flush() throws AzureException {
+		List<CompletableFuture<Void>> rounds;
+		synchronized(lock) {
+			List<OpenPack> retried = new ArrayList<>(unsealed);
+			unsealed.clear();
+			retried.forEach(this::upload);
+			if(null != current && !current.entries.isEmpty()) {
+				upload(current);
+				current = null;
+			}
+			rounds = new ArrayList<>(uploading.values());
+		}
+		try {
+			for(CompletableFuture<Void> round : rounds) {
+				round.get();
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new AzureException(ex);
+		} catch(ExecutionException ex) {
+			throw new AzureException(ex);
+		}
+	}
+
+	/**
+	 * This method compacts packs whose live data is below minLiveRatio. Live objects are written into the open pack,
+	 * old packs are deleted only once it is uploaded.
+	 * @return Number of packs removed
+	 * @throws AzureException In case of any exception
+	 */
+	public int compact() throws AzureException {
+		synchronized(compactionLock) {
+			try {
+				List<PackInfo> candidates = new ArrayList<>();
+				Set<String> keptKeys = new HashSet<>();
+				List<PackInfo> tombstonePacks = new ArrayList<>();
+				synchronized(lock) {
+					for(PackInfo pack : packs.values()) {
+						if(pack.dataLength == 0) {
+							tombstonePacks.add(pack);
+						}
+						else if((double) liveBytes(pack) / pack.dataLength < options.getMinLiveRatio()) {
+							candidates.add(pack);
+						}
+						else {
+							pack.entries.stream().filter(entry -> entry.length != TOMBSTONE).forEach(entry -> keptKeys.add(entry.key));
+						}
+					}
+				}
+				if(candidates.isEmpty()) {
+					return 0;
+				}
+				/**
+				 * Packs holding only tombstones are merged along, not on their own as needed tombstones would be rewritten every time
+				 */
+				candidates.addAll(tombstonePacks);
+				for(PackInfo pack : candidates) {
+					byte[] data = liveBytes(pack) > 0 ? readRange(pack.name, 0, (int) pack.dataLength) : new byte[0];
+					synchronized(lock) {
+						OpenPack target = openPack();
+						for(IndexEntry entry : pack.entries) {
+							if(entry.length == TOMBSTONE) {
+								if(keptKeys.contains(entry.key) && !catalog.containsKey(entry.key)) {
+									target.entries.add(new IndexEntry(entry.key, 0, TOMBSTONE, 0));
+								}
+							}
+							else if(isLive(pack.name, entry)) {
+								long offset = target.append(Arrays.copyOfRange(data, (int) entry.offset, (int) entry.offset + entry.length));
+								IndexEntry moved = new IndexEntry(entry.key, offset, entry.length, entry.crc);
+								target.entries.add(moved);
+								catalog.put(entry.key, new Location(target.name, moved, target));
+							}
+						}
+					}
+				}
+				flush();
+				for(PackInfo pack : candidates) {
+					deletePack(pack.name);
+					packs.remove(pack.name);
+				}
+				LOGGER.info("Compacted {} packs of {}/{}", candidates.size(), containerName, packPrefix);
+				return candidates.size();
+			}
+			catch(URISyntaxException | StorageException | IOException ex) {
+				LOGGER.error("Exception occurred while compacting packs! ", ex);
+				throw new AzureException(ex);
+			}
+		}
+	}
+
+	/**
+	 * This method returns statistics of store: packs, objects, pack bytes and live bytes
+	 */
+	public PackStats getStats() {
+		synchronized(lock) {
+			PackStats stats = new PackStats();
+			stats.packs = packs.size();
+			stats.objects = catalog.size();
+			for(PackInfo pack : packs.values()) {
+				stats.packBytes += pack.dataLength;
+				stats.liveBytes += liveBytes(pack);
+			}
+			return stats;
+		}
+	}
+
+	/**
+	 * This method uploads pending packs and stops the store, futures of packs which still fail to upload are
+	 * completed exceptionally
+	 * @throws AzureException In case upload fails
+	 */
+	@Override
+	public void close() throws AzureException {
+		closed = true;
+		scheduler.shutdownNow();
+		try {
+			flush();
+		} catch(AzureException ex) {
+			List<OpenPack> failed;
+			synchronized(lock) {
+				failed = new ArrayList<>(unsealed);
+			}
+			for(OpenPack pack : failed) {
+				pack.sealed.completeExceptionally(ex);
+			}
+			throw ex;
+		} finally {
+			uploader.shutdownNow();
+		}
+	}
+
+	private void checkOpen() {
+		if(closed) {
+			throw new IllegalStateException("Pack store " + containerName + "/" + packPrefix + " is closed");
+		}
+	}
+
+	private OpenPack openPack() {
+		if(null == current) {
+			current = new OpenPack(String.format("%spack-%013d-%s-%06d", packPrefix, System.currentTimeMillis(), instanceId, sequence.incrementAndGet()));
+		}
+		return current;
+	}
+
+	/**
+	 * This method hands the open pack over to the uploader once full, guarded by lock
+	 */
+	private void uploadIfFull() {
+		if(current.length >= options.getMaxPackBytes() || current.entries.size() >= options.getMaxPackObjects()) {
+			upload(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * This method starts an upload round of pack on the uploader thread, guarded by lock
+	 */
+	private void upload(OpenPack pack) {
+		uploading.put(pack, CompletableFuture.runAsync(() -> seal(pack), uploader));
+	}
+
+	private void flushIfDue() {
+		try {
+			boolean due;
+			synchronized(lock) {
+				due = !unsealed.isEmpty() || (null != current && System.currentTimeMillis() - current.created >= options.getMaxDelayMillis());
+			}
+			if(due) {
+				flush();
+			}
+		} catch(Exception ex) {
+			LOGGER.warn("Background flush of pack store {} failed: {}", containerName, ex.getMessage());
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch(Exception ex) {
+			LOGGER.warn("Background compaction of pack store {} failed: {}", containerName, ex.getMessage());
+		}
+	}
+
+	/**
+	 * This method uploads pack and switches catalog entries from memory to the uploaded pack, runs on the uploader.
+	 * A failed pack is kept into memory (readable) and retried by the next flush, its future is left pending.
+	 */
+	private void seal(OpenPack pack) {
+		try {
+			byte[] bytes;
+			synchronized(lock) {
+				bytes = pack.toBytes();
+			}
+			Exception failure = null;
+			for(int attempt = 1; attempt <= UPLOAD_ATTEMPTS; attempt++) {
+				try {
+					writePack(pack.name, bytes);
+					failure = null;
+					break;
+				} catch(StorageException | URISyntaxException | IOException ex) {
+					failure = ex;
+					if(attempt < UPLOAD_ATTEMPTS) {
+						Thread.sleep(200L * attempt);
+					}
+				}
+			}
+			if(null != failure) {
+				throw failure;
+			}
+			synchronized(lock) {
+				for(IndexEntry entry : pack.entries) {
+					Location location = catalog.get(entry.key);
+					if(null != location && location.entry == entry) {
+						catalog.put(entry.key, new Location(pack.name, entry, null));
+					}
+				}
+				packs.put(pack.name, new PackInfo(pack.name, pack.length, pack.entries));
+				uploading.remove(pack);
+			}
+			pack.sealed.complete(null);
+		} catch(Exception ex) {
+			if(ex instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			LOGGER.error("Upload of pack " + pack.name + " failed, kept for retry", ex);
+			synchronized(lock) {
+				uploading.remove(pack);
+				unsealed.add(pack);
+			}
+			throw new CompletionException(ex);
+		}
+	}
+
+	private boolean isLive(String packName, IndexEntry entry) {
+		Location location = catalog.get(entry.key);
+		return null != location && null == location.pending && location.pack.equals(packName) && location.entry.offset == entry.offset;
+	}
+
+	private long liveBytes(PackInfo pack) {
+		long retVal = 0;
+		for(IndexEntry entry : pack.entries) {
+			if(entry.length != TOMBSTONE && isLive(pack.name, entry)) {
+				retVal += entry.length;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method loads indexes of all packs in name order, later entries override earlier ones
+	 */
+	private void load() throws StorageException, URISyntaxException, IOException {
+		Map<String, Long> sizes = new TreeMap<>();
+		if(null == container) {
+			Path root = localRoot.resolve(packPrefix);
+			Path directory = packPrefix.endsWith("/") || packPrefix.isEmpty() ? root : root.getParent();
+			if(Files.isDirectory(directory)) {
+				try(Stream<Path> files = Files.list(directory)) {
+					for(Path file : (Iterable<Path>) files::iterator) {
+						String name = localRoot.relativize(file).toString().replace("\\", "/");
+						if(name.startsWith(packPrefix) && !name.endsWith(".tmp") && Files.isRegularFile(file)) {
+							sizes.put(name, Files.size(file));
+						}
+					}
+				}
+			}
+		}
+		else {
+			RateGovernor.acquire(accountName, OperationClass.LIST);
+			for(ListBlobItem item : container.listBlobs(packPrefix, true)) {
+				if(item instanceof CloudBlob) {
+					CloudBlob blob = (CloudBlob) item;
+					sizes.put(blob.getName(), blob.getProperties().getLength());
+				}
+			}
+		}
+		for(Map.Entry<String, Long> pack : sizes.entrySet()) {
+			PackInfo info = readIndex(pack.getKey(), pack.getValue());
+			packs.put(info.name, info);
+			for(IndexEntry entry : info.entries) {
+				if(entry.length == TOMBSTONE) {
+					catalog.remove(entry.key);
+				}
+				else {
+					catalog.put(entry.key, new Location(info.name, entry, null));
+				}
+			}
+		}
+		LOGGER.info("Pack store {}/{} opened with {} packs and {} objects", containerName, packPrefix, packs.size(), catalog.size());
+	}
+
+	/**
+	 * This method reads pack index, a single tail GET when index is smaller than TAIL_READ_LENGTH
+	 */
+	private PackInfo readIndex(String name, long size) throws StorageException, URISyntaxException, IOException {
+		int tailLength = (int) Math.min(size, TAIL_READ_LENGTH);
+		byte[] tail = readRange(name, size - tailLength, tailLength);
+		DataInputStream footer = new DataInputStream(new ByteArrayInputStream(tail, tailLength - FOOTER_LENGTH, FOOTER_LENGTH));
+		long indexOffset = footer.readLong();
+		int indexLength = footer.readInt();
+		if(footer.readInt() != MAGIC) {
+			throw new IOException("Blob " + name + " is not a pack");
+		}
+		byte[] index;
+		int indexInTail = (int) (indexOffset - (size - tailLength));
+		if(indexInTail >= 0) {
+			index = Arrays.copyOfRange(tail, indexInTail, indexInTail + indexLength);
+		}
+		else {
+			index = readRange(name, indexOffset, indexLength);
+		}
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(index));
+		int count = input.readInt();
+		List<IndexEntry> entries = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			entries.add(new IndexEntry(input.readUTF(), input.readLong(), input.readInt(), input.readInt()));
+		}
+		return new PackInfo(name, indexOffset, entries);
+	}
+
+	private byte[] readRange(String name, long offset, int length) throws StorageException, URISyntaxException, IOException {
+		byte[] retVal = new byte[length];
+		if(length == 0) {
+			return retVal;
+		}
+		if(null == container) {
+			try(RandomAccessFile file = new RandomAccessFile(localRoot.resolve(name).toFile(), "r")) {
+				file.seek(offset);
+				file.readFully(retVal);
+			}
+		}
+		else {
+			RateGovernor.acquire(accountName, OperationClass.READ);
+			container.getBlockBlobReference(name).downloadRangeToByteArray(offset, (long) length, retVal, 0);
+		}
+		return retVal;
+	}
+
+	private void writePack(String name, byte[] bytes) throws StorageException, URISyntaxException, IOException {
+		if(null == container) {
+			Path target = localRoot.resolve(name);
+			Files.createDirectories(target.getParent());
+			Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temp, bytes);
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+		else {
+			RateGovernor.acquire(accountName, OperationClass.WRITE);
+			CloudBlockBlob blob = container.getBlockBlobReference(name);
+			blob.getProperties().setContentType("application/octet-stream");
+			blob.uploadFromByteArray(bytes, 0, bytes.length);
+		}
+	}
+
+	private void deletePack(String name) throws StorageException, URISyntaxException, IOException {
+		if(null == container) {
+			Files.deleteIfExists(localRoot.resolve(name));
+		}
+		else {
+			RateGovernor.acquire(accountName, OperationClass.WRITE);
+			try {
+				container.getBlockBlobReference(name).deleteIfExists();
+			} catch(StorageException ex) {
+				if(ex.getHttpStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+					throw ex;
+				}
+			}
+		}
+	}
+
+	private static final class IndexEntry {
+		private final String key;
+		private final long offset;
+		private final int length;
+		private final int crc;
+
+		private IndexEntry(String key, long offset, int length, int crc) {
+			this.key = key;
+			this.offset = offset;
+			this.length = length;
+			this.crc = crc;
+		}
+	}
+
+	/**
+	 * Location of current version of a key, pending is set while its pack is only in memory
+	 */
+	private static final class Location {
+		private final String pack;
+		private final IndexEntry entry;
+		private final OpenPack pending;
+
+		private Location(String pack, IndexEntry entry, OpenPack pending) {
+			this.pack = pack;
+			this.entry = entry;
+			this.pending = pending;
+		}
+	}
+
+	private static final class PackInfo {
+		private final String name;
+		private final long dataLength;
+		private final List<IndexEntry> entries;
+
+		private PackInfo(String name, long dataLength, List<IndexEntry> entries) {
+			this.name = name;
+			this.dataLength = dataLength;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * Pack being filled, guarded by lock of store
+	 */
+	private static final class OpenPack {
+		private final String name;
+		private final long created = System.currentTimeMillis();
+		private final List<IndexEntry> entries = new ArrayList<>();
+		private byte[] data = new byte[64 * 1024];
+		private int length;
+		private final CompletableFuture<Void> sealed = new CompletableFuture<>();
+
+		private OpenPack(String name) {
+			this.name = name;
+		}
+
+		private long append(byte[] bytes) {
+			if(length + bytes.length > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, length + bytes.length));
+			}
+			System.arraycopy(bytes, 0, data, length, bytes.length);
+			length += bytes.length;
+			return length - bytes.length;
+		}
+
+		private byte[] toBytes() throws IOException {
+			ByteArrayOutputStream index = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(index);
+			output.writeInt(entries.size());
+			for(IndexEntry entry : entries) {
+				output.writeUTF(entry.key);
+				output.writeLong(entry.offset);
+				output.writeInt(entry.length);
+				output.writeInt(entry.crc);
+			}
+			output.flush();
+			ByteArrayOutputStream retVal = new ByteArrayOutputStream(length + index.size() + FOOTER_LENGTH);
+			retVal.write(data, 0, length);
+			index.writeTo(retVal);
+			DataOutputStream footer = new DataOutputStream(retVal);
+			footer.writeLong(length);
+			footer.writeInt(index.size());
+			footer.writeInt(MAGIC);
+			footer.flush();
+			return retVal.toByteArray();
+		}
+	}
+
+	/**
+	 * POJO Class to pass pack store options
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class PackOptions {
+		private int maxObjectBytes = 64 * 1024;
+		private int maxPackBytes = 4 * 1024 * 1024;
+		private int maxPackObjects = 10000;
+		private long maxDelayMillis = 1000;
+		private long compactionIntervalMillis = 60000;
+		private double minLiveRatio = 0.5;
+
+		public int getMaxObjectBytes() {
+			return maxObjectBytes;
+		}
+		public void setMaxObjectBytes(int maxObjectBytes) {
+			this.maxObjectBytes = maxObjectBytes;
+		}
+		public int getMaxPackBytes() {
+			return maxPackBytes;
+		}
+		public void setMaxPackBytes(int maxPackBytes) {
+			this.maxPackBytes = maxPackBytes;
+		}
+		public int getMaxPackObjects() {
+			return maxPackObjects;
+		}
+		public void setMaxPackObjects(int maxPackObjects) {
+			this.maxPackObjects = maxPackObjects;
+		}
+		public long getMaxDelayMillis() {
+			return maxDelayMillis;
+		}
+		public void setMaxDelayMillis(long maxDelayMillis) {
+			this.maxDelayMillis = maxDelayMillis;
+		}
+		public long getCompactionIntervalMillis() {
+			return compactionIntervalMillis;
+		}
+		public void setCompactionIntervalMillis(long compactionIntervalMillis) {
+			this.compactionIntervalMillis = compactionIntervalMillis;
+		}
+		public double getMinLiveRatio() {
+			return minLiveRatio;
+		}
+		public void setMinLiveRatio(double minLiveRatio) {
+			this.minLiveRatio = minLiveRatio;
+		}
+	}
+
+	/**
+	 * Class to represent the statistics of pack store
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class PackStats {
+		private int packs;
+		private int objects;
+		private long packBytes;
+		private long liveBytes;
+
+		public int getPacks() {
+			return packs;
+		}
+		public int getObjects() {
+			return objects;
+		}
+		public long getPackBytes() {
+			return packBytes;
+		}
+		public long getLiveBytes() {
+			return liveBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "packs=" + packs + ", objects=" + objects + ", packBytes=" + packBytes + ", liveBytes=" + liveBytes;
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package com.azure.keyvault.utils;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Status of job partitions into the application datasource, shared by all workers of a job on all nodes.
+ *
+ * A worker claims a partition with a lease and renews it while processing. Partition of a crashed worker
+ * is claimed again by another worker once the lease expires. ATTEMPTS is incremented on every claim and is
+ * used as fencing token, so a worker which has lost its lease can not overwrite status of the new owner.
+ * @author Sandeep Kumar
+ *
+ */
+public class PartitionStore {
+
+	private static final Logger LOGGER = LogManager.getLogger(PartitionStore.class);
+
+	public static final String DEFAULT_TABLE_NAME = "BLOB_PARTITION";
+
+	private static final int CLAIM_CANDIDATES = 16;
+	private static final int MESSAGE_LENGTH = 1000;
+	private static final String PREFIX_SEPARATOR = "\n";
+
+	public enum Status {
+		PENDING, RUNNING, COMPLETED, FAILED
+	}
+
+	private final DataSource dataSource;
+	private final String tableName;
+
+	public PartitionStore(DataSource dataSource) {
+		this(dataSource, DEFAULT_TABLE_NAME);
+	}
+
+	public PartitionStore(DataSource dataSource, String tableName) {
+		this.dataSource = dataSource;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * This method creates partition table if it does not exist
+	 * @throws SQLException In case of database error
+	 */
+	public void createTable() throws SQLException {
+		try(Connection connection = dataSource.getConnection()) {
+			DatabaseMetaData metadata = connection.getMetaData();
+			for(String name : Arrays.asList(tableName, tableName.toUpperCase(), tableName.toLowerCase())) {
+				try(ResultSet tables = metadata.getTables(null, null, name, new String[] {"TABLE"})) {
+					if(tables.next()) {
+						return;
+					}
+				}
+			}
+			try(Statement statement = connection.createStatement()) {
+				statement.executeUpdate("CREATE TABLE " + tableName + " ("
+						+ "JOB_NAME VARCHAR(200) NOT NULL, "
+						+ "PARTITION_ID INTEGER NOT NULL, "
+						+ "PREFIXES VARCHAR(4000) NOT NULL, "
+						+ "BUCKET INTEGER NOT NULL, "
+						+ "BUCKET_COUNT INTEGER NOT NULL, "
+						+ "STATUS VARCHAR(20) NOT NULL, "
+						+ "OWNER VARCHAR(200), "
+						+ "LEASE_EXPIRES BIGINT NOT NULL, "
+						+ "ATTEMPTS INTEGER NOT NULL, "
+						+ "PROCESSED BIGINT NOT NULL, "
+						+ "FAILED BIGINT NOT NULL, "
+						+ "UPDATED BIGINT NOT NULL, "
+						+ "MESSAGE VARCHAR(" + MESSAGE_LENGTH + "), "
+						+ "PRIMARY KEY (JOB_NAME, PARTITION_ID))");
+			}
+			LOGGER.info("Created partition table {}", tableName);
+		}
+	}
+
+	/**
+	 * This method stores partitions of job, nothing is changed if job is already planned (restart resumes the job)
+	 * @param jobName Name of job
+	 * @param partitions Partitions of job
+	 * @return true if partitions were stored, false if job was already planned
+	 * @throws SQLException In case of database error
+	 */
+	public boolean plan(String jobName, List<Partition> partitions) throws SQLException {
+		try(Connection connection = dataSource.getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName + " WHERE JOB_NAME = ?")) {
+				statement.setString(1, jobName);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					if(resultSet.next() && resultSet.getInt(1) > 0) {
+						return false;
+					}
+				}
+			}
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try(PreparedStatement statement = connection.prepareStatement("INSERT INTO " + tableName
+					+ " (JOB_NAME, PARTITION_ID, PREFIXES, BUCKET, BUCKET_COUNT, STATUS, OWNER, LEASE_EXPIRES, ATTEMPTS, PROCESSED, FAILED, UPDATED, MESSAGE)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, NULL, 0, 0, 0, 0, ?, NULL)")) {
+				long now = System.currentTimeMillis();
+				for(Partition partition : partitions) {
+					statement.setString(1, jobName);
+					statement.setInt(2, partition.getId());
+					statement.setString(3, String.join(PREFIX_SEPARATOR, partition.getPrefixes()));
+					statement.setInt(4, partition.getBucket());
+					statement.setInt(5, partition.getBucketCount());
+					statement.setString(6, Status.PENDING.name());
+					statement.setLong(7, now);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch(SQLException ex) {
+				connection.rollback();
+				throw ex;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+			LOGGER.info("Planned {} partitions of job {}", partitions.size(), jobName);
+			return true;
+		}
+	}
+
+	/**
+	 * This method claims a pending partition, a running partition with expired lease or a failed partition with
+	 * remaining attempts. Concurrent claims of the same partition are resolved by a conditional update.
+	 * @param jobName Name of job
+	 * @param owner Worker id
+	 * @param leaseMillis Lease duration
+	 * @param maxAttempts Maximum number of attempts of a partition
+	 * @return Claimed partition or null if nothing is claimable now
+	 * @throws SQLException In case of database error
+	 */
+	public Partition claim(String jobName, String owner, long leaseMillis, int maxAttempts) throws SQLException {
+		long now = System.currentTimeMillis();
+		List<Partition> candidates = new ArrayList<>();
+		try(Connection connection = dataSource.getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("SELECT PARTITION_ID, PREFIXES, BUCKET, BUCKET_COUNT, STATUS, OWNER, ATTEMPTS FROM "
+					+ tableName + " WHERE JOB_NAME = ? AND (STATUS = ? OR (STATUS = ? AND LEASE_EXPIRES < ?) OR (STATUS = ? AND ATTEMPTS < ?))"
+					+ " ORDER BY PARTITION_ID")) {
+				statement.setMaxRows(CLAIM_CANDIDATES);
+				statement.setString(1, jobName);
+				statement.setString(2, Status.PENDING.name());
+				statement.setString(3, Status.RUNNING.name());
+				statement.setLong(4, now);
+				statement.setString(5, Status.FAILED.name());
+				statement.setInt(6, maxAttempts);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					while(resultSet.next()) {
+						candidates.add(toPartition(resultSet));
+					}
+				}
+			}
+			for(Partition candidate : candidates) {
+				if(candidate.getStatus() == Status.RUNNING && candidate.getAttempts() >= maxAttempts) {
+					fail(jobName, candidate, "Lease of " + candidate.getOwner() + " expired after " + candidate.getAttempts() + " attempts");
+					continue;
+				}
+				try(PreparedStatement statement = connection.prepareStatement("UPDATE " + tableName
+						+ " SET STATUS = ?, OWNER = ?, LEASE_EXPIRES = ?, ATTEMPTS = ATTEMPTS + 1, UPDATED = ?"
+						+ " WHERE JOB_NAME = ? AND PARTITION_ID = ? AND STATUS = ? AND ATTEMPTS = ?")) {
+					statement.setString(1, Status.RUNNING.name());
+					statement.setString(2, owner);
+					statement.setLong(3, now + leaseMillis);
+					statement.setLong(4, now);
+					statement.setString(5, jobName);
+					statement.setInt(6, candidate.getId());
+					statement.setString(7, candidate.getStatus().name());
+					statement.setInt(8, candidate.getAttempts());
+					if(statement.executeUpdate() == 1) {
+						if(candidate.getStatus() == Status.RUNNING) {
+							LOGGER.warn("Partition {} of job {} taken over from {} after lease expiry", candidate.getId(), jobName, candidate.getOwner());
+						}
+						candidate.setStatus(Status.RUNNING);
+						candidate.setOwner(owner);
+						candidate.setAttempts(candidate.getAttempts() + 1);
+						return candidate;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * This method extends lease of claimed partition
+	 * @return false if lease has been lost to another worker
+	 * @throws SQLException In case of database error
+	 */
+	public boolean renew(String jobName, Partition partition, long leaseMillis) throws SQLException {
+		long now = System.currentTimeMillis();
+		return update(jobName, partition, "LEASE_EXPIRES = ?, UPDATED = ?", Status.RUNNING, now + leaseMillis, now);
+	}
+
+	/**
+	 * This method marks claimed partition as completed
+	 * @return false if lease has been lost to another worker
+	 * @throws SQLException In case of database error
+	 */
+	public boolean complete(String jobName, Partition partition, long processed, long failed) throws SQLException {
+		return update(jobName, partition, "STATUS = ?, PROCESSED = ?, FAILED = ?, UPDATED = ?, MESSAGE = NULL",
+				Status.RUNNING, Status.COMPLETED.name(), processed, failed, System.currentTimeMillis());
+	}
+
+	/**
+	 * This method marks claimed partition as failed, it is claimed again until maxAttempts
+	 * @return false if lease has been lost to another worker
+	 * @throws SQLException In case of database error
+	 */
+	public boolean fail(String jobName, Partition partition, String message) throws SQLException {
+		String trimmed = null != message && message.length() > MESSAGE_LENGTH ? message.substring(0, MESSAGE_LENGTH) : message;
+		return update(jobName, partition, "STATUS = ?, UPDATED = ?, MESSAGE = ?",
+				partition.getStatus(), Status.FAILED.name(), System.currentTimeMillis(), trimmed);
+	}
+
+	private boolean update(String jobName, Partition partition, String set, Status expected, Object... values) throws SQLException {
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("UPDATE " + tableName + " SET " + set
+						+ " WHERE JOB_NAME = ? AND PARTITION_ID = ? AND STATUS = ? AND ATTEMPTS = ?")) {
+			int index = 1;
+			for(Object value : values) {
+				if(null == value) {
+					statement.setNull(index++, Types.VARCHAR);
+				}
+				else {
+					statement.setObject(index++, value);
+				}
+			}
+			statement.setString(index++, jobName);
+			statement.setInt(index++, partition.getId());
+			statement.setString(index++, expected.name());
+			statement.setInt(index, partition.getAttempts());
+			return statement.executeUpdate() == 1;
+		}
+	}
+
+	/**
+	 * This method counts partitions of job by status
+	 * @param jobName Name of job
+	 * @return Count per status
+	 * @throws SQLException In case of database error
+	 */
+	public Map<Status, Integer> summary(String jobName) throws SQLException {
+		Map<Status, Integer> retVal = new EnumMap<>(Status.class);
+		for(Status status : Status.values()) {
+			retVal.put(status, 0);
+		}
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT STATUS, COUNT(*) FROM " + tableName + " WHERE JOB_NAME = ? GROUP BY STATUS")) {
+			statement.setString(1, jobName);
+			try(ResultSet resultSet = statement.executeQuery()) {
+				while(resultSet.next()) {
+					retVal.put(Status.valueOf(resultSet.getString(1)), resultSet.getInt(2));
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method checks if job has nothing left to run, i.e. all partitions are completed or failed without remaining attempts
+	 * @throws SQLException In case of database error
+	 */
+	public boolean isFinished(String jobName, int maxAttempts) throws SQLException {
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName
+						+ " WHERE JOB_NAME = ? AND (STATUS = ? OR STATUS = ? OR (STATUS = ? AND ATTEMPTS < ?))")) {
+			statement.setString(1, jobName);
+			statement.setString(2, Status.PENDING.name());
+			statement.setString(3, Status.RUNNING.name());
+			statement.setString(4, Status.FAILED.name());
+			statement.setInt(5, maxAttempts);
+			try(ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() && resultSet.getInt(1) == 0;
+			}
+		}
+	}
+
+	/**
+	 * This method removes all partitions of job, next plan starts job from scratch
+	 * @throws SQLException In case of database error
+	 */
+	public int delete(String jobName) throws SQLException {
+		try(Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("DELETE FROM " + tableName + " WHERE JOB_NAME = ?")) {
+			statement.setString(1, jobName);
+			return statement.executeUpdate();
+		}
+	}
+
+	private static Partition toPartition(ResultSet resultSet) throws SQLException {
+		Partition partition = new Partition();
+		partition.setId(resultSet.getInt("PARTITION_ID"));
+		partition.setPrefixes(Arrays.asList(resultSet.getString("PREFIXES").split(PREFIX_SEPARATOR, -1)));
+		partition.setBucket(resultSet.getInt("BUCKET"));
+		partition.setBucketCount(resultSet.getInt("BUCKET_COUNT"));
+		partition.setStatus(Status.valueOf(resultSet.getString("STATUS")));
+		partition.setOwner(resultSet.getString("OWNER"));
+		partition.setAttempts(resultSet.getInt("ATTEMPTS"));
+		return partition;
+	}
+
+	/**
+	 * POJO Class to represent a partition of container keyspace: blobs under any of prefixes
+	 * whose hash bucket (of bucketCount) is bucket. bucketCount 1 means no hash filter.
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class Partition {
+		private int id;
+		private List<String> prefixes;
+		private int bucket;
+		private int bucketCount = 1;
+		private Status status = Status.PENDING;
+		private String owner;
+		private int attempts;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public List<String> getPrefixes() {
+			return prefixes;
+		}
+		public void setPrefixes(List<String> prefixes) {
+			this.prefixes = prefixes;
+		}
+		public int getBucket() {
+			return bucket;
+		}
+		public void setBucket(int bucket) {
+			this.bucket = bucket;
+		}
+		public int getBucketCount() {
+			return bucketCount;
+		}
+		public void setBucketCount(int bucketCount) {
+			this.bucketCount = bucketCount;
+		}
+		public Status getStatus() {
+			return status;
+		}
+		public void setStatus(Status status) {
+			this.status = status;
+		}
+		public String getOwner() {
+			return owner;
+		}
+		public void setOwner(String owner) {
+			this.owner = owner;
+		}
+		public int getAttempts() {
+			return attempts;
+		}
+		public void setAttempts(int attempts) {
+			this.attempts = attempts;
+		}
+
+		@Override
+		public String toString() {
+			return "Partition [id=" + id + ", prefixes=" + prefixes + ", bucket=" + bucket + "/" + bucketCount + "]";
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package com.azure.keyvault.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.BlobPipeline.BlobProcessor;
+import com.azure.keyvault.utils.BlobPipeline.PipelineOptions;
+import com.azure.keyvault.utils.BlobPipeline.PipelineResult;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.PartitionStore.Partition;
+
+/**
+ * Partitioned processing of a container by many workers (threads, local processes or nodes) sharing a PartitionStore.
+ *
+ * Keyspace is split either by prefixes (each partition lists only its prefixes, prefixes must cover all blob names)
+ * or by hash buckets of the leading name segment below root prefix, i.e. the first virtual directory or the name of
+ * a blob directly under root. A hash partition lists the segments of root (one hierarchical listing), then lists only
+ * the directories of its bucket and, if it owns any, the blobs directly under root. This is complete for any naming,
+ * but names without a directory are all segments of their own, every partition then lists the whole top level and
+ * prefix partitions should be used instead.
+ *
+ * Partition is the unit of retry: a failed partition or a partition of a crashed worker is processed again from the
+ * start, so processors must be idempotent. A worker stops processing a partition as soon as it finds its lease lost
+ * (renewal rejected or not renewed within the lease), the partition is then owned by another worker.
+ * @author Sandeep Kumar
+ *
+ */
+public class PartitionedJob {
+
+	private static final Logger LOGGER = LogManager.getLogger(PartitionedJob.class);
+
+	private static final String SEPARATOR = "/";
+
+	private final PartitionStore store;
+	private final String jobName;
+	private long leaseMillis = 120_000;
+	private int maxAttempts = 3;
+	private long pollMillis = 10_000;
+	private PipelineOptions pipelineOptions = new PipelineOptions();
+
+	public PartitionedJob(PartitionStore store, String jobName) {
+		this.store = store;
+		this.jobName = jobName;
+	}
+
+	/**
+	 * This method splits keyspace into one partition per prefix group, prefixes are spread round-robin over partitions
+	 * @param rootPrefix Common prefix e.g. 2020/
+	 * @param prefixes Prefixes below root e.g. characters 0-9a-f of hex names
+	 * @param partitionCount Number of partitions
+	 * @return List of partitions
+	 */
+	public static List<Partition> prefixPartitions(String rootPrefix, List<String> prefixes, int partitionCount) {
+		int count = Math.max(1, Math.min(partitionCount, prefixes.size()));
+		List<Partition> retVal = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			Partition partition = new Partition();
+			partition.setId(i);
+			partition.setPrefixes(new ArrayList<>());
+			retVal.add(partition);
+		}
+		for(int i = 0; i < prefixes.size(); i++) {
+			retVal.get(i % count).getPrefixes().add(rootPrefix + prefixes.get(i));
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method splits keyspace under root prefix into hash buckets of leading name segment
+	 * @param rootPrefix Common prefix of blobs
+	 * @param bucketCount Number of partitions
+	 * @return List of partitions
+	 */
+	public static List<Partition> hashPartitions(String rootPrefix, int bucketCount) {
+		List<Partition> retVal = new ArrayList<>(bucketCount);
+		for(int i = 0; i < bucketCount; i++) {
+			Partition partition = new Partition();
+			partition.setId(i);
+			partition.setPrefixes(Collections.singletonList(rootPrefix));
+			partition.setBucket(i);
+			partition.setBucketCount(bucketCount);
+			retVal.add(partition);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Hash bucket of name segment, String.hashCode is specified hence same on all nodes
+	 */
+	public static int bucket(String segment, int bucketCount) {
+		return Math.floorMod(segment.hashCode(), bucketCount);
+	}
+
+	/**
+	 * This method stores partitions unless the job is already planned
+	 * @return true if planned now, false if an existing plan is resumed
+	 * @throws SQLException In case of database error
+	 */
+	public boolean plan(List<Partition> partitions) throws SQLException {
+		store.createTable();
+		return store.plan(jobName, partitions);
+	}
+
+	/**
+	 * This method claims and processes partitions until job is finished. While other workers hold leases
+	 * it keeps polling, so it takes over their partitions if they die.
+	 * @param workerId Unique id of worker
+	 * @param connectionString Azure connection string or LOCAL connection string
+	 * @param containerName Name of container
+	 * @param processor Processor of blob content
+	 * @return Number of partitions completed by this worker
+	 * @throws SQLException In case of database error
+	 * @throws InterruptedException In case worker is interrupted
+	 */
+	public int runWorker(String workerId, String connectionString, String containerName, BlobProcessor processor) throws SQLException, InterruptedException {
+		int completed = 0;
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "partition-heartbeat-" + workerId);
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			while(true) {
+				Partition partition = store.claim(jobName, workerId, leaseMillis, maxAttempts);
+				if(null == partition) {
+					if(store.isFinished(jobName, maxAttempts)) {
+						break;
+					}
+					Thread.sleep(pollMillis);
+					continue;
+				}
+				LOGGER.info("Worker {} processing {} (attempt {})", workerId, partition, partition.getAttempts());
+				Thread worker = Thread.currentThread();
+				AtomicBoolean leaseLost = new AtomicBoolean();
+				AtomicBoolean active = new AtomicBoolean(true);
+				AtomicLong renewed = new AtomicLong(System.currentTimeMillis());
+				long renewMillis = Math.max(1000, leaseMillis / 3);
+				ScheduledFuture<?> renewal = heartbeat.scheduleAtFixedRate(() -> {
+					boolean lost;
+					try {
+						lost = !store.renew(jobName, partition, leaseMillis);
+						if(!lost) {
+							renewed.set(System.currentTimeMillis());
+						}
+					} catch(SQLException ex) {
+						LOGGER.warn("Lease renewal of partition {} failed: {}", partition.getId(), ex.getMessage());
+						lost = System.currentTimeMillis() - renewed.get() >= leaseMillis;
+					}
+					synchronized(active) {
+						if(lost && active.get() && leaseLost.compareAndSet(false, true)) {
+							LOGGER.warn("Worker {} lost lease of partition {}, stopping it", workerId, partition.getId());
+							worker.interrupt();
+						}
+					}
+				}, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+				try {
+					long processed = 0;
+					long failed = 0;
+					for(Map.Entry<String, Boolean> listing : listings(connectionString, containerName, partition).entrySet()) {
+						if(leaseLost.get()) {
+							break;
+						}
+						PipelineResult result = BlobPipeline.run(connectionString, containerName, listing.getKey(), processor, options(partition, listing.getValue()));
+						processed += result.getProcessed();
+						failed += result.getFailed();
+					}
+					if(leaseLost.get()) {
+						LOGGER.info("Worker {} abandoned partition {}: processed={}, failed={}", workerId, partition.getId(), processed, failed);
+						continue;
+					}
+					if(failed > 0) {
+						store.fail(jobName, partition, failed + " blobs failed");
+					}
+					else if(store.complete(jobName, partition, processed, failed)) {
+						completed++;
+					}
+					LOGGER.info("Worker {} finished partition {}: processed={}, failed={}", workerId, partition.getId(), processed, failed);
+				} catch(AzureException ex) {
+					if(leaseLost.get()) {
+						LOGGER.info("Worker {} abandoned partition {}", workerId, partition.getId());
+					}
+					else {
+						LOGGER.error("Worker " + workerId + " failed partition " + partition.getId(), ex);
+						store.fail(jobName, partition, String.valueOf(ex.getEx()));
+					}
+				} finally {
+					synchronized(active) {
+						active.set(false);
+					}
+					renewal.cancel(false);
+					if(leaseLost.get()) {
+						// interrupt was meant for the abandoned partition only
+						Thread.interrupted();
+					}
+				}
+			}
+		} finally {
+			heartbeat.shutdownNow();
+		}
+		return completed;
+	}
+
+	/**
+	 * Listings of partition as prefix to recursive flag. Prefix partition lists its prefixes, hash partition lists
+	 * directories of its bucket and, non recursively, root if any blob directly under root is in its bucket.
+	 */
+	static Map<String, Boolean> listings(String connectionString, String containerName, Partition partition) throws AzureException {
+		Map<String, Boolean> retVal = new LinkedHashMap<>();
+		if(partition.getBucketCount() <= 1) {
+			for(String prefix : partition.getPrefixes()) {
+				retVal.put(prefix, Boolean.TRUE);
+			}
+			return retVal;
+		}
+		String rootPrefix = partition.getPrefixes().get(0);
+		boolean topLevel = false;
+		for(String segment : BlobPipeline.listSegments(connectionString, containerName, rootPrefix)) {
+			if(bucket(segment, partition.getBucketCount()) != partition.getBucket()) {
+				continue;
+			}
+			if(segment.endsWith(SEPARATOR)) {
+				retVal.put(segment, Boolean.TRUE);
+			}
+			else {
+				topLevel = true;
+			}
+		}
+		if(topLevel) {
+			retVal.put(rootPrefix, Boolean.FALSE);
+		}
+		return retVal;
+	}
+
+	private PipelineOptions options(Partition partition, boolean recursive) {
+		PipelineOptions options = new PipelineOptions();
+		options.setDownloadConcurrency(pipelineOptions.getDownloadConcurrency());
+		options.setProcessConcurrency(pipelineOptions.getProcessConcurrency());
+		options.setReadAhead(pipelineOptions.getReadAhead());
+		options.setListQueueCapacity(pipelineOptions.getListQueueCapacity());
+		options.setListPageSize(pipelineOptions.getListPageSize());
+		options.setRecursive(recursive);
+		if(partition.getBucketCount() > 1 && !recursive) {
+			// blobs directly under root are segments of their own
+			int bucketCount = partition.getBucketCount();
+			int bucket = partition.getBucket();
+			options.setFilter(filePath -> bucket(filePath, bucketCount) == bucket);
+		}
+		return options;
+	}
+
+	/**
+	 * This method launches worker processes on this node with the same JVM, class path and arguments as the current
+	 * process, extraArguments are appended e.g. --partitioned-job.role=worker
+	 * @param count Number of processes
+	 * @param arguments Application arguments
+	 * @param extraArguments Function of worker index to additional arguments
+	 * @return Started processes
+	 * @throws IOException In case process can not be started
+	 */
+	public static List<Process> launchLocalWorkers(int count, List<String> arguments, IntFunction<List<String>> extraArguments) throws IOException {
+		List<Process> retVal = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			retVal.add(launchLocalWorker(arguments, extraArguments.apply(i)));
+		}
+		return retVal;
+	}
+
+	/**
+	 * This method launches one worker process, see launchLocalWorkers
+	 */
+	public static Process launchLocalWorker(List<String> arguments, List<String> extraArguments) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		String classPath = System.getProperty("java.class.path");
+		if(classPath.endsWith(".jar") && !classPath.contains(File.pathSeparator)) {
+			/**
+			 * Spring boot executable jar, nested jars are only loaded by its launcher
+			 */
+			command.add("-jar");
+			command.add(classPath);
+		}
+		else {
+			command.add("-cp");
+			command.add(classPath);
+			command.add(System.getProperty("sun.java.command").split(" ")[0]);
+		}
+		command.addAll(arguments);
+		command.addAll(extraArguments);
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	public PartitionStore getStore() {
+		return store;
+	}
+	public String getJobName() {
+		return jobName;
+	}
+	public long getLeaseMillis() {
+		return leaseMillis;
+	}
+	public void setLeaseMillis(long leaseMillis) {
+		this.leaseMillis = leaseMillis;
+	}
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	public long getPollMillis() {
+		return pollMillis;
+	}
+	public void setPollMillis(long pollMillis) {
+		this.pollMillis = pollMillis;
+	}
+	public PipelineOptions getPipelineOptions() {
+		return pipelineOptions;
+	}
+	public void setPipelineOptions(PipelineOptions pipelineOptions) {
+		this.pipelineOptions = pipelineOptions;
+	}
+}
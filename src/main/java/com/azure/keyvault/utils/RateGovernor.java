@@ -0,0 +1,404 @@
+package com.azure.keyvault.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Client-side request rate governor shared by storage and vault calls.
+ *
+ * Each resource (storage account name, vault host) and operation class has its own token bucket, implemented
+ * lock-free as GCRA (a single CAS on the theoretical arrival time per permit). Buckets of resources not configured
+ * explicitly use the default limit of the operation class; without any limit calls are not governed at all.
+ *
+ * Two priority lanes share a bucket: interactive callers reserve their permit and wait for it, batch callers only
+ * take a permit when more than the interactive reserve of the burst is available and otherwise back off without
+ * reserving, so batch traffic never queues in front of interactive traffic. Lane is taken from the calling thread
+ * (INTERACTIVE unless set by setPriority/withPriority).
+ *
+ * Backpressure: BLOCKING mode waits up to maxWait and then rejects, FAIL_FAST rejects at once, acquireAsync
+ * completes a future once permitted without holding a thread. Rejection throws ThrottledException.
+ *
+ * Metrics of a resource and operation class outlive its bucket, a bucket replaced by reconfiguration continues
+ * the counters of the previous one, so meters bound to any of them stay valid.
+ * @author Sandeep Kumar
+ *
+ */
+public final class RateGovernor {
+
+	private static final long MAX_BATCH_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final Map<String, Bucket> BUCKETS = new ConcurrentHashMap<>();
+	private static final Map<String, Meters> METERS = new ConcurrentHashMap<>();
+	private static final Map<String, Limit> LIMITS = new ConcurrentHashMap<>();
+	private static final Map<OperationClass, Limit> DEFAULT_LIMITS = new ConcurrentHashMap<>();
+	private static final ThreadLocal<Priority> PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+	private static volatile Mode mode = Mode.BLOCKING;
+	private static volatile long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+	private static volatile double interactiveReserve = 0.2;
+	private static volatile Consumer<Bucket> bucketListener;
+	private static volatile ScheduledExecutorService scheduler;
+
+	private RateGovernor() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	public enum OperationClass {
+		READ,
+		WRITE,
+		LIST
+	}
+
+	public enum Priority {
+		INTERACTIVE,
+		BATCH
+	}
+
+	public enum Mode {
+		BLOCKING,
+		FAIL_FAST
+	}
+
+	/**
+	 * This method sets limit for a resource and operation class, existing bucket is replaced
+	 * @param resource Storage account name or vault host
+	 * @param operationClass Operation class
+	 * @param permitsPerSecond Sustained rate
+	 * @param burst Number of permits available at once
+	 */
+	public static void configure(String resource, OperationClass operationClass, double permitsPerSecond, int burst) {
+		LIMITS.put(bucketKey(resource, operationClass), new Limit(permitsPerSecond, burst));
+		BUCKETS.remove(bucketKey(resource, operationClass));
+	}
+
+	/**
+	 * This method sets limit for all resources not configured explicitly, existing buckets using default are replaced
+	 * @param operationClass Operation class
+	 * @param permitsPerSecond Sustained rate
+	 * @param burst Number of permits available at once
+	 */
+	public static void configureDefault(OperationClass operationClass, double permitsPerSecond, int burst) {
+		DEFAULT_LIMITS.put(operationClass, new Limit(permitsPerSecond, burst));
+		BUCKETS.keySet().removeIf(key -> key.endsWith(":" + operationClass.name()) && !LIMITS.containsKey(key));
+	}
+
+	/**
+	 * This method removes all limits and buckets, metrics are kept
+	 */
+	public static void reset() {
+		LIMITS.clear();
+		DEFAULT_LIMITS.clear();
+		BUCKETS.clear();
+	}
+
+	public static void setMode(Mode mode) {
+		RateGovernor.mode = mode;
+	}
+
+	public static void setMaxWaitMillis(long maxWaitMillis) {
+		RateGovernor.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+	}
+
+	/**
+	 * @param interactiveReserve Fraction of burst (0 to 1) batch traffic can not use
+	 */
+	public static void setInteractiveReserve(double interactiveReserve) {
+		RateGovernor.interactiveReserve = Math.max(0, Math.min(1, interactiveReserve));
+		BUCKETS.clear();
+	}
+
+	/**
+	 * This method sets listener called for every created bucket (and at once for existing buckets), used to export metrics
+	 * @param listener Listener of buckets
+	 */
+	public static void setBucketListener(Consumer<Bucket> listener) {
+		bucketListener = listener;
+		if(null != listener) {
+			BUCKETS.values().forEach(listener);
+		}
+	}
+
+	/**
+	 * @return Live buckets, metrics are read from buckets
+	 */
+	public static Collection<Bucket> getBuckets() {
+		return Collections.unmodifiableCollection(BUCKETS.values());
+	}
+
+	/**
+	 * This method sets the priority lane of calls made by current thread
+	 * @param priority Priority lane
+	 */
+	public static void setPriority(Priority priority) {
+		PRIORITY.set(priority);
+	}
+
+	public static void clearPriority() {
+		PRIORITY.remove();
+	}
+
+	/**
+	 * This method runs the task with given priority lane on current thread
+	 * @param priority Priority lane
+	 * @param task Task to run
+	 * @return Result of task
+	 * @throws Exception Exception of task
+	 */
+	public static <T> T withPriority(Priority priority, Callable<T> task) throws Exception {
+		Priority previous = PRIORITY.get();
+		PRIORITY.set(priority);
+		try {
+			return task.call();
+		}
+		finally {
+			PRIORITY.set(previous);
+		}
+	}
+
+	/**
+	 * This method obtains a permit according to mode, returns at once when resource is not governed
+	 * @param resource Storage account name or vault host
+	 * @param operationClass Operation class
+	 * @throws ThrottledException In case permit is not available in time
+	 */
+	public static void acquire(String resource, OperationClass operationClass) {
+		Bucket bucket = bucket(resource, operationClass);
+		if(null != bucket) {
+			bucket.acquire(PRIORITY.get(), Mode.FAIL_FAST == mode ? 0 : maxWaitNanos);
+		}
+	}
+
+	/**
+	 * This method obtains a permit without blocking the calling thread
+	 * @param resource Storage account name or vault host
+	 * @param operationClass Operation class
+	 * @return Future completed once permitted, completed exceptionally by ThrottledException on rejection
+	 */
+	public static CompletableFuture<Void> acquireAsync(String resource, OperationClass operationClass) {
+		Bucket bucket = bucket(resource, operationClass);
+		if(null == bucket) {
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Void> retVal = new CompletableFuture<>();
+		bucket.acquireAsync(PRIORITY.get(), System.nanoTime(), Mode.FAIL_FAST == mode ? 0 : maxWaitNanos, retVal);
+		return retVal;
+	}
+
+	private static Bucket bucket(String resource, OperationClass operationClass) {
+		if(LIMITS.isEmpty() && DEFAULT_LIMITS.isEmpty()) {
+			return null;
+		}
+		String key = bucketKey(resource, operationClass);
+		Bucket bucket = BUCKETS.get(key);
+		if(null != bucket) {
+			return bucket;
+		}
+		Limit limit = LIMITS.getOrDefault(key, DEFAULT_LIMITS.get(operationClass));
+		if(null == limit) {
+			return null;
+		}
+		Bucket created = new Bucket(resource, operationClass, limit, interactiveReserve, METERS.computeIfAbsent(key, name -> new Meters()));
+		bucket = BUCKETS.putIfAbsent(key, created);
+		if(null == bucket) {
+			Consumer<Bucket> listener = bucketListener;
+			if(null != listener) {
+				listener.accept(created);
+			}
+			return created;
+		}
+		return bucket;
+	}
+
+	private static String bucketKey(String resource, OperationClass operationClass) {
+		return resource + ":" + operationClass.name();
+	}
+
+	private static ScheduledExecutorService scheduler() {
+		if(null == scheduler) {
+			synchronized(RateGovernor.class) {
+				if(null == scheduler) {
+					scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+						Thread thread = new Thread(r, "rate-governor");
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+			}
+		}
+		return scheduler;
+	}
+
+	private static class Limit {
+		private final double permitsPerSecond;
+		private final int burst;
+
+		private Limit(double permitsPerSecond, int burst) {
+			if(permitsPerSecond <= 0) {
+				throw new IllegalArgumentException("permitsPerSecond must be positive");
+			}
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = Math.max(1, burst);
+		}
+	}
+
+	/**
+	 * Counters of a resource and operation class, shared by the buckets replacing each other
+	 */
+	private static class Meters {
+		private final LongAdder acquired = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+	}
+
+	/**
+	 * Lock-free token bucket (GCRA) of a resource and operation class with its metrics
+	 */
+	public static class Bucket {
+		private final String resource;
+		private final OperationClass operationClass;
+		private final long intervalNanos;
+		private final long toleranceNanos;
+		private final long batchToleranceNanos;
+		private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+		private final Meters meters;
+
+		private Bucket(String resource, OperationClass operationClass, Limit limit, double interactiveReserve, Meters meters) {
+			this.resource = resource;
+			this.operationClass = operationClass;
+			this.meters = meters;
+			this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.permitsPerSecond));
+			this.toleranceNanos = (limit.burst - 1) * intervalNanos;
+			this.batchToleranceNanos = (long) (toleranceNanos * (1 - interactiveReserve));
+		}
+
+		/**
+		 * Interactive lane reserves the next permit (one CAS) and sleeps until its slot, batch lane retries without reserving
+		 */
+		private void acquire(Priority priority, long maxWait) {
+			long start = System.nanoTime();
+			if(Priority.INTERACTIVE == priority) {
+				long wait = reserve(start, toleranceNanos, maxWait);
+				if(wait < 0) {
+					reject(maxWait);
+				}
+				if(wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				record(start, System.nanoTime());
+				return;
+			}
+			while(true) {
+				long now = System.nanoTime();
+				long wait = reserve(now, batchToleranceNanos, 0);
+				if(wait == 0) {
+					record(start, now);
+					return;
+				}
+				long backoff = Math.min(MAX_BATCH_BACKOFF_NANOS, -wait);
+				if(now - start + backoff > maxWait) {
+					reject(maxWait);
+				}
+				LockSupport.parkNanos(backoff);
+				if(Thread.currentThread().isInterrupted()) {
+					reject(maxWait);
+				}
+			}
+		}
+
+		private void acquireAsync(Priority priority, long start, long maxWait, CompletableFuture<Void> future) {
+			long now = System.nanoTime();
+			long wait = reserve(now, Priority.INTERACTIVE == priority ? toleranceNanos : batchToleranceNanos,
+					Priority.INTERACTIVE == priority ? Math.max(0, maxWait - (now - start)) : 0);
+			if(wait == 0) {
+				record(start, now);
+				future.complete(null);
+			}
+			else if(wait > 0) {
+				scheduler().schedule(() -> {
+					record(start, System.nanoTime());
+					future.complete(null);
+				}, wait, TimeUnit.NANOSECONDS);
+			}
+			else if(Priority.BATCH == priority && now - start + Math.min(MAX_BATCH_BACKOFF_NANOS, -wait) <= maxWait) {
+				scheduler().schedule(() -> acquireAsync(priority, start, maxWait, future), Math.min(MAX_BATCH_BACKOFF_NANOS, -wait), TimeUnit.NANOSECONDS);
+			}
+			else {
+				meters.rejected.increment();
+				future.completeExceptionally(new ThrottledException(resource, operationClass, maxWait));
+			}
+		}
+
+		/**
+		 * This method takes a permit if it is available within maxWait
+		 * @return 0 when permitted now, positive nanos to wait for the reserved permit,
+		 * negative nanos until a permit would be available when not taken
+		 */
+		private long reserve(long now, long tolerance, long maxWait) {
+			while(true) {
+				long current = theoreticalArrival.get();
+				long arrival = Math.max(current, now);
+				long wait = arrival - now - tolerance;
+				if(wait > maxWait) {
+					return -wait;
+				}
+				if(theoreticalArrival.compareAndSet(current, arrival + intervalNanos)) {
+					return Math.max(0, wait);
+				}
+			}
+		}
+
+		private void record(long start, long end) {
+			long waited = end - start;
+			meters.acquired.increment();
+			meters.waitNanos.add(waited);
+			meters.maxWaitNanos.accumulateAndGet(waited, Math::max);
+		}
+
+		private void reject(long maxWait) {
+			meters.rejected.increment();
+			throw new ThrottledException(resource, operationClass, maxWait);
+		}
+
+		public String getResource() {
+			return resource;
+		}
+		public OperationClass getOperationClass() {
+			return operationClass;
+		}
+		public long getAcquired() {
+			return meters.acquired.sum();
+		}
+		public long getRejected() {
+			return meters.rejected.sum();
+		}
+		public double getTotalWaitSeconds() {
+			return meters.waitNanos.sum() / 1_000_000_000d;
+		}
+		public double getMaxWaitSeconds() {
+			return meters.maxWaitNanos.get() / 1_000_000_000d;
+		}
+	}
+
+	/**
+	 * Exception thrown when permit is not available within allowed wait
+	 */
+	public static class ThrottledException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public ThrottledException(String resource, OperationClass operationClass, long maxWaitNanos) {
+			super("Rate limit of " + resource + " " + operationClass + " exceeded, no permit within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+		}
+	}
+}
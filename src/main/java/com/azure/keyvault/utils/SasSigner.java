@@ -0,0 +1,288 @@
+package com.azure.keyvault.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
+
+/**
+ * Offline Service SAS generation for blobs and containers.
+ *
+ * SAS signature is a local HMAC-SHA256 over the string-to-sign, so no blob client or network call is needed.
+ * The account key is parsed once per connection string and a Mac instance is reused per thread.
+ * @author Sandeep Kumar
+ *
+ */
+public final class SasSigner {
+
+	private static final String SAS_VERSION = "2018-11-09";
+	private static final String HMAC_SHA256 = "HmacSHA256";
+	private static final String DEV_ACCOUNT_NAME = "devstoreaccount1";
+	private static final String DEV_ACCOUNT_KEY = "Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==";
+	private static final String DEV_BLOB_ENDPOINT = "http://127.0.0.1:10000/devstoreaccount1";
+
+	private static final Map<String, SasSigner> SIGNERS = new ConcurrentHashMap<>();
+
+	private final String accountName;
+	private final String blobEndpoint;
+	private final ThreadLocal<Mac> mac;
+
+	private SasSigner(String accountName, String accountKey, String blobEndpoint) {
+		this.accountName = accountName;
+		this.blobEndpoint = blobEndpoint.endsWith("/") ? blobEndpoint.substring(0, blobEndpoint.length() - 1) : blobEndpoint;
+		SecretKeySpec key = new SecretKeySpec(Base64.getDecoder().decode(accountKey), HMAC_SHA256);
+		this.mac = ThreadLocal.withInitial(() -> {
+			try {
+				Mac instance = Mac.getInstance(HMAC_SHA256);
+				instance.init(key);
+				return instance;
+			} catch(NoSuchAlgorithmException | InvalidKeyException ex) {
+				throw new IllegalStateException("HmacSHA256 not available", ex);
+			}
+		});
+	}
+
+	/**
+	 * This method returns the signer for storage account connection string, signer is created once per connection string
+	 * @param connectionString Azure storage connection string with AccountName and AccountKey
+	 * @return SasSigner object
+	 */
+	public static SasSigner forConnectionString(String connectionString) {
+		return SIGNERS.computeIfAbsent(connectionString, SasSigner::parse);
+	}
+
+	private static SasSigner parse(String connectionString) {
+		Map<String, String> settings = new HashMap<>();
+		for(String part : connectionString.split(";")) {
+			int index = part.indexOf('=');
+			if(index > 0) {
+				settings.put(part.substring(0, index).trim(), part.substring(index + 1).trim());
+			}
+		}
+		if("true".equalsIgnoreCase(settings.get("UseDevelopmentStorage"))) {
+			return new SasSigner(DEV_ACCOUNT_NAME, DEV_ACCOUNT_KEY, DEV_BLOB_ENDPOINT);
+		}
+		String accountName = settings.get("AccountName");
+		String accountKey = settings.get("AccountKey");
+		if(null == accountName || null == accountKey) {
+			throw new IllegalArgumentException("Connection string must contain AccountName and AccountKey for SAS signing");
+		}
+		String blobEndpoint = settings.get("BlobEndpoint");
+		if(null == blobEndpoint) {
+			blobEndpoint = settings.getOrDefault("DefaultEndpointsProtocol", "https") + "://" + accountName + ".blob."
+					+ settings.getOrDefault("EndpointSuffix", "core.windows.net");
+		}
+		return new SasSigner(accountName, accountKey, blobEndpoint);
+	}
+
+	/**
+	 * This method generates blob URL with SAS token
+	 * @param containerName Name of container
+	 * @param blobName Name of blob
+	 * @param parameters SAS parameters
+	 * @return Blob URL with SAS
+	 */
+	public String blobURL(String containerName, String blobName, SasParameters parameters) {
+		return blobURL(containerName, blobName, new PreparedParameters(parameters, false));
+	}
+
+	/**
+	 * This method generates blob URLs with SAS token in bulk, common SAS fields are computed once
+	 * @param containerName Name of container
+	 * @param blobNames Name of blobs
+	 * @param parameters SAS parameters applied to all blobs
+	 * @return Blob URLs with SAS in the order of blob names
+	 */
+	public List<String> blobURLs(String containerName, List<String> blobNames, SasParameters parameters) {
+		PreparedParameters prepared = new PreparedParameters(parameters, false);
+		return blobNames.stream().map(blobName -> blobURL(containerName, blobName, prepared)).collect(Collectors.toList());
+	}
+
+	/**
+	 * This method generates container URL with SAS token
+	 * @param containerName Name of container
+	 * @param parameters SAS parameters
+	 * @return Container URL with SAS
+	 */
+	public String containerURL(String containerName, SasParameters parameters) {
+		PreparedParameters prepared = new PreparedParameters(parameters, true);
+		String resource = "/blob/" + accountName + "/" + containerName;
+		return blobEndpoint + "/" + containerName + "?" + prepared.query(sign(prepared.stringToSign(resource, "c")), "c");
+	}
+
+	private String blobURL(String containerName, String blobName, PreparedParameters prepared) {
+		String resource = "/blob/" + accountName + "/" + containerName + "/" + blobName;
+		return blobEndpoint + "/" + containerName + "/" + encodePath(blobName) + "?" + prepared.query(sign(prepared.stringToSign(resource, "b")), "b");
+	}
+
+	private String sign(String stringToSign) {
+		return Base64.getEncoder().encodeToString(mac.get().doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String encodePath(String blobName) {
+		return Arrays.stream(blobName.split("/", -1)).map(segment -> encode(segment).replace("+", "%20")).collect(Collectors.joining("/"));
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch(UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static String formatDate(Date date) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(date);
+	}
+
+	/**
+	 * SAS fields which are same for all blobs of a batch
+	 */
+	private static class PreparedParameters {
+		private final String permissions;
+		private final String start;
+		private final String expiry;
+		private final String ipRange;
+		private final String protocol;
+
+		private PreparedParameters(SasParameters parameters, boolean container) {
+			this.permissions = permissionsToString(parameters.getPermissions(), container);
+			this.start = null != parameters.getStartTime() ? formatDate(parameters.getStartTime()) : "";
+			this.expiry = formatDate(null != parameters.getExpiryTime() ? parameters.getExpiryTime()
+					: new Date(System.currentTimeMillis() + parameters.getExpiryMillis()));
+			this.ipRange = null != parameters.getIpRange() ? parameters.getIpRange() : "";
+			this.protocol = null != parameters.getProtocol() ? parameters.getProtocol() : "";
+		}
+
+		private String stringToSign(String canonicalizedResource, String signedResource) {
+			return permissions + "\n" + start + "\n" + expiry + "\n" + canonicalizedResource + "\n"
+					+ "\n" + ipRange + "\n" + protocol + "\n" + SAS_VERSION + "\n" + signedResource + "\n"
+					+ "\n\n\n\n\n";
+		}
+
+		private String query(String signature, String signedResource) {
+			StringBuilder query = new StringBuilder(160);
+			query.append("sv=").append(SAS_VERSION);
+			if(!start.isEmpty()) {
+				query.append("&st=").append(encode(start));
+			}
+			query.append("&se=").append(encode(expiry));
+			query.append("&sr=").append(signedResource);
+			query.append("&sp=").append(permissions);
+			if(!ipRange.isEmpty()) {
+				query.append("&sip=").append(encode(ipRange));
+			}
+			if(!protocol.isEmpty()) {
+				query.append("&spr=").append(encode(protocol));
+			}
+			query.append("&sig=").append(encode(signature));
+			return query.toString();
+		}
+
+		private static String permissionsToString(EnumSet<SharedAccessBlobPermissions> permissions, boolean container) {
+			StringBuilder retVal = new StringBuilder(6);
+			if(permissions.contains(SharedAccessBlobPermissions.READ)) {
+				retVal.append('r');
+			}
+			if(permissions.contains(SharedAccessBlobPermissions.ADD)) {
+				retVal.append('a');
+			}
+			if(permissions.contains(SharedAccessBlobPermissions.CREATE)) {
+				retVal.append('c');
+			}
+			if(permissions.contains(SharedAccessBlobPermissions.WRITE)) {
+				retVal.append('w');
+			}
+			if(permissions.contains(SharedAccessBlobPermissions.DELETE)) {
+				retVal.append('d');
+			}
+			if(container && permissions.contains(SharedAccessBlobPermissions.LIST)) {
+				retVal.append('l');
+			}
+			return retVal.toString();
+		}
+	}
+
+	/**
+	 * POJO Class to pass SAS parameters, either expiryTime or expiryMillis (relative to now) is used.
+	 * ipRange e.g. 168.1.5.60-168.1.5.70 and protocol e.g. https or https,http are optional
+	 * @author Sandeep Kumar
+	 *
+	 */
+	public static class SasParameters {
+		private EnumSet<SharedAccessBlobPermissions> permissions;
+		private Date startTime;
+		private Date expiryTime;
+		private long expiryMillis;
+		private String ipRange;
+		private String protocol;
+
+		public SasParameters() {
+			this.permissions = EnumSet.of(SharedAccessBlobPermissions.READ);
+			this.expiryMillis = TimeUnit.MINUTES.toMillis(30);
+		}
+
+		public SasParameters(EnumSet<SharedAccessBlobPermissions> permissions, long expiryMillis) {
+			this();
+			this.permissions = permissions;
+			this.expiryMillis = expiryMillis;
+		}
+
+		public EnumSet<SharedAccessBlobPermissions> getPermissions() {
+			return permissions;
+		}
+		public void setPermissions(EnumSet<SharedAccessBlobPermissions> permissions) {
+			this.permissions = permissions;
+		}
+		public Date getStartTime() {
+			return startTime;
+		}
+		public void setStartTime(Date startTime) {
+			this.startTime = startTime;
+		}
+		public Date getExpiryTime() {
+			return expiryTime;
+		}
+		public void setExpiryTime(Date expiryTime) {
+			this.expiryTime = expiryTime;
+		}
+		public long getExpiryMillis() {
+			return expiryMillis;
+		}
+		public void setExpiryMillis(long expiryMillis) {
+			this.expiryMillis = expiryMillis;
+		}
+		public String getIpRange() {
+			return ipRange;
+		}
+		public void setIpRange(String ipRange) {
+			this.ipRange = ipRange;
+		}
+		public String getProtocol() {
+			return protocol;
+		}
+		public void setProtocol(String protocol) {
+			this.protocol = protocol;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Local snapshot of the secrets last obtained from Azure KeyVault.
+ *
+ * Secrets are stored into a single file encrypted with AES-GCM under a 256 bit key supplied by the deployment
+ * (environment variable or mounted secret file, see decodeKey), the key is never stored next to the snapshot.
+ * It allows to boot without waiting for vault, the values must be revalidated against vault afterwards.
+ *
+ * What it protects against: the snapshot file alone (copied from disk, backup or image) reveals nothing and
+ * any modification or a snapshot written under another key is detected and ignored.
+ * What it does not protect against: anyone who can read the key as well, i.e. the process environment or the
+ * secret mount of the application, and replay of an older snapshot written under the same key (an old secret
+ * value is used until the vault revalidation replaces it).
+ *
+ * File layout: MAGIC | iv length | iv | encrypted java.util.Properties, header is authenticated with the content
+ * @author Sandeep Kumar
+ *
+ */
+public class SecretSnapshotStore {
+
+	private static final Logger LOGGER = LogManager.getLogger(SecretSnapshotStore.class);
+
+	private static final int MAGIC = 0x4B565332;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final int KEY_LENGTH = 32;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Path file;
+	private final SecretKey key;
+	private Map<String, String> secrets;
+
+	/**
+	 * @param file Snapshot file
+	 * @param key AES key of the snapshot, see decodeKey
+	 */
+	public SecretSnapshotStore(Path file, SecretKey key) {
+		this.file = file;
+		this.key = key;
+	}
+
+	/**
+	 * This method creates the snapshot key from its Base64 form, e.g. generated with
+	 * openssl rand -base64 32
+	 * @param encoded Base64 encoded 256 bit key
+	 * @return AES key
+	 * @throws IllegalArgumentException In case the value is not a Base64 encoded 256 bit key
+	 */
+	public static SecretKey decodeKey(String encoded) {
+		byte[] raw = Base64.getDecoder().decode(encoded.trim());
+		if(raw.length != KEY_LENGTH) {
+			throw new IllegalArgumentException("Secret snapshot key must be " + KEY_LENGTH * 8 + " bit, found " + raw.length * 8 + " bit");
+		}
+		return new SecretKeySpec(raw, "AES");
+	}
+
+	/**
+	 * This method reads the snapshot key from a file, e.g. a mounted Kubernetes secret
+	 * @param keyFile File containing Base64 encoded 256 bit key
+	 * @return AES key
+	 * @throws IOException In case the file can not be read
+	 */
+	public static SecretKey readKey(Path keyFile) throws IOException {
+		return decodeKey(new String(Files.readAllBytes(keyFile), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * This method returns the snapshot value of the secret
+	 * @param secretName Name of secret
+	 * @return Value from snapshot or null if not available
+	 */
+	public synchronized String get(String secretName) {
+		return load().get(secretName);
+	}
+
+	/**
+	 * This method stores the secret into snapshot and persists the snapshot file
+	 * @param secretName Name of secret
+	 * @param value Value of secret
+	 */
+	public synchronized void put(String secretName, String value) {
+		Map<String, String> updated = new HashMap<>(load());
+		if(value.equals(updated.put(secretName, value))) {
+			return;
+		}
+		try {
+			write(updated);
+			secrets = updated;
+		} catch(IOException | GeneralSecurityException ex) {
+			LOGGER.error("Error while writing secret snapshot " + file, ex);
+		}
+	}
+
+	/**
+	 * This method loads all secrets from the snapshot file once.
+	 * Missing, tampered or snapshot written under another key results in empty snapshot.
+	 * @return Map of secret name and value
+	 */
+	public synchronized Map<String, String> load() {
+		if(null == secrets) {
+			secrets = Collections.emptyMap();
+			if(Files.isRegularFile(file)) {
+				try {
+					secrets = read();
+				} catch(IOException | GeneralSecurityException ex) {
+					LOGGER.warn("Secret snapshot {} can not be read, ignored", file);
+				}
+			}
+		}
+		return secrets;
+	}
+
+	private Map<String, String> read() throws IOException, GeneralSecurityException {
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a secret snapshot file");
+			}
+			int ivLength = in.readInt();
+			if(ivLength != IV_LENGTH) {
+				throw new IOException("Invalid secret snapshot header");
+			}
+			byte[] iv = new byte[ivLength];
+			in.readFully(iv);
+			byte[] encrypted = new byte[in.available()];
+			in.readFully(encrypted);
+
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(header(iv));
+			Properties properties = new Properties();
+			properties.load(new ByteArrayInputStream(cipher.doFinal(encrypted)));
+			Map<String, String> retVal = new HashMap<>();
+			properties.stringPropertyNames().forEach(name -> retVal.put(name, properties.getProperty(name)));
+			return retVal;
+		}
+	}
+
+	private void write(Map<String, String> values) throws IOException, GeneralSecurityException {
+		Properties properties = new Properties();
+		properties.putAll(values);
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		properties.store(plain, null);
+
+		byte[] iv = new byte[IV_LENGTH];
+		RANDOM.nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+		byte[] header = header(iv);
+		cipher.updateAAD(header);
+		byte[] encrypted = cipher.doFinal(plain.toByteArray());
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		content.write(header);
+		content.write(encrypted);
+
+		/**
+		 * Write into temporary file and move, so that a crash never leaves a partial snapshot
+		 */
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			restrictToOwner(temp);
+			Files.write(temp, content.toByteArray());
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void restrictToOwner(Path path) {
+		try {
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+		} catch(UnsupportedOperationException | IOException ex) {
+			LOGGER.debug("Owner only permission not supported for {}", path);
+		}
+	}
+
+	private static byte[] header(byte[] iv) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(header)) {
+			out.writeInt(MAGIC);
+			out.writeInt(iv.length);
+			out.write(iv);
+		}
+		return header.toByteArray();
+	}
+}
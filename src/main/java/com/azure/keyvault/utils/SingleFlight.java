@@ -0,0 +1,67 @@
+package com.azure.keyvault.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Request coalescing for concurrent identical calls.
+ *
+ * While a call for a key is in flight, other threads asking for the same key wait for that call
+ * and receive its result (or exception) instead of making their own call. Once completed, the key
+ * is released and next call goes to the source again, i.e. nothing is cached.
+ * @author Sandeep Kumar
+ *
+ * @param <K> Key type identifying identical calls
+ * @param <V> Result type
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * This method executes the supplier unless a call with the same key is already in flight
+	 * @param key Key identifying the call
+	 * @param supplier Call to execute
+	 * @return Result of the in-flight call
+	 */
+	public V execute(K key, Supplier<V> supplier) {
+		CompletableFuture<V> call = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+		if(null != existing) {
+			return await(existing);
+		}
+		try {
+			call.complete(supplier.get());
+		} catch(RuntimeException | Error ex) {
+			call.completeExceptionally(ex);
+		} finally {
+			inFlight.remove(key, call);
+		}
+		return await(call);
+	}
+
+	/**
+	 * @return Number of calls currently in flight
+	 */
+	public int inFlightCount() {
+		return inFlight.size();
+	}
+
+	private static <V> V await(CompletableFuture<V> call) {
+		try {
+			return call.join();
+		} catch(CompletionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw ex;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.azure.keyvault.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Read routing over replica vaults (e.g. same secrets restored into vaults of several regions).
+ *
+ * Latency of every call is tracked per vault as EWMA, reads go to the fastest available vault. A failed vault is
+ * ejected for ejectMillis, doubled on every consecutive failure up to maxEjectMillis, and the read fails over to
+ * the next vault. An attempt running longer than attemptTimeoutMillis is cancelled (its thread interrupted), the
+ * vault is ejected as for a failure and the read fails over. Timed attempts run on a bounded pool of readThreads,
+ * once the pool and its queue are full the attempt runs on the caller thread without timeout. A vault not used for probeIntervalMillis gets one read, so that a recovered or
+ * closer vault takes over again. Errors for which failover predicate is false (e.g. secret not found) are
+ * thrown directly and do not count against the vault.
+ * @author Sandeep Kumar
+ *
+ */
+public final class VaultReplicaRouter {
+
+	private static final Logger LOGGER = LogManager.getLogger(VaultReplicaRouter.class);
+
+	private static final int MAX_EJECT_SHIFT = 6;
+	private static final int DEFAULT_READ_THREADS = 16;
+
+	private static final ConcurrentHashMap<String, ReplicaHealth> REPLICAS = new ConcurrentHashMap<>();
+
+	private static volatile double alpha = 0.2;
+	private static volatile long attemptTimeoutMillis = 5000;
+	private static volatile long ejectMillis = 10000;
+	private static volatile long maxEjectMillis = 300000;
+	private static volatile long probeIntervalMillis = 30000;
+
+	private static final ThreadPoolExecutor READ_SERVICE = new ThreadPoolExecutor(DEFAULT_READ_THREADS, DEFAULT_READ_THREADS, 
+			60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_READ_THREADS), r -> {
+		Thread thread = new Thread(r, "vault-replica-read");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		READ_SERVICE.allowCoreThreadTimeOut(true);
+	}
+
+	private VaultReplicaRouter() {
+	    throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @param alpha Weight of latest latency into EWMA, between 0 and 1
+	 */
+	public static void setAlpha(double alpha) {
+		VaultReplicaRouter.alpha = Math.min(1, Math.max(0.01, alpha));
+	}
+
+	/**
+	 * @param attemptTimeoutMillis Time after which read fails over to next vault, 0 waits without limit
+	 */
+	public static void setAttemptTimeout(long attemptTimeoutMillis) {
+		VaultReplicaRouter.attemptTimeoutMillis = attemptTimeoutMillis;
+	}
+
+	/**
+	 * @param ejectMillis Ejection after first failure
+	 * @param maxEjectMillis Maximum ejection after consecutive failures
+	 */
+	public static void setEjection(long ejectMillis, long maxEjectMillis) {
+		VaultReplicaRouter.ejectMillis = ejectMillis;
+		VaultReplicaRouter.maxEjectMillis = Math.max(ejectMillis, maxEjectMillis);
+	}
+
+	/**
+	 * @param readThreads Maximum number of concurrent timed attempts
+	 */
+	public static synchronized void setReadThreads(int readThreads) {
+		int threads = Math.max(1, readThreads);
+		if(threads > READ_SERVICE.getMaximumPoolSize()) {
+			READ_SERVICE.setMaximumPoolSize(threads);
+			READ_SERVICE.setCorePoolSize(threads);
+		}
+		else {
+			READ_SERVICE.setCorePoolSize(threads);
+			READ_SERVICE.setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * @param probeIntervalMillis Interval after which an unused vault gets one read to refresh its latency
+	 */
+	public static void setProbeInterval(long probeIntervalMillis) {
+		VaultReplicaRouter.probeIntervalMillis = probeIntervalMillis;
+	}
+
+	/**
+	 * This method executes the read against the fastest available vault and fails over to the others
+	 * @param vaultUris Base urls of replica vaults
+	 * @param call Read against a vault base url
+	 * @param failover Decides if an exception is failure of the vault, otherwise it is thrown directly
+	 * @return Result of first successful read
+	 */
+	public static <T> T execute(List<String> vaultUris, Function<String, T> call, Predicate<RuntimeException> failover) {
+		return route(vaultUris, call, failover).getValue();
+	}
+
+	/**
+	 * This method executes the read as execute does and tells which vault served it, e.g. for the audit trail
+	 * @param vaultUris Base urls of replica vaults
+	 * @param call Read against a vault base url
+	 * @param failover Decides if an exception is failure of the vault, otherwise it is thrown directly
+	 * @return Result of first successful read together with base url of vault which served it
+	 */
+	public static <T> Served<T> route(List<String> vaultUris, Function<String, T> call, Predicate<RuntimeException> failover) {
+		if(vaultUris.size() == 1) {
+			return new Served<>(vaultUris.get(0), call.apply(vaultUris.get(0)));
+		}
+		List<String> order = order(vaultUris);
+		RuntimeException last = null;
+		for(int i = 0; i < order.size(); i++) {
+			String uri = order.get(i);
+			ReplicaHealth health = health(uri);
+			boolean hasNext = i < order.size() - 1;
+			AtomicBoolean abandoned = new AtomicBoolean();
+			Future<T> attempt = null;
+			try {
+				if(hasNext && attemptTimeoutMillis > 0) {
+					attempt = submit(() -> timed(uri, health, call, failover, abandoned));
+				}
+				if(null != attempt) {
+					return new Served<>(uri, attempt.get(attemptTimeoutMillis, TimeUnit.MILLISECONDS));
+				}
+				return new Served<>(uri, timed(uri, health, call, failover, abandoned));
+			} catch(TimeoutException ex) {
+				abandoned.set(true);
+				attempt.cancel(true);
+				long ejection = health.failure();
+				LOGGER.warn("Vault {} did not answer within {} ms, ejected for {} ms, failing over", uri, attemptTimeoutMillis, ejection);
+				last = new IllegalStateException("Vault " + uri + " did not answer within " + attemptTimeoutMillis + " ms", ex);
+			} catch(InterruptedException ex) {
+				abandoned.set(true);
+				attempt.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reading from vault " + uri, ex);
+			} catch(ExecutionException ex) {
+				RuntimeException cause = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new IllegalStateException(ex.getCause());
+				if(!failover.test(cause)) {
+					throw cause;
+				}
+				last = cause;
+			} catch(RuntimeException ex) {
+				if(!failover.test(ex)) {
+					throw ex;
+				}
+				last = ex;
+			}
+		}
+		throw last;
+	}
+
+	/**
+	 * @param vaultUri Base url of vault
+	 * @return EWMA latency in milliseconds or -1 if vault was not used yet
+	 */
+	public static double getLatencyMillis(String vaultUri) {
+		double ewma = health(vaultUri).ewmaNanos;
+		return ewma < 0 ? -1 : ewma / 1_000_000d;
+	}
+
+	/**
+	 * @param vaultUri Base url of vault
+	 * @return false while vault is ejected after failures
+	 */
+	public static boolean isAvailable(String vaultUri) {
+		return health(vaultUri).ejectedUntil <= System.currentTimeMillis();
+	}
+
+	/**
+	 * Available vaults by EWMA snapshot (not yet used first, so every vault gets measured), a stale vault is moved first once
+	 * per probe interval, ejected vaults are kept last as last resort
+	 */
+	private static List<String> order(List<String> vaultUris) {
+		long now = System.currentTimeMillis();
+		Map<String, Double> latencies = new HashMap<>();
+		Map<String, Long> ejections = new HashMap<>();
+		List<String> available = new ArrayList<>();
+		List<String> ejected = new ArrayList<>();
+		for(String uri : vaultUris) {
+			ReplicaHealth health = health(uri);
+			latencies.put(uri, health.ewmaNanos);
+			ejections.put(uri, health.ejectedUntil);
+			(ejections.get(uri) <= now ? available : ejected).add(uri);
+		}
+		available.sort(Comparator.comparing(latencies::get));
+		ejected.sort(Comparator.comparing(ejections::get));
+		for(int i = 1; i < available.size(); i++) {
+			ReplicaHealth health = health(available.get(i));
+			long lastUsed = health.lastUsed.get();
+			if(now - lastUsed >= probeIntervalMillis && health.lastUsed.compareAndSet(lastUsed, now)) {
+				available.add(0, available.remove(i));
+				break;
+			}
+		}
+		available.addAll(ejected);
+		return available;
+	}
+
+	/**
+	 * Attempt on the bounded pool, null once pool and its queue are full
+	 */
+	private static <T> Future<T> submit(Callable<T> task) {
+		try {
+			return READ_SERVICE.submit(task);
+		} catch(RejectedExecutionException ex) {
+			LOGGER.debug("Vault read pool saturated, reading on caller thread");
+			return null;
+		}
+	}
+
+	/**
+	 * Outcome of an abandoned attempt (timed out or cancelled) is already accounted for and not recorded again
+	 */
+	private static <T> T timed(String uri, ReplicaHealth health, Function<String, T> call, Predicate<RuntimeException> failover, AtomicBoolean abandoned) {
+		long start = System.nanoTime();
+		health.lastUsed.set(System.currentTimeMillis());
+		try {
+			T retVal = call.apply(uri);
+			if(abandoned.get()) {
+				return retVal;
+			}
+			health.record(System.nanoTime() - start);
+			if(health.consecutiveFailures.getAndSet(0) > 0) {
+				LOGGER.info("Vault {} recovered", uri);
+			}
+			return retVal;
+		} catch(RuntimeException ex) {
+			if(abandoned.get()) {
+				throw ex;
+			}
+			if(failover.test(ex)) {
+				long ejection = health.failure();
+				LOGGER.warn("Vault {} failed, ejected for {} ms: {}", uri, ejection, ex.getMessage());
+			}
+			else {
+				health.record(System.nanoTime() - start);
+			}
+			throw ex;
+		}
+	}
+
+	private static ReplicaHealth health(String vaultUri) {
+		return REPLICAS.computeIfAbsent(vaultUri, uri -> new ReplicaHealth());
+	}
+
+	/**
+	 * Result of a routed read
+	 */
+	public static final class Served<T> {
+		private final String uri;
+		private final T value;
+
+		private Served(String uri, T value) {
+			this.uri = uri;
+			this.value = value;
+		}
+
+		/**
+		 * @return Base url of vault which served the read
+		 */
+		public String getUri() {
+			return uri;
+		}
+
+		/**
+		 * @return Result of the read
+		 */
+		public T getValue() {
+			return value;
+		}
+	}
+
+	private static final class ReplicaHealth {
+		private volatile double ewmaNanos = -1;
+		private volatile long ejectedUntil;
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private final AtomicLong lastUsed = new AtomicLong();
+
+		private synchronized void record(long nanos) {
+			ewmaNanos = ewmaNanos < 0 ? nanos : alpha * nanos + (1 - alpha) * ewmaNanos;
+		}
+
+		private long failure() {
+			int failures = consecutiveFailures.incrementAndGet();
+			long ejection = Math.min(maxEjectMillis, ejectMillis << Math.min(failures - 1, MAX_EJECT_SHIFT));
+			ejectedUntil = System.currentTimeMillis() + ejection;
+			return ejection;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package com.azure.keyvault.utils;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.microsoft.azure.keyvault.models.SecretBundle;
+
+/**
+ * Cached SSLContext/KeyStore built from Azure KeyVault certificate (with private key and chain).
+ *
+ * Certificate is obtained once, afterwards a background thread checks for new certificate version and
+ * swaps the key material atomically. SSLContext is built once over a reloading key manager, so the same
+ * SSLContext (and socket factories created from it) serve the new certificate with next handshake and
+ * no handshake ever waits for vault.
+ *
+ * e.g.
+ *
+ * VaultSslContextProvider provider = new VaultSslContextProvider(properties, null, 3600);
+ * SSLSocketFactory socketFactory = provider.getSSLContext().getSocketFactory();
+ * @author Sandeep Kumar
+ *
+ */
+public class VaultSslContextProvider implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger(VaultSslContextProvider.class);
+
+	private final KeyVaultProperties properties;
+	private final AtomicReference<Material> material = new AtomicReference<>();
+	private final ReloadingKeyManager keyManager = new ReloadingKeyManager();
+	private final SSLContext sslContext;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * This constructor obtains certificate from vault and builds SSLContext
+	 * @param properties Vault connection, secret name is the certificate name
+	 * @param trustManagers Trust managers for SSLContext, null for JRE default trust
+	 * @param refreshSeconds Interval of new version check, 0 or less disables reload
+	 * @throws GeneralSecurityException In case of invalid certificate/key content
+	 * @throws IOException In case of invalid content
+	 */
+	public VaultSslContextProvider(KeyVaultProperties properties, TrustManager[] trustManagers, long refreshSeconds) throws GeneralSecurityException, IOException {
+		this.properties = properties;
+		material.set(load(AzureVaultUtils.getSecretBundleFromVault(properties)));
+		keyManager.swap(material.get().keyManager);
+		sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(new KeyManager[] {keyManager}, trustManagers, null);
+		if(refreshSeconds > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "vault-certificate-reload");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::reload, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+		}
+		else {
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return Cached SSLContext, always serving the latest loaded certificate
+	 */
+	public SSLContext getSSLContext() {
+		return sslContext;
+	}
+
+	/**
+	 * @return Cached KeyStore of latest loaded certificate, KeyStore password is empty
+	 */
+	public KeyStore getKeyStore() {
+		return material.get().keyStore;
+	}
+
+	/**
+	 * @return Version of latest loaded certificate
+	 */
+	public String getVersion() {
+		return material.get().version;
+	}
+
+	/**
+	 * This method checks vault for a new certificate version and swaps the key material, errors keep current material
+	 */
+	public void reload() {
+		try {
+			SecretBundle bundle = AzureVaultUtils.getSecretBundleFromVault(properties);
+			if(!bundle.secretIdentifier().version().equals(material.get().version)) {
+				Material loaded = load(bundle);
+				material.set(loaded);
+				keyManager.swap(loaded.keyManager);
+				LOGGER.info("Certificate {} reloaded with version {}", properties.getSecretName(), loaded.version);
+			}
+		} catch(Exception ex) {
+			LOGGER.error("Error while reloading certificate " + properties.getSecretName() + " from vault", ex);
+		}
+	}
+
+	@Override
+	public void close() {
+		if(null != scheduler) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private static Material load(SecretBundle bundle) throws GeneralSecurityException, IOException {
+		KeyStore keyStore = AzureVaultUtils.toKeyStore(bundle);
+		KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		factory.init(keyStore, new char[0]);
+		for(KeyManager manager : factory.getKeyManagers()) {
+			if(manager instanceof X509ExtendedKeyManager) {
+				return new Material(bundle.secretIdentifier().version(), keyStore, (X509ExtendedKeyManager) manager);
+			}
+		}
+		throw new GeneralSecurityException("No X509 key manager available");
+	}
+
+	private static class Material {
+		private final String version;
+		private final KeyStore keyStore;
+		private final X509ExtendedKeyManager keyManager;
+
+		private Material(String version, KeyStore keyStore, X509ExtendedKeyManager keyManager) {
+			this.version = version;
+			this.keyStore = keyStore;
+			this.keyManager = keyManager;
+		}
+	}
+
+	/**
+	 * Key manager delegating to the latest loaded key material.
+	 *
+	 * A handshake chooses an alias and then asks for its chain and key in separate calls, a reload in between
+	 * must not pair the new chain with the old key. Chosen aliases are therefore qualified with the generation
+	 * of key material that chose them, chain and key are looked up in that generation (current or previous one).
+	 */
+	private static class ReloadingKeyManager extends X509ExtendedKeyManager {
+		private static final char GENERATION_SEPARATOR = '|';
+
+		private final AtomicReference<Generation> current = new AtomicReference<>();
+		private volatile Generation previous;
+		private int generations;
+
+		private synchronized void swap(X509ExtendedKeyManager keyManager) {
+			previous = current.getAndSet(new Generation(generations++, keyManager));
+		}
+
+		@Override
+		public String[] getClientAliases(String keyType, Principal[] issuers) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.getClientAliases(keyType, issuers));
+		}
+		@Override
+		public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.chooseClientAlias(keyType, issuers, socket));
+		}
+		@Override
+		public String[] getServerAliases(String keyType, Principal[] issuers) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.getServerAliases(keyType, issuers));
+		}
+		@Override
+		public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.chooseServerAlias(keyType, issuers, socket));
+		}
+		@Override
+		public X509Certificate[] getCertificateChain(String alias) {
+			Generation generation = generationOf(alias);
+			return null != generation ? generation.keyManager.getCertificateChain(generation.unqualify(alias)) : null;
+		}
+		@Override
+		public PrivateKey getPrivateKey(String alias) {
+			Generation generation = generationOf(alias);
+			return null != generation ? generation.keyManager.getPrivateKey(generation.unqualify(alias)) : null;
+		}
+		@Override
+		public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.chooseEngineClientAlias(keyType, issuers, engine));
+		}
+		@Override
+		public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+			Generation generation = current.get();
+			return generation.qualify(generation.keyManager.chooseEngineServerAlias(keyType, issuers, engine));
+		}
+
+		/**
+		 * @return Generation which chose the alias, null if unknown or already two reloads old
+		 */
+		private Generation generationOf(String alias) {
+			int separator = null != alias ? alias.indexOf(GENERATION_SEPARATOR) : -1;
+			if(separator <= 0) {
+				return null;
+			}
+			String prefix = alias.substring(0, separator);
+			Generation generation = current.get();
+			if(null != generation && generation.prefix.equals(prefix)) {
+				return generation;
+			}
+			generation = previous;
+			return null != generation && generation.prefix.equals(prefix) ? generation : null;
+		}
+	}
+
+	private static class Generation {
+		private final String prefix;
+		private final X509ExtendedKeyManager keyManager;
+
+		private Generation(int id, X509ExtendedKeyManager keyManager) {
+			this.prefix = Integer.toString(id);
+			this.keyManager = keyManager;
+		}
+
+		private String qualify(String alias) {
+			return null != alias ? prefix + ReloadingKeyManager.GENERATION_SEPARATOR + alias : null;
+		}
+
+		private String[] qualify(String[] aliases) {
+			if(null == aliases) {
+				return null;
+			}
+			String[] retVal = new String[aliases.length];
+			for(int i = 0; i < aliases.length; i++) {
+				retVal[i] = qualify(aliases[i]);
+			}
+			return retVal;
+		}
+
+		private String unqualify(String alias) {
+			return alias.substring(prefix.length() + 1);
+		}
+	}
+}
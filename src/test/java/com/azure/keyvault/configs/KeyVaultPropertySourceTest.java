@@ -0,0 +1,101 @@
+package com.azure.keyvault.configs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+
+class KeyVaultPropertySourceTest {
+
+	private final Map<String, String> vault = new ConcurrentHashMap<>();
+	private final List<Collection<String>> requests = new ArrayList<>();
+
+	private KeyVaultPropertySource propertySource(long negativeCacheMillis) {
+		return new KeyVaultPropertySource(new KeyVaultProperties(), negativeCacheMillis, secretNames -> {
+			requests.add(new ArrayList<>(secretNames));
+			Map<String, String> found = new HashMap<>();
+			secretNames.stream().filter(vault::containsKey).forEach(name -> found.put(name, vault.get(name)));
+			return found;
+		});
+	}
+
+	@Test
+	void prefetchedSecretsAreServedWithoutVaultCall() {
+		vault.put("db-password", "p@ss");
+		vault.put("blob-key", "key");
+		KeyVaultPropertySource propertySource = propertySource(60000);
+
+		propertySource.prefetch(Arrays.asList("db-password", "blob-key"));
+
+		assertEquals("p@ss", propertySource.getProperty("kv:db-password"));
+		assertEquals("key", propertySource.getProperty("kv:blob-key"));
+		assertNull(propertySource.getProperty("db-password"));
+		assertEquals(1, requests.size());
+		String[] names = propertySource.getPropertyNames();
+		Arrays.sort(names);
+		assertArrayEquals(new String[] {"kv:blob-key", "kv:db-password"}, names);
+	}
+
+	@Test
+	void missingSecretIsNotRequestedAgainWithinNegativeCacheTime() {
+		KeyVaultPropertySource propertySource = propertySource(60000);
+
+		assertNull(propertySource.getProperty("kv:missing"));
+		vault.put("missing", "created");
+		assertNull(propertySource.getProperty("kv:missing"));
+		assertNull(propertySource.getProperty("kv:missing"));
+
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	void missingSecretIsRequestedAgainAfterNegativeCacheTime() throws Exception {
+		KeyVaultPropertySource propertySource = propertySource(50);
+
+		assertNull(propertySource.getProperty("kv:missing"));
+		vault.put("missing", "created");
+		Thread.sleep(100);
+
+		assertEquals("created", propertySource.getProperty("kv:missing"));
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	void refreshReloadsCachedAndRetriesMissingSecretsInOneBatch() {
+		vault.put("db-password", "old");
+		KeyVaultPropertySource propertySource = propertySource(60000);
+		propertySource.prefetch(Arrays.asList("db-password", "missing"));
+		vault.put("db-password", "rotated");
+		vault.put("missing", "created");
+
+		propertySource.refresh();
+
+		assertEquals("rotated", propertySource.getProperty("kv:db-password"));
+		assertEquals("created", propertySource.getProperty("kv:missing"));
+		assertEquals(2, requests.size());
+		assertEquals(2, requests.get(1).size());
+	}
+
+	@Test
+	void refreshKeepsValueOfSecretWhichCanNotBeObtained() {
+		vault.put("db-password", "old");
+		KeyVaultPropertySource propertySource = propertySource(60000);
+		propertySource.prefetch(Arrays.asList("db-password"));
+		vault.clear();
+
+		propertySource.refresh();
+
+		assertEquals("old", propertySource.getProperty("kv:db-password"));
+	}
+}
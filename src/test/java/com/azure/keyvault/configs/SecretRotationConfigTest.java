@@ -0,0 +1,101 @@
+package com.azure.keyvault.configs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.ulisesbocchio.jasyptspringboot.filter.DefaultPropertyFilter;
+import com.ulisesbocchio.jasyptspringboot.resolver.DefaultPropertyResolver;
+import com.ulisesbocchio.jasyptspringboot.wrapper.EncryptableEnumerablePropertySourceWrapper;
+import com.ulisesbocchio.jasyptspringboot.wrapper.EncryptableMapPropertySourceWrapper;
+import com.zaxxer.hikari.HikariDataSource;
+
+class SecretRotationConfigTest {
+
+	private final PropertyEncryptionConfig encryptionConfig = new PropertyEncryptionConfig();
+	private final Map<String, Object> properties = new HashMap<>();
+	private final HikariDataSource dataSource = new HikariDataSource();
+	private final StandardEnvironment environment = new StandardEnvironment();
+	private RotatingStringEncryptor encryptorBean;
+	private SecretRotationConfig rotationConfig;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(encryptionConfig, "algorithm", "PBEWithMD5AndDES");
+		ReflectionTestUtils.setField(encryptionConfig, "KeyObtentionIterations", "1000");
+		ReflectionTestUtils.setField(encryptionConfig, "poolSize", "1");
+		ReflectionTestUtils.setField(encryptionConfig, "providerName", "SunJCE");
+		ReflectionTestUtils.setField(encryptionConfig, "saltGeneratorClassName", "org.jasypt.salt.RandomSaltGenerator");
+		ReflectionTestUtils.setField(encryptionConfig, "stringOutputType", "base64");
+		encryptorBean = new RotatingStringEncryptor(encryptionConfig.createEncryptor("old-secret"));
+
+		properties.put("spring.datasource.username", "ENC(" + encryptorBean.encrypt("sa") + ")");
+		properties.put("spring.datasource.password", "ENC(" + encryptorBean.encrypt("old-password") + ")");
+		environment.getPropertySources().addFirst(new EncryptableMapPropertySourceWrapper(new MapPropertySource("external", properties),
+				new DefaultPropertyResolver(encryptorBean), new DefaultPropertyFilter()));
+		dataSource.setUsername(environment.getProperty("spring.datasource.username"));
+		dataSource.setPassword(environment.getProperty("spring.datasource.password"));
+
+		rotationConfig = new SecretRotationConfig();
+		ReflectionTestUtils.setField(rotationConfig, "encryptionConfig", encryptionConfig);
+		ReflectionTestUtils.setField(rotationConfig, "encryptorBean", encryptorBean);
+		ReflectionTestUtils.setField(rotationConfig, "environment", environment);
+		ReflectionTestUtils.setField(rotationConfig, "dataSource", dataSource);
+	}
+
+	@AfterEach
+	void tearDown() {
+		dataSource.close();
+	}
+
+	@Test
+	void rotateSwapsEncryptorAndSetsReResolvedCredentialsIntoPool() throws Exception {
+		StringEncryptor rotated = encryptionConfig.createEncryptor("new-secret");
+		String oldCipherText = encryptorBean.encrypt("value");
+		properties.put("spring.datasource.username", "ENC(" + rotated.encrypt("sa") + ")");
+		properties.put("spring.datasource.password", "ENC(" + rotated.encrypt("new-password") + ")");
+
+		rotationConfig.rotate("new-secret");
+
+		assertEquals("sa", dataSource.getUsername());
+		assertEquals("new-password", dataSource.getPassword());
+		assertEquals("value", encryptorBean.decrypt(rotated.encrypt("value")));
+		assertThrows(EncryptionOperationNotPossibleException.class, () -> encryptorBean.decrypt(oldCipherText));
+	}
+
+	@Test
+	void poolCredentialsAreKeptWhenPropertiesAreNotReEncrypted() throws Exception {
+		rotationConfig.rotate("new-secret");
+
+		assertEquals("sa", dataSource.getUsername());
+		assertEquals("old-password", dataSource.getPassword());
+	}
+
+	@Test
+	void keyVaultPropertySourceIsReloadedThroughJasyptWrapper() {
+		Map<String, String> vault = new HashMap<>(Collections.singletonMap("blob-key", "old"));
+		KeyVaultPropertySource keyVaultPropertySource = new KeyVaultPropertySource(new KeyVaultProperties(), 60000,
+				secretNames -> new HashMap<>(vault));
+		environment.getPropertySources().addLast(new EncryptableEnumerablePropertySourceWrapper<>(keyVaultPropertySource,
+				new DefaultPropertyResolver(encryptorBean), new DefaultPropertyFilter()));
+		assertEquals("old", environment.getProperty("kv:blob-key"));
+		vault.put("blob-key", "rotated");
+
+		rotationConfig.refreshKeyVaultPropertySource();
+
+		assertEquals("rotated", environment.getProperty("kv:blob-key"));
+	}
+}
@@ -0,0 +1,93 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.AppendBlobWriter.AppendOptions;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+
+class AppendBlobWriterTest {
+
+	private static final String CONTAINER = "append-container";
+
+	private Path root;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("append-writer");
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void unclosedFileResumesAtLogicalLength() throws Exception {
+		byte[] first = {1, 2, 0, 0};
+		byte[] second = {3, 0};
+		AppendBlobWriter crashed = AppendBlobWriter.open(connectionString(), CONTAINER, "log/app.log", new AppendOptions());
+		crashed.append(first);
+		crashed.sync();
+		Path file = root.resolve(CONTAINER).resolve("log/app.log.000001");
+		assertTrue(Files.size(file) > first.length, "mapped region pads the file");
+
+		try(AppendBlobWriter writer = AppendBlobWriter.open(connectionString(), CONTAINER, "log/app.log", new AppendOptions())) {
+			writer.append(second);
+		}
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(first);
+		expected.write(second);
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+		assertFalse(Files.exists(root.resolve(CONTAINER).resolve("log/app.log.000001" + M3AzureStorageUtils.APPEND_LENGTH_SIDECAR_SUFFIX)));
+	}
+
+	@Test
+	void appendFailsOnceFlusherFailed() throws Exception {
+		AppendOptions options = new AppendOptions();
+		options.setMaxBlocks(1);
+		Files.createDirectories(root.resolve(CONTAINER).resolve("log/app.log.000002" + M3AzureStorageUtils.APPEND_LENGTH_SIDECAR_SUFFIX));
+		AppendBlobWriter writer = AppendBlobWriter.open(connectionString(), CONTAINER, "log/app.log", options);
+		writer.append(new byte[] {1});
+		writer.sync();
+		writer.append(new byte[] {2});
+
+		assertThrows(AzureException.class, writer::sync);
+		assertThrows(IllegalStateException.class, () -> writer.append(new byte[] {3}));
+		assertEquals(1, writer.getLost());
+	}
+
+	@Test
+	void rollsOverBeforeExceedingMaxBytes() throws Exception {
+		AppendOptions options = new AppendOptions();
+		options.setMaxBytes(10);
+		try(AppendBlobWriter writer = AppendBlobWriter.open(connectionString(), CONTAINER, "log/app.log", options)) {
+			writer.append(new byte[6]);
+			writer.sync();
+			writer.append(new byte[6]);
+		}
+
+		assertEquals(6, Files.size(root.resolve(CONTAINER).resolve("log/app.log.000001")));
+		assertEquals(6, Files.size(root.resolve(CONTAINER).resolve("log/app.log.000002")));
+	}
+
+	private String connectionString() {
+		return "LOCAL;" + root;
+	}
+}
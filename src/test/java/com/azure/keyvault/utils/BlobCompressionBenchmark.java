@@ -0,0 +1,74 @@
+package com.azure.keyvault.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.azure.keyvault.utils.BlobCompression.Codec;
+
+/**
+ * Benchmark of compression codecs: compress/decompress throughput against compression ratio.
+ *
+ * Kept with the tests so that it is not packaged. Run with optional sample file, otherwise synthetic JSON export
+ * like content is used e.g.
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.azure.keyvault.utils.BlobCompressionBenchmark -Dexec.args=export.csv
+ * @author Sandeep Kumar
+ *
+ */
+public class BlobCompressionBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int ITERATIONS = 20;
+
+	public static void main(String...args) throws IOException {
+		byte[] data = args.length > 0 ? Files.readAllBytes(Paths.get(args[0])) : syntheticJson(8 * 1024 * 1024);
+		System.out.println(String.format("Input size: %d bytes", data.length));
+		System.out.println(String.format("%-8s %10s %16s %16s", "codec", "ratio", "compress MB/s", "decompress MB/s"));
+		for(Codec codec : Codec.values()) {
+			if(Codec.NONE == codec) {
+				continue;
+			}
+			byte[] compressed = null;
+			for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+				compressed = codec.compress(data);
+				codec.decompress(compressed, data.length);
+			}
+			long start = System.nanoTime();
+			for(int i = 0; i < ITERATIONS; i++) {
+				compressed = codec.compress(data);
+			}
+			long compressNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for(int i = 0; i < ITERATIONS; i++) {
+				codec.decompress(compressed, data.length);
+			}
+			long decompressNanos = System.nanoTime() - start;
+			System.out.println(String.format("%-8s %10.2f %16.1f %16.1f", codec.getContentEncoding(),
+					(double) data.length / compressed.length,
+					throughput(data.length, compressNanos), throughput(data.length, decompressNanos)));
+		}
+	}
+
+	private static double throughput(long bytes, long nanos) {
+		return (bytes * (double) ITERATIONS / (1024 * 1024)) / (nanos / 1_000_000_000d);
+	}
+
+	private static byte[] syntheticJson(int size) {
+		Random random = new Random(42);
+		String[] status = {"ACTIVE", "INACTIVE", "PENDING", "CLOSED"};
+		StringBuilder builder = new StringBuilder(size + 256);
+		builder.append('[');
+		for(int id = 0; builder.length() < size; id++) {
+			builder.append("{\"id\":").append(id)
+				.append(",\"customer\":\"customer-").append(random.nextInt(10000))
+				.append("\",\"amount\":").append(random.nextInt(100000) / 100.0)
+				.append(",\"status\":\"").append(status[random.nextInt(status.length)])
+				.append("\",\"createdOn\":\"2020-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10))
+				.append("\"},\n");
+		}
+		builder.append("{}]");
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
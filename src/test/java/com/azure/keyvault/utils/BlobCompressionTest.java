@@ -0,0 +1,77 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.BlobCompression.Codec;
+
+class BlobCompressionTest {
+
+	@Test
+	void codecsRoundTrip() throws IOException {
+		byte[] data = "{\"id\":1,\"name\":\"alpha\"}\n".concat(String.join("", Collections.nCopies(500, "{\"id\":2,\"name\":\"beta\"}\n")))
+				.getBytes(StandardCharsets.UTF_8);
+		for(Codec codec : Codec.values()) {
+			byte[] compressed = codec.compress(data);
+			assertArrayEquals(data, codec.decompress(compressed, data.length));
+			assertArrayEquals(data, BlobCompression.readFully(codec.decompress(new ByteArrayInputStream(compressed)), -1));
+		}
+	}
+
+	@Test
+	void contentBeyondInMemoryLimitIsCompressedIntoFile() throws IOException {
+		byte[] data = String.join("", Collections.nCopies(2000, "timestamp,level,message\n")).getBytes(StandardCharsets.UTF_8);
+		BlobCompression.setInMemoryLimit(1024);
+		try {
+			assertTrue(BlobCompression.isInMemory(1024));
+			assertFalse(BlobCompression.isInMemory(data.length));
+			Path compressed = BlobCompression.compressToFile(data, Codec.GZIP);
+			try {
+				assertArrayEquals(data, Codec.GZIP.decompress(Files.readAllBytes(compressed), data.length));
+			}
+			finally {
+				Files.delete(compressed);
+			}
+		}
+		finally {
+			BlobCompression.setInMemoryLimit(16 * 1024 * 1024);
+		}
+	}
+
+	@Test
+	void originalLengthOfForeignMetadataIsMissing() {
+		Map<String, String> metadata = new HashMap<>();
+		assertEquals(-1, BlobCompression.originalLength(null));
+		assertEquals(-1, BlobCompression.originalLength(metadata));
+		metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, "1024");
+		assertEquals(1024, BlobCompression.originalLength(metadata));
+		metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, "about 1 KB");
+		assertEquals(-1, BlobCompression.originalLength(metadata));
+		metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, "99999999999");
+		assertEquals(-1, BlobCompression.originalLength(metadata));
+		metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, "-7");
+		assertEquals(-1, BlobCompression.originalLength(metadata));
+	}
+
+	@Test
+	void onlyBlobsCompressedByStageAreDecompressed() {
+		Map<String, String> metadata = new HashMap<>();
+		assertEquals(Codec.NONE, BlobCompression.storedCodec(metadata, "gzip"));
+		metadata.put(BlobCompression.ORIGINAL_LENGTH_METADATA, "10");
+		assertEquals(Codec.GZIP, BlobCompression.storedCodec(metadata, "GZIP"));
+		assertEquals(Codec.NONE, BlobCompression.storedCodec(metadata, "br"));
+	}
+}
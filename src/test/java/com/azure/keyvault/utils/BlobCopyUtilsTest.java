@@ -0,0 +1,141 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.BlobCopyUtils.BlobLocation;
+import com.azure.keyvault.utils.BlobCopyUtils.CopyMethod;
+import com.azure.keyvault.utils.BlobCopyUtils.CopyResult;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+
+class BlobCopyUtilsTest {
+
+	private static final String SOURCE_CONTAINER = "source-container";
+	private static final String TARGET_CONTAINER = "target-container";
+	private static final String SIDECAR = M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX;
+
+	private Path root;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("blob-copy");
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void copyKeepsSourceAndCarriesMetadata() throws Exception {
+		write(SOURCE_CONTAINER, "docs/report.pdf", "report");
+		write(SOURCE_CONTAINER, "docs/report.pdf" + SIDECAR, "owner=finance");
+
+		CopyResult result = BlobCopyUtils.copy(location(SOURCE_CONTAINER, "docs/report.pdf"), location(TARGET_CONTAINER, "archive/report.pdf"));
+
+		assertEquals(CopyMethod.LOCAL, result.getMethod());
+		assertEquals("report".length(), result.getBytes());
+		assertArrayEquals(bytes("report"), read(TARGET_CONTAINER, "archive/report.pdf"));
+		assertArrayEquals(bytes("owner=finance"), read(TARGET_CONTAINER, "archive/report.pdf" + SIDECAR));
+		assertTrue(Files.exists(path(SOURCE_CONTAINER, "docs/report.pdf")));
+		assertTrue(Files.exists(path(SOURCE_CONTAINER, "docs/report.pdf" + SIDECAR)));
+	}
+
+	@Test
+	void copyOverwritesTargetAndDropsItsStaleMetadata() throws Exception {
+		write(SOURCE_CONTAINER, "file.txt", "new");
+		write(TARGET_CONTAINER, "file.txt", "old content");
+		write(TARGET_CONTAINER, "file.txt" + SIDECAR, "owner=old");
+
+		BlobCopyUtils.copy(location(SOURCE_CONTAINER, "file.txt"), location(TARGET_CONTAINER, "file.txt"));
+
+		assertArrayEquals(bytes("new"), read(TARGET_CONTAINER, "file.txt"));
+		assertFalse(Files.exists(path(TARGET_CONTAINER, "file.txt" + SIDECAR)));
+	}
+
+	@Test
+	void moveAndRenameRemoveSource() throws Exception {
+		write(SOURCE_CONTAINER, "a.txt", "content");
+		write(SOURCE_CONTAINER, "a.txt" + SIDECAR, "owner=test");
+
+		BlobCopyUtils.rename(connectionString(), SOURCE_CONTAINER, "a.txt", "renamed/a.txt");
+		BlobCopyUtils.move(location(SOURCE_CONTAINER, "renamed/a.txt"), location(TARGET_CONTAINER, "a.txt"));
+
+		assertArrayEquals(bytes("content"), read(TARGET_CONTAINER, "a.txt"));
+		assertArrayEquals(bytes("owner=test"), read(TARGET_CONTAINER, "a.txt" + SIDECAR));
+		assertFalse(Files.exists(path(SOURCE_CONTAINER, "a.txt")));
+		assertFalse(Files.exists(path(SOURCE_CONTAINER, "renamed/a.txt")));
+		assertFalse(Files.exists(path(SOURCE_CONTAINER, "renamed/a.txt" + SIDECAR)));
+	}
+
+	@Test
+	void transferAllReturnsResultsInOrderOfSources() throws Exception {
+		write(SOURCE_CONTAINER, "1.txt", "one");
+		write(SOURCE_CONTAINER, "2.txt", "two!");
+		write(SOURCE_CONTAINER, "3.txt", "three");
+		List<BlobLocation> sources = Arrays.asList(location(SOURCE_CONTAINER, "1.txt"), location(SOURCE_CONTAINER, "2.txt"), location(SOURCE_CONTAINER, "3.txt"));
+		List<BlobLocation> targets = Arrays.asList(location(TARGET_CONTAINER, "1.txt"), location(TARGET_CONTAINER, "2.txt"), location(TARGET_CONTAINER, "3.txt"));
+
+		List<CopyResult> results = BlobCopyUtils.transferAll(sources, targets, true, 2);
+
+		assertEquals(3, results.size());
+		assertEquals(3, results.get(0).getBytes());
+		assertEquals(4, results.get(1).getBytes());
+		assertEquals(5, results.get(2).getBytes());
+		assertArrayEquals(bytes("three"), read(TARGET_CONTAINER, "3.txt"));
+		assertFalse(Files.exists(path(SOURCE_CONTAINER, "1.txt")));
+	}
+
+	@Test
+	void invalidTransfersAreRejected() throws Exception {
+		write(SOURCE_CONTAINER, "a.txt", "content");
+
+		assertThrows(IllegalArgumentException.class, () -> BlobCopyUtils.copy(location(SOURCE_CONTAINER, "a.txt"), location(SOURCE_CONTAINER, "a.txt")));
+		assertThrows(AzureException.class, () -> BlobCopyUtils.move(location(SOURCE_CONTAINER, "missing.txt"), location(TARGET_CONTAINER, "a.txt")));
+		assertThrows(IllegalArgumentException.class, () -> BlobCopyUtils.transferAll(Arrays.asList(location(SOURCE_CONTAINER, "a.txt")), Arrays.asList(), false, 1));
+		assertFalse(Files.exists(path(TARGET_CONTAINER, "a.txt")));
+	}
+
+	private BlobLocation location(String containerName, String filePath) {
+		return new BlobLocation(connectionString(), containerName, filePath);
+	}
+
+	private String connectionString() {
+		return "LOCAL;" + root;
+	}
+
+	private Path path(String containerName, String filePath) {
+		return root.resolve(containerName).resolve(filePath);
+	}
+
+	private void write(String containerName, String filePath, String content) throws Exception {
+		Path file = path(containerName, filePath);
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes(content));
+	}
+
+	private byte[] read(String containerName, String filePath) throws Exception {
+		return Files.readAllBytes(path(containerName, filePath));
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,96 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.BlobIntegrity.IntegrityException;
+import com.azure.keyvault.utils.BlobIntegrity.VerifyingInputStream;
+
+class BlobIntegrityTest {
+
+	@AfterEach
+	void reset() {
+		BlobIntegrity.setBlockSize(4 * 1024 * 1024);
+	}
+
+	@Test
+	void parallelCrcEqualsSinglePass() {
+		BlobIntegrity.setBlockSize(64 * 1024);
+		byte[] data = random(1_000_003);
+
+		assertEquals(Crc64.update(0, data, 0, data.length), BlobIntegrity.crc64(data));
+	}
+
+	@Test
+	void checksumStoresCrcAndReturnsMd5() {
+		BlobIntegrity.setBlockSize(64 * 1024);
+		for(byte[] data : new byte[][] {random(1000), random(300_000)}) {
+			Map<String, String> metadata = new HashMap<>();
+
+			byte[] md5 = BlobIntegrity.checksum(data, metadata);
+
+			assertEquals(Crc64.toHex(Crc64.update(0, data, 0, data.length)), metadata.get(BlobIntegrity.CRC64_METADATA));
+			assertArrayEquals(ContentDigest.newDigest("MD5").digest(data), md5);
+		}
+	}
+
+	@Test
+	void verifyRejectsCorruptedContent() throws IOException {
+		byte[] data = random(1000);
+		Map<String, String> metadata = new HashMap<>();
+		byte[] md5 = BlobIntegrity.checksum(data, metadata);
+		BlobIntegrity.verify("blob", metadata, md5, data);
+
+		data[500] ^= 1;
+
+		assertThrows(IntegrityException.class, () -> BlobIntegrity.verify("blob", metadata, null, data));
+		assertThrows(IntegrityException.class, () -> BlobIntegrity.verify("blob", null, md5, data));
+		BlobIntegrity.verify("blob", null, null, data);
+	}
+
+	@Test
+	void verifyingStreamChecksContentAtEnd() throws IOException {
+		byte[] data = random(200_000);
+		Map<String, String> metadata = Collections.singletonMap(BlobIntegrity.CRC64_METADATA,
+				Crc64.toHex(Crc64.update(0, data, 0, data.length)));
+
+		try(VerifyingInputStream stream = new VerifyingInputStream("blob", metadata, new ByteArrayInputStream(data))) {
+			assertArrayEquals(data, readAll(stream));
+		}
+
+		data[0] ^= 1;
+		try(VerifyingInputStream stream = new VerifyingInputStream("blob", metadata, new ByteArrayInputStream(data))) {
+			stream.skip(10);
+			assertThrows(IntegrityException.class, stream::verifyRemaining);
+		}
+	}
+
+	private static byte[] readAll(InputStream stream) throws IOException {
+		ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = stream.read(buffer)) != -1) {
+			retVal.write(buffer, 0, read);
+		}
+		return retVal.toByteArray();
+	}
+
+	private static byte[] random(int length) {
+		byte[] retVal = new byte[length];
+		new Random(7).nextBytes(retVal);
+		return retVal;
+	}
+}
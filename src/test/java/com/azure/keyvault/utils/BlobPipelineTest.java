@@ -0,0 +1,179 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.BlobPipeline.BlobProcessor;
+import com.azure.keyvault.utils.BlobPipeline.PipelineOptions;
+import com.azure.keyvault.utils.BlobPipeline.PipelineResult;
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+
+class BlobPipelineTest {
+
+	private static final String CONTAINER = "pipeline-container";
+	private static final String PREFIX = "input/";
+
+	private Path root;
+	private Path checkpoint;
+	private final Map<String, String> processed = new ConcurrentHashMap<>();
+	private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("blob-pipeline");
+		checkpoint = root.resolve("state").resolve("checkpoint");
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void allBlobsUnderPrefixAreProcessedAndCheckpointIsRemoved() throws Exception {
+		for(String name : Arrays.asList("a.txt", "b.txt", "nested/c.txt")) {
+			write(PREFIX + name, name);
+		}
+		write("other/d.txt", "d.txt");
+
+		PipelineResult result = BlobPipeline.run(localConnectionString(), CONTAINER, PREFIX, processor(), options());
+
+		assertEquals(3, result.getListed());
+		assertEquals(3, result.getProcessed());
+		assertEquals(0, result.getFailed());
+		assertEquals("nested/c.txt", processed.get(PREFIX + "nested/c.txt"));
+		assertFalse(processed.containsKey("other/d.txt"));
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	void failedBlobsAreRetriedByNextRunWithoutListingAgain() throws Exception {
+		for(String name : Arrays.asList("a.txt", "b.txt", "c.txt")) {
+			write(PREFIX + name, name);
+		}
+		failing.add(PREFIX + "b.txt");
+
+		PipelineResult failed = BlobPipeline.run(localConnectionString(), CONTAINER, PREFIX, processor(), options());
+		assertEquals(2, failed.getProcessed());
+		assertEquals(1, failed.getFailed());
+		assertTrue(Files.readAllLines(checkpoint).contains("#retry\t" + PREFIX + "b.txt"));
+
+		processed.clear();
+		failing.clear();
+		write(PREFIX + "d.txt", "added after the listing completed");
+		PipelineResult retried = BlobPipeline.run(localConnectionString(), CONTAINER, PREFIX, processor(), options());
+
+		assertEquals(1, retried.getListed());
+		assertEquals(1, retried.getProcessed());
+		assertEquals(Collections.singleton(PREFIX + "b.txt"), processed.keySet());
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	void completedBlobsOfInterruptedRunAreSkipped() throws Exception {
+		for(String name : Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt")) {
+			write(PREFIX + name, name);
+		}
+		// checkpoint of a run stopped while its only listing page was in flight
+		writeCheckpoint("#marker\t", PREFIX + "a.txt", PREFIX + "c.txt");
+
+		PipelineResult result = BlobPipeline.run(localConnectionString(), CONTAINER, PREFIX, processor(), options());
+
+		assertEquals(4, result.getListed());
+		assertEquals(2, result.getSkipped());
+		assertEquals(2, result.getProcessed());
+		assertEquals(new TreeSet<>(Arrays.asList(PREFIX + "b.txt", PREFIX + "d.txt")), new TreeSet<>(processed.keySet()));
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	void remoteListingResumesFromCheckpointMarker() throws Exception {
+		try(LocalBlobServer server = LocalBlobServer.start(0)) {
+			CloudBlobContainer container = CloudStorageAccount.parse(server.getConnectionString()).createCloudBlobClient().getContainerReference(CONTAINER);
+			container.create();
+			for(String name : Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt")) {
+				container.getBlockBlobReference(PREFIX + name).uploadText(name);
+			}
+			// b failed on a settled page, d is the first blob of the page in flight and e of it completed
+			writeCheckpoint("#marker\t" + PREFIX + "d.txt", "#retry\t" + PREFIX + "b.txt", PREFIX + "e.txt");
+			PipelineOptions options = options();
+			options.setListPageSize(2);
+
+			PipelineResult result = BlobPipeline.run(server.getConnectionString(), CONTAINER, PREFIX, processor(), options);
+
+			assertEquals(4, result.getListed());
+			assertEquals(1, result.getSkipped());
+			assertEquals(new TreeSet<>(Arrays.asList(PREFIX + "b.txt", PREFIX + "d.txt", PREFIX + "f.txt")), new TreeSet<>(processed.keySet()));
+			assertEquals("b.txt", processed.get(PREFIX + "b.txt"));
+			assertFalse(Files.exists(checkpoint));
+		}
+	}
+
+	private BlobProcessor processor() {
+		return (filePath, content) -> {
+			if(failing.contains(filePath)) {
+				throw new IllegalStateException("processing of " + filePath + " failed");
+			}
+			processed.put(filePath, read(content));
+		};
+	}
+
+	private PipelineOptions options() {
+		PipelineOptions options = new PipelineOptions();
+		options.setDownloadConcurrency(2);
+		options.setProcessConcurrency(2);
+		options.setReadAhead(2);
+		options.setCheckpointFile(checkpoint);
+		options.setCheckpointIntervalMillis(0);
+		return options;
+	}
+
+	private String localConnectionString() {
+		return "LOCAL;" + root.resolve("backend");
+	}
+
+	private void write(String name, String content) throws Exception {
+		Path file = root.resolve("backend").resolve(CONTAINER).resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void writeCheckpoint(String... lines) throws Exception {
+		List<String> content = Arrays.asList(lines);
+		Files.createDirectories(checkpoint.getParent());
+		Files.write(checkpoint, content, StandardCharsets.UTF_8);
+	}
+
+	private static String read(InputStream content) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while((read = content.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+		return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
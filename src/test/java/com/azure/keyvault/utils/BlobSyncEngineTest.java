@@ -0,0 +1,133 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.BlobSyncEngine.SyncOptions;
+import com.azure.keyvault.utils.BlobSyncEngine.SyncResult;
+
+class BlobSyncEngineTest {
+
+	private static final String CONTAINER = "sync-container";
+	private static final String PREFIX = "archive/";
+
+	private Path root;
+	private Path source;
+	private Path remote;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("blob-sync");
+		source = Files.createDirectories(root.resolve("source"));
+		remote = Files.createDirectories(root.resolve("backend").resolve(CONTAINER).resolve("archive"));
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void onlyNewAndChangedFilesAreTransferred() throws Exception {
+		write(source.resolve("unchanged.txt"), "same");
+		write(source.resolve("changed.txt"), "new content");
+		write(source.resolve("nested/new.txt"), "new");
+		Files.copy(source.resolve("unchanged.txt"), remote.resolve("unchanged.txt"), StandardCopyOption.COPY_ATTRIBUTES);
+		write(remote.resolve("changed.txt"), "old");
+
+		SyncResult result = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, new SyncOptions());
+
+		assertEquals(2, result.getTransferred());
+		assertEquals(1, result.getSkipped());
+		assertEquals(0, result.getDeleted());
+		assertEquals("new content".length() + "new".length(), result.getBytesTransferred());
+		assertArrayEquals(bytes("new content"), Files.readAllBytes(remote.resolve("changed.txt")));
+		assertArrayEquals(bytes("new"), Files.readAllBytes(remote.resolve("nested/new.txt")));
+	}
+
+	@Test
+	void sameSizeFileIsTransferredWhenLocalIsNewer() throws Exception {
+		write(remote.resolve("file.txt"), "aaa");
+		write(source.resolve("file.txt"), "bbb");
+		Files.setLastModifiedTime(remote.resolve("file.txt"), FileTime.fromMillis(1_000_000));
+
+		SyncResult result = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, new SyncOptions());
+
+		assertEquals(1, result.getTransferred());
+		assertArrayEquals(bytes("bbb"), Files.readAllBytes(remote.resolve("file.txt")));
+	}
+
+	@Test
+	void extrasAreDeletedOnlyWhenRequested() throws Exception {
+		write(source.resolve("kept.txt"), "kept");
+		write(remote.resolve("extra.txt"), "extra");
+		write(remote.resolve("extra.txt" + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX), "owner=test");
+
+		SyncResult kept = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, new SyncOptions());
+		assertEquals(0, kept.getDeleted());
+		assertTrue(Files.exists(remote.resolve("extra.txt")));
+
+		SyncOptions options = new SyncOptions();
+		options.setDeleteExtras(true);
+		SyncResult deleted = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, options);
+
+		assertEquals(1, deleted.getDeleted());
+		assertEquals(1, deleted.getSkipped());
+		assertFalse(Files.exists(remote.resolve("extra.txt")));
+		assertFalse(Files.exists(remote.resolve("extra.txt" + M3AzureStorageUtils.METADATA_SIDECAR_SUFFIX)));
+		assertTrue(Files.exists(remote.resolve("kept.txt")));
+	}
+
+	@Test
+	void trustedManifestReplacesRemoteListing() throws Exception {
+		write(source.resolve("a.txt"), "first");
+		write(source.resolve("b.txt"), "second");
+		SyncOptions options = new SyncOptions();
+		options.setParallelism(2);
+		options.setManifestFile(root.resolve("state").resolve("manifest"));
+		assertEquals(2, BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, options).getTransferred());
+		assertTrue(Files.isRegularFile(options.getManifestFile()));
+		Files.delete(remote.resolve("a.txt"));
+
+		options.setTrustManifest(true);
+		SyncResult trusted = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, options);
+		assertEquals(0, trusted.getTransferred());
+		assertEquals(2, trusted.getSkipped());
+		assertFalse(Files.exists(remote.resolve("a.txt")));
+
+		options.setTrustManifest(false);
+		SyncResult listed = BlobSyncEngine.sync(connectionString(), CONTAINER, PREFIX, source, options);
+		assertEquals(1, listed.getTransferred());
+		assertEquals(1, listed.getSkipped());
+		assertArrayEquals(bytes("first"), Files.readAllBytes(remote.resolve("a.txt")));
+	}
+
+	private String connectionString() {
+		return "LOCAL;" + root.resolve("backend");
+	}
+
+	private static void write(Path file, String content) throws Exception {
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes(content));
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,120 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BootstrapGraphTest {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	void createExecutor() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterEach
+	void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void dependentStartsAfterDependenciesAndSeesTheirResults() throws Exception {
+		List<String> order = new CopyOnWriteArrayList<>();
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		BootstrapGraph graph = new BootstrapGraph()
+				.addNode("listing", 5000, results -> {
+					order.add("listing");
+					return results.get("secret") + "/" + results.get("encryptor");
+				}, "secret", "encryptor")
+				.addNode("secret", 5000, results -> {
+					bothRunning.countDown();
+					assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+					order.add("secret");
+					return "connection-string";
+				})
+				.addNode("encryptor", 5000, results -> {
+					bothRunning.countDown();
+					assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+					order.add("encryptor");
+					return "encryptor";
+				});
+
+		graph.run(executor);
+
+		assertEquals("connection-string/encryptor", graph.get("listing"));
+		assertEquals(3, order.size());
+		assertEquals("listing", order.get(2));
+	}
+
+	@Test
+	void timedOutNodeIsCancelledAndFailsDependents() throws Exception {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		AtomicBoolean dependentRan = new AtomicBoolean();
+		BootstrapGraph graph = new BootstrapGraph()
+				.addNode("slow", 100, results -> {
+					try {
+						Thread.sleep(10000);
+					} catch(InterruptedException ex) {
+						interrupted.countDown();
+						throw ex;
+					}
+					return "late";
+				})
+				.addNode("dependent", 5000, results -> dependentRan.getAndSet(true), "slow");
+
+		ExecutionException ex = assertThrows(ExecutionException.class, () -> graph.run(executor));
+
+		assertTrue(ex.getCause() instanceof TimeoutException, String.valueOf(ex.getCause()));
+		assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+		assertFalse(dependentRan.get());
+		assertNull(graph.get("slow"));
+	}
+
+	@Test
+	void failureIsPropagatedWithoutStartingDependents() throws Exception {
+		IllegalStateException failure = new IllegalStateException("vault unavailable");
+		AtomicBoolean dependentRan = new AtomicBoolean();
+		BootstrapGraph graph = new BootstrapGraph()
+				.addNode("secret", 5000, results -> {
+					throw failure;
+				})
+				.addNode("independent", 5000, results -> "done")
+				.addNode("listing", 5000, results -> dependentRan.getAndSet(true), "secret");
+
+		ExecutionException ex = assertThrows(ExecutionException.class, () -> graph.run(executor));
+
+		assertSame(failure, ex.getCause());
+		assertFalse(dependentRan.get());
+		assertEquals("done", graph.get("independent"));
+	}
+
+	@Test
+	void unknownAndCyclicDependenciesAreRejected() {
+		BootstrapGraph unknown = new BootstrapGraph().addNode("listing", 5000, results -> null, "secret");
+		BootstrapGraph cyclic = new BootstrapGraph()
+				.addNode("a", 5000, results -> null, "b")
+				.addNode("b", 5000, results -> null, "a");
+
+		assertThrows(IllegalArgumentException.class, () -> unknown.run(executor));
+		assertThrows(IllegalArgumentException.class, () -> cyclic.run(executor));
+		assertThrows(IllegalArgumentException.class, () -> cyclic.addNode("a", 5000, results -> null));
+	}
+}
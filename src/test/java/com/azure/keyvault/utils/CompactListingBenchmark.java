@@ -0,0 +1,138 @@
+package com.azure.keyvault.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.azure.keyvault.utils.CompactListing.Entry;
+import com.azure.keyvault.utils.M3AzureStorageUtils.FileDetails;
+
+/**
+ * Benchmark of heap footprint and iteration time: List<FileDetails> against CompactListing.
+ *
+ * Kept with the tests so that it is not packaged. Synthetic paths look like tenant-0042/2020/11/23/invoice-000123456.pdf
+ * in listing order, run with optional number of entries (default 1000000) e.g.
+ * MAVEN_OPTS=-Xmx4g mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.azure.keyvault.utils.CompactListingBenchmark -Dexec.args=10000000
+ * @author Sandeep Kumar
+ *
+ */
+public class CompactListingBenchmark {
+
+	private static final String CONTAINER = "attachment-container";
+
+	public static void main(String...args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		System.out.println(String.format("Entries: %d", count));
+		System.out.println(String.format("%-20s %14s %14s %14s", "representation", "heap MB", "bytes/entry", "iterate ms"));
+
+		long before = usedHeap();
+		List<FileDetails> list = buildList(count);
+		long listBytes = usedHeap() - before;
+		long start = System.nanoTime();
+		long checksum = iterate(list);
+		print("List<FileDetails>", listBytes, count, System.nanoTime() - start);
+		list = null;
+
+		before = usedHeap();
+		CompactListing listing = buildCompact(count);
+		long compactBytes = usedHeap() - before;
+		start = System.nanoTime();
+		checksum -= iterate(listing);
+		print("CompactListing", compactBytes, count, System.nanoTime() - start);
+		System.out.println(String.format("Estimated compact footprint: %.1f MB, reduction %.1fx, checksum %d",
+				listing.memoryFootprint() / (1024d * 1024), (double) listBytes / Math.max(1, compactBytes), checksum));
+	}
+
+	/**
+	 * Build and iterate are separate methods, so that no hidden iterator keeps a structure reachable while measuring
+	 */
+	private static List<FileDetails> buildList(int count) {
+		List<FileDetails> retVal = new ArrayList<>();
+		for(String path : new PathGenerator(count)) {
+			retVal.add(new FileDetails(CONTAINER, path));
+		}
+		return retVal;
+	}
+
+	private static CompactListing buildCompact(int count) {
+		CompactListing.Builder builder = CompactListing.builder(CONTAINER);
+		for(String path : new PathGenerator(count)) {
+			builder.add(path, path.length() * 1024L, 1_600_000_000_000L);
+		}
+		return builder.build();
+	}
+
+	private static long iterate(List<FileDetails> list) {
+		long retVal = 0;
+		for(FileDetails file : list) {
+			retVal += file.getFilePath().length();
+		}
+		return retVal;
+	}
+
+	private static long iterate(CompactListing listing) {
+		long retVal = 0;
+		for(Entry entry : listing) {
+			retVal += entry.getFilePathLength();
+		}
+		return retVal;
+	}
+
+	private static void print(String name, long bytes, int count, long nanos) {
+		System.out.println(String.format("%-20s %14.1f %14.1f %14.1f", name, bytes / (1024d * 1024), (double) bytes / count, nanos / 1_000_000d));
+	}
+
+	/**
+	 * Used heap after full collection, a few gc rounds as System.gc is only a hint
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for(int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	/**
+	 * Sorted synthetic paths, same sequence for the same count
+	 */
+	private static class PathGenerator implements Iterable<String> {
+		private final int count;
+
+		private PathGenerator(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			Random random = new Random(42);
+			int perTenant = Math.max(1, count / 100);
+			return new Iterator<String>() {
+				private int index;
+				private int invoice;
+
+				@Override
+				public boolean hasNext() {
+					return index < count;
+				}
+
+				@Override
+				public String next() {
+					int tenant = index / perTenant;
+					int day = (index % perTenant) * 365 / perTenant;
+					invoice += 1 + random.nextInt(50);
+					index++;
+					return String.format("tenant-%04d/2020/%02d/%02d/invoice-%09d.pdf", tenant, 1 + day / 31, 1 + day % 31, invoice);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.CompactListing.Entry;
+import com.azure.keyvault.utils.M3AzureStorageUtils.BlobDetails;
+import com.azure.keyvault.utils.M3AzureStorageUtils.FileDetails;
+
+class CompactListingTest {
+
+	@Test
+	void iterationRestoresPathsAcrossRestarts() {
+		List<String> paths = paths(3 * CompactListing.RESTART_INTERVAL + 5);
+		CompactListing.Builder builder = CompactListing.builder("container");
+		for(int i = 0; i < paths.size(); i++) {
+			builder.add(paths.get(i), i * 10L, i % 2 == 0 ? 1000L + i : CompactListing.UNKNOWN);
+		}
+		CompactListing listing = builder.build();
+
+		List<String> iterated = new ArrayList<>();
+		for(Entry entry : listing) {
+			assertEquals(iterated.size(), entry.getIndex());
+			assertEquals(entry.getIndex() * 10L, entry.getSize());
+			iterated.add(entry.getFilePath());
+		}
+		assertEquals(paths, iterated);
+		assertEquals(paths.size(), listing.size());
+	}
+
+	@Test
+	void randomAccessSeeksFromRestart() {
+		List<String> paths = paths(40);
+		CompactListing.Builder builder = CompactListing.builder("container");
+		paths.forEach(path -> builder.add(path, path.length(), CompactListing.UNKNOWN));
+		CompactListing listing = builder.build();
+
+		for(int index : new int[] {39, 0, CompactListing.RESTART_INTERVAL - 1, CompactListing.RESTART_INTERVAL, 17}) {
+			assertEquals(paths.get(index), listing.getFilePath(index));
+			assertEquals(paths.get(index).length(), listing.getSize(index));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> listing.getFilePath(40));
+		assertThrows(IndexOutOfBoundsException.class, () -> listing.getSize(-1));
+	}
+
+	@Test
+	void multiByteNamesAndPrefixMatch() {
+		CompactListing listing = CompactListing.builder("container")
+				.add("tenant/äöü/a.pdf", 1, CompactListing.UNKNOWN)
+				.add("tenant/äöü/b.pdf", 2, CompactListing.UNKNOWN)
+				.add("tenant/日本/c.pdf", 3, CompactListing.UNKNOWN)
+				.build();
+		byte[] prefix = "tenant/äöü/".getBytes(StandardCharsets.UTF_8);
+
+		List<String> matched = new ArrayList<>();
+		for(Entry entry : listing) {
+			if(entry.startsWith(prefix)) {
+				matched.add(entry.getFilePath());
+			}
+		}
+		assertEquals(Arrays.asList("tenant/äöü/a.pdf", "tenant/äöü/b.pdf"), matched);
+		assertEquals("tenant/日本/c.pdf", listing.getFilePath(2));
+	}
+
+	@Test
+	void fromListingKeepsDetails() {
+		Date lastModified = new Date(1_600_000_000_000L);
+		CompactListing listing = CompactListing.of("container", Arrays.asList(
+				new BlobDetails("container", "a/1", 7, lastModified, null),
+				new FileDetails("container", "a/2")));
+
+		BlobDetails first = listing.iterator().next().toFileDetails();
+		assertEquals("a/1", first.getFilePath());
+		assertEquals(7, first.getSize());
+		assertEquals(lastModified, first.getLastModified());
+		assertEquals(CompactListing.UNKNOWN, listing.getLastModified(1));
+		assertTrue(listing.memoryFootprint() > 0);
+	}
+
+	@Test
+	void emptyListing() {
+		CompactListing listing = CompactListing.builder("container").build();
+
+		assertEquals(0, listing.size());
+		assertFalse(listing.iterator().hasNext());
+		assertThrows(NoSuchElementException.class, () -> listing.iterator().next());
+	}
+
+	@Test
+	void unknownLastModifiedMaterializesAsNull() {
+		CompactListing listing = CompactListing.builder("container").add("a", 1, CompactListing.UNKNOWN).build();
+
+		assertNull(listing.iterator().next().toFileDetails().getLastModified());
+	}
+
+	private static List<String> paths(int count) {
+		List<String> retVal = new ArrayList<>();
+		for(int i = 0; i < count; i++) {
+			retVal.add(String.format("tenant-%02d/2020/%02d/invoice-%06d.pdf", i / 20, 1 + i % 12, i * 7));
+		}
+		retVal.sort(null);
+		return retVal;
+	}
+}
@@ -0,0 +1,53 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class Crc64Test {
+
+	@Test
+	void matchesCrc64XzCheckValue() {
+		byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+		assertEquals("995dc9bbdf1939fa", Crc64.toHex(Crc64.update(0, data, 0, data.length)));
+		assertEquals(0, Crc64.update(0, new byte[0], 0, 0));
+	}
+
+	@Test
+	void continuedUpdateEqualsSinglePass() {
+		byte[] data = random(1000);
+		long whole = Crc64.update(0, data, 0, data.length);
+
+		long continued = Crc64.update(Crc64.update(0, data, 0, 333), data, 333, data.length - 333);
+
+		assertEquals(whole, continued);
+	}
+
+	@Test
+	void combineEqualsCrcOfConcatenation() {
+		byte[] data = random(70_001);
+		long whole = Crc64.update(0, data, 0, data.length);
+
+		for(int split : new int[] {0, 1, 7, 8, 4096, 65_536, 70_000, 70_001}) {
+			long first = Crc64.update(0, data, 0, split);
+			long second = Crc64.update(0, data, split, data.length - split);
+			assertEquals(whole, Crc64.combine(first, second, data.length - split), "split at " + split);
+		}
+	}
+
+	@Test
+	void toHexPadsToSixteenDigits() {
+		assertEquals("00000000000000ff", Crc64.toHex(0xFF));
+		assertEquals("ffffffffffffffff", Crc64.toHex(-1));
+	}
+
+	private static byte[] random(int length) {
+		byte[] retVal = new byte[length];
+		new Random(42).nextBytes(retVal);
+		return retVal;
+	}
+}
@@ -0,0 +1,124 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.DataKeyStore.DataKey;
+import com.azure.keyvault.utils.FieldEncryption.KeyWrapper;
+import com.microsoft.azure.keyvault.models.KeyOperationResult;
+
+class FieldEncryptionTest {
+
+	private MemoryKeyStore store;
+	private FieldEncryption encryption;
+
+	@BeforeEach
+	void initialize() throws Exception {
+		store = new MemoryKeyStore();
+		encryption = new FieldEncryption(store, new IdentityWrapper(), 60_000, 2);
+		encryption.initialize();
+	}
+
+	@Test
+	void roundTripAndPlainTextPassThrough() {
+		String encrypted = encryption.encrypt("4111 1111 1111 1111");
+
+		assertTrue(encrypted.startsWith(encryption.currentPrefix()));
+		assertEquals("4111 1111 1111 1111", encryption.decrypt(encrypted));
+		assertEquals("plain", encryption.decrypt("plain"));
+	}
+
+	@Test
+	void malformedHeaderIsPlainText() {
+		for(String value : Arrays.asList("e1:", "e1:abc:payload", "e1::payload", "e1:12345678901:payload", "e1:no-separator")) {
+			assertEquals(value, encryption.decrypt(value));
+		}
+		List<String> values = Arrays.asList(encryption.encrypt("a"), "e1:x:y", null, "b");
+
+		assertEquals(Arrays.asList("a", "e1:x:y", null, "b"), encryption.decryptAll(values));
+	}
+
+	@Test
+	void rotationByAnotherNodeIsFollowed() throws Exception {
+		String old = encryption.encrypt("value");
+		FieldEncryption otherNode = new FieldEncryption(store, new IdentityWrapper(), 60_000, 2);
+		otherNode.initialize();
+		int rotated = otherNode.rotate();
+
+		assertFalse(encryption.getCurrentKeyId() == rotated);
+		assertEquals(rotated, encryption.refreshCurrentKey());
+		assertFalse(encryption.isCurrent(old));
+		String reEncrypted = encryption.reEncrypt(old);
+		assertTrue(reEncrypted.startsWith("e1:" + rotated + ":"));
+		assertEquals("value", otherNode.decrypt(reEncrypted));
+	}
+
+	/**
+	 * Key store without database, concurrent nodes share the instance
+	 */
+	private static final class MemoryKeyStore extends DataKeyStore {
+		private final Map<Integer, DataKey> keys = new TreeMap<>();
+
+		private MemoryKeyStore() {
+			super(null);
+		}
+
+		@Override
+		public void createTable() {
+			// nothing to create
+		}
+
+		@Override
+		public synchronized int insert(String kekId, byte[] wrappedKey) {
+			DataKey key = new DataKey();
+			key.setKeyId(keys.size() + 1);
+			key.setKekId(kekId);
+			key.setWrappedKey(wrappedKey);
+			keys.put(key.getKeyId(), key);
+			return key.getKeyId();
+		}
+
+		@Override
+		public synchronized DataKey latest() {
+			return keys.isEmpty() ? null : keys.get(keys.size());
+		}
+
+		@Override
+		public synchronized DataKey get(int keyId) {
+			return keys.get(keyId);
+		}
+	}
+
+	/**
+	 * Wrapping without vault, wrapped key is the key itself
+	 */
+	private static final class IdentityWrapper implements KeyWrapper {
+		@Override
+		public KeyOperationResult wrap(byte[] dataKey) {
+			return new KeyOperationResult() {
+				@Override
+				public String kid() {
+					return "kek/1";
+				}
+				@Override
+				public byte[] result() {
+					return dataKey.clone();
+				}
+			};
+		}
+
+		@Override
+		public byte[] unwrap(String kekId, byte[] wrappedKey) {
+			return wrappedKey.clone();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.HedgedReader.LatencyTracker;
+
+class HedgedReaderTest {
+
+	private final String accountName = "account" + UUID.randomUUID();
+
+	@AfterEach
+	void restoreDefaults() {
+		HedgedReader.setBudget(0.05, 10);
+		HedgedReader.setThresholds(20, 200);
+	}
+
+	@Test
+	void hedgesAreLimitedToBudgetRatioOfReads() {
+		HedgedReader.setBudget(0.1, 2);
+		LatencyTracker tracker = HedgedReader.tracker(accountName);
+
+		assertTrue(tracker.spend());
+		assertFalse(tracker.spend());
+		for(int read = 0; read < 9; read++) {
+			tracker.earn();
+		}
+		assertFalse(tracker.spend());
+		tracker.earn();
+		assertTrue(tracker.spend());
+		assertFalse(tracker.spend());
+
+		assertArrayEquals(new long[] {2, 0}, HedgedReader.getHedgeCounts(accountName));
+	}
+
+	@Test
+	void unusedBudgetIsCappedAtMaxBurst() {
+		HedgedReader.setBudget(0.5, 3);
+		LatencyTracker tracker = HedgedReader.tracker(accountName);
+		for(int read = 0; read < 1000; read++) {
+			tracker.earn();
+		}
+
+		int hedges = 0;
+		while(tracker.spend()) {
+			hedges++;
+		}
+
+		assertEquals(3, hedges);
+	}
+
+	@Test
+	void budgetIsSharedByConcurrentReaders() throws Exception {
+		HedgedReader.setBudget(0.05, 10);
+		LatencyTracker tracker = HedgedReader.tracker(accountName);
+		Thread[] readers = new Thread[4];
+		for(int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(() -> {
+				for(int read = 0; read < 1000; read++) {
+					tracker.earn();
+					tracker.spend();
+				}
+			});
+			readers[i].start();
+		}
+		for(Thread reader : readers) {
+			reader.join();
+		}
+
+		// initial hedge plus 5% of 4000 reads
+		assertEquals(201, HedgedReader.getHedgeCounts(accountName)[0]);
+	}
+
+	@Test
+	void thresholdFollowsPrimaryP95WithinBounds() {
+		HedgedReader.setThresholds(20, 200);
+		LatencyTracker tracker = HedgedReader.tracker(accountName);
+		assertEquals(200, HedgedReader.getThresholdMillis(accountName));
+
+		for(int sample = 1; sample <= 64; sample++) {
+			tracker.primary.record(TimeUnit.MILLISECONDS.toNanos(sample <= 60 ? 10 : 80));
+		}
+		assertEquals(80, HedgedReader.getThresholdMillis(accountName));
+
+		for(int sample = 0; sample < 512; sample++) {
+			tracker.primary.record(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		assertEquals(20, HedgedReader.getThresholdMillis(accountName));
+		assertEquals(-1, HedgedReader.getSecondaryLatencyMillis(accountName));
+	}
+}
@@ -0,0 +1,486 @@
+package com.azure.keyvault.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.azure.keyvault.utils.AzureVaultUtils.KeyVaultProperties;
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.rest.RestException;
+
+/**
+ * Open-loop load generator and soak test of AzureVaultUtils and M3AzureStorageUtils operations.
+ *
+ * Requests arrive at a fixed rate (uniform or poisson) independent of completions and are executed by a pool of
+ * threads, latency is measured from the intended arrival time, so queueing behind slow requests is part of the
+ * result (no coordinated omission). Service time from actual start is reported as well, recorded with the interval
+ * each worker thread is expected to take a request at (threads / rate), so a stalled thread is not under-represented.
+ * Latencies are kept in HdrHistogram histograms. Arrivals beyond max-outstanding are counted as overload errors
+ * instead of blocking the schedule, requests not completed within drain-seconds after the schedule ends are counted
+ * as timeout errors.
+ *
+ * Default target is the in-process LocalBlobServer, so the run needs no account and can gate a CI build: exit code
+ * is 1 when the error rate exceeds max-error-rate or p99 exceeds max-p99-millis, mvn -Pload-test verify runs it
+ * after the tests (the generator and LocalBlobServer are test classes and are not packaged). Vault operations
+ * (secret, key) need a real vault (vault-uri, tenant-id, client-id, client-key). Arguments are name=value, passed
+ * through the load-test.* properties of the profile e.g.
+ * mvn -Pload-test verify -Dload-test.rate=500 -Dload-test.duration-seconds=60 -Dload-test.max-p99-millis=250
+ *
+ * Arguments (default): target (local|files|azure), connection-string, directory (files target), container (load-test),
+ * mix (download:50,upload:20,list:10,sas:20), sizes (1024,65536), rate (200), arrival (uniform|poisson),
+ * duration-seconds (30), warmup-seconds (5), threads (16), max-outstanding (10000), seed-blobs (20),
+ * drain-seconds (60), report-interval-seconds (10), local-latency-millis (0), local-fault (e.g. SERVER_BUSY:0.01), vault-uri,
+ * tenant-id, client-id, client-key, secret-name, key-name, max-error-rate (0.01), max-p99-millis (0 = off), output (csv)
+ * @author Sandeep Kumar
+ *
+ */
+public class LoadGenerator {
+
+	private static final String SEED_PREFIX = "seed/";
+	private static final String LOAD_PREFIX = "load/";
+	private static final int UPLOAD_KEYS = 1000;
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	public enum Operation {
+		SECRET, KEY, UPLOAD, DOWNLOAD, LIST, SAS
+	}
+
+	private final Map<String, String> arguments;
+	private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+	private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final List<Integer> sizes = new ArrayList<>();
+	private final Map<Integer, byte[]> payloads = new ConcurrentHashMap<>();
+	private Operation[] schedule;
+	private String connectionString;
+	private String containerName;
+	private KeyVaultProperties vaultProperties;
+	private KeyVaultProperties keyProperties;
+	private int seedBlobs;
+
+	public LoadGenerator(Map<String, String> arguments) {
+		this.arguments = arguments;
+	}
+
+	public static void main(String...args) throws Exception {
+		Map<String, String> arguments = new LinkedHashMap<>();
+		for(String arg : args) {
+			int separator = arg.indexOf('=');
+			if(separator < 0) {
+				throw new IllegalArgumentException("Argument " + arg + " is not name=value");
+			}
+			arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		System.exit(new LoadGenerator(arguments).run() ? 0 : 1);
+	}
+
+	/**
+	 * This method runs the load test and prints report
+	 * @return true if error rate and p99 are within the limits
+	 * @throws Exception In case target can not be prepared
+	 */
+	public boolean run() throws Exception {
+		parseMix(argument("mix", "download:50,upload:20,list:10,sas:20"));
+		for(String size : argument("sizes", "1024,65536").split(",")) {
+			sizes.add(Integer.parseInt(size.trim()));
+		}
+		containerName = argument("container", "load-test");
+		seedBlobs = Integer.parseInt(argument("seed-blobs", "20"));
+		vaultProperties = vaultProperties();
+		if(null != vaultProperties) {
+			keyProperties = copyOf(vaultProperties, argument("key-name", vaultProperties.getSecretName()));
+		}
+		if((mix.containsKey(Operation.SECRET) || mix.containsKey(Operation.KEY)) && null == vaultProperties) {
+			throw new IllegalArgumentException("secret and key operations need vault-uri, tenant-id, client-id and client-key");
+		}
+		String target = argument("target", "local");
+		LocalBlobServer server = null;
+		try {
+			if("local".equals(target)) {
+				server = LocalBlobServer.start(0);
+				server.setLatency(Long.parseLong(argument("local-latency-millis", "0")), 0);
+				String fault = argument("local-fault", "");
+				if(!fault.isEmpty()) {
+					String[] parts = fault.split(":");
+					server.injectFault(LocalBlobServer.Fault.valueOf(parts[0]), Double.parseDouble(parts[1]));
+				}
+				connectionString = server.getConnectionString();
+			}
+			else if("files".equals(target)) {
+				connectionString = "LOCAL;" + argument("directory", Files.createTempDirectory("load-test").toString()) + ";http://localhost";
+			}
+			else {
+				connectionString = argument("connection-string", null);
+				if(null == connectionString) {
+					throw new IllegalArgumentException("connection-string is required for target " + target);
+				}
+			}
+			seed();
+			return execute();
+		}
+		finally {
+			if(null != server) {
+				server.close();
+			}
+		}
+	}
+
+	/**
+	 * Open-loop schedule: arrival times are fixed in advance of completions, scheduler never waits for a request
+	 */
+	private boolean execute() throws InterruptedException, IOException {
+		double rate = Double.parseDouble(argument("rate", "200"));
+		boolean poisson = "poisson".equals(argument("arrival", "uniform"));
+		long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(argument("warmup-seconds", "5")));
+		long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(argument("duration-seconds", "30")));
+		long reportNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(argument("report-interval-seconds", "10")));
+		int threads = Integer.parseInt(argument("threads", "16"));
+		int maxOutstanding = Integer.parseInt(argument("max-outstanding", "10000"));
+		long drainSeconds = Long.parseLong(argument("drain-seconds", "60"));
+		long expectedIntervalMicros = (long) (1_000_000d * threads / rate);
+		for(Operation operation : mix.keySet()) {
+			stats.put(operation, new OperationStats(expectedIntervalMicros));
+		}
+		System.out.println(String.format("Target %s, rate %.0f/s %s, %d threads, mix %s, sizes %s, warmup %d s, duration %d s",
+				argument("target", "local"), rate, poisson ? "poisson" : "uniform", threads, mix, sizes,
+				TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "load-generator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		double meanIntervalNanos = 1_000_000_000d / rate;
+		long start = System.nanoTime();
+		long measureFrom = start + warmupNanos;
+		long end = measureFrom + durationNanos;
+		long nextReport = measureFrom + reportNanos;
+		double next = start;
+		while(next < end) {
+			long intended = (long) next;
+			long now;
+			while((now = System.nanoTime()) < intended) {
+				LockSupport.parkNanos(intended - now);
+			}
+			if(now >= nextReport) {
+				reportInterval(TimeUnit.NANOSECONDS.toSeconds(now - measureFrom));
+				nextReport += reportNanos;
+			}
+			Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+			boolean measured = intended >= measureFrom;
+			if(outstanding.incrementAndGet() > maxOutstanding) {
+				outstanding.decrementAndGet();
+				if(measured) {
+					stats.get(operation).error("Overload (max-outstanding " + maxOutstanding + ")");
+				}
+			}
+			else {
+				if(measured) {
+					stats.get(operation).submitted();
+				}
+				executor.execute(() -> perform(operation, intended, measured));
+			}
+			next += poisson ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos : meanIntervalNanos;
+		}
+		executor.shutdown();
+		if(!executor.awaitTermination(drainSeconds, TimeUnit.SECONDS)) {
+			executor.shutdownNow();
+		}
+		for(OperationStats operationStats : stats.values()) {
+			operationStats.timeout("Timeout (not completed within drain-seconds " + drainSeconds + ")");
+		}
+		return report(TimeUnit.NANOSECONDS.toMillis(Math.max(1, System.nanoTime() - measureFrom)));
+	}
+
+	private void perform(Operation operation, long intended, boolean measured) {
+		long start = System.nanoTime();
+		OperationStats operationStats = stats.get(operation);
+		try {
+			long bytes = execute(operation);
+			long end = System.nanoTime();
+			if(measured && operationStats.completed()) {
+				operationStats.success(TimeUnit.NANOSECONDS.toMicros(end - intended), TimeUnit.NANOSECONDS.toMicros(end - start), bytes);
+			}
+		} catch(Exception ex) {
+			if(measured && operationStats.completed()) {
+				operationStats.error(classify(ex));
+			}
+		} finally {
+			outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * This method executes one operation
+	 * @return Bytes transferred
+	 */
+	private long execute(Operation operation) throws AzureException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int size = sizes.get(random.nextInt(sizes.size()));
+		switch(operation) {
+			case SECRET:
+				String value = AzureVaultUtils.getSecretBundleFromVault(vaultProperties).value();
+				return null != value ? value.length() : 0;
+			case KEY:
+				AzureVaultUtils.getKeyFromVault(keyProperties);
+				return 0;
+			case UPLOAD:
+				M3AzureStorageUtils.uploadFile(connectionString, containerName, LOAD_PREFIX + size + "/" + random.nextInt(UPLOAD_KEYS), payload(size));
+				return size;
+			case DOWNLOAD:
+				return M3AzureStorageUtils.downloadFile(connectionString, containerName, seedPath(size, random.nextInt(seedBlobs))).length;
+			case LIST:
+				List<?> files = M3AzureStorageUtils.listFiles(connectionString, containerName, SEED_PREFIX + size + "/");
+				if(null == files || files.size() < seedBlobs) {
+					throw new IllegalStateException("Listing returned " + (null == files ? 0 : files.size()) + " of " + seedBlobs + " blobs");
+				}
+				return 0;
+			case SAS:
+				M3AzureStorageUtils.sasURL(connectionString, containerName, seedPath(size, random.nextInt(seedBlobs)));
+				return 0;
+			default:
+				throw new IllegalArgumentException("Unknown operation " + operation);
+		}
+	}
+
+	/**
+	 * This method uploads blobs read by download and list operations
+	 */
+	private void seed() throws AzureException {
+		if(!mix.containsKey(Operation.DOWNLOAD) && !mix.containsKey(Operation.LIST) && !mix.containsKey(Operation.SAS)) {
+			return;
+		}
+		for(int size : sizes) {
+			for(int i = 0; i < seedBlobs; i++) {
+				M3AzureStorageUtils.uploadFile(connectionString, containerName, seedPath(size, i), payload(size));
+			}
+		}
+	}
+
+	private static String seedPath(int size, int index) {
+		return SEED_PREFIX + size + "/" + index;
+	}
+
+	/**
+	 * Random (incompressible) payload per size, shared by all uploads
+	 */
+	private byte[] payload(int size) {
+		return payloads.computeIfAbsent(size, s -> {
+			byte[] retVal = new byte[s];
+			ThreadLocalRandom.current().nextBytes(retVal);
+			return retVal;
+		});
+	}
+
+	private void parseMix(String value) {
+		List<Operation> weighted = new ArrayList<>();
+		for(String entry : value.split(",")) {
+			String[] parts = entry.trim().split(":");
+			Operation operation = Operation.valueOf(parts[0].trim().toUpperCase());
+			int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+			if(weight > 0) {
+				mix.put(operation, weight);
+				for(int i = 0; i < weight; i++) {
+					weighted.add(operation);
+				}
+			}
+		}
+		if(weighted.isEmpty()) {
+			throw new IllegalArgumentException("Mix " + value + " has no operation");
+		}
+		schedule = weighted.toArray(new Operation[0]);
+	}
+
+	private KeyVaultProperties vaultProperties() {
+		String vaultUri = argument("vault-uri", null);
+		if(null == vaultUri) {
+			return null;
+		}
+		KeyVaultProperties properties = new KeyVaultProperties();
+		properties.setResourceUri(vaultUri);
+		properties.setTenantId(argument("tenant-id", null));
+		properties.setClientId(argument("client-id", null));
+		properties.setClientKey(argument("client-key", null));
+		properties.setSecretName(argument("secret-name", "secretCode"));
+		properties.setOnline(true);
+		properties.setFallback(false);
+		return properties;
+	}
+
+	private static KeyVaultProperties copyOf(KeyVaultProperties source, String secretName) {
+		KeyVaultProperties properties = new KeyVaultProperties();
+		properties.setResourceUri(source.getResourceUri());
+		properties.setReplicaUris(source.getReplicaUris());
+		properties.setTenantId(source.getTenantId());
+		properties.setClientId(source.getClientId());
+		properties.setClientKey(source.getClientKey());
+		properties.setSecretName(secretName);
+		properties.setOnline(true);
+		properties.setFallback(false);
+		return properties;
+	}
+
+	/**
+	 * Error class for breakdown e.g. StorageException 503 ServerBusy
+	 */
+	private static String classify(Exception ex) {
+		Throwable cause = ex instanceof AzureException && null != ((AzureException) ex).getEx() ? ((AzureException) ex).getEx() : ex;
+		if(cause instanceof StorageException) {
+			StorageException storageException = (StorageException) cause;
+			return "StorageException " + storageException.getHttpStatusCode() + " " + storageException.getErrorCode();
+		}
+		if(cause instanceof RestException && null != ((RestException) cause).response()) {
+			return cause.getClass().getSimpleName() + " " + ((RestException) cause).response().code();
+		}
+		return cause.getClass().getSimpleName();
+	}
+
+	private void reportInterval(long elapsedSeconds) {
+		StringBuilder line = new StringBuilder(String.format("[%5d s]", elapsedSeconds));
+		for(Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+			Histogram interval = entry.getValue().interval.getIntervalHistogram();
+			line.append(String.format("  %s %d ok p99 %.1f ms", entry.getKey().name().toLowerCase(), interval.getTotalCount(),
+					interval.getValueAtPercentile(99) / 1000d));
+		}
+		line.append(String.format("  outstanding %d", outstanding.get()));
+		System.out.println(line);
+	}
+
+	private boolean report(long elapsedMillis) throws IOException {
+		double maxErrorRate = Double.parseDouble(argument("max-error-rate", "0.01"));
+		double maxP99Millis = Double.parseDouble(argument("max-p99-millis", "0"));
+		Histogram all = new Histogram(SIGNIFICANT_DIGITS);
+		long allErrors = 0;
+		List<String> csv = new ArrayList<>();
+		csv.add("operation,count,errors,ops_per_second,mb_per_second,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,service_p99_ms");
+		System.out.println(String.format("%-9s %9s %7s %9s %8s %9s %9s %9s %9s %9s %11s", "operation", "count", "errors",
+				"ops/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms", "svc p99 ms"));
+		for(Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+			OperationStats operationStats = entry.getValue();
+			Histogram response = operationStats.response;
+			all.add(response);
+			allErrors += operationStats.errors.get();
+			String[] values = {
+				entry.getKey().name().toLowerCase(),
+				String.valueOf(response.getTotalCount()),
+				String.valueOf(operationStats.errors.get()),
+				String.format("%.1f", response.getTotalCount() * 1000d / elapsedMillis),
+				String.format("%.2f", operationStats.bytes.get() / (1024d * 1024) * 1000 / elapsedMillis),
+				millis(response.getValueAtPercentile(50)),
+				millis(response.getValueAtPercentile(90)),
+				millis(response.getValueAtPercentile(99)),
+				millis(response.getValueAtPercentile(99.9)),
+				millis(response.getMaxValue()),
+				millis(operationStats.service.getValueAtPercentile(99))
+			};
+			System.out.println(String.format("%-9s %9s %7s %9s %8s %9s %9s %9s %9s %9s %11s", (Object[]) values));
+			csv.add(String.join(",", values));
+		}
+		for(Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+			for(Map.Entry<String, AtomicLong> error : entry.getValue().errorTypes.entrySet()) {
+				System.out.println(String.format("  %s error: %s x %d", entry.getKey().name().toLowerCase(), error.getKey(), error.getValue().get()));
+			}
+		}
+		long total = all.getTotalCount() + allErrors;
+		double errorRate = total == 0 ? 1 : (double) allErrors / total;
+		double p99Millis = all.getValueAtPercentile(99) / 1000d;
+		System.out.println(String.format("Total %d requests, %.1f/s, error rate %.4f, p99 %.2f ms, p999 %.2f ms", total,
+				total * 1000d / elapsedMillis, errorRate, p99Millis, all.getValueAtPercentile(99.9) / 1000d));
+		String output = argument("output", null);
+		if(null != output) {
+			Files.write(Paths.get(output), csv, StandardCharsets.UTF_8);
+		}
+		boolean retVal = errorRate <= maxErrorRate && (maxP99Millis <= 0 || p99Millis <= maxP99Millis);
+		if(!retVal) {
+			System.err.println(String.format("FAILED: error rate %.4f (max %.4f), p99 %.2f ms (max %s)", errorRate, maxErrorRate,
+					p99Millis, maxP99Millis > 0 ? String.valueOf(maxP99Millis) : "off"));
+		}
+		return retVal;
+	}
+
+	private static String millis(long micros) {
+		return String.format("%.2f", micros / 1000d);
+	}
+
+	private String argument(String name, String defaultValue) {
+		return arguments.getOrDefault(name, defaultValue);
+	}
+
+	/**
+	 * Latencies in microseconds: response from intended arrival, service from actual start
+	 */
+	private static final class OperationStats {
+		private final Histogram response = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final Histogram service = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+		private final Recorder interval = new Recorder(SIGNIFICANT_DIGITS);
+		private final long expectedIntervalMicros;
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final Map<String, AtomicLong> errorTypes = new ConcurrentHashMap<>();
+		private long pending;
+		private boolean drained;
+
+		private OperationStats(long expectedIntervalMicros) {
+			this.expectedIntervalMicros = expectedIntervalMicros;
+		}
+
+		private synchronized void submitted() {
+			pending++;
+		}
+
+		/**
+		 * Request completing after the drain was already counted as timeout and is not recorded again
+		 */
+		private synchronized boolean completed() {
+			if(drained) {
+				return false;
+			}
+			pending--;
+			return true;
+		}
+
+		private void timeout(String type) {
+			long timedOut;
+			synchronized(this) {
+				drained = true;
+				timedOut = pending;
+				pending = 0;
+			}
+			if(timedOut > 0) {
+				errors.addAndGet(timedOut);
+				errorTypes.computeIfAbsent(type, t -> new AtomicLong()).addAndGet(timedOut);
+			}
+		}
+
+		private void success(long responseMicros, long serviceMicros, long transferred) {
+			response.recordValue(responseMicros);
+			service.recordValueWithExpectedInterval(serviceMicros, expectedIntervalMicros);
+			interval.recordValue(responseMicros);
+			bytes.addAndGet(transferred);
+		}
+
+		private void error(String type) {
+			errors.incrementAndGet();
+			errorTypes.computeIfAbsent(type, t -> new AtomicLong()).incrementAndGet();
+		}
+	}
+}
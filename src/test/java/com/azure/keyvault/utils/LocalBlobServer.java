@@ -0,0 +1,977 @@
+package com.azure.keyvault.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embeddable in-process stand-in of Azure Blob storage speaking the Blob REST API subset used by
+ * M1AzureStorageUtils, M2AzureStorageUtils and M3AzureStorageUtils, so that the SDK code paths can be
+ * exercised and load tested without a storage account. Content is kept in memory.
+ *
+ * Supported: container create/delete/properties, put/get/head blob (with ranges and conditional headers),
+ * put block and put block list, list blobs with prefix/delimiter/paging/metadata, get/set metadata, delete blob,
+ * synchronous copy from a blob of the same server. Shared Key requests are accepted by account name (signature is
+ * not verified), SAS requests are fully verified (signature, expiry/start, resource and permissions).
+ *
+ * Latency (with jitter), bandwidth per request and faults (503 ServerBusy, 500 InternalError, connection reset)
+ * can be configured at any time e.g.
+ *
+ * try(LocalBlobServer server = LocalBlobServer.start(0)) {
+ *     server.setLatency(20, 10);
+ *     server.injectFault(Fault.SERVER_BUSY, 0.01);
+ *     M3AzureStorageUtils.uploadFile(server.getConnectionString(), "container", "file.txt", data);
+ * }
+ * @author Sandeep Kumar
+ *
+ */
+public class LocalBlobServer implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger(LocalBlobServer.class);
+
+	public static final String DEFAULT_ACCOUNT_NAME = "devstoreaccount1";
+	public static final String DEFAULT_ACCOUNT_KEY = "Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==";
+
+	private static final String API_VERSION = "2018-11-09";
+	private static final String META_PREFIX = "x-ms-meta-";
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final Pattern BLOCK_PATTERN = Pattern.compile("<(Latest|Committed|Uncommitted)>([^<]*)</(?:Latest|Committed|Uncommitted)>");
+	private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+	private static final ThreadLocal<SimpleDateFormat> RFC1123 = ThreadLocal.withInitial(() -> {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	});
+	private static final ThreadLocal<SimpleDateFormat> ISO8601 = ThreadLocal.withInitial(() -> {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format;
+	});
+
+	/**
+	 * Fault types which can be injected with a probability per request
+	 */
+	public enum Fault {
+		SERVER_BUSY,
+		INTERNAL_ERROR,
+		CONNECTION_RESET
+	}
+
+	private final String accountName;
+	private final byte[] accountKey;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, Container> containers = new ConcurrentHashMap<>();
+	private final AtomicLong etagSequence = new AtomicLong(System.currentTimeMillis());
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong faultCount = new AtomicLong();
+
+	private volatile long latencyMillis;
+	private volatile long latencyJitterMillis;
+	private volatile long bandwidthBytesPerSecond;
+	private final Map<Fault, Double> faults = new EnumMap<>(Fault.class);
+
+	private LocalBlobServer(int port, String accountName, String accountKey) throws IOException {
+		this.accountName = accountName;
+		this.accountKey = Base64.getDecoder().decode(accountKey);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		this.executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "local-blob-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(executor);
+		this.server.createContext("/", this::handle);
+	}
+
+	/**
+	 * This method starts server with development storage account name/key
+	 * @param port Port to listen on 127.0.0.1, 0 for any free port
+	 * @return Started server
+	 * @throws IOException In case port can not be bound
+	 */
+	public static LocalBlobServer start(int port) throws IOException {
+		return start(port, DEFAULT_ACCOUNT_NAME, DEFAULT_ACCOUNT_KEY);
+	}
+
+	/**
+	 * This method starts server for given account name/key
+	 * @param port Port to listen on 127.0.0.1, 0 for any free port
+	 * @param accountName Storage account name
+	 * @param accountKey Base64 account key used to verify SAS
+	 * @return Started server
+	 * @throws IOException In case port can not be bound
+	 */
+	public static LocalBlobServer start(int port, String accountName, String accountKey) throws IOException {
+		LocalBlobServer retVal = new LocalBlobServer(port, accountName, accountKey);
+		retVal.server.start();
+		LOGGER.info("Local blob server started at {}", retVal.getBlobEndpoint());
+		return retVal;
+	}
+
+	/**
+	 * Runs standalone server from the repackaged jar (classes are under BOOT-INF) through PropertiesLauncher e.g.
+	 * java -cp azure-key-vault.jar -Dloader.main=com.azure.keyvault.utils.LocalBlobServer org.springframework.boot.loader.PropertiesLauncher 10000
+	 */
+	public static void main(String...args) throws IOException, InterruptedException {
+		LocalBlobServer server = start(args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+		System.out.println(server.getConnectionString());
+		new CountDownLatch(1).await();
+	}
+
+	public String getBlobEndpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + accountName;
+	}
+
+	/**
+	 * @return Connection string usable by CloudStorageAccount, SasSigner and M1/M2/M3 utilities
+	 */
+	public String getConnectionString() {
+		return "DefaultEndpointsProtocol=http;AccountName=" + accountName + ";AccountKey=" + Base64.getEncoder().encodeToString(accountKey)
+				+ ";BlobEndpoint=" + getBlobEndpoint() + ";";
+	}
+
+	/**
+	 * @param latencyMillis Delay added before each request is handled
+	 * @param jitterMillis Random additional delay up to jitterMillis
+	 */
+	public void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = jitterMillis;
+	}
+
+	/**
+	 * @param bytesPerSecond Bandwidth of request and response bodies per request, 0 for unlimited
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		this.bandwidthBytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @param fault Fault type
+	 * @param probability Probability (0 to 1) of the fault per request, 0 removes fault
+	 */
+	public synchronized void injectFault(Fault fault, double probability) {
+		if(probability <= 0) {
+			faults.remove(fault);
+		}
+		else {
+			faults.put(fault, probability);
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getFaultCount() {
+		return faultCount.get();
+	}
+
+	/**
+	 * This method removes all containers and blobs
+	 */
+	public void clear() {
+		containers.clear();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		try {
+			simulateLatency();
+			Fault fault = drawFault();
+			if(Fault.CONNECTION_RESET == fault) {
+				faultCount.incrementAndGet();
+				exchange.close();
+				return;
+			}
+			if(null != fault) {
+				faultCount.incrementAndGet();
+				readBody(exchange);
+				throw Fault.SERVER_BUSY == fault
+						? new BlobException(503, "ServerBusy", "The server is currently unable to receive requests. Please retry your request.")
+						: new BlobException(500, "InternalError", "The server encountered an internal error. Please retry the request.");
+			}
+			route(exchange, new Request(exchange));
+		}
+		catch(BlobException ex) {
+			sendError(exchange, ex);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			exchange.close();
+		}
+		catch(RuntimeException ex) {
+			LOGGER.error("Error while handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), ex);
+			sendError(exchange, new BlobException(500, "InternalError", String.valueOf(ex.getMessage())));
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private void simulateLatency() throws InterruptedException {
+		long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+		if(delay > 0) {
+			TimeUnit.MILLISECONDS.sleep(delay);
+		}
+	}
+
+	private synchronized Fault drawFault() {
+		for(Map.Entry<Fault, Double> entry : faults.entrySet()) {
+			if(ThreadLocalRandom.current().nextDouble() < entry.getValue()) {
+				return entry.getKey();
+			}
+		}
+		return null;
+	}
+
+	private void route(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		if(!accountName.equals(request.account)) {
+			throw new BlobException(400, "InvalidUri", "Unknown account " + request.account);
+		}
+		authorize(request);
+		String method = exchange.getRequestMethod();
+		if(null == request.blob) {
+			if(null == request.container || !"container".equals(request.query.get("restype"))) {
+				throw new BlobException(400, "UnsupportedQueryParameter", "Only container level operations are supported");
+			}
+			if("list".equals(request.query.get("comp")) && "GET".equals(method)) {
+				listBlobs(exchange, request);
+			}
+			else if("PUT".equals(method)) {
+				createContainer(exchange, request);
+			}
+			else if("DELETE".equals(method)) {
+				if(null == containers.remove(request.container)) {
+					throw containerNotFound();
+				}
+				send(exchange, 202, null, null);
+			}
+			else {
+				Container container = container(request);
+				Headers headers = new Headers();
+				headers.set("ETag", container.etag);
+				headers.set("Last-Modified", formatRfc1123(container.lastModified));
+				send(exchange, 200, headers, null);
+			}
+			return;
+		}
+		String comp = request.query.get("comp");
+		switch(method) {
+		case "PUT":
+			if("block".equals(comp)) {
+				putBlock(exchange, request);
+			}
+			else if("blocklist".equals(comp)) {
+				putBlockList(exchange, request);
+			}
+			else if("metadata".equals(comp)) {
+				setMetadata(exchange, request);
+			}
+			else if(null != request.header("x-ms-copy-source")) {
+				copyBlob(exchange, request);
+			}
+			else {
+				putBlob(exchange, request);
+			}
+			break;
+		case "GET":
+		case "HEAD":
+			getBlob(exchange, request, "HEAD".equals(method), "metadata".equals(comp));
+			break;
+		case "DELETE":
+			Container container = container(request);
+			if(null == container.blobs.remove(request.blob)) {
+				throw blobNotFound();
+			}
+			send(exchange, 202, null, null);
+			break;
+		default:
+			throw new BlobException(405, "UnsupportedHttpVerb", "Method " + method + " is not supported");
+		}
+	}
+
+	private void createContainer(HttpExchange exchange, Request request) throws IOException, BlobException {
+		Container created = new Container(nextEtag());
+		if(null != containers.putIfAbsent(request.container, created)) {
+			throw new BlobException(409, "ContainerAlreadyExists", "The specified container already exists.");
+		}
+		Headers headers = new Headers();
+		headers.set("ETag", created.etag);
+		headers.set("Last-Modified", formatRfc1123(created.lastModified));
+		send(exchange, 201, headers, null);
+	}
+
+	private void putBlob(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		byte[] body = readBody(exchange);
+		verifyTransactionalMd5(request, body);
+		Blob blob = new Blob(nextEtag(), body, properties(request, true), metadata(request));
+		blob.blocks.add(new Block("", 0, body.length));
+		store(container, request, blob);
+		sendWritten(exchange, 201, blob, md5(body));
+	}
+
+	private void putBlock(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		String blockId = request.query.get("blockid");
+		if(null == blockId) {
+			throw new BlobException(400, "InvalidQueryParameterValue", "blockid is required");
+		}
+		byte[] body = readBody(exchange);
+		verifyTransactionalMd5(request, body);
+		container.uncommitted.computeIfAbsent(request.blob, name -> new ConcurrentHashMap<>()).put(blockId, body);
+		Headers headers = new Headers();
+		headers.set("Content-MD5", md5(body));
+		headers.set("x-ms-request-server-encrypted", "false");
+		send(exchange, 201, headers, null);
+	}
+
+	private void putBlockList(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+		Map<String, byte[]> uncommitted = container.uncommitted.getOrDefault(request.blob, new HashMap<>());
+		Blob existing = container.blobs.get(request.blob);
+		checkConditions(request, existing);
+		Map<String, byte[]> committed = new HashMap<>();
+		if(null != existing) {
+			existing.blocks.forEach(block -> committed.put(block.id, block.data(existing.content)));
+		}
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		List<Block> blocks = new ArrayList<>();
+		Matcher matcher = BLOCK_PATTERN.matcher(body);
+		while(matcher.find()) {
+			String type = matcher.group(1);
+			String id = matcher.group(2);
+			byte[] data = "Committed".equals(type) ? null : uncommitted.get(id);
+			if(null == data && !"Uncommitted".equals(type)) {
+				data = committed.get(id);
+			}
+			if(null == data) {
+				throw new BlobException(400, "InvalidBlockList", "The specified block list is invalid.");
+			}
+			blocks.add(new Block(id, content.size(), data.length));
+			content.write(data, 0, data.length);
+		}
+		Blob blob = new Blob(nextEtag(), content.toByteArray(), properties(request, false), metadata(request));
+		blob.blocks.addAll(blocks);
+		container.blobs.put(request.blob, blob);
+		container.uncommitted.remove(request.blob);
+		sendWritten(exchange, 201, blob, null);
+	}
+
+	private void setMetadata(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		readBody(exchange);
+		Blob existing = container.blobs.get(request.blob);
+		if(null == existing) {
+			throw blobNotFound();
+		}
+		checkConditions(request, existing);
+		Blob blob = new Blob(nextEtag(), existing.content, new LinkedHashMap<>(existing.properties), metadata(request));
+		blob.blocks.addAll(existing.blocks);
+		blob.copy = existing.copy;
+		container.blobs.put(request.blob, blob);
+		sendWritten(exchange, 200, blob, null);
+	}
+
+	private void copyBlob(HttpExchange exchange, Request request) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		readBody(exchange);
+		String copySource = request.header("x-ms-copy-source");
+		URI source = URI.create(copySource);
+		String[] parts = source.getPath().split("/", 4);
+		Container sourceContainer = parts.length == 4 && accountName.equals(parts[1]) ? containers.get(parts[2]) : null;
+		Blob sourceBlob = null != sourceContainer ? sourceContainer.blobs.get(parts[3]) : null;
+		if(null == sourceBlob) {
+			throw new BlobException(404, "CannotVerifyCopySource", "The specified blob does not exist.");
+		}
+		Map<String, String> metadata = metadata(request);
+		Blob blob = new Blob(nextEtag(), sourceBlob.content, new LinkedHashMap<>(sourceBlob.properties), metadata.isEmpty() ? sourceBlob.metadata : metadata);
+		blob.blocks.addAll(sourceBlob.blocks);
+		blob.copy = new CopyInfo(UUID.randomUUID().toString(), copySource, blob.content.length);
+		store(container, request, blob);
+		Headers headers = new Headers();
+		headers.set("ETag", blob.etag);
+		headers.set("Last-Modified", formatRfc1123(blob.lastModified));
+		headers.set("x-ms-copy-id", blob.copy.id);
+		headers.set("x-ms-copy-status", "success");
+		send(exchange, 202, headers, null);
+	}
+
+	private void store(Container container, Request request, Blob blob) throws BlobException {
+		Blob existing = container.blobs.get(request.blob);
+		checkConditions(request, existing);
+		if(null != existing ? !container.blobs.replace(request.blob, existing, blob) : null != container.blobs.putIfAbsent(request.blob, blob)) {
+			throw new BlobException(412, "ConditionNotMet", "The condition specified using HTTP conditional header(s) is not met.");
+		}
+	}
+
+	private void getBlob(HttpExchange exchange, Request request, boolean head, boolean metadataOnly) throws IOException, InterruptedException, BlobException {
+		Container container = container(request);
+		Blob blob = container.blobs.get(request.blob);
+		if(null == blob) {
+			throw blobNotFound();
+		}
+		checkConditions(request, blob);
+		Headers headers = new Headers();
+		headers.set("ETag", blob.etag);
+		headers.set("Last-Modified", formatRfc1123(blob.lastModified));
+		blob.metadata.forEach((key, value) -> headers.set(META_PREFIX + key, value));
+		if(metadataOnly) {
+			send(exchange, 200, headers, null);
+			return;
+		}
+		headers.set("x-ms-blob-type", "BlockBlob");
+		headers.set("x-ms-lease-status", "unlocked");
+		headers.set("x-ms-lease-state", "available");
+		headers.set("x-ms-server-encrypted", "false");
+		headers.set("Accept-Ranges", "bytes");
+		headers.set("x-ms-creation-time", formatRfc1123(blob.lastModified));
+		blob.properties.forEach(headers::set);
+		if(null == blob.properties.get("Content-Type")) {
+			headers.set("Content-Type", "application/octet-stream");
+		}
+		if(null != blob.copy) {
+			headers.set("x-ms-copy-id", blob.copy.id);
+			headers.set("x-ms-copy-source", blob.copy.source);
+			headers.set("x-ms-copy-status", "success");
+			headers.set("x-ms-copy-progress", blob.copy.length + "/" + blob.copy.length);
+			headers.set("x-ms-copy-completion-time", formatRfc1123(blob.lastModified));
+		}
+		String range = null != request.header("x-ms-range") ? request.header("x-ms-range") : request.header("Range");
+		int length = blob.content.length;
+		int start = 0;
+		int end = length - 1;
+		int status = 200;
+		if(null != range) {
+			Matcher matcher = RANGE_PATTERN.matcher(range);
+			if(!matcher.matches() || Long.parseLong(matcher.group(1)) >= length) {
+				throw new BlobException(416, "InvalidRange", "The range specified is invalid for the current size of the resource.");
+			}
+			start = Integer.parseInt(matcher.group(1));
+			end = matcher.group(2).isEmpty() ? length - 1 : (int) Math.min(length - 1, Long.parseLong(matcher.group(2)));
+			status = 206;
+			headers.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			if(null != blob.properties.get("Content-MD5")) {
+				headers.remove("Content-MD5");
+				headers.set("x-ms-blob-content-md5", blob.properties.get("Content-MD5"));
+			}
+			if("true".equalsIgnoreCase(request.header("x-ms-range-get-content-md5"))) {
+				headers.set("Content-MD5", md5(Arrays.copyOfRange(blob.content, start, end + 1)));
+			}
+		}
+		int count = Math.max(0, end - start + 1);
+		headers.set("Content-Length", String.valueOf(count));
+		if(head) {
+			send(exchange, status, headers, null);
+			return;
+		}
+		exchange.getResponseHeaders().putAll(standardHeaders(exchange, headers));
+		exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+		writeThrottled(exchange.getResponseBody(), blob.content, start, count);
+	}
+
+	private void listBlobs(HttpExchange exchange, Request request) throws IOException, BlobException {
+		Container container = container(request);
+		String prefix = request.query.getOrDefault("prefix", "");
+		String delimiter = request.query.get("delimiter");
+		String marker = request.query.get("marker");
+		int maxResults = Integer.parseInt(request.query.getOrDefault("maxresults", "5000"));
+		boolean includeMetadata = request.query.getOrDefault("include", "").contains("metadata");
+
+		StringBuilder xml = new StringBuilder(1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+		xml.append("<EnumerationResults ServiceEndpoint=\"").append(escape(getBlobEndpoint())).append("/\" ContainerName=\"").append(escape(request.container)).append("\">");
+		xml.append("<Prefix>").append(escape(prefix)).append("</Prefix>");
+		xml.append("<Marker>").append(null != marker ? escape(marker) : "").append("</Marker>");
+		xml.append("<MaxResults>").append(maxResults).append("</MaxResults>");
+		if(null != delimiter) {
+			xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+		}
+		xml.append("<Blobs>");
+		// listing resumes at the marker when it sorts after the prefix
+		String start = null != marker && marker.compareTo(prefix) > 0 ? marker : prefix;
+		NavigableMap<String, Blob> view = container.blobs.tailMap(start, true);
+		int count = 0;
+		String nextMarker = null;
+		String lastPrefix = null;
+		for(Map.Entry<String, Blob> entry : view.entrySet()) {
+			String name = entry.getKey();
+			if(!name.startsWith(prefix)) {
+				break;
+			}
+			int index = null != delimiter && !delimiter.isEmpty() ? name.indexOf(delimiter, prefix.length()) : -1;
+			String blobPrefix = index >= 0 ? name.substring(0, index + delimiter.length()) : null;
+			if(null != blobPrefix && blobPrefix.equals(lastPrefix)) {
+				continue;
+			}
+			if(count == maxResults) {
+				nextMarker = name;
+				break;
+			}
+			count++;
+			if(null != blobPrefix) {
+				lastPrefix = blobPrefix;
+				xml.append("<BlobPrefix><Name>").append(escape(blobPrefix)).append("</Name></BlobPrefix>");
+				continue;
+			}
+			Blob blob = entry.getValue();
+			xml.append("<Blob><Name>").append(escape(name)).append("</Name><Properties>");
+			xml.append("<Creation-Time>").append(formatRfc1123(blob.lastModified)).append("</Creation-Time>");
+			xml.append("<Last-Modified>").append(formatRfc1123(blob.lastModified)).append("</Last-Modified>");
+			xml.append("<Etag>").append(blob.etag.replace("\"", "")).append("</Etag>");
+			xml.append("<Content-Length>").append(blob.content.length).append("</Content-Length>");
+			xml.append("<Content-Type>").append(escape(blob.properties.getOrDefault("Content-Type", "application/octet-stream"))).append("</Content-Type>");
+			xml.append("<Content-Encoding>").append(escape(blob.properties.getOrDefault("Content-Encoding", ""))).append("</Content-Encoding>");
+			xml.append("<Content-Language>").append(escape(blob.properties.getOrDefault("Content-Language", ""))).append("</Content-Language>");
+			xml.append("<Content-MD5>").append(escape(blob.properties.getOrDefault("Content-MD5", ""))).append("</Content-MD5>");
+			xml.append("<Cache-Control>").append(escape(blob.properties.getOrDefault("Cache-Control", ""))).append("</Cache-Control>");
+			xml.append("<Content-Disposition>").append(escape(blob.properties.getOrDefault("Content-Disposition", ""))).append("</Content-Disposition>");
+			xml.append("<BlobType>BlockBlob</BlobType><LeaseStatus>unlocked</LeaseStatus><LeaseState>available</LeaseState><ServerEncrypted>false</ServerEncrypted>");
+			xml.append("</Properties>");
+			if(includeMetadata) {
+				xml.append("<Metadata>");
+				blob.metadata.forEach((key, value) -> xml.append('<').append(key).append('>').append(escape(value)).append("</").append(key).append('>'));
+				xml.append("</Metadata>");
+			}
+			xml.append("</Blob>");
+		}
+		xml.append("</Blobs><NextMarker>").append(null != nextMarker ? escape(nextMarker) : "").append("</NextMarker></EnumerationResults>");
+		Headers headers = new Headers();
+		headers.set("Content-Type", "application/xml");
+		send(exchange, 200, headers, xml.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Shared Key is accepted by account name, SAS is verified like the service does for versions since 2015-04-05
+	 */
+	private void authorize(Request request) throws BlobException {
+		String signature = request.query.get("sig");
+		if(null == signature) {
+			String authorization = request.header("Authorization");
+			if(null == authorization || !authorization.matches("SharedKey(Lite)? " + Pattern.quote(accountName) + ":.+")) {
+				throw new BlobException(403, "NoAuthenticationInformation", "Server failed to authenticate the request.");
+			}
+			return;
+		}
+		String version = request.query.getOrDefault("sv", "");
+		String signedResource = request.query.getOrDefault("sr", "");
+		String permissions = request.query.getOrDefault("sp", "");
+		String resource = "/blob/" + accountName + "/" + request.container + ("b".equals(signedResource) ? "/" + request.blob : "");
+		if(!"b".equals(signedResource) && !"c".equals(signedResource)) {
+			throw authenticationFailed("Signed resource " + signedResource + " is not supported");
+		}
+		StringBuilder stringToSign = new StringBuilder(256);
+		stringToSign.append(permissions).append('\n')
+			.append(request.query.getOrDefault("st", "")).append('\n')
+			.append(request.query.getOrDefault("se", "")).append('\n')
+			.append(resource).append('\n')
+			.append(request.query.getOrDefault("si", "")).append('\n')
+			.append(request.query.getOrDefault("sip", "")).append('\n')
+			.append(request.query.getOrDefault("spr", "")).append('\n')
+			.append(version).append('\n');
+		if(version.compareTo(API_VERSION) >= 0) {
+			stringToSign.append(signedResource).append('\n')
+				.append(request.query.getOrDefault("snapshot", "")).append('\n');
+		}
+		stringToSign.append(request.query.getOrDefault("rscc", "")).append('\n')
+			.append(request.query.getOrDefault("rscd", "")).append('\n')
+			.append(request.query.getOrDefault("rsce", "")).append('\n')
+			.append(request.query.getOrDefault("rscl", "")).append('\n')
+			.append(request.query.getOrDefault("rsct", ""));
+		if(!MessageDigest.isEqual(Base64.getDecoder().decode(signature), hmac(stringToSign.toString()))) {
+			throw authenticationFailed("Signature did not match. String to sign used was " + stringToSign.toString().replace("\n", "\\n"));
+		}
+		Date now = new Date();
+		if(now.after(parseIso8601(request.query.get("se"))) || (request.query.containsKey("st") && now.before(parseIso8601(request.query.get("st"))))) {
+			throw authenticationFailed("Signed expiry time or start time is not valid");
+		}
+		if("b".equals(signedResource) && null == request.blob) {
+			throw authenticationFailed("Blob SAS can not be used for container operations");
+		}
+		char required = requiredPermission(request);
+		if(permissions.indexOf(required) < 0 && !('w' == required && permissions.indexOf('c') >= 0)) {
+			throw new BlobException(403, "AuthorizationPermissionMismatch", "This request is not authorized to perform this operation using this permission.");
+		}
+	}
+
+	private static char requiredPermission(Request request) throws BlobException {
+		String method = request.exchange.getRequestMethod();
+		if(null == request.blob) {
+			if("list".equals(request.query.get("comp"))) {
+				return 'l';
+			}
+			if("GET".equals(method) || "HEAD".equals(method)) {
+				return 'r';
+			}
+			throw authenticationFailed("Container create/delete is not allowed by service SAS");
+		}
+		switch(method) {
+		case "GET":
+		case "HEAD":
+			return 'r';
+		case "DELETE":
+			return 'd';
+		default:
+			return 'w';
+		}
+	}
+
+	private byte[] hmac(String stringToSign) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(accountKey, "HmacSHA256"));
+			return mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8));
+		} catch(NoSuchAlgorithmException | InvalidKeyException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static void checkConditions(Request request, Blob blob) throws BlobException {
+		String ifMatch = request.header("If-Match");
+		if(null != ifMatch && !"*".equals(ifMatch) && (null == blob || !ifMatch.equals(blob.etag))) {
+			throw new BlobException(412, "ConditionNotMet", "The condition specified using HTTP conditional header(s) is not met.");
+		}
+		String ifNoneMatch = request.header("If-None-Match");
+		if(null != ifNoneMatch && null != blob && ("*".equals(ifNoneMatch) || ifNoneMatch.equals(blob.etag))) {
+			String method = request.exchange.getRequestMethod();
+			if("GET".equals(method) || "HEAD".equals(method)) {
+				throw new BlobException(304, "ConditionNotMet", "The condition specified using HTTP conditional header(s) is not met.");
+			}
+			throw new BlobException(409, "BlobAlreadyExists", "The specified blob already exists.");
+		}
+	}
+
+	private static void verifyTransactionalMd5(Request request, byte[] body) throws BlobException {
+		String contentMd5 = request.header("Content-MD5");
+		if(null != contentMd5 && !contentMd5.equals(md5(body))) {
+			throw new BlobException(400, "Md5Mismatch", "The MD5 value specified in the request did not match with the MD5 value calculated by the server.");
+		}
+	}
+
+	/**
+	 * Blob properties from x-ms-blob-* headers (or standard headers for Put Blob), stored with response header names
+	 */
+	private static Map<String, String> properties(Request request, boolean putBlob) {
+		Map<String, String> retVal = new LinkedHashMap<>();
+		property(retVal, "Content-Type", request.header("x-ms-blob-content-type"), putBlob ? request.header("Content-Type") : null);
+		property(retVal, "Content-Encoding", request.header("x-ms-blob-content-encoding"), putBlob ? request.header("Content-Encoding") : null);
+		property(retVal, "Content-Language", request.header("x-ms-blob-content-language"), putBlob ? request.header("Content-Language") : null);
+		property(retVal, "Cache-Control", request.header("x-ms-blob-cache-control"), putBlob ? request.header("Cache-Control") : null);
+		property(retVal, "Content-Disposition", request.header("x-ms-blob-content-disposition"), null);
+		property(retVal, "Content-MD5", request.header("x-ms-blob-content-md5"), null);
+		return retVal;
+	}
+
+	private static void property(Map<String, String> properties, String name, String value, String fallback) {
+		String selected = null != value ? value : fallback;
+		if(null != selected && !selected.isEmpty()) {
+			properties.put(name, selected);
+		}
+	}
+
+	private static Map<String, String> metadata(Request request) {
+		Map<String, String> retVal = new LinkedHashMap<>();
+		request.exchange.getRequestHeaders().forEach((name, values) -> {
+			String lower = name.toLowerCase(Locale.ROOT);
+			if(lower.startsWith(META_PREFIX) && !values.isEmpty()) {
+				retVal.put(lower.substring(META_PREFIX.length()), values.get(0));
+			}
+		});
+		return retVal;
+	}
+
+	private Container container(Request request) throws BlobException {
+		Container container = containers.get(request.container);
+		if(null == container) {
+			throw containerNotFound();
+		}
+		return container;
+	}
+
+	private void sendWritten(HttpExchange exchange, int status, Blob blob, String contentMd5) throws IOException {
+		Headers headers = new Headers();
+		headers.set("ETag", blob.etag);
+		headers.set("Last-Modified", formatRfc1123(blob.lastModified));
+		headers.set("x-ms-request-server-encrypted", "false");
+		if(null != contentMd5) {
+			headers.set("Content-MD5", contentMd5);
+		}
+		send(exchange, status, headers, null);
+	}
+
+	private void sendError(HttpExchange exchange, BlobException ex) {
+		try {
+			Headers headers = new Headers();
+			headers.set("x-ms-error-code", ex.code);
+			byte[] body = null;
+			if(ex.status != 304 && !"HEAD".equals(exchange.getRequestMethod())) {
+				headers.set("Content-Type", "application/xml");
+				body = ("<?xml version=\"1.0\" encoding=\"utf-8\"?><Error><Code>" + ex.code + "</Code><Message>" + escape(ex.getMessage())
+						+ "\nRequestId:" + UUID.randomUUID() + "\nTime:" + ISO8601.get().format(new Date()) + "</Message></Error>").getBytes(StandardCharsets.UTF_8);
+			}
+			send(exchange, ex.status, headers, body);
+		} catch(IOException ioe) {
+			LOGGER.debug("Error response could not be sent: {}", ioe.getMessage());
+		}
+	}
+
+	private void send(HttpExchange exchange, int status, Headers headers, byte[] body) throws IOException {
+		exchange.getResponseHeaders().putAll(standardHeaders(exchange, null != headers ? headers : new Headers()));
+		if(null == body || body.length == 0 || "HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		writeThrottled(exchange.getResponseBody(), body, 0, body.length);
+	}
+
+	private static Headers standardHeaders(HttpExchange exchange, Headers headers) {
+		headers.set("x-ms-request-id", UUID.randomUUID().toString());
+		String version = exchange.getRequestHeaders().getFirst("x-ms-version");
+		headers.set("x-ms-version", null != version ? version : API_VERSION);
+		headers.set("Server", "LocalBlobServer");
+		return headers;
+	}
+
+	private byte[] readBody(HttpExchange exchange) throws IOException, InterruptedException {
+		ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+		byte[] buffer = new byte[CHUNK_SIZE];
+		try(InputStream inputStream = exchange.getRequestBody()) {
+			int read;
+			while((read = inputStream.read(buffer)) != -1) {
+				retVal.write(buffer, 0, read);
+				throttle(read);
+			}
+		}
+		return retVal.toByteArray();
+	}
+
+	private void writeThrottled(OutputStream outputStream, byte[] data, int offset, int count) throws IOException {
+		try {
+			for(int position = offset; position < offset + count; position += CHUNK_SIZE) {
+				int size = Math.min(CHUNK_SIZE, offset + count - position);
+				outputStream.write(data, position, size);
+				throttle(size);
+			}
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	private void throttle(int bytes) throws InterruptedException {
+		long bandwidth = bandwidthBytesPerSecond;
+		if(bandwidth > 0) {
+			TimeUnit.MICROSECONDS.sleep(bytes * 1_000_000L / bandwidth);
+		}
+	}
+
+	private String nextEtag() {
+		return "\"0x" + Long.toHexString(etagSequence.incrementAndGet()).toUpperCase() + "\"";
+	}
+
+	private static String md5(byte[] data) {
+		try {
+			return Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(data));
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static String formatRfc1123(Date date) {
+		return RFC1123.get().format(date);
+	}
+
+	private static Date parseIso8601(String value) throws BlobException {
+		try {
+			return ISO8601.get().parse(value);
+		} catch(ParseException | NullPointerException ex) {
+			throw authenticationFailed("Invalid signed time " + value);
+		}
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	private static BlobException blobNotFound() {
+		return new BlobException(404, "BlobNotFound", "The specified blob does not exist.");
+	}
+
+	private static BlobException containerNotFound() {
+		return new BlobException(404, "ContainerNotFound", "The specified container does not exist.");
+	}
+
+	private static BlobException authenticationFailed(String message) {
+		return new BlobException(403, "AuthenticationFailed", "Server failed to authenticate the request. " + message);
+	}
+
+	/**
+	 * Parsed request: /account/container/blob path and decoded query parameters
+	 */
+	private static class Request {
+		private final HttpExchange exchange;
+		private final String account;
+		private final String container;
+		private final String blob;
+		private final Map<String, String> query = new HashMap<>();
+
+		private Request(HttpExchange exchange) {
+			this.exchange = exchange;
+			String[] parts = exchange.getRequestURI().getPath().split("/", 4);
+			this.account = parts.length > 1 ? parts[1] : null;
+			this.container = parts.length > 2 && !parts[2].isEmpty() ? parts[2] : null;
+			this.blob = parts.length > 3 && !parts[3].isEmpty() ? parts[3] : null;
+			String rawQuery = exchange.getRequestURI().getRawQuery();
+			if(null != rawQuery) {
+				for(String parameter : rawQuery.split("&")) {
+					int index = parameter.indexOf('=');
+					if(index > 0) {
+						query.put(decode(parameter.substring(0, index)), decode(parameter.substring(index + 1)));
+					}
+				}
+			}
+		}
+
+		private String header(String name) {
+			return exchange.getRequestHeaders().getFirst(name);
+		}
+
+		private static String decode(String value) {
+			try {
+				return URLDecoder.decode(value, "UTF-8");
+			} catch(UnsupportedEncodingException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+
+	private static class Container {
+		private final String etag;
+		private final Date lastModified = new Date();
+		private final ConcurrentSkipListMap<String, Blob> blobs = new ConcurrentSkipListMap<>();
+		private final Map<String, Map<String, byte[]>> uncommitted = new ConcurrentHashMap<>();
+
+		private Container(String etag) {
+			this.etag = etag;
+		}
+	}
+
+	/**
+	 * Immutable committed blob, every write replaces the instance
+	 */
+	private static class Blob {
+		private final String etag;
+		private final Date lastModified = new Date();
+		private final byte[] content;
+		private final Map<String, String> properties;
+		private final Map<String, String> metadata;
+		private final List<Block> blocks = new ArrayList<>();
+		private CopyInfo copy;
+
+		private Blob(String etag, byte[] content, Map<String, String> properties, Map<String, String> metadata) {
+			this.etag = etag;
+			this.content = content;
+			this.properties = properties;
+			this.metadata = metadata;
+			this.properties.putIfAbsent("Content-MD5", md5(content));
+		}
+	}
+
+	private static class Block {
+		private final String id;
+		private final int offset;
+		private final int length;
+
+		private Block(String id, int offset, int length) {
+			this.id = id;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		private byte[] data(byte[] content) {
+			return Arrays.copyOfRange(content, offset, offset + length);
+		}
+	}
+
+	private static class CopyInfo {
+		private final String id;
+		private final String source;
+		private final long length;
+
+		private CopyInfo(String id, String source, long length) {
+			this.id = id;
+			this.source = source;
+			this.length = length;
+		}
+	}
+
+	private static class BlobException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+		private final String code;
+
+		private BlobException(int status, String code, String message) {
+			super(message);
+			this.status = status;
+			this.code = code;
+		}
+	}
+}
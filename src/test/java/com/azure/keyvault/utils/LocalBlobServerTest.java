@@ -0,0 +1,179 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageCredentialsSharedAccessSignature;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.ListBlobItem;
+import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
+import com.microsoft.azure.storage.blob.SharedAccessBlobPolicy;
+
+class LocalBlobServerTest {
+
+	private static final String CONTAINER = "server-container";
+
+	private LocalBlobServer server;
+	private CloudBlobContainer container;
+
+	@BeforeEach
+	void startServer() throws Exception {
+		server = LocalBlobServer.start(0);
+		container = CloudStorageAccount.parse(server.getConnectionString()).createCloudBlobClient().getContainerReference(CONTAINER);
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.close();
+	}
+
+	@Test
+	void containerIsCreatedOnce() throws Exception {
+		assertFalse(container.exists());
+		assertTrue(container.createIfNotExists());
+		assertFalse(container.createIfNotExists());
+		assertTrue(container.exists());
+	}
+
+	@Test
+	void committedBlocksAreReadWholeAndByRange() throws Exception {
+		container.create();
+		CloudBlockBlob blob = container.getBlockBlobReference("dir/blocks.bin");
+		byte[] first = bytes("first block,");
+		byte[] second = bytes("second block");
+		blob.uploadBlock(blockId(0), new ByteArrayInputStream(first), first.length);
+		blob.uploadBlock(blockId(1), new ByteArrayInputStream(second), second.length);
+		assertFalse(blob.exists());
+
+		blob.commitBlockList(Arrays.asList(new BlockEntry(blockId(0)), new BlockEntry(blockId(1))));
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		blob.download(content);
+		assertArrayEquals(bytes("first block,second block"), content.toByteArray());
+		byte[] range = new byte[6];
+		assertEquals(6, blob.downloadRangeToByteArray(6, 6L, range, 0));
+		assertArrayEquals(bytes("block,"), range);
+		blob.downloadAttributes();
+		assertEquals(first.length + second.length, blob.getProperties().getLength());
+	}
+
+	@Test
+	void sasIsRejectedWhenExpiredTamperedOrLackingPermission() throws Exception {
+		container.create();
+		CloudBlockBlob blob = container.getBlockBlobReference("secret.txt");
+		blob.uploadText("content");
+		String readSas = blob.generateSharedAccessSignature(policy(TimeUnit.HOURS.toMillis(1)), null);
+		String expiredSas = blob.generateSharedAccessSignature(policy(-TimeUnit.HOURS.toMillis(1)), null);
+		CloudBlockBlob readOnly = new CloudBlockBlob(blob.getUri(), new StorageCredentialsSharedAccessSignature(readSas));
+		CloudBlockBlob expired = new CloudBlockBlob(blob.getUri(), new StorageCredentialsSharedAccessSignature(expiredSas));
+		CloudBlockBlob tampered = new CloudBlockBlob(blob.getUri(), new StorageCredentialsSharedAccessSignature(readSas.replace("sp=r", "sp=rw")));
+
+		assertEquals("content", readOnly.downloadText());
+		assertEquals(403, assertThrows(StorageException.class, () -> readOnly.uploadText("overwritten")).getHttpStatusCode());
+		assertEquals(403, assertThrows(StorageException.class, expired::downloadText).getHttpStatusCode());
+		assertEquals(403, assertThrows(StorageException.class, () -> tampered.uploadText("overwritten")).getHttpStatusCode());
+		assertEquals("content", blob.downloadText());
+	}
+
+	@Test
+	void prefixedListingIsPagedPastServiceLimit() throws Exception {
+		container.create();
+		int count = 5100;
+		List<String> names = new ArrayList<>(Arrays.asList("a/before.txt", "z/after.txt"));
+		for(int i = 0; i < count; i++) {
+			names.add(String.format("logs/%05d.txt", i));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> uploads = new ArrayList<>();
+			for(String name : names) {
+				uploads.add(executor.submit(() -> {
+					container.getBlockBlobReference(name).uploadText(name);
+					return null;
+				}));
+			}
+			for(Future<?> upload : uploads) {
+				upload.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		ResultSegment<ListBlobItem> firstPage = container.listBlobsSegmented("logs/", true, EnumSet.noneOf(BlobListingDetails.class), null, null, null, null);
+		assertEquals(5000, firstPage.getResults().size());
+		assertNotNull(firstPage.getContinuationToken());
+
+		List<String> listed = new ArrayList<>();
+		for(ListBlobItem item : container.listBlobs("logs/", true)) {
+			listed.add(((CloudBlob) item).getName());
+		}
+		assertEquals(count, listed.size());
+		assertEquals("logs/00000.txt", listed.get(0));
+		assertEquals("logs/05099.txt", listed.get(count - 1));
+	}
+
+	@Test
+	void m2UtilitiesReachServerThroughBlobEndpoint() throws Exception {
+		container.create();
+
+		assertTrue(M2AzureStorageUtils.uploadFile(server.getConnectionString(), CONTAINER, "m2/file.txt", bytes("m2 content")));
+
+		assertArrayEquals(bytes("m2 content"), M2AzureStorageUtils.downloadFile(server.getConnectionString(), CONTAINER, "m2/file.txt"));
+		assertEquals("m2 content", container.getBlockBlobReference("m2/file.txt").downloadText());
+	}
+
+	@Test
+	void m2CredentialsDefaultToPublicEndpoint() {
+		assertArrayEquals(new String[] {"account", "a2V5", "https://account.blob.core.windows.net"},
+				M2AzureStorageUtils.parseCredentials("account<@#@>a2V5"));
+		assertArrayEquals(new String[] {"account", "a2V5", "http://127.0.0.1:10000/account"},
+				M2AzureStorageUtils.parseCredentials("account<@#@>a2V5<@#@>http://127.0.0.1:10000/account"));
+		assertArrayEquals(new String[] {"account", "a2V5==", "https://account.blob.core.chinacloudapi.cn"},
+				M2AzureStorageUtils.parseCredentials("DefaultEndpointsProtocol=https;AccountName=account;AccountKey=a2V5==;EndpointSuffix=core.chinacloudapi.cn"));
+	}
+
+	private static SharedAccessBlobPolicy policy(long expiresInMillis) {
+		SharedAccessBlobPolicy policy = new SharedAccessBlobPolicy();
+		policy.setPermissions(EnumSet.of(SharedAccessBlobPermissions.READ));
+		policy.setSharedAccessExpiryTime(new Date(System.currentTimeMillis() + expiresInMillis));
+		return policy;
+	}
+
+	private static String blockId(int index) {
+		return Base64.getEncoder().encodeToString(String.format("%06d", index).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,108 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.M3AzureStorageUtils.AzureException;
+import com.azure.keyvault.utils.PackStore.PackOptions;
+
+class PackStoreTest {
+
+	private static final String CONTAINER = "packs-container";
+	private static final String PREFIX = "telemetry/";
+
+	private Path root;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("pack-store");
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void objectsSurviveReopen() throws Exception {
+		try(PackStore store = PackStore.open(connectionString(), CONTAINER, PREFIX, options(2))) {
+			store.put("a", bytes("first"));
+			store.put("b", bytes("second"));
+			store.put("a", bytes("third"));
+			store.delete("b");
+			store.flush();
+		}
+
+		try(PackStore store = PackStore.open(connectionString(), CONTAINER, PREFIX, options(2))) {
+			assertArrayEquals(bytes("third"), store.get("a"));
+			assertNull(store.get("b"));
+			assertEquals(1, store.keys().size());
+		}
+	}
+
+	@Test
+	void failedUploadKeepsFuturePendingUntilRetrySucceeds() throws Exception {
+		Path blocker = Files.createDirectories(root.resolve(CONTAINER)).resolve("telemetry");
+		Files.write(blocker, new byte[0]);
+		try(PackStore store = PackStore.open(connectionString(), CONTAINER, PREFIX, options(1))) {
+			long start = System.nanoTime();
+			CompletableFuture<Void> put = store.put("a", bytes("content"));
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200, "put waits for upload");
+
+			assertThrows(AzureException.class, store::flush);
+			assertFalse(put.isDone());
+			assertArrayEquals(bytes("content"), store.get("a"));
+
+			Files.delete(blocker);
+			put.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(bytes("content"), store.get("a"));
+		}
+	}
+
+	@Test
+	void closeFailsFuturesOfPacksNotUploaded() throws Exception {
+		Path blocker = Files.createDirectories(root.resolve(CONTAINER)).resolve("telemetry");
+		Files.write(blocker, new byte[0]);
+		PackStore store = PackStore.open(connectionString(), CONTAINER, PREFIX, options(10));
+		CompletableFuture<Void> put = store.put("a", bytes("content"));
+
+		assertThrows(AzureException.class, store::close);
+		assertThrows(ExecutionException.class, put::get);
+		assertThrows(IllegalStateException.class, () -> store.put("b", bytes("content")));
+	}
+
+	private String connectionString() {
+		return "LOCAL;" + root;
+	}
+
+	private static PackOptions options(int maxPackObjects) {
+		PackOptions options = new PackOptions();
+		options.setMaxPackObjects(maxPackObjects);
+		options.setMaxDelayMillis(200);
+		options.setCompactionIntervalMillis(0);
+		return options;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,137 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.PartitionStore.Partition;
+import com.azure.keyvault.utils.PartitionStore.Status;
+
+class PartitionStoreTest {
+
+	private static final String JOB = "archive-job";
+
+	private PartitionStore store;
+
+	@BeforeEach
+	void createStore() throws Exception {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		store = new PartitionStore(dataSource);
+		store.createTable();
+		store.createTable();
+	}
+
+	@Test
+	void planIsStoredOnceAndRestartResumesIt() throws Exception {
+		assertTrue(store.plan(JOB, PartitionedJob.prefixPartitions("2020/", Arrays.asList("0", "1", "2", "3", "4"), 2)));
+		assertFalse(store.plan(JOB, PartitionedJob.prefixPartitions("2020/", Arrays.asList("0"), 1)));
+
+		Partition partition = store.claim(JOB, "worker-1", 60000, 3);
+
+		assertEquals(Arrays.asList("2020/0", "2020/2", "2020/4"), partition.getPrefixes());
+		assertEquals(1, (int) store.summary(JOB).get(Status.RUNNING));
+		assertEquals(1, (int) store.summary(JOB).get(Status.PENDING));
+		assertEquals(2, store.delete(JOB));
+	}
+
+	@Test
+	void concurrentWorkersNeverClaimSamePartition() throws Exception {
+		store.plan(JOB, PartitionedJob.hashPartitions("data/", 4));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Partition>> claims = new ArrayList<>();
+			for(int i = 0; i < 8; i++) {
+				String owner = "worker-" + i;
+				claims.add(executor.submit((Callable<Partition>) () -> store.claim(JOB, owner, 60000, 3)));
+			}
+			Set<Integer> claimed = new HashSet<>();
+			int nothingLeft = 0;
+			for(Future<Partition> claim : claims) {
+				Partition partition = claim.get();
+				if(null == partition) {
+					nothingLeft++;
+				}
+				else {
+					assertTrue(claimed.add(partition.getId()), "partition " + partition.getId() + " claimed twice");
+				}
+			}
+
+			assertEquals(4, claimed.size());
+			assertEquals(4, nothingLeft);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void expiredLeaseIsTakenOverAndFencesPreviousOwner() throws Exception {
+		store.plan(JOB, PartitionedJob.hashPartitions("data/", 1));
+		Partition first = store.claim(JOB, "worker-1", 50, 3);
+		assertNotNull(first);
+		assertNull(store.claim(JOB, "worker-2", 50, 3));
+		assertTrue(store.renew(JOB, first, 50));
+		Thread.sleep(100);
+
+		Partition second = store.claim(JOB, "worker-2", 60000, 3);
+
+		assertEquals(first.getId(), second.getId());
+		assertEquals("worker-2", second.getOwner());
+		assertEquals(2, second.getAttempts());
+		assertFalse(store.renew(JOB, first, 60000));
+		assertFalse(store.complete(JOB, first, 10, 0));
+		assertFalse(store.fail(JOB, first, "stale owner"));
+		assertFalse(store.isFinished(JOB, 3));
+		assertTrue(store.complete(JOB, second, 10, 0));
+		assertTrue(store.isFinished(JOB, 3));
+		assertEquals(1, (int) store.summary(JOB).get(Status.COMPLETED));
+	}
+
+	@Test
+	void failedPartitionIsClaimedAgainUntilMaxAttempts() throws Exception {
+		store.plan(JOB, PartitionedJob.hashPartitions("data/", 1));
+
+		assertTrue(store.fail(JOB, store.claim(JOB, "worker-1", 60000, 2), "first failure"));
+		Partition retried = store.claim(JOB, "worker-2", 60000, 2);
+		assertEquals(2, retried.getAttempts());
+		assertTrue(store.fail(JOB, retried, new String(new char[2000]).replace('\0', 'x')));
+
+		assertNull(store.claim(JOB, "worker-3", 60000, 2));
+		assertTrue(store.isFinished(JOB, 2));
+		assertFalse(store.isFinished(JOB, 3));
+		Map<Status, Integer> summary = store.summary(JOB);
+		assertEquals(1, (int) summary.get(Status.FAILED));
+		assertEquals(0, (int) summary.get(Status.RUNNING));
+	}
+
+	@Test
+	void expiredLeaseWithoutRemainingAttemptsFailsPartition() throws Exception {
+		store.plan(JOB, PartitionedJob.hashPartitions("data/", 1));
+		assertNotNull(store.claim(JOB, "worker-1", 1, 1));
+		Thread.sleep(20);
+
+		assertNull(store.claim(JOB, "worker-2", 60000, 1));
+
+		assertEquals(1, (int) store.summary(JOB).get(Status.FAILED));
+		assertTrue(store.isFinished(JOB, 1));
+	}
+}
@@ -0,0 +1,126 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.PartitionStore.Partition;
+import com.azure.keyvault.utils.PartitionStore.Status;
+
+class PartitionedJobTest {
+
+	private static final String CONTAINER = "job-container";
+	private static final String ROOT = "data/";
+	private static final int BUCKETS = 3;
+	private static final List<String> NAMES = Arrays.asList("data/a/1.txt", "data/a/2.txt", "data/b/1.txt", "data/c/d/1.txt",
+			"data/e/1.txt", "data/f/1.txt", "data/g/1.txt", "data/top-1.txt", "data/top-2.txt", "data/top-3.txt", "other/1.txt");
+
+	private Path root;
+	private PartitionStore store;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("partitioned-job");
+		for(String name : NAMES) {
+			Path file = root.resolve(CONTAINER).resolve(name);
+			Files.createDirectories(file.getParent());
+			Files.write(file, name.getBytes(StandardCharsets.UTF_8));
+		}
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		store = new PartitionStore(dataSource);
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void prefixesAreSpreadRoundRobin() {
+		List<Partition> partitions = PartitionedJob.prefixPartitions("2020/", Arrays.asList("0", "1", "2", "3", "4"), 2);
+
+		assertEquals(2, partitions.size());
+		assertEquals(Arrays.asList("2020/0", "2020/2", "2020/4"), partitions.get(0).getPrefixes());
+		assertEquals(Arrays.asList("2020/1", "2020/3"), partitions.get(1).getPrefixes());
+		assertEquals(1, PartitionedJob.prefixPartitions("2020/", Arrays.asList("0", "1"), 5).get(1).getId());
+	}
+
+	@Test
+	void hashBucketListingsSplitLeadingSegmentsWithoutOverlap() throws Exception {
+		Map<String, Integer> owners = new HashMap<>();
+		int topLevelListings = 0;
+		for(Partition partition : PartitionedJob.hashPartitions(ROOT, BUCKETS)) {
+			Map<String, Boolean> listings = PartitionedJob.listings(connectionString(), CONTAINER, partition);
+			for(Map.Entry<String, Boolean> listing : listings.entrySet()) {
+				if(ROOT.equals(listing.getKey())) {
+					assertFalse(listing.getValue(), "root is listed recursively");
+					topLevelListings++;
+					continue;
+				}
+				assertTrue(listing.getValue());
+				assertEquals(partition.getBucket(), PartitionedJob.bucket(listing.getKey(), BUCKETS), listing.getKey());
+				assertNull(owners.put(listing.getKey(), partition.getBucket()), listing.getKey() + " listed twice");
+			}
+		}
+
+		assertEquals(Arrays.asList("data/a/", "data/b/", "data/c/", "data/e/", "data/f/", "data/g/"), owners.keySet().stream().sorted().collect(Collectors.toList()));
+		long topLevelBuckets = Stream.of("data/top-1.txt", "data/top-2.txt", "data/top-3.txt").map(name -> PartitionedJob.bucket(name, BUCKETS)).distinct().count();
+		assertEquals(topLevelBuckets, topLevelListings);
+	}
+
+	@Test
+	void workersProcessEveryBlobUnderRootExactlyOnce() throws Exception {
+		Map<String, AtomicInteger> processed = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			PartitionedJob job = new PartitionedJob(store, "hash-job");
+			job.setPollMillis(10);
+			assertTrue(job.plan(PartitionedJob.hashPartitions(ROOT, BUCKETS)));
+			assertFalse(job.plan(PartitionedJob.hashPartitions(ROOT, BUCKETS)));
+			Future<Integer> first = executor.submit(() -> job.runWorker("worker-1", connectionString(), CONTAINER,
+					(filePath, content) -> processed.computeIfAbsent(filePath, name -> new AtomicInteger()).incrementAndGet()));
+			Future<Integer> second = executor.submit(() -> job.runWorker("worker-2", connectionString(), CONTAINER,
+					(filePath, content) -> processed.computeIfAbsent(filePath, name -> new AtomicInteger()).incrementAndGet()));
+
+			assertEquals(BUCKETS, first.get() + second.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(NAMES.size() - 1, processed.size());
+		assertFalse(processed.containsKey("other/1.txt"));
+		processed.forEach((name, count) -> assertEquals(1, count.get(), name));
+		assertEquals(BUCKETS, (int) store.summary("hash-job").get(Status.COMPLETED));
+	}
+
+	private String connectionString() {
+		return "LOCAL;" + root;
+	}
+}
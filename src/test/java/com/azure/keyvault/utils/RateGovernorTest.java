@@ -0,0 +1,105 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.RateGovernor.Bucket;
+import com.azure.keyvault.utils.RateGovernor.Mode;
+import com.azure.keyvault.utils.RateGovernor.OperationClass;
+import com.azure.keyvault.utils.RateGovernor.Priority;
+import com.azure.keyvault.utils.RateGovernor.ThrottledException;
+
+class RateGovernorTest {
+
+	@AfterEach
+	void reset() {
+		RateGovernor.reset();
+		RateGovernor.setMode(Mode.BLOCKING);
+		RateGovernor.setMaxWaitMillis(30000);
+		RateGovernor.setInteractiveReserve(0.2);
+		RateGovernor.clearPriority();
+	}
+
+	@Test
+	void ungovernedResourceHasNoBucket() {
+		RateGovernor.acquire("ungoverned", OperationClass.READ);
+
+		assertTrue(RateGovernor.getBuckets().isEmpty());
+	}
+
+	@Test
+	void failFastRejectsBeyondBurst() {
+		RateGovernor.setMode(Mode.FAIL_FAST);
+		RateGovernor.configure("burst", OperationClass.WRITE, 1, 2);
+
+		RateGovernor.acquire("burst", OperationClass.WRITE);
+		RateGovernor.acquire("burst", OperationClass.WRITE);
+		assertThrows(ThrottledException.class, () -> RateGovernor.acquire("burst", OperationClass.WRITE));
+
+		Bucket bucket = bucket("burst", OperationClass.WRITE);
+		assertEquals(2, bucket.getAcquired());
+		assertEquals(1, bucket.getRejected());
+	}
+
+	@Test
+	void batchLaneLeavesInteractiveReserve() throws Exception {
+		RateGovernor.setMode(Mode.FAIL_FAST);
+		RateGovernor.setInteractiveReserve(0.5);
+		RateGovernor.configure("lanes", OperationClass.READ, 1, 5);
+
+		int batch = RateGovernor.withPriority(Priority.BATCH, () -> {
+			int acquired = 0;
+			try {
+				while(acquired < 5) {
+					RateGovernor.acquire("lanes", OperationClass.READ);
+					acquired++;
+				}
+			} catch(ThrottledException ex) {
+				// reserve reached
+			}
+			return acquired;
+		});
+
+		assertEquals(3, batch);
+		RateGovernor.acquire("lanes", OperationClass.READ);
+		RateGovernor.acquire("lanes", OperationClass.READ);
+		assertThrows(ThrottledException.class, () -> RateGovernor.acquire("lanes", OperationClass.READ));
+	}
+
+	@Test
+	void reconfiguredBucketContinuesMetrics() {
+		RateGovernor.configure("meters", OperationClass.LIST, 1000, 10);
+		RateGovernor.acquire("meters", OperationClass.LIST);
+		Bucket exported = bucket("meters", OperationClass.LIST);
+
+		RateGovernor.configure("meters", OperationClass.LIST, 2000, 10);
+		RateGovernor.acquire("meters", OperationClass.LIST);
+
+		assertFalse(exported == bucket("meters", OperationClass.LIST));
+		assertEquals(2, exported.getAcquired());
+	}
+
+	@Test
+	void asyncPermitCompletesWithoutBlocking() throws Exception {
+		RateGovernor.configure("async", OperationClass.READ, 20, 1);
+
+		assertTrue(RateGovernor.acquireAsync("async", OperationClass.READ).isDone());
+		CompletableFuture<Void> delayed = RateGovernor.acquireAsync("async", OperationClass.READ);
+		assertFalse(delayed.isDone());
+		delayed.get(1, TimeUnit.SECONDS);
+	}
+
+	private static Bucket bucket(String resource, OperationClass operationClass) {
+		return RateGovernor.getBuckets().stream()
+				.filter(bucket -> bucket.getResource().equals(resource) && bucket.getOperationClass() == operationClass)
+				.findFirst().get();
+	}
+}
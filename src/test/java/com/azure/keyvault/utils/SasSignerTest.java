@@ -0,0 +1,117 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.SasSigner.SasParameters;
+import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
+
+class SasSignerTest {
+
+	private static final String ACCOUNT_KEY = Base64.getEncoder().encodeToString("sas-signer-test-key".getBytes(StandardCharsets.UTF_8));
+	private static final String CONNECTION_STRING = "DefaultEndpointsProtocol=https;AccountName=testaccount;AccountKey=" + ACCOUNT_KEY
+			+ ";EndpointSuffix=core.windows.net";
+
+	// 2020-11-23T10:00:00Z and 2020-11-23T11:00:00Z
+	private static final Date START = new Date(1606125600000L);
+	private static final Date EXPIRY = new Date(1606129200000L);
+
+	@Test
+	void blobUrlIsSignedOverServiceStringToSign() throws Exception {
+		SasParameters parameters = new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.WRITE), 0);
+		parameters.setStartTime(START);
+		parameters.setExpiryTime(EXPIRY);
+		parameters.setProtocol("https");
+
+		String url = SasSigner.forConnectionString(CONNECTION_STRING).blobURL("docs", "reports/2020/summary.pdf", parameters);
+
+		assertTrue(url.startsWith("https://testaccount.blob.core.windows.net/docs/reports/2020/summary.pdf?sv=2018-11-09&"), url);
+		assertEquals("2020-11-23T10:00:00Z", queryValue(url, "st"));
+		assertEquals("2020-11-23T11:00:00Z", queryValue(url, "se"));
+		assertEquals("b", queryValue(url, "sr"));
+		assertEquals("rw", queryValue(url, "sp"));
+		String stringToSign = "rw\n2020-11-23T10:00:00Z\n2020-11-23T11:00:00Z\n/blob/testaccount/docs/reports/2020/summary.pdf\n"
+				+ "\n\nhttps\n2018-11-09\nb\n\n\n\n\n\n";
+		assertEquals(hmac(stringToSign), queryValue(url, "sig"));
+	}
+
+	@Test
+	void containerUrlIncludesListPermission() throws Exception {
+		SasParameters parameters = new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ, SharedAccessBlobPermissions.LIST), 0);
+		parameters.setExpiryTime(EXPIRY);
+
+		String url = SasSigner.forConnectionString(CONNECTION_STRING).containerURL("docs", parameters);
+
+		assertTrue(url.startsWith("https://testaccount.blob.core.windows.net/docs?"), url);
+		assertEquals("c", queryValue(url, "sr"));
+		assertEquals("rl", queryValue(url, "sp"));
+		String stringToSign = "rl\n\n2020-11-23T11:00:00Z\n/blob/testaccount/docs\n\n\n\n2018-11-09\nc\n\n\n\n\n\n";
+		assertEquals(hmac(stringToSign), queryValue(url, "sig"));
+	}
+
+	@Test
+	void blobPathSegmentsAreEncodedButSignedRaw() throws Exception {
+		SasParameters parameters = new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ), 0);
+		parameters.setExpiryTime(EXPIRY);
+
+		String url = SasSigner.forConnectionString(CONNECTION_STRING).blobURL("docs", "my folder/a+b.txt", parameters);
+
+		assertTrue(url.startsWith("https://testaccount.blob.core.windows.net/docs/my%20folder/a%2Bb.txt?"), url);
+		String stringToSign = "r\n\n2020-11-23T11:00:00Z\n/blob/testaccount/docs/my folder/a+b.txt\n\n\n\n2018-11-09\nb\n\n\n\n\n\n";
+		assertEquals(hmac(stringToSign), queryValue(url, "sig"));
+	}
+
+	@Test
+	void bulkUrlsMatchSingleUrls() {
+		SasParameters parameters = new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ), 0);
+		parameters.setExpiryTime(EXPIRY);
+		SasSigner signer = SasSigner.forConnectionString(CONNECTION_STRING);
+
+		List<String> urls = signer.blobURLs("docs", Arrays.asList("a.txt", "b/c.txt"), parameters);
+
+		assertEquals(Arrays.asList(signer.blobURL("docs", "a.txt", parameters), signer.blobURL("docs", "b/c.txt", parameters)), urls);
+	}
+
+	@Test
+	void developmentStorageUsesEmulatorEndpoint() {
+		SasParameters parameters = new SasParameters(EnumSet.of(SharedAccessBlobPermissions.READ), 60000);
+
+		String url = SasSigner.forConnectionString("UseDevelopmentStorage=true").blobURL("docs", "a.txt", parameters);
+
+		assertTrue(url.startsWith("http://127.0.0.1:10000/devstoreaccount1/docs/a.txt?"), url);
+	}
+
+	@Test
+	void connectionStringWithoutAccountKeyIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> SasSigner.forConnectionString("AccountName=testaccount;SharedAccessSignature=sv=x"));
+	}
+
+	private static String queryValue(String url, String name) throws Exception {
+		for(String pair : url.substring(url.indexOf('?') + 1).split("&")) {
+			if(pair.startsWith(name + "=")) {
+				return URLDecoder.decode(pair.substring(name.length() + 1), "UTF-8");
+			}
+		}
+		return null;
+	}
+
+	private static String hmac(String stringToSign) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(Base64.getDecoder().decode(ACCOUNT_KEY), "HmacSHA256"));
+		return Base64.getEncoder().encodeToString(mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+	}
+}
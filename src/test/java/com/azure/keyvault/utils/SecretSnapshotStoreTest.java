@@ -0,0 +1,93 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SecretSnapshotStoreTest {
+
+	private Path root;
+	private Path file;
+
+	@BeforeEach
+	void createRoot() throws Exception {
+		root = Files.createTempDirectory("secret-snapshot");
+		file = root.resolve("snapshot").resolve("secret-snapshot.bin");
+	}
+
+	@AfterEach
+	void deleteRoot() throws Exception {
+		try(Stream<Path> files = Files.walk(root)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	void secretsRoundTripThroughFile() throws Exception {
+		String encodedKey = newEncodedKey();
+		new SecretSnapshotStore(file, SecretSnapshotStore.decodeKey(encodedKey)).put("secretCode", "s3cr=t value");
+		Path keyFile = root.resolve("snapshot-key");
+		Files.write(keyFile, (encodedKey + "\n").getBytes(StandardCharsets.US_ASCII));
+
+		SecretSnapshotStore reopened = new SecretSnapshotStore(file, SecretSnapshotStore.readKey(keyFile));
+
+		assertEquals("s3cr=t value", reopened.get("secretCode"));
+		assertNull(reopened.get("other"));
+		assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("s3cr=t"));
+	}
+
+	@Test
+	void tamperedSnapshotIsIgnored() throws Exception {
+		SecretKey key = SecretSnapshotStore.decodeKey(newEncodedKey());
+		new SecretSnapshotStore(file, key).put("secretCode", "value");
+		byte[] content = Files.readAllBytes(file);
+
+		for(int position : new int[] {10, content.length - 1}) {
+			byte[] tampered = content.clone();
+			tampered[position] ^= 1;
+			Files.write(file, tampered);
+
+			assertTrue(new SecretSnapshotStore(file, key).load().isEmpty(), "byte " + position);
+		}
+	}
+
+	@Test
+	void snapshotWrittenUnderAnotherKeyIsIgnoredAndReplaced() throws Exception {
+		new SecretSnapshotStore(file, SecretSnapshotStore.decodeKey(newEncodedKey())).put("secretCode", "foreign");
+		SecretKey key = SecretSnapshotStore.decodeKey(newEncodedKey());
+
+		SecretSnapshotStore store = new SecretSnapshotStore(file, key);
+		assertNull(store.get("secretCode"));
+		store.put("secretCode", "own");
+
+		assertEquals("own", new SecretSnapshotStore(file, key).get("secretCode"));
+	}
+
+	@Test
+	void keyMustBe256Bit() {
+		assertThrows(IllegalArgumentException.class, () -> SecretSnapshotStore.decodeKey(Base64.getEncoder().encodeToString(new byte[16])));
+		assertThrows(IllegalArgumentException.class, () -> SecretSnapshotStore.decodeKey("not base64!"));
+	}
+
+	private static String newEncodedKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return Base64.getEncoder().encodeToString(key);
+	}
+}
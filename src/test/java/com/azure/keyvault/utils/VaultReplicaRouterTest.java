@@ -0,0 +1,72 @@
+package com.azure.keyvault.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.azure.keyvault.utils.VaultReplicaRouter.Served;
+
+class VaultReplicaRouterTest {
+
+	@BeforeEach
+	void noProbes() {
+		VaultReplicaRouter.setProbeInterval(Long.MAX_VALUE);
+	}
+
+	@AfterEach
+	void reset() {
+		VaultReplicaRouter.setProbeInterval(30000);
+		VaultReplicaRouter.setAttemptTimeout(5000);
+		VaultReplicaRouter.setEjection(10000, 300000);
+	}
+
+	@Test
+	void failedVaultIsEjectedAndReadServedByReplica() {
+		String failing = "https://failing.vault.azure.net/";
+		String replica = "https://replica-a.vault.azure.net/";
+
+		Served<String> served = VaultReplicaRouter.route(Arrays.asList(failing, replica), uri -> {
+			if(failing.equals(uri)) {
+				throw new IllegalStateException("unavailable");
+			}
+			return "secret";
+		}, ex -> true);
+
+		assertEquals("secret", served.getValue());
+		assertEquals(replica, served.getUri());
+		assertFalse(VaultReplicaRouter.isAvailable(failing));
+	}
+
+	@Test
+	void timedOutAttemptIsCancelledAndEjected() throws Exception {
+		VaultReplicaRouter.setAttemptTimeout(100);
+		String slow = "https://slow.vault.azure.net/";
+		String replica = "https://replica-b.vault.azure.net/";
+		CountDownLatch interrupted = new CountDownLatch(1);
+
+		Served<String> served = VaultReplicaRouter.route(Arrays.asList(slow, replica), uri -> {
+			if(slow.equals(uri)) {
+				try {
+					Thread.sleep(10000);
+				} catch(InterruptedException ex) {
+					interrupted.countDown();
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				}
+			}
+			return uri;
+		}, ex -> true);
+
+		assertEquals(replica, served.getUri());
+		assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+		assertFalse(VaultReplicaRouter.isAvailable(slow));
+	}
+}